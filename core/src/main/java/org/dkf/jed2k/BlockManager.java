@@ -1,5 +1,6 @@
 package org.dkf.jed2k;
 
+import org.dkf.jed2k.data.PieceHashState;
 import org.dkf.jed2k.hash.MD4;
 import org.dkf.jed2k.protocol.Hash;
 import org.slf4j.Logger;
@@ -55,6 +56,26 @@ public class BlockManager {
         return freeBuffers;
     }
 
+    /**
+     * @return midstate of piece hash after contiguous hashed blocks or null if no blocks hashed
+     */
+    public PieceHashState hashState() {
+        if (lastHashedBlock < 0 || pieceHash != null) return null;
+        return new PieceHashState(piece, lastHashedBlock + 1, hasher.getContext(), hasher.getCount());
+    }
+
+    /**
+     * continue hashing from saved midstate, blocks before state's hashed blocks must not be registered
+     * @param state valid midstate of this piece
+     */
+    public void restoreState(final PieceHashState state) {
+        assert state.pieceIndex == piece;
+        assert state.hashedBlocks <= buffers.length;
+        assert lastHashedBlock == -1;
+        hasher.restoreState(state.context, state.count);
+        lastHashedBlock = state.hashedBlocks - 1;
+    }
+
     public Hash pieceHash() {
         if (pieceHash == null) {
             assert(lastHashedBlock == buffers.length - 1);
@@ -0,0 +1,140 @@
+package org.dkf.jed2k;
+
+import org.dkf.jed2k.protocol.Endpoint;
+import org.dkf.jed2k.protocol.Hash;
+
+import java.util.*;
+
+/**
+ * low id callbacks of session in both directions, used by main loop only
+ * outgoing - we have high id and ask server to make low id source connect to us:
+ * requests are queued and sent in small batches each second, sent request waits for source's hello
+ * and expires after timeout, the same source is not asked again until retry interval passed
+ * incoming - we have low id and server asks us to connect to high id peer:
+ * repeated requests for the same endpoint are ignored for a while
+ * low ids are valid on current server only, so all outgoing state is dropped when server connection closed
+ * Created by agent on 18.10.2026.
+ */
+public class CallbackManager {
+    public static final int MAX_REQUESTS_PER_TICK = 5;
+    public static final int MAX_PENDING_REQUESTS = 256;
+    public static final long CALLBACK_TIMEOUT = Time.seconds(45);
+    public static final long CALLBACK_RETRY_INTERVAL = Time.minutes(20);
+    public static final long INCOMING_REPEAT_INTERVAL = Time.minutes(1);
+
+    private static class Callback {
+        final Set<Hash> hashes = new LinkedHashSet<Hash>();
+        long sentTime = -1;
+    }
+
+    private final Map<Integer, Callback> pending = new LinkedHashMap<Integer, Callback>();
+    private final Map<Integer, Callback> waiting = new HashMap<Integer, Callback>();
+    private final Map<Integer, Long> attempts = new HashMap<Integer, Long>();
+    private final Map<Endpoint, Long> incoming = new HashMap<Endpoint, Long>();
+
+    /**
+     * queue callback request to low id source
+     * @param clientId low id of source
+     * @param h hash of transfer source was found for
+     * @param now current time
+     * @return true if new request was queued
+     */
+    public boolean request(int clientId, final Hash h, long now) {
+        Callback c = waiting.get(clientId);
+        if (c == null) c = pending.get(clientId);
+        if (c != null) {
+            c.hashes.add(h);
+            return false;
+        }
+
+        Long last = attempts.get(clientId);
+        if (last != null && now - last < CALLBACK_RETRY_INTERVAL) return false;
+        if (pending.size() >= MAX_PENDING_REQUESTS) return false;
+
+        c = new Callback();
+        c.hashes.add(h);
+        pending.put(clientId, c);
+        return true;
+    }
+
+    /**
+     * expire sent requests and forget old attempts
+     * @param now current time
+     * @param canSend server connection is ready for callback requests
+     * @return low ids of sources must be requested now
+     */
+    public List<Integer> tick(long now, boolean canSend) {
+        Iterator<Callback> itr = waiting.values().iterator();
+        while(itr.hasNext()) {
+            if (now - itr.next().sentTime > CALLBACK_TIMEOUT) itr.remove();
+        }
+
+        Iterator<Long> attemptsItr = attempts.values().iterator();
+        while(attemptsItr.hasNext()) {
+            if (now - attemptsItr.next() >= CALLBACK_RETRY_INTERVAL) attemptsItr.remove();
+        }
+
+        Iterator<Long> incomingItr = incoming.values().iterator();
+        while(incomingItr.hasNext()) {
+            if (now - incomingItr.next() >= INCOMING_REPEAT_INTERVAL) incomingItr.remove();
+        }
+
+        if (!canSend || pending.isEmpty()) return Collections.emptyList();
+
+        List<Integer> res = new ArrayList<Integer>();
+        Iterator<Map.Entry<Integer, Callback>> pendingItr = pending.entrySet().iterator();
+        while(pendingItr.hasNext() && res.size() < MAX_REQUESTS_PER_TICK) {
+            Map.Entry<Integer, Callback> e = pendingItr.next();
+            pendingItr.remove();
+            e.getValue().sentTime = now;
+            waiting.put(e.getKey(), e.getValue());
+            attempts.put(e.getKey(), now);
+            res.add(e.getKey());
+        }
+
+        return res;
+    }
+
+    /**
+     * match incoming connection's hello against requested callbacks
+     * @param clientId id from remote peer's hello
+     * @return hashes of transfers the peer was requested for, empty if peer wasn't requested
+     */
+    public List<Hash> match(int clientId) {
+        Callback c = waiting.remove(clientId);
+        // source could connect on its own before our request was sent
+        if (c == null) c = pending.remove(clientId);
+        if (c == null) return Collections.emptyList();
+        return new ArrayList<Hash>(c.hashes);
+    }
+
+    /**
+     * server asks us to connect to peer
+     * @param point peer's endpoint
+     * @param now current time
+     * @return true if peer must be connected, false for repeated request
+     */
+    public boolean acceptIncoming(final Endpoint point, long now) {
+        Long last = incoming.get(point);
+        if (last != null && now - last < INCOMING_REPEAT_INTERVAL) return false;
+        incoming.put(point, now);
+        return true;
+    }
+
+    /**
+     * server connection closed, low ids are not valid anymore
+     */
+    public void clear() {
+        pending.clear();
+        waiting.clear();
+        attempts.clear();
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    public int waitingCount() {
+        return waiting.size();
+    }
+}
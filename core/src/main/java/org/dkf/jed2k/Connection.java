@@ -41,6 +41,22 @@ public abstract class Connection implements Dispatcher {
      */
     private LinkedList<Serializable> outgoingOrder = new LinkedList<Serializable>();
 
+    /**
+     * order for bulk data packets, each packet is followed by its payload
+     * data packet is sent only when order of control packets is empty
+     */
+    private LinkedList<Pair<Serializable, ByteBuffer>> dataOrder = new LinkedList<Pair<Serializable, ByteBuffer>>();
+
+    /**
+     * payload of data packet in outgoing buffer, sent right after buffer's content
+     */
+    private ByteBuffer outgoingPayload = null;
+
+    /**
+     * outgoing buffer is prepared for write and still has bytes socket hasn't accepted yet
+     */
+    private boolean outgoingPending = false;
+
     /**
      * outgoing order has pending packets or prewious write operation still in progress
      */
@@ -56,6 +72,11 @@ public abstract class Connection implements Dispatcher {
      */
     final Session session;
 
+    /**
+     * event loop connection's channel registered on
+     */
+    EventLoop loop;
+
     /**
      * last received packet's header
      */
@@ -67,12 +88,14 @@ public abstract class Connection implements Dispatcher {
     private ByteBuffer headerBuffer = ByteBuffer.allocate(PacketHeader.SIZE);
     private Statistics stat = new Statistics();
     long lastReceive = Time.currentTime();
+    long lastSend = Time.currentTime();
     private boolean disconnecting = false;
 
     protected Connection(ByteBuffer bufferIncoming,
             ByteBuffer bufferOutgoing,
             PacketCombiner packetCombiner,
-            Session session) throws IOException {
+            Session session,
+            EventLoop loop) throws IOException {
         this.bufferIncoming = bufferIncoming;
         this.bufferOutgoing = bufferOutgoing;
         this.bufferIncoming.order(ByteOrder.LITTLE_ENDIAN);
@@ -80,15 +103,17 @@ public abstract class Connection implements Dispatcher {
         this.headerBuffer.order(ByteOrder.LITTLE_ENDIAN);
         this.packetCombainer = packetCombiner;
         this.session = session;
+        this.loop = loop;
+        if (loop != null) packetCombiner.setDecompressor(loop.decompressor);
         socket = SocketChannel.open();
         socket.configureBlocking(false);
-        key = socket.register(session.selector, SelectionKey.OP_CONNECT, this);
+        key = socket.register(loop.selector, SelectionKey.OP_CONNECT, this);
     }
 
     protected Connection(ByteBuffer bufferIncoming,
             ByteBuffer bufferOutgoing,
             PacketCombiner packetCombiner,
-            Session session, SocketChannel socket) throws IOException {
+            Session session, EventLoop loop, SocketChannel socket) throws IOException {
         this.bufferIncoming = bufferIncoming;
         this.bufferOutgoing = bufferOutgoing;
         this.bufferIncoming.order(ByteOrder.LITTLE_ENDIAN);
@@ -96,13 +121,27 @@ public abstract class Connection implements Dispatcher {
         this.headerBuffer.order(ByteOrder.LITTLE_ENDIAN);
         this.packetCombainer = packetCombiner;
         this.session = session;
+        this.loop = loop;
+        if (loop != null) packetCombiner.setDecompressor(loop.decompressor);
         if (socket != null) {
             this.socket = socket;
             this.socket.configureBlocking(false);
-            key = socket.register(session.selector, SelectionKey.OP_READ, this);
+            key = socket.register(loop.selector, SelectionKey.OP_READ, this);
         }
     }
 
+    /**
+     * move connection to another event loop
+     * must be called in new loop's thread after key in previous loop was cancelled
+     * @param target new owner loop
+     * @throws IOException
+     */
+    void register(final EventLoop target) throws IOException {
+        loop = target;
+        packetCombainer.setDecompressor(target.decompressor);
+        key = socket.register(target.selector, interestOps(), this);
+    }
+
     public void onConnectable() {
         try {
             socket.finishConnect();
@@ -219,21 +258,39 @@ public abstract class Connection implements Dispatcher {
 
     void onWriteable() {
         try {
+            // socket accepted only part of previous buffer, finish it first
+            if (outgoingPending && !flush()) return;
+
             bufferOutgoing.clear();
             /**
              * previous buffer was completely sent to socket
              * obtain new write in progress status
              */
-            writeInProgress = !outgoingOrder.isEmpty();
+            writeInProgress = !outgoingOrder.isEmpty() || !dataOrder.isEmpty();
             Iterator<Serializable> itr = outgoingOrder.iterator();
             while(itr.hasNext()) {
             	// try to serialize packet into buffer
                 Serializable s = itr.next();
-                if (!packetCombainer.pack(s, bufferOutgoing)) break;
+                if (!packetCombainer.pack(s, bufferOutgoing)) {
+                    if (bufferOutgoing.position() != 0) break;
+                    // packet doesn't fit even into empty buffer, re-create buffer for it
+                    growOutgoingBuffer(PacketHeader.SIZE + s.bytesCount() + 1);
+                    if (!packetCombainer.pack(s, bufferOutgoing)) throw new JED2KException(ErrorCode.BUFFER_TOO_LARGE);
+                }
                 log.trace("{} >> {}", s.toString(), getEndpoint());
                 itr.remove();
             }
 
+            // data packet goes after all control packets, its payload is sent directly from its buffer
+            if (outgoingOrder.isEmpty() && !dataOrder.isEmpty()) {
+                Pair<Serializable, ByteBuffer> data = dataOrder.peek();
+                if (packetCombainer.pack(data.left, data.right.remaining(), bufferOutgoing)) {
+                    log.trace("{} >> {} with {} bytes", data.left, getEndpoint(), data.right.remaining());
+                    outgoingPayload = data.right;
+                    dataOrder.poll();
+                }
+            }
+
             // if write in progress we have to have at least one packet in outgoing buffer
             // check write not in progress or outgoing buffer position not in begin of buffer
             assert(!writeInProgress || bufferOutgoing.position() != 0);
@@ -243,8 +300,8 @@ public abstract class Connection implements Dispatcher {
              */
             if (writeInProgress) {
                 bufferOutgoing.flip();
-                stat.sendBytes(bufferOutgoing.remaining(), 0);
-                socket.write(bufferOutgoing);
+                outgoingPending = true;
+                flush();
             } else {
                 // write not in progress - wait for data from remote peer
                 key.interestOps(SelectionKey.OP_READ);
@@ -264,8 +321,54 @@ public abstract class Connection implements Dispatcher {
         }
     }
 
+    /**
+     * write prepared outgoing buffer and payload following it with one gathering write
+     * @return true if everything was written
+     * @throws IOException
+     */
+    private boolean flush() throws IOException {
+        int protocolBytes = bufferOutgoing.remaining();
+        int payloadBytes = 0;
+
+        if (outgoingPayload != null) {
+            payloadBytes = outgoingPayload.remaining();
+            socket.write(new ByteBuffer[] {bufferOutgoing, outgoingPayload});
+            payloadBytes -= outgoingPayload.remaining();
+        } else {
+            socket.write(bufferOutgoing);
+        }
+
+        protocolBytes -= bufferOutgoing.remaining();
+        if (protocolBytes + payloadBytes != 0) lastSend = Time.currentTime();
+        stat.sendBytes(protocolBytes, payloadBytes);
+
+        if (bufferOutgoing.hasRemaining() || (outgoingPayload != null && outgoingPayload.hasRemaining())) return false;
+
+        outgoingPending = false;
+        if (outgoingPayload != null) {
+            ByteBuffer payload = outgoingPayload;
+            outgoingPayload = null;
+            onPayloadSent(payload);
+        }
+
+        return true;
+    }
+
+    private void growOutgoingBuffer(int size) {
+        log.debug("re-create outgoing buffer to {}", size);
+        bufferOutgoing = ByteBuffer.allocate(size);
+        bufferOutgoing.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return selector interest while connection is established, read is always interesting
+     */
+    private int interestOps() {
+        return writeInProgress?(SelectionKey.OP_READ | SelectionKey.OP_WRITE):SelectionKey.OP_READ;
+    }
+
     void doRead() {
-        key.interestOps(SelectionKey.OP_READ);
+        key.interestOps(interestOps());
     }
 
     protected abstract void onConnect() throws JED2KException;
@@ -301,11 +404,38 @@ public abstract class Connection implements Dispatcher {
     protected void write(Serializable packet) {
         outgoingOrder.add(packet);
         if (!writeInProgress) {
-            key.interestOps(SelectionKey.OP_WRITE);
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
             onWriteable();
         }
     }
 
+    /**
+     * queue bulk data packet, control packets written later are sent before it
+     * @param packet data packet's fields
+     * @param payload data follows packet, returned in onPayloadSent when completely sent
+     */
+    protected void writeData(Serializable packet, ByteBuffer payload) {
+        dataOrder.add(Pair.make(packet, payload));
+        if (!writeInProgress) {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            onWriteable();
+        }
+    }
+
+    /**
+     * payload of data packet was completely written to socket
+     * @param payload buffer passed to writeData
+     */
+    protected void onPayloadSent(ByteBuffer payload) {
+    }
+
+    /**
+     * @return true if data packets are waiting in order or being sent
+     */
+    final boolean hasPendingData() {
+        return !dataOrder.isEmpty() || outgoingPayload != null;
+    }
+
     void secondTick(long currentSessionTime) {
         stat.secondTick(currentSessionTime);
     }
@@ -318,5 +448,9 @@ public abstract class Connection implements Dispatcher {
         return disconnecting;
     }
 
+    final EventLoop getLoop() {
+        return loop;
+    }
+
     abstract Endpoint getEndpoint();
 }
@@ -16,7 +16,7 @@ import java.nio.ByteBuffer;
 @Data
 public class DhtInitialData implements Serializable {
     private KadId target = new KadId();
-    private Container<UInt32, NodeEntry> entries = Container.makeInt(NodeEntry.class);
+    private Container<UInt32, NodeEntry> entries = Container.makeInt(NodeEntry.FACTORY);
 
     @Override
     public ByteBuffer get(ByteBuffer src) throws JED2KException {
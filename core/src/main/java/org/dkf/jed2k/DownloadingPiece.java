@@ -21,6 +21,16 @@ public class DownloadingPiece implements Iterable<DownloadingPiece.Block> {
 
     public class Block {
         private BlockState   state  = BlockState.STATE_NONE;
+
+        /**
+         * change state and update piece's counters of block states
+         */
+        private void setState(final BlockState newState) {
+            counters[state.ordinal()]--;
+            counters[newState.ordinal()]++;
+            state = newState;
+        }
+
         private short downloadersCount = 0;
         private Peer lastDownloader = null;
         private PeerConnection.PeerSpeed speed = PeerConnection.PeerSpeed.SLOW;
@@ -37,7 +47,7 @@ public class DownloadingPiece implements Iterable<DownloadingPiece.Block> {
             ++downloadersCount;
             assert downloadersCount <= 2;
             lastDownloader = p;
-            state = BlockState.STATE_REQUESTED;
+            setState(BlockState.STATE_REQUESTED);
             this.speed = speed;
         }
 
@@ -46,11 +56,11 @@ public class DownloadingPiece implements Iterable<DownloadingPiece.Block> {
             assert state == BlockState.STATE_REQUESTED || state == BlockState.STATE_NONE;
             downloadersCount = 0;
             lastDownloader = null;
-            state = BlockState.STATE_WRITING;
+            setState(BlockState.STATE_WRITING);
         }
 
         public void finish() {
-            state = BlockState.STATE_FINISHED;
+            setState(BlockState.STATE_FINISHED);
         }
 
         public void abort(Peer p) {
@@ -62,7 +72,7 @@ public class DownloadingPiece implements Iterable<DownloadingPiece.Block> {
             if (lastDownloader != null && lastDownloader == p) lastDownloader = null;
 
             if (downloadersCount == 0) {
-                state = BlockState.STATE_NONE;
+                setState(BlockState.STATE_NONE);
             }
         }
 
@@ -99,13 +109,15 @@ public class DownloadingPiece implements Iterable<DownloadingPiece.Block> {
     private int blocksCount;
     public Block[] blocks;
 
-    /*
-    TODO - for future usage
-    short requestedBlocksCount;
-    short writingBlocksCount;
-    short finishedBlocksCount;
-    short downloadedBlocksCount;
-    */
+    /**
+     * slow peer downloads this piece alone, null when piece is shared by all peers
+     */
+    private Peer owner = null;
+
+    /**
+     * count of blocks in each state indexed by state ordinal, updated on every block state change
+     */
+    private final int[] counters = new int[BlockState.values().length];
 
     public DownloadingPiece(int pieceIndex, int blocksCount) {
         assert(pieceIndex >= 0);
@@ -114,15 +126,11 @@ public class DownloadingPiece implements Iterable<DownloadingPiece.Block> {
         this.blocksCount = blocksCount;
         blocks = new Block[blocksCount];
         for(int i = 0; i != blocksCount; ++i) blocks[i] = new Block();
+        counters[BlockState.STATE_NONE.ordinal()] = blocksCount;
     }
 
     private int calculateStatedBlocks(BlockState state) {
-        int res = 0;
-        for(final Block b: blocks) {
-            if (b.getState().equals(state)) res++;
-        }
-
-        return res;
+        return counters[state.ordinal()];
     }
 
     public final int getFinishedBlocksCount() {return calculateStatedBlocks(BlockState.STATE_FINISHED); }
@@ -141,6 +149,16 @@ public class DownloadingPiece implements Iterable<DownloadingPiece.Block> {
         blocks[blockIndex].finish();
     }
 
+    /**
+     * return block to none state, block data must be downloaded again
+     * @param blockIndex block
+     */
+    public void resetBlock(int blockIndex) {
+        assert(blockIndex < blocksCount);
+        blocks[blockIndex].setState(BlockState.STATE_NONE);
+        blocks[blockIndex] = new Block();
+    }
+
     public void requestBlock(int blockIndex, Peer p, PeerConnection.PeerSpeed speed) {
         assert(blockIndex < blocksCount);
         blocks[blockIndex].request(p, speed);
@@ -207,6 +225,14 @@ public class DownloadingPiece implements Iterable<DownloadingPiece.Block> {
         return pieceIndex;
     }
 
+    public Peer getOwner() {
+        return owner;
+    }
+
+    public void setOwner(final Peer owner) {
+        this.owner = owner;
+    }
+
     @Override
     public Iterator<DownloadingPiece.Block> iterator() {
 
@@ -0,0 +1,473 @@
+package org.dkf.jed2k;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dkf.jed2k.disk.AsyncOperationResult;
+import org.dkf.jed2k.disk.DiskEngine;
+import org.dkf.jed2k.disk.TransferCallable;
+import org.dkf.jed2k.exception.ErrorCode;
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.Decompressor;
+import org.dkf.jed2k.protocol.Hash;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * one selector based reactor of the session
+ * event loop owns peer connections registered on its selector, transfers hashed onto it
+ * and results of disk operations submitted by those transfers
+ * all owned state is changed only in loop's thread under loop's lock, other threads post commands
+ * loop zero is driven by session thread itself and uses session object as lock
+ * Created by agent on 18.10.2026.
+ */
+@Slf4j
+public class EventLoop implements Runnable {
+    final Session session;
+    final int index;
+    private final Object lock;
+    volatile Selector selector = null;
+    private Thread thread = null;
+    private volatile boolean aborted = false;
+
+    /**
+     * commands posted from other threads, executed on each loop pass
+     */
+    private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<Runnable>();
+
+    /**
+     * transfers owned by this loop
+     */
+    final Map<Hash, Transfer> transfers = new HashMap<Hash, Transfer>();
+
+    /**
+     * peer connections registered on loop's selector
+     */
+    final ArrayList<PeerConnection> connections = new ArrayList<PeerConnection>();
+
+    /**
+     * disk tasks completed or cancelled in disk thread, processed on the next loop pass
+     */
+    private final ConcurrentLinkedQueue<DiskTask> completedDiskTasks = new ConcurrentLinkedQueue<DiskTask>();
+
+    /**
+     * count of submitted but not processed disk tasks
+     */
+    private int diskTasksInFlight = 0;
+
+    /**
+     * disk task posts itself to completion queue of loop and wakes up selector when finished
+     */
+    private class DiskTask extends FutureTask<AsyncOperationResult> {
+        final Transfer transfer;
+
+        DiskTask(final TransferCallable<AsyncOperationResult> callable) {
+            super(callable);
+            transfer = callable.getTransfer();
+        }
+
+        @Override
+        protected void done() {
+            completedDiskTasks.add(this);
+            Selector s = selector;
+            if (s != null) s.wakeup();
+        }
+    }
+
+    private ByteBuffer skipDataBuffer = null;
+
+    /**
+     * inflaters and inflate buffer of packed packets and compressed parts received by loop's connections
+     */
+    final Decompressor decompressor = new Decompressor();
+    final Statistics accumulator = new Statistics();
+    long lastTick = Time.currentTime();
+
+    /**
+     * timed work of loop: peer timeouts, reconnect backoff, sources requests
+     */
+    final TimerWheel timers = new TimerWheel();
+
+    /**
+     * upload slots and waiting peers of loop's transfers, slots are shared by all loops, queue size is divided
+     */
+    final UploadQueue<PeerConnection> uploads;
+
+    EventLoop(final Session session, int index, final Object lock) {
+        assert session != null;
+        assert lock != null;
+        this.session = session;
+        this.index = index;
+        this.lock = lock;
+        uploads = new UploadQueue<PeerConnection>(session.uploadSlots, 0);
+    }
+
+    void open() throws IOException {
+        selector = Selector.open();
+    }
+
+    /**
+     * start own thread for loop, loop zero must not be started since session thread drives it
+     */
+    void start() {
+        assert index != 0;
+        thread = new Thread(this, "jed2k-loop-" + index);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    final Object getLock() {
+        return lock;
+    }
+
+    /**
+     * @return true if caller executes in loop's thread
+     */
+    final boolean isCurrent() {
+        return (index == 0)?Thread.currentThread() == session:Thread.currentThread() == thread;
+    }
+
+    /**
+     * add command to loop's queue and wake up selector to process it as soon as possible
+     * @param r command
+     */
+    void post(final Runnable r) {
+        commands.add(r);
+        if (selector != null) selector.wakeup();
+    }
+
+    /**
+     * run command immediately when caller is loop's thread, post it otherwise
+     * @param r command
+     */
+    void execute(final Runnable r) {
+        if (isCurrent()) {
+            r.run();
+        } else {
+            post(r);
+        }
+    }
+
+    @Override
+    public void run() {
+        while(!aborted && !Thread.currentThread().isInterrupted()) {
+            int channelCount;
+            try {
+                channelCount = selector.select(selectTimeout());
+            } catch(IOException e) {
+                // loop's transfers can't work without selector, stop whole session instead of losing them silently
+                log.error("[loop {}] interrupted with error {}", index, e);
+                session.abort();
+                return;
+            }
+
+            Time.updateCachedTime();
+            synchronized (lock) {
+                try {
+                    tick(channelCount);
+                } catch(Exception e) {
+                    // one broken transfer or connection must not stop the loop's others
+                    log.error("[loop {}] unexpected error", index, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * process ready channels, posted commands, expired timers and once in a second loop's transfers
+     * must be called under loop's lock
+     * @param channelCount count of selected keys
+     */
+    void tick(int channelCount) {
+        if (channelCount != 0) processKeys();
+        processDiskTasks();
+        processCommands();
+        timers.advance(Time.currentTime());
+
+        long tickIntervalMs = Time.currentTime() - lastTick;
+        if (tickIntervalMs >= 1000) {
+            lastTick = Time.currentTime();
+            secondTick(tickIntervalMs);
+        }
+    }
+
+    /**
+     * wake up on each timer wheel tick while there is timed work
+     * @return selector timeout in milliseconds
+     */
+    long selectTimeout() {
+        return timers.isEmpty()?1000:timers.getTickMs();
+    }
+
+    private void processKeys() {
+        Iterator<SelectionKey> keyIterator = selector.selectedKeys().iterator();
+
+        while(keyIterator.hasNext()) {
+            SelectionKey key = keyIterator.next();
+
+            if (key.isValid() && key.attachment() instanceof UDPConnection) {
+                // datagram socket of main loop
+                UDPConnection udp = (UDPConnection)key.attachment();
+                if (key.isReadable()) udp.onReadable();
+                if (key.isValid() && key.isWritable()) udp.onWriteable();
+            } else if (key.isValid()) {
+                if(key.isAcceptable()) {
+                    // a connection was accepted by a ServerSocketChannel
+                    session.incomingConnection();
+                } else if (key.isConnectable()) {
+                    // a connection was established with a remote server/peer
+                    ((Connection)key.attachment()).onConnectable();
+                } else {
+                    // a channel is ready for reading
+                    if (key.isReadable()) ((Connection)key.attachment()).onReadable();
+                    // a channel is ready for writing, connection could be closed or handed off on read
+                    if (key.isValid() && key.isWritable()) ((Connection)key.attachment()).onWriteable();
+                }
+            }
+
+            keyIterator.remove();
+        }
+    }
+
+    final boolean hasCommands() {
+        return !commands.isEmpty();
+    }
+
+    void processCommands() {
+        Runnable r = commands.poll();
+        while(r != null) {
+            r.run();
+            r = commands.poll();
+        }
+    }
+
+    void secondTick(long tickIntervalMs) {
+        for(final Transfer t: transfers.values()) {
+            t.secondTick(accumulator, tickIntervalMs);
+        }
+
+        updateUploadLimits();
+        for(final PeerConnection c: uploads.tick(Time.currentTime())) {
+            c.onUploadSlotGranted();
+        }
+
+        for(final PeerConnection c: uploads.uploadingConnections()) {
+            // connections of transfers are accounted by transfers
+            if (!c.hasTransfer()) {
+                accumulator.add(c.statistics());
+                c.secondTick(tickIntervalMs);
+            }
+
+            c.uploadTick();
+        }
+
+        accumulator.secondTick(tickIntervalMs);
+        connectNewPeers();
+    }
+
+    /**
+     * traverse loop's transfers and try to connect new peers if limits not exceeded and transfer want more peers
+     * session wide limits are divided between loops
+     */
+    void connectNewPeers() {
+        int stepsSinceLastConnect = 0;
+        int maxConnectionsPerSecond = Math.max(1, session.settings.maxConnectionsPerSecond / session.loopsCount());
+        int numTransfers = transfers.size();
+        boolean enumerateCandidates = true;
+
+        if (numTransfers > 0 && connections.size() < connectionsLimit()) {
+            while (enumerateCandidates) {
+                for (final Transfer t : transfers.values()) {
+                    if (t.wantMorePeers()) {
+                        try {
+                            if (t.tryConnectPeer(Time.currentTime())) {
+                                --maxConnectionsPerSecond;
+                                stepsSinceLastConnect = 0;
+                            }
+                        } catch (JED2KException e) {
+                            log.error("exception on connect new peer {}", e);
+                        }
+                    }
+
+                    ++stepsSinceLastConnect;
+
+                    // if we have gone two whole loops without
+                    // handing out a single connection, break
+                    if (stepsSinceLastConnect > numTransfers*2) {
+                        enumerateCandidates = false;
+                        break;
+                    }
+
+                    // if we should not make any more connections
+                    // attempts this tick, abort
+                    if (maxConnectionsPerSecond == 0) {
+                        enumerateCandidates = false;
+                        break;
+                    }
+                }
+
+                // must not happen :) but still
+                if (transfers.isEmpty()) break;
+            }
+        }
+    }
+
+    /**
+     * execute async disk operation, result will be processed in this loop
+     * @param engine disk engine
+     * @param task disk operation of transfer owned by this loop
+     */
+    void submitDiskTask(final DiskEngine engine, final TransferCallable<AsyncOperationResult> task) {
+        DiskTask dt = new DiskTask(task);
+        ++diskTasksInFlight;
+        dt.transfer.addDiskTask(dt);
+        engine.submit(task, dt);
+    }
+
+    final boolean hasDiskTasks() {
+        return diskTasksInFlight != 0;
+    }
+
+    /**
+     * @return this loop's share of session connections limit
+     */
+    private int connectionsLimit() {
+        return Utils.divCeil(session.settings.sessionConnectionsLimit, session.loopsCount());
+    }
+
+    /**
+     * apply current session upload settings to loop's upload queue
+     * slots are common for session, so loop uploads on all slots other loops don't use
+     * queue size is split between loops, each loop has at least one place when session has queue
+     */
+    void updateUploadLimits() {
+        session.uploadSlots.setLimit(session.settings.uploadSlots);
+        int queueSize = Utils.divShare(session.settings.uploadQueueSize, session.loopsCount(), index);
+        if (queueSize == 0 && session.settings.uploadQueueSize > 0) queueSize = 1;
+        uploads.setQueueSize(queueSize);
+    }
+
+    /**
+     * try to connect one peer of transfer immediately, used when peer's reconnect timeout expired
+     * @param t transfer owned by this loop
+     */
+    void tryConnect(final Transfer t) {
+        if (connections.size() >= connectionsLimit() || t.isAborted() || !t.wantMorePeers()) return;
+
+        try {
+            t.tryConnectPeer(Time.currentTime());
+        } catch (JED2KException e) {
+            log.error("exception on connect peer {}", e);
+        }
+    }
+
+    void processDiskTasks() {
+        DiskTask task = completedDiskTasks.poll();
+
+        while(task != null) {
+            --diskTasksInFlight;
+            assert diskTasksInFlight >= 0;
+            task.transfer.removeDiskTask(task);
+
+            if (!task.isCancelled()) {
+                try {
+                    task.get().onCompleted();
+                } catch (InterruptedException e) {
+                    log.warn("[loop {}] aio InterruptedException {}", index, e);
+                } catch (ExecutionException e) {
+                    log.warn("[loop {}] aio ExecutionException {}", index, e);
+                } catch (Exception e) {
+                    log.error("[loop {}] general error on processing async operation result {}", index, e);
+                }
+            }
+
+            task = completedDiskTasks.poll();
+        }
+    }
+
+    /**
+     * sometimes we need to skip some data received from peer
+     * skip data buffer is one shared data buffer for all connections of loop
+     * @return byte buffer
+     */
+    ByteBuffer allocateSkipDataBufer() {
+        if (skipDataBuffer == null) {
+            skipDataBuffer = ByteBuffer.allocate(Constants.BLOCK_SIZE_INT);
+        }
+
+        return skipDataBuffer.duplicate();
+    }
+
+    /**
+     * abort transfers and close connections of this loop, wait disk tasks at most 5 seconds
+     * executes after loop's thread has been stopped
+     */
+    void close() {
+        // complete commands posted before stop, e.g. transfers removing
+        processCommands();
+
+        List<Transfer> transfersCopy = new LinkedList<>(transfers.values());
+
+        for(final Transfer t: transfersCopy) {
+            t.abort(false, true);   // hard abort tasks to exit as soon as possible. buffers leak possible
+        }
+
+        transfers.clear();
+
+        for(int i = 0; i < 50; ++i) {
+            processDiskTasks();
+            if (!hasDiskTasks()) break;
+
+            try {
+                Thread.sleep(100);
+            } catch(Exception e) {
+                log.error("sleep error {}", e);
+            }
+        }
+
+        if (hasDiskTasks()) {
+            log.warn("[loop {}] not all futures completed", index);
+        }
+
+        List<PeerConnection> localConnections = new ArrayList<>(connections);
+        for(final PeerConnection c: localConnections) {
+            c.close(ErrorCode.SESSION_STOPPING);
+        }
+
+        connections.clear();
+
+        try {
+            if (selector != null) selector.close();
+        } catch(IOException e) {
+            log.error("[loop {}] close selector failed {}", index, e);
+        }
+
+        decompressor.close();
+    }
+
+    /**
+     * stop loop's thread and wait for it
+     */
+    void stop() {
+        aborted = true;
+        if (selector != null) selector.wakeup();
+
+        if (thread != null) {
+            try {
+                thread.join(5000);
+            } catch(InterruptedException e) {
+                log.error("[loop {}] join interrupted {}", index, e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "loop " + index;
+    }
+}
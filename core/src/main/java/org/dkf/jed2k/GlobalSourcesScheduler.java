@@ -0,0 +1,128 @@
+package org.dkf.jed2k;
+
+import org.dkf.jed2k.protocol.Endpoint;
+import org.dkf.jed2k.protocol.Hash;
+import org.dkf.jed2k.protocol.server.GlobalGetSources;
+
+import java.util.*;
+
+/**
+ * pacing of UDP global sources requests to known servers
+ * servers are asked one by one, each server receives all files want sources batched into few datagrams
+ * next cycle over servers starts not earlier than cycle interval after previous one started
+ * files are registered by transfers' sources timers and expire when transfer stops asking
+ * not thread safe - used by main loop only
+ * Created by agent on 18.10.2026.
+ */
+public class GlobalSourcesScheduler {
+    public static final int MAX_FILES_PER_PACKET = 31;
+    public static final long SERVER_REQUEST_INTERVAL = Time.seconds(2);
+    public static final long SERVERS_CYCLE_INTERVAL = Time.minutes(20);
+    public static final long FILE_EXPIRATION = Time.minutes(3);
+
+    private static class FileRequest {
+        final Hash hash;
+        final long size;
+        long lastWanted;
+
+        FileRequest(final Hash hash, long size, long lastWanted) {
+            this.hash = hash;
+            this.size = size;
+            this.lastWanted = lastWanted;
+        }
+    }
+
+    private final List<Endpoint> servers = new ArrayList<Endpoint>();
+    private final Set<Integer> serverAddresses = new HashSet<Integer>();
+    private final Map<Hash, FileRequest> files = new LinkedHashMap<Hash, FileRequest>();
+    private int cursor = 0;
+    private long cycleStart = -1;
+    private long lastRequest = -1;
+
+    /**
+     * replace servers list, current cycle continues from the same position
+     * @param endpoints UDP endpoints of servers
+     */
+    public void setServers(final Collection<Endpoint> endpoints) {
+        servers.clear();
+        serverAddresses.clear();
+        for(final Endpoint ep: endpoints) {
+            if (serverAddresses.add(ep.getIP())) servers.add(ep);
+        }
+
+        cursor = Math.min(cursor, servers.size());
+    }
+
+    /**
+     * @param ip address of datagram sender
+     * @return true if address belongs to one of known servers
+     */
+    public boolean isServer(int ip) {
+        return serverAddresses.contains(ip);
+    }
+
+    public int serversCount() {
+        return servers.size();
+    }
+
+    public int filesCount() {
+        return files.size();
+    }
+
+    /**
+     * register file or prolong its registration
+     * @param h hash of file
+     * @param size size of file
+     * @param now current time
+     */
+    public void addFile(final Hash h, long size, long now) {
+        FileRequest fr = files.get(h);
+        if (fr == null) {
+            files.put(h, new FileRequest(h, size, now));
+        } else {
+            fr.lastWanted = now;
+        }
+    }
+
+    public void removeFile(final Hash h) {
+        files.remove(h);
+    }
+
+    /**
+     * @param now current time
+     * @return next server and requests for it or null if nothing to send now
+     */
+    public Pair<Endpoint, List<GlobalGetSources>> next(long now) {
+        if (servers.isEmpty()) return null;
+        if (lastRequest != -1 && now - lastRequest < SERVER_REQUEST_INTERVAL) return null;
+
+        Iterator<FileRequest> itr = files.values().iterator();
+        while(itr.hasNext()) {
+            if (now - itr.next().lastWanted > FILE_EXPIRATION) itr.remove();
+        }
+
+        if (files.isEmpty()) return null;
+
+        if (cursor >= servers.size()) {
+            if (now - cycleStart < SERVERS_CYCLE_INTERVAL) return null;
+            cursor = 0;
+        }
+
+        if (cursor == 0) cycleStart = now;
+        lastRequest = now;
+        Endpoint server = servers.get(cursor++);
+
+        List<GlobalGetSources> packets = new ArrayList<GlobalGetSources>();
+        GlobalGetSources packet = null;
+        for(final FileRequest fr: files.values()) {
+            if (packet == null || packet.files.size() == MAX_FILES_PER_PACKET) {
+                packet = new GlobalGetSources();
+                packets.add(packet);
+            }
+
+            packet.addFile(fr.hash, fr.size);
+        }
+
+        return Pair.make(server, packets);
+    }
+}
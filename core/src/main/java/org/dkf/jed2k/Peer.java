@@ -16,6 +16,11 @@ public class Peer implements Comparable<Peer> {
     private int     failCount       = 0;
     public boolean connectable     = false;
     private int     sourceFlag      = 0;
+
+    /**
+     * last time we asked peer for its sources by source exchange
+     */
+    private long    lastSourceRequest = 0;
     private PeerConnection  connection = null;
     private final Endpoint        endpoint;
 
@@ -2,16 +2,20 @@ package org.dkf.jed2k;
 
 import org.dkf.jed2k.data.PeerRequest;
 import org.dkf.jed2k.data.PieceBlock;
+import org.dkf.jed2k.data.Range;
 import org.dkf.jed2k.data.Region;
 import org.dkf.jed2k.disk.AsyncHash;
+import org.dkf.jed2k.disk.AsyncRead;
 import org.dkf.jed2k.disk.AsyncWrite;
 import org.dkf.jed2k.exception.BaseErrorCode;
 import org.dkf.jed2k.exception.ErrorCode;
 import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.AICHHash;
 import org.dkf.jed2k.protocol.BitField;
 import org.dkf.jed2k.protocol.Endpoint;
 import org.dkf.jed2k.protocol.Hash;
 import org.dkf.jed2k.protocol.PacketCombiner;
+import org.dkf.jed2k.protocol.Serializable;
 import org.dkf.jed2k.protocol.client.*;
 import org.dkf.jed2k.protocol.server.*;
 import org.dkf.jed2k.protocol.server.search.SearchResult;
@@ -24,9 +28,10 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.zip.DataFormatException;
+import java.util.List;
 import java.util.zip.Inflater;
 
 import static org.dkf.jed2k.protocol.tag.Tag.tag;
@@ -83,6 +88,16 @@ public class PeerConnection extends Connection {
 
     public static final int MAX_OUTGOING_BUFFER_SIZE = 102*2 + 8; // look at PeerConnectionTest for details
 
+    /**
+     * max payload of one sending part packet, block is sent by few packets
+     */
+    public static final int UPLOAD_CHUNK_SIZE = 10240;
+
+    /**
+     * max ranges requested by remote peer and waiting for upload, like eMule we keep two requests, others are dropped
+     */
+    public static final int MAX_UPLOAD_REQUESTS = Constants.PARTS_IN_REQUEST*2;
+
     /**
      * peer connection speed over transfer's average speed
      */
@@ -92,13 +107,37 @@ public class PeerConnection extends Connection {
         FAST
     }
 
-    private class PendingBlock {
+    static class PendingBlock {
+        /**
+         * states of block after received data was accounted
+         */
+        static final int RECEIVING = 0;
+        static final int PART_DONE = 1;
+        static final int BLOCK_DONE = 2;
+
         public PieceBlock block;
+        final long totalSize;
         long dataSize;
         long createTime;
         Region dataLeft;
         ByteBuffer buffer;
 
+        /**
+         * inflater of compressed block, compressed bytes are inflated into buffer as they arrive
+         */
+        Inflater inflater = null;
+
+        /**
+         * requested range of block and its offset in block, whole block except end game splitting
+         */
+        Range range;
+        int start = 0;
+
+        /**
+         * end game block shared with another peers, buffer is duplicate of shared buffer in that case
+         */
+        SharedBlock shared = null;
+
         /**
          * class for handle downloading block data
          * @param b requested piece block
@@ -107,16 +146,87 @@ public class PeerConnection extends Connection {
         public PendingBlock(PieceBlock b, long totalSize) {
             assert totalSize > 0;
             block = b;
+            this.totalSize = totalSize;
             this.dataSize = b.size(totalSize);
             buffer = null;
             createTime = Time.currentTime();
-            dataLeft = new Region(b.range(totalSize));
+            range = b.range(totalSize);
+            dataLeft = new Region(Range.make(range.left, range.right));
+        }
+
+        /**
+         * request only part of block from start offset
+         * @param r part of block's range
+         */
+        void assignRange(final Range r) {
+            start = (int)(r.left - range.left);
+            range = r;
+            dataSize = r.right - r.left;
+            dataLeft = new Region(Range.make(r.left, r.right));
         }
 
         public boolean isCompleted() {
             return dataLeft.empty();
         }
 
+        /**
+         * account received chunk of uncompressed data, chunks of shared block are reported to all owners
+         * so the owner received the last missing bytes completes block even when its own part isn't finished
+         * @param r range of chunk
+         * @return BLOCK_DONE when whole block is in buffer, PART_DONE when own part of shared block was received
+         * and the rest is awaited from other owners, RECEIVING otherwise
+         */
+        int receive(final Range r) {
+            dataLeft.sub(r);
+            if (shared != null && shared.receive(r)) return BLOCK_DONE;
+            if (!isCompleted()) return RECEIVING;
+            return shared != null?PART_DONE:BLOCK_DONE;
+        }
+
+        /**
+         * compressed data was inflated completely, its range is known only now
+         * @param inflated count of inflated bytes
+         * @return BLOCK_DONE or PART_DONE like for uncompressed data
+         */
+        int receiveInflated(long inflated) {
+            if (shared == null) return BLOCK_DONE;
+            return shared.receive(Range.make(range.left, range.left + inflated))?BLOCK_DONE:PART_DONE;
+        }
+
+        /**
+         * end game: this block becomes shared and new owner gets upper half of its last remaining range,
+         * owner of that range stops waiting for it, so each owner completes on its own part
+         * @param pb new pending block of another peer
+         * @param owners pending blocks of all peers downloading the block
+         * @return false if remaining part is too small for splitting
+         */
+        boolean share(final PendingBlock pb, final Collection<PendingBlock> owners) {
+            assert buffer != null;
+            if (shared == null) {
+                // compressed block's progress is unknown until all compressed data received
+                shared = new SharedBlock(buffer, inflater == null?dataLeft:new Region(range), block.size(totalSize));
+            }
+
+            Range part = shared.split();
+            if (part == null) return false;
+
+            for(final PendingBlock owner: owners) {
+                if (owner.shared == shared && owner.inflater == null) owner.dataLeft.sub(part);
+            }
+
+            pb.assignRange(part);
+            pb.shared = shared;
+            pb.buffer = shared.view();
+            return true;
+        }
+
+        /**
+         * compressed data covers whole requested range regardless of parts given away to other owners
+         */
+        void resetDataLeft() {
+            dataLeft = new Region(Range.make(range.left, range.right));
+        }
+
         int compareTo(PieceBlock b) {
             return block.compareTo(b);
         }
@@ -155,6 +265,16 @@ public class PeerConnection extends Connection {
 
     private boolean failed = false;
 
+    /**
+     * we wait in remote peer's queue by UDP reasks, connection is closed without failure
+     */
+    private boolean remoteQueued = false;
+
+    /**
+     * remote peer gets our sources once per connection
+     */
+    private boolean sourcesAnswered = false;
+
     /**
      * channel transferring data
      * peer request header has been read and we awaiting or already reading payload data
@@ -179,6 +299,77 @@ public class PeerConnection extends Connection {
 
     private LinkedList<PendingBlock> downloadQueue = new LinkedList<PendingBlock>();
 
+    /**
+     * adaptive depth of download queue
+     */
+    private final RequestPipeline pipeline = new RequestPipeline();
+
+    /**
+     * time of hello sent on outgoing connection, -1 when answer received or connection is incoming
+     */
+    private long helloTime = -1;
+
+    /**
+     * incoming connection recognized transfer owned by another event loop
+     * connection will be moved to that loop when current packet processing completes
+     */
+    private Transfer handOffTransfer = null;
+
+    /**
+     * actions in target loop after hand off: attach connection to transfer as source and/or answer file request
+     */
+    private boolean handOffDownload = false;
+    private boolean handOffUpload = false;
+
+    /**
+     * transfer remote peer asked us for, null until file request for shared transfer
+     */
+    private Transfer uploadTransfer = null;
+
+    /**
+     * remote peer has upload slot in loop's upload queue
+     */
+    private boolean uploadSlot = false;
+
+    /**
+     * ranges requested by remote peer and not sent yet
+     */
+    private final LinkedList<Range> uploadRequests = new LinkedList<Range>();
+
+    /**
+     * range being read from file or sent, null when uploading is idle
+     */
+    private Range uploadRange = null;
+    private boolean uploadReading = false;
+
+    /**
+     * data of upload range, rest of it will be sent by next chunks
+     * pool buffer with file data or compressed data
+     */
+    private ByteBuffer uploadData = null;
+    private ByteBuffer uploadPoolBuffer = null;
+    private boolean uploadCompressed = false;
+
+    /**
+     * bytes allowed to send until next second tick when slot rate is limited, negative when chunk exceeded it
+     */
+    private long uploadQuota = 0;
+
+    /**
+     * inactivity timer in owner loop's timer wheel
+     */
+    private TimerWheel.Timeout timeout = null;
+
+    /**
+     * piece of AICH recovery data request sent to remote peer, -1 when nothing was requested
+     */
+    private int aichRequestPiece = -1;
+
+    /**
+     * AICH master hash request was sent and answer is expected
+     */
+    private boolean aichHashRequested = false;
+
     /**
      * network endpoint for outgoing connections
      */
@@ -190,28 +381,34 @@ public class PeerConnection extends Connection {
             ByteBuffer outgoingBuffer,
             PacketCombiner packetCombiner,
             Session session,
+            EventLoop loop,
             Transfer transfer, Peer peerInfo) throws IOException {
-        super(incomingBuffer, outgoingBuffer, packetCombiner, session);
+        super(incomingBuffer, outgoingBuffer, packetCombiner, session, loop);
         this.transfer = transfer;
         endpoint = point;
         this.peerInfo = peerInfo;
+        if (loop != null) scheduleTimeout(session.settings.peerConnectionTimeout*1000);
     }
 
     PeerConnection(ByteBuffer incomingBuffer,
             ByteBuffer outgoingBuffer,
             PacketCombiner packetCombiner,
             Session session,
+            EventLoop loop,
             SocketChannel socket) throws IOException {
-        super(incomingBuffer, outgoingBuffer, packetCombiner, session, socket);
+        super(incomingBuffer, outgoingBuffer, packetCombiner, session, loop, socket);
         endpoint = new Endpoint();
         peerInfo = null;
+        if (loop != null) scheduleTimeout(session.settings.peerConnectionTimeout*1000);
     }
 
     public static PeerConnection make(SocketChannel socket, Session session) throws JED2KException {
         try {
             ByteBuffer ibuff = ByteBuffer.allocate(8128);
             ByteBuffer obuff = ByteBuffer.allocate(MAX_OUTGOING_BUFFER_SIZE);
-            return  new PeerConnection(ibuff, obuff, new org.dkf.jed2k.protocol.client.PacketCombiner(), session, socket);
+            // incoming connections always start in main loop since transfer is unknown until hello
+            return  new PeerConnection(ibuff, obuff, new org.dkf.jed2k.protocol.client.PacketCombiner(), session
+                    , (socket != null)?session.mainLoop():null, socket);
         } catch(ClosedChannelException e) {
             throw new JED2KException(ErrorCode.CHANNEL_CLOSED);
         } catch(IOException e) {
@@ -227,7 +424,8 @@ public class PeerConnection extends Connection {
         try {
             ByteBuffer ibuff = ByteBuffer.allocate(8128);
             ByteBuffer obuff = ByteBuffer.allocate(MAX_OUTGOING_BUFFER_SIZE);
-            return new PeerConnection(point, ibuff, obuff, new org.dkf.jed2k.protocol.client.PacketCombiner(), ses, transfer, peerInfo);
+            EventLoop loop = (transfer != null)?ses.loopFor(transfer.getHash()):ses.mainLoop();
+            return new PeerConnection(point, ibuff, obuff, new org.dkf.jed2k.protocol.client.PacketCombiner(), ses, loop, transfer, peerInfo);
         } catch(ClosedChannelException e) {
             throw new JED2KException(ErrorCode.CHANNEL_CLOSED);
         } catch(IOException e) {
@@ -250,9 +448,54 @@ public class PeerConnection extends Connection {
             }
         } else {
             super.onReadable();
+            if (handOffTransfer != null) handOff();
         }
     }
 
+    /**
+     * move incoming connection to event loop owns recognized transfer
+     * connection is detached from current loop here and attached to transfer in target loop's thread
+     */
+    private void handOff() {
+        final Transfer t = handOffTransfer;
+        final EventLoop target = session.loopFor(t.getHash());
+        final boolean download = handOffDownload;
+        final boolean upload = handOffUpload;
+        handOffTransfer = null;
+        handOffDownload = false;
+        handOffUpload = false;
+        if (isDisconnecting()) return;
+
+        log.debug("{} hand off connection to {}", endpoint, target);
+        key.cancel();
+        loop.connections.remove(this);
+        cancelTimeout();
+        target.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    register(target);
+                    target.connections.add(PeerConnection.this);
+                    scheduleTimeout(session.settings.peerConnectionTimeout*1000);
+                    if (upload) answerFileRequest(t);
+                    // transfer's state is read here in its own loop, file request's peer is a source only for downloading transfer
+                    if (download && (!upload || isDownloading(t))) attachToTransfer(t);
+                } catch(IOException e) {
+                    log.error("{} hand off i/o error {}", endpoint, e);
+                    close(ErrorCode.IO_EXCEPTION);
+                } catch(JED2KException e) {
+                    log.error("{} hand off error {}", endpoint, e);
+                    close(e.getErrorCode());
+                }
+            }
+        });
+    }
+
+    private void attachToTransfer(final Transfer t) throws JED2KException {
+        t.attachPeer(this);
+        write(new FileRequest(t.getHash()));
+    }
+
     @Override
     public Endpoint getEndpoint() {
         return endpoint;
@@ -355,10 +598,12 @@ public class PeerConnection extends Connection {
 
     public class RemotePeerInfo {
         public Endpoint point = new Endpoint();
+        public Hash hash = new Hash();
         public String modName;
         public int version = 0;
         public String modVersion;
         public int modNumber = 0;
+        public int udpPort = 0;
         public MiscOptions misc1 = new MiscOptions();
         public MiscOptions2 misc2 = new MiscOptions2();
     }
@@ -385,7 +630,7 @@ public class PeerConnection extends Connection {
         hello.properties.add(Tag.tag(Tag.CT_NAME, null, session.getClientName()));
         hello.properties.add(Tag.tag(Tag.CT_MOD_VERSION, null, session.getModName()));
         hello.properties.add(Tag.tag(Tag.CT_VERSION, null, session.getAppVersion()));
-        hello.properties.add(Tag.tag(Tag.CT_EMULE_UDPPORTS, null, 0));
+        hello.properties.add(Tag.tag(Tag.CT_EMULE_UDPPORTS, null, session.getUdpPort()));
         // do not send CT_EM_VERSION since it will activate secure identification we are not support
 
         MiscOptions mo = new MiscOptions();
@@ -393,6 +638,7 @@ public class PeerConnection extends Connection {
         mo.dataCompVer = session.getCompressionVersion();  // support data compression
         mo.noViewSharedFiles = 1; // temp value
         mo.sourceExchange1Ver = 0; //SOURCE_EXCHG_LEVEL - important value
+        mo.udpVer = session.getUdpPort() != 0?RemoteQueueManager.PART_STATUS_UDP_VERSION:0;
 
         MiscOptions2 mo2 = new MiscOptions2();
         mo2.setCaptcha();
@@ -412,6 +658,7 @@ public class PeerConnection extends Connection {
 
     private void assignRemotePeerInformation(HelloAnswer value) throws JED2KException {
         //remotePeerInfo.point
+        remotePeerInfo.hash.assign(value.hash);
         Iterator<Tag> itr = value.properties.iterator();
         while(itr.hasNext()) {
             Tag tag = itr.next();
@@ -426,11 +673,12 @@ public class PeerConnection extends Connection {
                 if (tag.isStringTag()) remotePeerInfo.modVersion = tag.stringValue();
                 else if (tag.isNumberTag()) remotePeerInfo.modNumber = tag.intValue();
                 break;
+            case Tag.CT_EMULE_UDPPORTS:
+                // 16 KAD port, 16 UDP port
+                remotePeerInfo.udpPort = tag.intValue() & 0xFFFF;
+                break;
             case Tag.CT_PORT:
                 //m_options.m_nPort = p->asInt();
-            case Tag.CT_EMULE_UDPPORTS:
-                //m_options.m_nUDPPort = p->asInt() & 0xFFFF;
-                //dwEmuleTags |= 1;
             case Tag.CT_EMULE_BUDDYIP:
                 // 32 BUDDY IP
                 //m_options.m_buddy_point.m_nIP = p->asInt();
@@ -519,24 +767,69 @@ public class PeerConnection extends Connection {
         log.debug("onClientHello");
         assignRemotePeerInformation(value);
         endpoint.assign(value.point);
-        Hash h = session.callbacks.get(value.point.getIP());
-        Transfer t = null;
-
-        log.debug("extracted hash {}", h!=null?h.toString():"null");
+        write(prepareHello(new HelloAnswer()));
 
-        if (h != null) {
-            session.callbacks.remove(value.point.getIP());
-            t = session.transfers.get(h);
+        if (loop == session.mainLoop()) {
+            Transfer t = recognizeTransfer(value.point.getIP());
             log.debug("extracted transfer {}", t!=null?t.toString():"null");
+            if (t != null) attachOrHandOff(t);
+            return;
         }
 
-        write(prepareHello(new HelloAnswer()));
+        // repeated hello on connection already moved to another loop, callbacks and queues are read in main loop
+        if (transfer != null) return;
+        final int ip = value.point.getIP();
+        final EventLoop owner = loop;
+        session.mainLoop().post(new Runnable() {
+            @Override
+            public void run() {
+                final Transfer t = recognizeTransfer(ip);
+                if (t == null) return;
+                owner.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // connection bound to this loop attaches to loop's own transfers only
+                        if (isDisconnecting() || transfer != null || loop != owner || session.loopFor(t.getHash()) != owner) return;
+                        try {
+                            attachToTransfer(t);
+                        } catch(JED2KException e) {
+                            log.error("{} attach to recognized transfer error {}", endpoint, e);
+                            close(e.getErrorCode());
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * must be called in main loop
+     * @param ip address of remote peer
+     * @return transfer we asked callback for or wait in remote queue of, null otherwise
+     */
+    private Transfer recognizeTransfer(int ip) {
+        // low id source connected us on our callback request
+        for(final Hash h: session.callbacks.match(ip)) {
+            Transfer t = session.transfers.get(h);
+            if (t != null) return t;
+        }
 
-        // attach incoming peer to transfer
-        // will throw exception and close socket if transfer not in appropriate state
-        if (t != null) {
-            t.attachPeer(this);
-            write(new FileRequest(t.getHash()));
+        // source we wait in queue of gives us upload slot
+        Hash h = session.remoteQueues.match(ip);
+        return (h != null)?session.transfers.get(h):null;
+    }
+
+    /**
+     * attach connection without transfer to recognized transfer
+     * will throw exception and close socket if transfer not in appropriate state
+     * @param t transfer
+     */
+    private void attachOrHandOff(final Transfer t) throws JED2KException {
+        if (session.loopFor(t.getHash()) == loop) {
+            attachToTransfer(t);
+        } else {
+            handOffTransfer = t;
+            handOffDownload = true;
         }
     }
 
@@ -544,6 +837,11 @@ public class PeerConnection extends Connection {
     public void onClientHelloAnswer(HelloAnswer value)
             throws JED2KException {
         assignRemotePeerInformation(value);
+        if (helloTime != -1) {
+            pipeline.addRttSample(Time.currentTime() - helloTime);
+            helloTime = -1;
+        }
+
         if (transfer != null) {
             write(new FileRequest(transfer.getHash()));
         }
@@ -574,20 +872,30 @@ public class PeerConnection extends Connection {
 
     @Override
     protected void onConnect() throws JED2KException {
+        helloTime = Time.currentTime();
         write(prepareHello(new Hello()));
     }
 
     @Override
     protected void onDisconnect(BaseErrorCode ec) {
-        if (ec != ErrorCode.NO_ERROR) failed = true;
+        if (ec != ErrorCode.NO_ERROR && !remoteQueued) failed = true;
+        cancelTimeout();
 
         if (transfer != null) {
             transfer.addStats(statistics());
             abortAllRequests();
+            if (remotePieces != null && transfer.hasPicker()) transfer.getPicker().removePeerAvailability(remotePieces);
             transfer.removePeerConnection(this);
             transfer = null;
         }
 
+        if (uploadTransfer != null) {
+            loop.uploads.disconnected(remotePeerInfo.hash, this, Time.currentTime());
+            // buffer of read in progress is released on completion
+            releaseUploadData();
+            uploadTransfer = null;
+        }
+
         session.closeConnection(this);
     }
 
@@ -597,17 +905,130 @@ public class PeerConnection extends Connection {
 
         // calculate statistics
         super.secondTick(tickIntervalMS);
+    }
 
-        // check timeout on connection
-        if (Time.currentTime() - lastReceive > session.settings.peerConnectionTimeout*1000) {
-            close(ErrorCode.CONNECTION_TIMEOUT);
+    /**
+     * arm inactivity timer, on expiration the timer re-arms itself for rest of timeout
+     * when something was received in the meantime
+     * @param delay milliseconds
+     */
+    private void scheduleTimeout(long delay) {
+        timeout = loop.timers.schedule(delay, new Runnable() {
+            @Override
+            public void run() {
+                timeout = null;
+                if (isDisconnecting()) return;
+                long limit = session.settings.peerConnectionTimeout*1000;
+                long idle = Time.currentTime() - Math.max(lastReceive, lastSend);
+                if (idle > limit) {
+                    close(ErrorCode.CONNECTION_TIMEOUT);
+                } else {
+                    scheduleTimeout(limit - idle + 1);
+                }
+            }
+        });
+    }
+
+    private void cancelTimeout() {
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
         }
     }
 
     @Override
     public void onClientFileRequest(FileRequest value)
             throws JED2KException {
-        close(ErrorCode.NO_ERROR);
+        log.debug("{} << {}", endpoint, value);
+        Transfer t = session.transfers.get(value);
+        if (t == null) {
+            write(new NoFileStatus(value));
+            return;
+        }
+
+        if (session.loopFor(t.getHash()) != loop) {
+            // connection bound to its loop by own transfer can't be moved
+            if (transfer != null || handOffTransfer != null) {
+                write(new NoFileStatus(value));
+                return;
+            }
+
+            // transfer belongs to another loop, its state is read there after hand off
+            handOffTransfer = t;
+            handOffDownload = true;
+            handOffUpload = true;
+            return;
+        }
+
+        // peer we connected on server's callback request asks for file we download too - use it as source
+        boolean download = transfer == null && handOffTransfer == null && isDownloading(t);
+        answerFileRequest(t);
+        if (download) {
+            log.debug("{} asks file {} we download, use it as source", endpoint, value);
+            attachToTransfer(t);
+        }
+    }
+
+    /**
+     * must be called in transfer's loop
+     * @param t transfer
+     * @return true if transfer still needs sources
+     */
+    private static boolean isDownloading(final Transfer t) {
+        return !t.isAborted() && !t.isFinished() && !t.isPaused();
+    }
+
+    /**
+     * transfer can be shared when it has at least one verified piece
+     * @param t transfer
+     * @return true if remote peer can download from us
+     */
+    private static boolean canUpload(final Transfer t) {
+        return !t.isAborted() && t.numHave() > 0;
+    }
+
+    /**
+     * @param t transfer
+     * @param begin range begin offset
+     * @param end range end offset
+     * @return true if range isn't greater than block and all its pieces are verified
+     */
+    static boolean isUploadable(final Transfer t, long begin, long end) {
+        if (begin < 0 || end <= begin || end > t.size() || end - begin > Constants.BLOCK_SIZE) return false;
+        for(int i = (int)(begin / Constants.PIECE_SIZE); i <= (int)((end - 1) / Constants.PIECE_SIZE); ++i) {
+            if (!t.havePiece(i)) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * answer file name when file is shared, must be called in transfer's loop
+     * @param t requested transfer
+     * @throws JED2KException
+     */
+    private void answerFileRequest(final Transfer t) throws JED2KException {
+        if (!canUpload(t)) {
+            write(new NoFileStatus(t.getHash()));
+            return;
+        }
+
+        // remote peer switched to another file
+        if (uploadTransfer != null && !uploadTransfer.getHash().equals(t.getHash())) stopUpload();
+
+        uploadTransfer = t;
+        FileAnswer answer = new FileAnswer();
+        answer.hash.assign(t.getHash());
+        answer.name.assignString(t.getFile().getName());
+        write(answer);
+    }
+
+    /**
+     * @param h hash from remote peer's request
+     * @return transfer remote peer asked before or null
+     */
+    private Transfer uploadTransferFor(final Hash h) {
+        return (uploadTransfer != null && uploadTransfer.getHash().equals(h))?uploadTransfer:null;
     }
 
     @Override
@@ -628,13 +1049,41 @@ public class PeerConnection extends Connection {
     @Override
     public void onClientFileStatusRequest(FileStatusRequest value)
             throws JED2KException {
-        write(new NoFileStatus());
+        Transfer t = uploadTransferFor(value);
+        if (t == null) {
+            write(new NoFileStatus(value));
+            return;
+        }
+
+        FileStatusAnswer answer = new FileStatusAnswer();
+        answer.hash.assign(t.getHash());
+        answer.bitfield.assign(partStatus(t).bytes(), t.numPieces());
+        write(answer);
+    }
+
+    /**
+     * @param t transfer
+     * @return pieces we have
+     */
+    private static BitField partStatus(final Transfer t) {
+        BitField res = new BitField(t.numPieces());
+        for(int i = 0; i < t.numPieces(); ++i) {
+            if (t.havePiece(i)) res.setBit(i);
+        }
+
+        return res;
     }
 
     @Override
     public void onClientFileStatusAnswer(FileStatusAnswer value)
             throws JED2KException {
         log.debug("{} << file status answer", endpoint);
+        if (transfer != null && transfer.hasPicker()) {
+            // replace previous peer's status in availability counters
+            if (remotePieces != null) transfer.getPicker().removePeerAvailability(remotePieces);
+            transfer.getPicker().addPeerAvailability(value.bitfield);
+        }
+
         remotePieces = value.bitfield;
         if (transfer != null) {
             if (transfer.size() >= Constants.PIECE_SIZE) {
@@ -646,6 +1095,8 @@ public class PeerConnection extends Connection {
                     transfer.setHashSet(h, new ArrayList<Hash>() {{
                         add(h);
                     }});
+                    requestAICHHash();
+                    requestSources();
                     write(new StartUpload(transfer.getHash()));
                 } else {
                     log.warn("getHash from response {} mismatch transfer's getHash {}"
@@ -662,7 +1113,16 @@ public class PeerConnection extends Connection {
     @Override
     public void onClientHashSetRequest(HashSetRequest value)
             throws JED2KException {
-        close(ErrorCode.NO_ERROR);
+        Transfer t = uploadTransferFor(value);
+        if (t == null || t.hashSet.isEmpty()) {
+            write(new NoFileStatus(value));
+            return;
+        }
+
+        HashSetAnswer answer = new HashSetAnswer();
+        answer.getHash().assign(t.getHash());
+        answer.getParts().assignFrom(t.hashSet);
+        write(answer);
     }
 
     @Override
@@ -674,6 +1134,8 @@ public class PeerConnection extends Connection {
                     && transfer.getHash().equals(Hash.fromHashSet(value.getParts()))
                     && transfer.getPicker().getPieceCount() == value.getParts().size()) {
                 transfer.setHashSet(value.getHash(), value.getParts());
+                requestAICHHash();
+                requestSources();
                 write(new StartUpload(transfer.getHash()));
             } else {
                 log.warn("incorrect getHash set answer {} for transfer getHash {}"
@@ -686,6 +1148,27 @@ public class PeerConnection extends Connection {
         }
     }
 
+    /**
+     * ask remote peer for AICH master hash while transfer has no trusted one
+     */
+    private void requestAICHHash() {
+        if (supportsAICH() && transfer.needAICHHash()) {
+            aichHashRequested = true;
+            write(new AICHFileHashRequest(transfer.getHash()));
+        }
+    }
+
+    /**
+     * ask remote peer for sources of transfer it knows, transfer limits how often it asks
+     */
+    private void requestSources() {
+        if (supportsSourceExchange2() && getPeer() != null && transfer.isSourceRequestAllowed(getPeer())) {
+            transfer.onSourceRequest(getPeer());
+            log.debug("{} >> request sources", endpoint);
+            write(new RequestSources2(transfer.getHash()));
+        }
+    }
+
     @Override
     public void onClientNoFileStatus(NoFileStatus value)
             throws JED2KException {
@@ -708,9 +1191,34 @@ public class PeerConnection extends Connection {
     @Override
     public void onQueueRanking(QueueRanking value) throws JED2KException {
         log.debug("{} << queue ranking {} ", endpoint, value.rank);
+
+        // keep our place by UDP reasks instead of reconnections, source is not connected until it is released
+        if (canReaskByUdp()) {
+            remoteQueued = true;
+            getPeer().setNextConnection(Time.currentTime() + RemoteQueueManager.MAX_WAIT);
+            session.onRemoteQueued(transfer.getHash()
+                    , getPeer().getEndpoint()
+                    , new Endpoint(endpoint.getIP(), remotePeerInfo.udpPort)
+                    , remotePeerInfo.misc1.udpVer
+                    , partStatus(transfer)
+                    , value.rank & 0xffff);
+        }
+
         close(ErrorCode.QUEUE_RANKING);
     }
 
+    /**
+     * @return true if remote peer is reachable by eMule UDP reasks and we have client UDP socket
+     */
+    private boolean canReaskByUdp() {
+        return transfer != null
+                && getPeer() != null
+                && session.getUdpPort() != 0
+                && remotePeerInfo.udpPort != 0
+                && remotePeerInfo.misc1.udpVer > 0
+                && !Utils.isLowId(endpoint.getIP());
+    }
+
     @Override
     public void onClientSendingPart32(SendingPart32 value)
             throws JED2KException {
@@ -749,7 +1257,8 @@ public class PeerConnection extends Connection {
         // we received compressed block - it will whole block delimited or not delimited to few requests
         // in first time correct pending block range to adopt it to compressed block parameters
         // operation will execute one time per block
-        if (pb != null && pb.buffer == null) {
+        if (pb != null && pb.inflater == null) {
+            if (pb.shared != null) pb.resetDataLeft();
             pb.dataSize = compressedLength; // actual block size
             pb.dataLeft.shrinkEnd(compressedLength);    // reduce block size here
             log.trace("block shrinked to {}", compressedLength);
@@ -776,6 +1285,7 @@ public class PeerConnection extends Connection {
         recvReq = r;
         recvPos = 0;
         recvReqCompressed = compressed;
+        pipeline.onData(Time.currentTime());
         PieceBlock b = PieceBlock.mkBlock(r);
 
         // search for correspond pending block in downloading queue
@@ -789,9 +1299,20 @@ public class PeerConnection extends Connection {
 
         // if pending block hasn't associated buffer - allocate it
         if (pb.buffer == null) pb.buffer = session.allocatePoolBuffer();
-        // prepare buffer for reading data into proper place
-        pb.buffer.position((int)r.inBlockOffset());
-        pb.buffer.limit((int)(r.inBlockOffset() + r.length));
+
+        if (compressed) {
+            // buffer receives inflated data from beginning of requested range, compressed bytes never stored
+            if (pb.inflater == null) {
+                pb.inflater = loop.decompressor.acquire();
+                pb.buffer.clear();
+                pb.buffer.position(pb.start);
+            }
+        } else {
+            // prepare buffer for reading data into proper place
+            pb.buffer.position((int) r.inBlockOffset());
+            pb.buffer.limit((int) (r.inBlockOffset() + r.length));
+        }
+
         onReceiveData();
     }
 
@@ -803,7 +1324,7 @@ public class PeerConnection extends Connection {
      */
     void skipData() throws JED2KException {
         log.debug("{} skipData {} bytes", getEndpoint(), (int)recvReq.length - recvPos);
-        ByteBuffer buffer = session.allocateSkipDataBufer();
+        ByteBuffer buffer = loop.allocateSkipDataBufer();
         buffer.clear();
         buffer.limit((int)recvReq.length - recvPos);
 
@@ -861,13 +1382,15 @@ public class PeerConnection extends Connection {
          */
         if (transfer.getPicker().isBlockDownloaded(blockFinished)) {
             log.warn("{} request {} references to downloaded block {}, remove pending block and skip data", getEndpoint(), recvReq, blockFinished);
+            releaseInflater(pb);
+            releaseBuffer(pb);
             downloadQueue.remove(pb);
             skipData();
             return;
         }
 
         try {
-            int n = socket.read(pb.buffer);
+            int n = recvReqCompressed?receiveCompressed(pb):socket.read(pb.buffer);
             if (n == -1) throw new JED2KException(ErrorCode.END_OF_STREAM);
             assert n != -1;
 
@@ -875,7 +1398,7 @@ public class PeerConnection extends Connection {
             if (n != 0) lastReceive = Time.currentTime();
             statistics().receiveBytes(0, n);
 
-            if (pb.buffer.remaining() == 0) {
+            if (recvPos == recvReq.length) {
                 log.trace("{} received {} bytes for block {}, buffer is full, turn off transferring data"
                         , getEndpoint()
                         , pb.block
@@ -902,6 +1425,10 @@ public class PeerConnection extends Connection {
                     // possibly block was already written in end game mode and/or finished
                     // in that case no need to re-write block to disk and request getHash
                     if (wasDownloading) {
+                        // shared buffer goes to disk, peers still downloading this block drop it
+                        if (pb.shared != null) pb.shared.markWritten();
+                        cancelDuplicates(pb.block);
+
                         // add write task to executor and add future to transfer
                         asyncWrite(pb.block, pb.buffer, transfer);
 
@@ -913,6 +1440,7 @@ public class PeerConnection extends Connection {
                         log.warn("{} block {} wasn't downloading, do not write"
                             , getEndpoint()
                             , pb.block);
+                        releaseBuffer(pb);
                     }
 
                     // write block to disk here
@@ -922,6 +1450,12 @@ public class PeerConnection extends Connection {
                     requestBlocks();
                     return;
                 }
+
+                // own part of end game block was received, the rest is awaited from another peer
+                if (pb.isCompleted()) {
+                    requestBlocks();
+                    return;
+                }
             }
             // we are interested in event when socket has bytes for read again
             doRead();
@@ -930,10 +1464,365 @@ public class PeerConnection extends Connection {
         }
     }
 
+    @Override
+    public void onClientAICHRequest(AICHRequest value) throws JED2KException {
+        log.debug("{} << {}", endpoint, value);
+        // we have no recovery data to share, answer without data
+        write(new AICHAnswer(value.hash));
+    }
+
+    @Override
+    public void onClientAICHAnswer(AICHAnswer value) throws JED2KException {
+        log.debug("{} << {}", endpoint, value);
+        if (transfer != null && aichRequestPiece != -1 && value.hash.equals(transfer.getHash())) {
+            int piece = aichRequestPiece;
+            aichRequestPiece = -1;
+            transfer.onAICHRecoveryData(piece, value);
+        }
+    }
+
+    @Override
+    public void onClientAICHFileHashRequest(AICHFileHashRequest value) throws JED2KException {
+        log.debug("{} << {}", endpoint, value);
+        if (transfer != null && transfer.getHash().equals(value) && transfer.getAICHHash() != null) {
+            AICHFileHashAnswer answer = new AICHFileHashAnswer();
+            answer.hash.assign(transfer.getHash());
+            answer.aichHash.assign(transfer.getAICHHash());
+            write(answer);
+        }
+    }
+
+    @Override
+    public void onClientAICHFileHashAnswer(AICHFileHashAnswer value) throws JED2KException {
+        log.debug("{} << {}", endpoint, value);
+        // unsolicited answers are dropped, so peer votes once per request
+        if (aichHashRequested && transfer != null && value.hash.equals(transfer.getHash())) {
+            aichHashRequested = false;
+            transfer.onAICHHashReceived(value.aichHash, endpoint.getIP());
+        }
+    }
+
+    @Override
+    public void onClientRequestSources2(RequestSources2 value) throws JED2KException {
+        log.debug("{} << {}", endpoint, value);
+        Transfer t = (transfer != null)?transfer:uploadTransfer;
+        if (t == null || sourcesAnswered || !value.hash.equals(t.getHash())) return;
+        sourcesAnswered = true;
+        AnswerSources2 answer = new AnswerSources2();
+        answer.hash.assign(t.getHash());
+        for(final Endpoint point: t.getExchangeSources(endpoint)) {
+            answer.sources.add(new AnswerSources2.Source(point));
+        }
+
+        if (!answer.sources.isEmpty()) write(answer);
+    }
+
+    @Override
+    public void onClientAnswerSources2(AnswerSources2 value) throws JED2KException {
+        log.debug("{} << {}", endpoint, value);
+        if (transfer == null || !value.hash.equals(transfer.getHash())) return;
+        int added = 0;
+
+        for(final AnswerSources2.Source s: value.sources) {
+            // low id sources need callback through their server
+            if (Utils.isLowId(s.point.getIP()) || s.point.getPort() == 0) continue;
+            if (s.point.getIP() == session.getClientId() && s.point.getPort() == session.getListenPort()) continue;
+
+            try {
+                if (transfer.addPeer(new Endpoint(s.point.getIP(), s.point.getPort()), PeerInfo.SOURCE_EXCHANGE)) ++added;
+            } catch(JED2KException e) {
+                log.debug("{} unable to add exchanged source {}", endpoint, e.getErrorCode());
+                break;
+            }
+        }
+
+        log.debug("{} added {} sources from source exchange", endpoint, added);
+    }
+
+    @Override
+    public void onClientStartUpload(StartUpload value) throws JED2KException {
+        log.debug("{} << {}", endpoint, value);
+        if (uploadTransferFor(value) == null) {
+            write(new NoFileStatus(value));
+            return;
+        }
+
+        // upload queue identifies clients by user hash from hello
+        if (remotePeerInfo.hash.equals(Hash.INVALID)) throw new JED2KException(ErrorCode.UPLOAD_BEFORE_HELLO);
+
+        loop.updateUploadLimits();
+        int rank = loop.uploads.request(remotePeerInfo.hash, this, Time.currentTime());
+        if (rank == 0) {
+            if (!uploadSlot) onUploadSlotGranted();
+        } else if (rank == -1) {
+            throw new JED2KException(ErrorCode.UPLOAD_QUEUE_FULL);
+        } else {
+            log.debug("{} >> queue ranking {}", endpoint, rank);
+            QueueRanking qr = new QueueRanking();
+            qr.rank = (short)Math.min(rank, Short.MAX_VALUE);
+            write(qr);
+        }
+    }
+
+    @Override
+    public void onClientRequestParts32(RequestParts32 value) throws JED2KException {
+        onRequestParts(value);
+    }
+
+    @Override
+    public void onClientRequestParts64(RequestParts64 value) throws JED2KException {
+        onRequestParts(value);
+    }
+
+    @Override
+    public void onClientCancelTransfer(CancelTransfer value) throws JED2KException {
+        log.debug("{} << cancel transfer", endpoint);
+        stopUpload();
+    }
+
+    @Override
+    public void onClientEndDownload(EndDownload value) throws JED2KException {
+        log.debug("{} << end download {}", endpoint, value);
+        if (uploadTransferFor(value) != null) stopUpload();
+    }
+
+    /**
+     * remote peer got upload slot in loop's upload queue
+     */
+    void onUploadSlotGranted() {
+        log.debug("{} >> accept upload", endpoint);
+        uploadSlot = true;
+        uploadQuota = session.settings.uploadSlotRate;
+        write(new AcceptUpload());
+    }
+
+    /**
+     * queue ranges requested by remote peer with upload slot, ranges must be in verified pieces
+     * @param value request
+     * @throws JED2KException
+     */
+    private void onRequestParts(final RequestParts<?> value) throws JED2KException {
+        log.trace("{} << {}", endpoint, value);
+        if (!uploadSlot || uploadTransferFor(value.getHash()) == null) {
+            log.debug("{} request parts without upload slot, ignore", endpoint);
+            return;
+        }
+
+        for(int i = 0; i < Constants.PARTS_IN_REQUEST; ++i) {
+            long begin = value.getBeginOffset(i).longValue();
+            long end = value.getEndOffset(i).longValue();
+            // unused ranges are zero
+            if (begin == 0 && end == 0) continue;
+            if (!isUploadable(uploadTransfer, begin, end)) throw new JED2KException(ErrorCode.UPLOAD_REQUEST_INCORRECT);
+            Range r = Range.make(begin, end);
+            if (r.equals(uploadRange) || uploadRequests.contains(r)) continue;
+            if (uploadRequests.size() >= MAX_UPLOAD_REQUESTS) {
+                log.debug("{} too many requested parts, drop {}", endpoint, r);
+                continue;
+            }
+
+            uploadRequests.add(r);
+        }
+
+        readUploadData();
+    }
+
+    /**
+     * start reading of next requested range when previous range was sent
+     */
+    private void readUploadData() {
+        if (!uploadSlot || uploadRange != null || uploadRequests.isEmpty() || isDisconnecting()) return;
+
+        ByteBuffer buffer;
+        try {
+            buffer = session.allocatePoolBuffer();
+        } catch(JED2KException e) {
+            // try again on next tick
+            log.debug("{} no buffer for upload {}", endpoint, e.getErrorCode());
+            return;
+        }
+
+        uploadRange = uploadRequests.poll();
+        uploadReading = true;
+        boolean compress = session.getCompressionVersion() > 0 && remotePeerInfo.misc1.dataCompVer > 0;
+        session.submitDiskTask(new AsyncRead(uploadTransfer, this, uploadRange, buffer, compress));
+    }
+
+    /**
+     * data of requested range was read from file in transfer's loop
+     * @param range requested range
+     * @param buffer pool buffer with file's data
+     * @param compressed compressed data or null
+     * @param code result of reading
+     */
+    public void onUploadReadCompleted(final Range range, final ByteBuffer buffer, final ByteBuffer compressed, final BaseErrorCode code) {
+        uploadReading = false;
+
+        // connection was closed or upload was cancelled while reading
+        if (isDisconnecting() || range != uploadRange) {
+            session.getBufferPool().deallocate(buffer, Time.currentTime());
+            return;
+        }
+
+        if (code != ErrorCode.NO_ERROR) {
+            log.warn("{} upload read {} failed {}", endpoint, range, code);
+            session.getBufferPool().deallocate(buffer, Time.currentTime());
+            uploadRange = null;
+            close(code);
+            return;
+        }
+
+        if (compressed != null) {
+            session.getBufferPool().deallocate(buffer, Time.currentTime());
+            uploadData = compressed;
+            uploadCompressed = true;
+        } else {
+            uploadPoolBuffer = buffer;
+            uploadData = buffer;
+            uploadCompressed = false;
+        }
+
+        sendUploadData();
+    }
+
+    /**
+     * send next chunk of upload data, only one chunk is in outgoing order at the same time
+     */
+    private void sendUploadData() {
+        if (uploadData == null || !uploadData.hasRemaining() || hasPendingData() || isDisconnecting()) return;
+        if (session.settings.uploadSlotRate > 0 && uploadQuota <= 0) return;
+
+        int pos = uploadData.position();
+        int size = Math.min(uploadData.remaining(), UPLOAD_CHUNK_SIZE);
+        ByteBuffer chunk = uploadData.slice();
+        chunk.limit(size);
+        uploadData.position(pos + size);
+        uploadQuota -= size;
+        writeData(partHeader(pos, size), chunk);
+    }
+
+    /**
+     * @param pos position of chunk in upload data
+     * @param size chunk size
+     * @return sending part packet or compressed part packet for chunk
+     */
+    private Serializable partHeader(int pos, int size) {
+        boolean large = uploadTransfer.size() > 0xFFFFFFFFL;
+
+        if (uploadCompressed) {
+            CompressedPart<?> cp = large?new CompressedPart64():new CompressedPart32();
+            cp.hash.assign(uploadTransfer.getHash());
+            cp.beginOffset.assign(uploadRange.left);
+            cp.compressedLength.assign(uploadData.limit());
+            return cp;
+        }
+
+        SendingPart<?> sp = large?new SendingPart64():new SendingPart32();
+        sp.hash.assign(uploadTransfer.getHash());
+        sp.beginOffset.assign(uploadRange.left + pos);
+        sp.endOffset.assign(uploadRange.left + pos + size);
+        return sp;
+    }
+
+    @Override
+    protected void onPayloadSent(ByteBuffer payload) {
+        if (uploadData == null) return;
+
+        if (uploadData.hasRemaining()) {
+            sendUploadData();
+            return;
+        }
+
+        // whole range was sent
+        long bytes = uploadRange.right - uploadRange.left;
+        releaseUploadData();
+        if (uploadSlot && loop.uploads.onUploaded(remotePeerInfo.hash, bytes, Time.currentTime())) {
+            log.debug("{} slot quota was sent, slot goes to waiting peer", endpoint);
+            uploadSlot = false;
+            uploadRequests.clear();
+            write(new OutOfParts());
+            return;
+        }
+
+        readUploadData();
+    }
+
+    /**
+     * refill slot's rate quota and continue upload delayed by quota or by lack of buffers
+     */
+    void uploadTick() {
+        int rate = session.settings.uploadSlotRate;
+        uploadQuota = (rate > 0)?Math.min(uploadQuota + rate, rate):0;
+        readUploadData();
+        sendUploadData();
+    }
+
+    /**
+     * remote peer doesn't want data anymore, chunk in outgoing order is finished and rest of range is dropped
+     */
+    private void stopUpload() {
+        if (uploadTransfer == null) return;
+        uploadSlot = false;
+        uploadRequests.clear();
+        loop.uploads.remove(remotePeerInfo.hash);
+
+        if (uploadData != null && hasPendingData()) {
+            uploadData.limit(uploadData.position());
+        } else {
+            releaseUploadData();
+        }
+    }
+
+    /**
+     * release buffer of sent range, buffer of read in progress is released on read completion
+     */
+    private void releaseUploadData() {
+        if (uploadPoolBuffer != null) {
+            session.getBufferPool().deallocate(uploadPoolBuffer, Time.currentTime());
+            uploadPoolBuffer = null;
+        }
+
+        uploadData = null;
+        uploadRange = null;
+    }
+
+    final boolean hasTransfer() {
+        return transfer != null;
+    }
+
+    /**
+     * read next compressed bytes of current request into loop's shared buffer and inflate them into block's buffer
+     * @param pb pending block with inflater
+     * @return count of compressed bytes were read from socket or -1 on end of stream
+     * @throws IOException
+     * @throws JED2KException on inflate error
+     */
+    private int receiveCompressed(final PendingBlock pb) throws IOException, JED2KException {
+        assert pb.inflater != null;
+        ByteBuffer zData = loop.allocateSkipDataBufer();
+        zData.clear();
+        zData.limit((int)recvReq.length - recvPos);
+        int n = socket.read(zData);
+        if (n > 0) {
+            zData.flip();
+            loop.decompressor.inflate(pb.inflater, zData, pb.buffer);
+        }
+
+        return n;
+    }
+
+    private void releaseInflater(final PendingBlock pb) {
+        if (pb.inflater != null) {
+            loop.decompressor.release(pb.inflater);
+            pb.inflater = null;
+        }
+    }
+
     /**
-     * if request is compressed - inflate it and create real(uncompressed range)
-     * put inflated data back to the block's buffer
      * update range in pending block and check block is completed
+     * compressed block is already inflated into block's buffer, release its inflater
+     * chunk of shared end game block completes block when it was the last missing data of block,
+     * own part received before other parts removes pending block from queue and the rest is awaited from other peers
      * @param pb pending block from downloading queue
      * @return true if block completely downloaded
      * @throws JED2KException
@@ -943,48 +1832,124 @@ public class PeerConnection extends Connection {
         assert recvReq.length == recvPos;
         assert pb.buffer != null;
 
-        pb.dataLeft.sub(recvReq.range());
+        int state;
+        if (recvReqCompressed) {
+            pb.dataLeft.sub(recvReq.range());
+            if (!pb.isCompleted()) return false;
+            long received = pb.buffer.position() - pb.start;
+            log.debug("compressed block completed {} inflated {}", pb.dataSize, received);
+            boolean finished = pb.inflater.finished();
+            releaseInflater(pb);
+            if (received <= 0) throw new JED2KException(ErrorCode.INFLATE_ERROR);
+            if (!finished) log.warn("{} compressed block {} is truncated", getEndpoint(), pb.block);
+            state = pb.receiveInflated(received);
+        } else {
+            state = pb.receive(recvReq.range());
+        }
 
-        // when we receive compressed part inflate it to temporary buffer and put it into receive buffer again
-        if (pb.isCompleted()) {
-            if (recvReqCompressed) {
-                log.debug("compressed block completed {}", pb.dataSize);
-                byte[] temp = session.allocateTemporaryInflateBuffer();
-                byte[] zData = new byte[(int) pb.dataSize];
-                pb.buffer.clear();
-                pb.buffer.limit((int) pb.dataSize);
-                pb.buffer.get(zData);
+        if (state == PendingBlock.RECEIVING) return false;
 
-                Inflater decompresser = new Inflater();
-                decompresser.setInput(zData, 0, zData.length);
-                int resultLength = 0;
-                try {
-                    resultLength = decompresser.inflate(temp);
-                    log.trace("Compressed data dataSize {} uncompressed data dataSize {}", zData.length, resultLength);
-                } catch (DataFormatException e) {
-                    throw new JED2KException(ErrorCode.INFLATE_ERROR);
-                } finally {
-                    decompresser.end();
-                }
+        if (state == PendingBlock.PART_DONE) {
+            log.debug("{} part {} of block {} received, wait other parts", getEndpoint(), pb.range, pb.block);
+            downloadQueue.remove(pb);
+            transfer.getPicker().abortDownload(pb.block, getPeer());
+            releaseBuffer(pb);
+            return false;
+        }
 
-                assert resultLength != 0;
+        if (pb.shared != null) {
+            // read whole block from shared buffer
+            pb.buffer = pb.shared.block();
+        }
+        else if (recvReqCompressed) {
+            // prepare buffer for reading inflated data
+            pb.buffer.flip();
+        }
+        else {
+            // prepare buffer for reading
+            pb.buffer.clear();
+            pb.buffer.limit((int)pb.dataSize);
+        }
 
-                // write inflated data into receive buffer and prepare buffer for reading
-                pb.buffer.clear();
-                pb.buffer.limit(resultLength);
-                pb.buffer.put(temp, 0, resultLength);
-                pb.buffer.flip();
-            }
-            else {
-                // prepare buffer for reading
-                pb.buffer.clear();
-                pb.buffer.limit((int)pb.dataSize);
+        return true;
+    }
+
+    /**
+     * return block's buffer to pool, shared buffer returns to pool when last owner releases it
+     * and never returns when it was passed to disk
+     * @param pb pending block
+     */
+    private void releaseBuffer(final PendingBlock pb) {
+        if (pb.shared != null) {
+            SharedBlock sb = pb.shared;
+            pb.shared = null;
+            if (sb.release()) {
+                sb.getBuffer().clear();
+                session.getBufferPool().deallocate(sb.getBuffer(), Time.currentTime());
             }
+        } else if (pb.buffer != null) {
+            pb.buffer.clear();
+            session.getBufferPool().deallocate(pb.buffer, Time.currentTime());
+        }
 
-            return true;
+        pb.buffer = null;
+    }
+
+    /**
+     * drop downloaded block from download queues of other peers of transfer
+     * data already sent by those peers is skipped, freed places are requested again
+     * @param b block was downloaded
+     */
+    private void cancelDuplicates(final PieceBlock b) {
+        for(final PeerConnection c: transfer.getConnections()) {
+            if (c != this && !c.isDisconnecting()) c.cancelBlock(b);
         }
+    }
 
-        return false;
+    /**
+     * block was downloaded by another peer, stop waiting it from this peer
+     * picker isn't updated since block is already in writing state
+     * @param b block
+     */
+    void cancelBlock(final PieceBlock b) {
+        PendingBlock pb = getDownloading(b);
+        if (pb == null) return;
+        log.debug("{} cancel block {} downloaded by another peer", getEndpoint(), b);
+        downloadQueue.remove(pb);
+        releaseInflater(pb);
+        releaseBuffer(pb);
+        if (!transferringData) requestBlocks();
+    }
+
+    /**
+     * end game: request only part of block another peer is downloading now
+     * other peer's pending block becomes shared, both peers receive data into its buffer
+     * @param pb new pending block for duplicate request
+     * @return false if block has no remaining part large enough for splitting
+     * @throws JED2KException when no buffer is available
+     */
+    private boolean splitBlock(final PendingBlock pb) throws JED2KException {
+        PendingBlock other = null;
+        for(final PeerConnection c: transfer.getConnections()) {
+            if (c == this || c.isDisconnecting()) continue;
+            other = c.getDownloading(pb.block);
+            if (other != null) break;
+        }
+
+        // nobody downloads block now, request whole block
+        if (other == null) return true;
+
+        if (other.buffer == null) other.buffer = session.allocatePoolBuffer();
+        List<PendingBlock> owners = new ArrayList<PendingBlock>();
+        for(final PeerConnection c: transfer.getConnections()) {
+            PendingBlock owner = c.getDownloading(pb.block);
+            if (owner != null) owners.add(owner);
+        }
+
+        // take upper half of remaining bytes, its owner continues with the rest of own part
+        if (!other.share(pb, owners)) return false;
+        log.debug("{} end game split block {} request {}", getEndpoint(), pb.block, pb.range);
+        return true;
     }
 
     public PeerSpeed speed() {
@@ -1017,6 +1982,40 @@ public class PeerConnection extends Connection {
         return failed;
     }
 
+    /**
+     * @return true if remote peer announced AICH support in hello
+     */
+    public boolean supportsAICH() {
+        return remotePeerInfo.misc1.aichVersion > 0;
+    }
+
+    /**
+     * @return true if remote peer announced source exchange v2 support in hello
+     */
+    public boolean supportsSourceExchange2() {
+        return remotePeerInfo.misc2.supportSourceExt2();
+    }
+
+    /**
+     * @param pieceIndex piece
+     * @return true if remote peer reported piece in file status
+     */
+    public boolean hasPiece(int pieceIndex) {
+        return remotePieces != null && (remotePieces.size() == 0
+                || (pieceIndex < remotePieces.size() && remotePieces.getBit(pieceIndex)));
+    }
+
+    /**
+     * request recovery data of piece, answer goes to transfer
+     * @param pieceIndex piece failed hash check
+     * @param aichHash trusted AICH master hash
+     */
+    void requestRecoveryData(int pieceIndex, final AICHHash aichHash) {
+        assert transfer != null;
+        aichRequestPiece = pieceIndex;
+        write(new AICHRequest(transfer.getHash(), pieceIndex, aichHash));
+    }
+
     public boolean isRequesting(PieceBlock b) {
         for(PendingBlock pb: downloadQueue) {
             if (pb.block.compareTo(b) == 0) return true;
@@ -1034,28 +2033,63 @@ public class PeerConnection extends Connection {
     }
 
     /**
-     * request new blocks from associated transfer's picker
+     * request new blocks from associated transfer's picker while download queue is shorter than adaptive depth
+     * closes connection when nothing to request and nothing awaited
      */
     void requestBlocks() {
-        if (transfer == null || !transfer.hasPicker() || transferringData || !downloadQueue.isEmpty()) return;
+        if (transfer == null || !transfer.hasPicker() || transferringData) return;
+        // top up queue to bandwidth-delay product before it drains
+        int queueSize = pipeline.queueSize(statistics().downloadPayloadRate());
+        if (downloadQueue.size() >= queueSize) return;
+        boolean idle = downloadQueue.isEmpty();
         LinkedList<PieceBlock> blocks = new LinkedList<PieceBlock>();
         PiecePicker picker = transfer.getPicker();
-        picker.pickPieces(blocks, Constants.REQUEST_QUEUE_SIZE, getPeer(), speed());
+        picker.pickPieces(blocks, queueSize - downloadQueue.size(), getPeer(), speed(), remotePieces);
         RequestParts64 reqp = new RequestParts64(transfer.getHash());
 
-        while(!blocks.isEmpty() && downloadQueue.size() < Constants.REQUEST_QUEUE_SIZE) {
+        boolean endGame = picker.isEndGame();
+
+        while(!blocks.isEmpty() && downloadQueue.size() < queueSize) {
             PieceBlock b = blocks.poll();
-            downloadQueue.add(new PendingBlock(b, transfer.size()));
-            assert !reqp.isFool();
-            reqp.append(b.range(transfer.size()));
-            // do not flush (write) structure to remote here like in libed2k since order always contain no more than 3 blocks
+            PendingBlock pb = new PendingBlock(b, transfer.size());
+
+            if (endGame) {
+                boolean split;
+
+                try {
+                    split = splitBlock(pb);
+                } catch(JED2KException e) {
+                    log.warn("{} unable to split block {}: {}", getEndpoint(), b, e);
+                    split = false;
+                }
+
+                if (!split) {
+                    picker.abortDownload(b, getPeer());
+                    continue;
+                }
+            }
+
+            downloadQueue.add(pb);
+
+            // one packet contains no more than 3 ranges, flush full packet and continue in new one
+            if (reqp.isFool()) {
+                write(reqp);
+                reqp = new RequestParts64(transfer.getHash());
+            }
+
+            reqp.append(pb.range);
         }
 
-        log.debug("request blocks completed, download queue dataSize {}", downloadQueue.size());
+        log.debug("request blocks completed, download queue dataSize {} queue size {} rtt {}"
+                , downloadQueue.size()
+                , queueSize
+                , pipeline.getRtt());
+
         if (!reqp.isEmpty()) {
             write(reqp);
+            if (idle) pipeline.onIdleRequest(Time.currentTime());
         }
-        else {
+        else if (downloadQueue.isEmpty()) {
             close(ErrorCode.NO_ERROR);
         }
     }
@@ -1066,11 +2100,11 @@ public class PeerConnection extends Connection {
             while(!downloadQueue.isEmpty()) {
                 PendingBlock pb = downloadQueue.poll();
                 picker.abortDownload(pb.block, getPeer());
-                if (pb.buffer != null) {
-                    pb.buffer.clear();
-                    session.getBufferPool().deallocate(pb.buffer, Time.currentTime());
-                }
+                releaseInflater(pb);
+                releaseBuffer(pb);
             }
+
+            picker.releasePieces(getPeer());
         }
         else {
             downloadQueue.clear();
@@ -1101,7 +2135,7 @@ public class PeerConnection extends Connection {
      * @return future of hashing operation result
      */
     void asyncHash(int pieceIndex, final Transfer t) {
-        session.submitDiskTask(new AsyncHash(t, pieceIndex));
+        session.submitDiskTask(new AsyncHash(t, pieceIndex, t.isRecovering(pieceIndex)));
     }
 
     /**
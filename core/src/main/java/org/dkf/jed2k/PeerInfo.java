@@ -15,6 +15,7 @@ public class PeerInfo {
     public static final byte SERVER = 0x2;
     public static final byte DHT = 0x4;
     public static final byte RESUME = 0x8;
+    public static final byte SOURCE_EXCHANGE = 0x10;
 
     private int downloadSpeed   = 0;
     private int payloadDownloadSpeed = 0;
@@ -1,6 +1,7 @@
 package org.dkf.jed2k;
 
 import org.dkf.jed2k.data.PieceBlock;
+import org.dkf.jed2k.protocol.BitField;
 
 import java.util.*;
 
@@ -21,6 +22,25 @@ public class PiecePicker extends BlocksEnumerator {
         }
     }
 
+    /**
+     * downloading pieces considered by picking pass relative to requesting peer
+     */
+    private enum PieceSet {
+        OWN,
+        SHARED,
+        FOREIGN,
+        ALL;
+
+        boolean contains(final DownloadingPiece dp, final Peer peer) {
+            switch(this) {
+                case OWN: return dp.getOwner() != null && dp.getOwner() == peer;
+                case SHARED: return dp.getOwner() == null;
+                case FOREIGN: return dp.getOwner() != null && dp.getOwner() != peer;
+                default: return true;
+            }
+        }
+    }
+
     private class PiecePos {
         public int peersCount = 0;
         public int full = 0;
@@ -29,15 +49,148 @@ public class PiecePicker extends BlocksEnumerator {
     }
 
     private byte pieceStatus[];
+
+    /**
+     * downloading pieces in order of picking and index of them by piece index
+     * list length is limited by count of pieces downloaded at the same time, not by file size
+     */
     private LinkedList<DownloadingPiece> downloadingPieces = new LinkedList<DownloadingPiece>();
+    private final Map<Integer, DownloadingPiece> downloadingIndex = new HashMap<Integer, DownloadingPiece>();
+
+    /**
+     * bit is set for piece in downloading or have state, clear bits are free pieces
+     */
+    private final BitSet busyPieces;
+    private int haveCount = 0;
+
+    /**
+     * count of connected peers have piece, peers with all pieces are counted in seeds
+     */
+    private int availability[];
+    private int seeds = 0;
+
+    /**
+     * total count of registered peers' bitfields, sequential order is used when nobody registered
+     */
+    private int peersCount = 0;
+    private Random rnd = new Random();
+
+    /**
+     * streaming mode: pieces from deadline piece and before deadline window end are time-critical
+     * deadline piece is -1 when streaming is off
+     */
+    private int deadlinePiece = -1;
+    private int deadlineWindow = 0;
 
     public PiecePicker(int pieceCount, int blocksInLastPiece) {
         super(pieceCount, blocksInLastPiece);
     	assert(pieceCount > 0);
         pieceStatus = new byte[pieceCount];
+        availability = new int[pieceCount];
+        busyPieces = new BitSet(pieceCount);
         Arrays.fill(pieceStatus, PieceState.NONE.value);
     }
 
+    /**
+     * change piece state and keep counters and free pieces set in sync
+     * @param pieceIndex piece
+     * @param state new state
+     */
+    private void setPieceState(int pieceIndex, final PieceState state) {
+        if (pieceStatus[pieceIndex] == PieceState.HAVE.value) --haveCount;
+        if (state == PieceState.HAVE) ++haveCount;
+        pieceStatus[pieceIndex] = state.value;
+        busyPieces.set(pieceIndex, state != PieceState.NONE);
+    }
+
+    private DownloadingPiece addDownloadingPiece(int pieceIndex) {
+        DownloadingPiece dp = new DownloadingPiece(pieceIndex, blocksInPiece(pieceIndex));
+        downloadingPieces.addLast(dp);
+        downloadingIndex.put(pieceIndex, dp);
+        setPieceState(pieceIndex, PieceState.DOWNLOADING);
+        return dp;
+    }
+
+    private void removeDownloadingPiece(final DownloadingPiece dp) {
+        downloadingPieces.remove(dp);
+        downloadingIndex.remove(dp.pieceIndex);
+    }
+
+    /**
+     * empty bitfield in file status answer means remote peer has whole file
+     * @param pieces remote peer's pieces
+     * @return true if remote peer has all pieces
+     */
+    private boolean isSeed(final BitField pieces) {
+        return pieces.size() == 0;
+    }
+
+    /**
+     * bitfield with unexpected size is ignored in availability calculation
+     */
+    private boolean isValid(final BitField pieces) {
+        return pieces != null && (isSeed(pieces) || pieces.size() == pieceStatus.length);
+    }
+
+    /**
+     * @param pieces remote peer's pieces or null if unknown
+     * @param pieceIndex index of piece
+     * @return true if remote peer has piece or his pieces are unknown
+     */
+    private boolean peerHas(final BitField pieces, int pieceIndex) {
+        return !isValid(pieces) || isSeed(pieces) || pieces.getBit(pieceIndex);
+    }
+
+    /**
+     * register remote peer's pieces when peer sent file status
+     * @param pieces bitfield from file status answer
+     */
+    public void addPeerAvailability(final BitField pieces) {
+        if (!isValid(pieces)) return;
+        ++peersCount;
+
+        if (isSeed(pieces)) {
+            ++seeds;
+            return;
+        }
+
+        for(int i = 0; i < availability.length; ++i) {
+            if (pieces.getBit(i)) ++availability[i];
+        }
+    }
+
+    /**
+     * unregister remote peer's pieces on disconnect or on new file status from the same peer
+     * @param pieces bitfield previously passed to addPeerAvailability
+     */
+    public void removePeerAvailability(final BitField pieces) {
+        if (!isValid(pieces)) return;
+        assert peersCount > 0;
+        --peersCount;
+
+        if (isSeed(pieces)) {
+            assert seeds > 0;
+            --seeds;
+            return;
+        }
+
+        for(int i = 0; i < availability.length; ++i) {
+            if (pieces.getBit(i)) {
+                assert availability[i] > 0;
+                --availability[i];
+            }
+        }
+    }
+
+    /**
+     * @param pieceIndex index of piece
+     * @return count of connected peers have this piece
+     */
+    public int getAvailability(int pieceIndex) {
+        assert pieceIndex < availability.length;
+        return availability[pieceIndex] + seeds;
+    }
+
     /**
      * return piece to picker
      * it might happen when calculated piece getHash doesn't match provided
@@ -45,13 +198,7 @@ public class PiecePicker extends BlocksEnumerator {
      */
     public DownloadingPiece getDownloadingPiece(int index) {
     	assert(index >=0);
-        Iterator<DownloadingPiece> itr = downloadingPieces.iterator();
-        while(itr.hasNext()) {
-            DownloadingPiece dp = itr.next();
-            if (dp.pieceIndex == index) return dp;
-        }
-
-        return null;
+        return downloadingIndex.get(index);
     }
 
     /**
@@ -122,8 +269,7 @@ public class PiecePicker extends BlocksEnumerator {
         assert pieceIndex < pieceStatus.length;
         assert pieceStatus[pieceIndex] != PieceState.HAVE.value;
         if (pieceStatus[pieceIndex] == PieceState.NONE.value) {
-            downloadingPieces.add(new DownloadingPiece(pieceIndex, blocksInPiece(pieceIndex)));
-            pieceStatus[pieceIndex] = PieceState.DOWNLOADING.value;
+            addDownloadingPiece(pieceIndex);
         }
 
         DownloadingPiece dp = getDownloadingPiece(pieceIndex);
@@ -135,19 +281,47 @@ public class PiecePicker extends BlocksEnumerator {
      * @return true if new piece in download queue
      */
     public boolean chooseNextPiece() {
-        // start from first piece due to slow operation of writing data into end of file!
-        int roundRobin = 0;
-        for(int i = 0; i < pieceStatus.length; ++i) {
-            if (roundRobin == pieceStatus.length) roundRobin = 0;
-            int current = roundRobin;
-
-            if (pieceStatus[current] == PieceState.NONE.value) {
-                downloadingPieces.add(new DownloadingPiece(current, blocksInPiece(current)));
-                pieceStatus[current] = PieceState.DOWNLOADING.value;
-                return true;
+        return chooseNextPiece(null);
+    }
+
+    /**
+     * choose the rarest piece remote peer has and add it to download queue
+     * ties are broken randomly to avoid all sources converge on the same pieces
+     * without availability information pieces are chosen sequentially
+     * @param pieces remote peer's pieces or null if unknown
+     * @return true if new piece in download queue
+     */
+    public boolean chooseNextPiece(final BitField pieces) {
+        int candidate = -1;
+
+        if (peersCount == 0) {
+            // start from first piece due to slow operation of writing data into end of file!
+            for(int i = busyPieces.nextClearBit(0); i < pieceStatus.length; i = busyPieces.nextClearBit(i + 1)) {
+                if (peerHas(pieces, i)) {
+                    candidate = i;
+                    break;
+                }
+            }
+        } else {
+            int minAvailability = Integer.MAX_VALUE;
+            int ties = 0;
+
+            for(int i = busyPieces.nextClearBit(0); i < pieceStatus.length; i = busyPieces.nextClearBit(i + 1)) {
+                if (!peerHas(pieces, i)) continue;
+
+                if (availability[i] < minAvailability) {
+                    minAvailability = availability[i];
+                    candidate = i;
+                    ties = 1;
+                } else if (availability[i] == minAvailability && rnd.nextInt(++ties) == 0) {
+                    candidate = i;
+                }
             }
+        }
 
-            ++roundRobin;
+        if (candidate != -1) {
+            addDownloadingPiece(candidate);
+            return true;
         }
 
         return false;
@@ -159,12 +333,16 @@ public class PiecePicker extends BlocksEnumerator {
      * @param orderLength - length of request
      * @param peer - Policy peer connection info
      * @param speed - speed of requester
+     * @param pieces - remote peer's pieces or null if unknown
      * @param endGame - can we take already downloading blocks
+     * @param set - pieces to take blocks from
      */
     private int addDownloadingBlocks(Collection<PieceBlock> rq, int orderLength, final Peer peer, PeerConnection.PeerSpeed speed,
-                                      boolean endGame) {
+                                      final BitField pieces, boolean endGame, final PieceSet set) {
         int res = 0;
+        if (orderLength <= 0) return res;
         for(final DownloadingPiece dp: downloadingPieces) {
+            if (!set.contains(dp, peer) || !peerHas(pieces, dp.pieceIndex)) continue;
             res += dp.pickBlocks(rq, orderLength - res, peer, speed, endGame);
             assert res <= orderLength;
             if (res == orderLength) break;
@@ -181,15 +359,132 @@ public class PiecePicker extends BlocksEnumerator {
      * @param speed - PeerConnection's speed
      */
     public void pickPieces(Collection<PieceBlock> rq, int orderLength, final Peer peer, PeerConnection.PeerSpeed speed) {
-        int numRequested = addDownloadingBlocks(rq, orderLength, peer, speed, false);
+        pickPieces(rq, orderLength, peer, speed, null);
+    }
+
+    /**
+     * slow peer takes blocks of its own pieces and starts new piece for itself when they have no free blocks,
+     * so slow peer never holds last blocks of many pieces. Blocks of other pieces are taken when no new piece available.
+     * medium and fast peers share pieces: shared pieces first, then free blocks of slow peers' pieces, then new piece
+     * in streaming mode all peers take blocks of time-critical pieces before that
+     * @param rq - request queue
+     * @param orderLength - prefer blocks count for request
+     * @param peer - PeerConnection's Peer information from policy
+     * @param speed - PeerConnection's speed
+     * @param pieces - remote peer's pieces from file status answer, null if unknown
+     */
+    public void pickPieces(Collection<PieceBlock> rq, int orderLength, final Peer peer, PeerConnection.PeerSpeed speed, final BitField pieces) {
+        int critical = pickTimeCritical(rq, orderLength, peer, speed, pieces);
+        if (critical < orderLength) pickUsual(rq, orderLength - critical, peer, speed, pieces);
+    }
+
+    private void pickUsual(Collection<PieceBlock> rq, int orderLength, final Peer peer, PeerConnection.PeerSpeed speed, final BitField pieces) {
+        if (speed == PeerConnection.PeerSpeed.SLOW && peer != null) {
+            int numRequested = addDownloadingBlocks(rq, orderLength, peer, speed, pieces, false, PieceSet.OWN);
+
+            if (numRequested < orderLength) {
+                if (chooseNextPiece(pieces)) {
+                    downloadingPieces.getLast().setOwner(peer);
+                    pickUsual(rq, orderLength - numRequested, peer, speed, pieces);
+                } else {
+                    addDownloadingBlocks(rq, orderLength - numRequested, peer, speed, pieces, false, PieceSet.ALL);
+                }
+            }
+
+            return;
+        }
+
+        int numRequested = addDownloadingBlocks(rq, orderLength, peer, speed, pieces, false, PieceSet.SHARED);
+        numRequested += addDownloadingBlocks(rq, orderLength - numRequested, peer, speed, pieces, false, PieceSet.FOREIGN);
+        numRequested += addDownloadingBlocks(rq, orderLength - numRequested, peer, speed, pieces, false, PieceSet.OWN);
 
         // for medium and fast peers in end game more re-request blocks from already downloading pieces
         if (speed != PeerConnection.PeerSpeed.SLOW && numRequested < orderLength && isEndGame()) {
-            numRequested += addDownloadingBlocks(rq, orderLength - numRequested, peer, speed, true);
+            numRequested += addDownloadingBlocks(rq, orderLength - numRequested, peer, speed, pieces, true, PieceSet.ALL);
         }
 
-        if (numRequested < orderLength && chooseNextPiece()) {
-            pickPieces(rq, orderLength - numRequested, peer, speed);
+        if (numRequested < orderLength && chooseNextPiece(pieces)) {
+            pickUsual(rq, orderLength - numRequested, peer, speed, pieces);
+        }
+    }
+
+    /**
+     * time-critical pieces are picked before any other in piece order, new pieces are started for them immediately
+     * medium and fast peers also duplicate requested blocks of slower peers in time-critical pieces
+     * slow peer would delay playback, so it takes blocks only of time-critical pieces it already owns
+     * @return count of picked blocks
+     */
+    private int pickTimeCritical(Collection<PieceBlock> rq, int orderLength, final Peer peer, PeerConnection.PeerSpeed speed, final BitField pieces) {
+        int res = 0;
+        if (deadlinePiece == -1) return res;
+        int end = Math.min(pieceStatus.length, deadlinePiece + deadlineWindow);
+
+        if (speed == PeerConnection.PeerSpeed.SLOW) {
+            for(int i = deadlinePiece; i < end && res < orderLength; ++i) {
+                DownloadingPiece dp = getDownloadingPiece(i);
+                if (dp == null || !PieceSet.OWN.contains(dp, peer) || !peerHas(pieces, i)) continue;
+                res += dp.pickBlocks(rq, orderLength - res, peer, speed, false);
+            }
+
+            return res;
+        }
+
+        for(int i = deadlinePiece; i < end && res < orderLength; ++i) {
+            if (pieceStatus[i] == PieceState.HAVE.value || !peerHas(pieces, i)) continue;
+            DownloadingPiece dp = getDownloadingPiece(i);
+            if (dp == null) dp = addDownloadingPiece(i);
+            res += dp.pickBlocks(rq, orderLength - res, peer, speed, false);
+        }
+
+        for(int i = deadlinePiece; i < end && res < orderLength; ++i) {
+            DownloadingPiece dp = getDownloadingPiece(i);
+            if (dp == null || !peerHas(pieces, i)) continue;
+            res += dp.pickBlocks(rq, orderLength - res, peer, speed, true);
+        }
+
+        return res;
+    }
+
+    /**
+     * switch picker to streaming mode, pieces in window from deadline piece are downloaded first
+     * @param pieceIndex piece of current playback position
+     * @param window count of time-critical pieces starting from deadline piece
+     */
+    public void setDeadline(int pieceIndex, int window) {
+        assert pieceIndex >= 0 && pieceIndex < pieceStatus.length;
+        assert window > 0;
+        deadlinePiece = pieceIndex;
+        deadlineWindow = window;
+    }
+
+    /**
+     * stop streaming mode, all pieces are picked in usual order
+     */
+    public void clearDeadline() {
+        deadlinePiece = -1;
+        deadlineWindow = 0;
+    }
+
+    public boolean isStreaming() {
+        return deadlinePiece != -1;
+    }
+
+    /**
+     * @param pieceIndex piece
+     * @return true if piece must be downloaded before others in streaming mode
+     */
+    public boolean isTimeCritical(int pieceIndex) {
+        return deadlinePiece != -1 && pieceIndex >= deadlinePiece && pieceIndex < deadlinePiece + deadlineWindow;
+    }
+
+    /**
+     * peer disconnected, its own pieces become shared
+     * @param peer peer
+     */
+    public void releasePieces(final Peer peer) {
+        if (peer == null) return;
+        for(final DownloadingPiece dp: downloadingPieces) {
+            if (dp.getOwner() == peer) dp.setOwner(null);
         }
     }
 
@@ -201,8 +496,24 @@ public class PiecePicker extends BlocksEnumerator {
     public final void restorePiece(int pieceIndex) {
         assert(pieceIndex < pieceStatus.length); // correct piece index
         DownloadingPiece dp = getDownloadingPiece(pieceIndex);
-        if (dp != null) downloadingPieces.remove(dp);
-        pieceStatus[pieceIndex] = PieceState.NONE.value;
+        if (dp != null) removeDownloadingPiece(dp);
+        setPieceState(pieceIndex, PieceState.NONE);
+    }
+
+    /**
+     * make only corrupted blocks of downloaded piece available for downloading again
+     * used when AICH recovery found which blocks of failed piece are wrong
+     * @param pieceIndex index of piece in downloading state
+     * @param blocks indexes of corrupted blocks
+     */
+    public final void restoreBlocks(int pieceIndex, final Collection<Integer> blocks) {
+        DownloadingPiece dp = getDownloadingPiece(pieceIndex);
+        if (dp == null) {
+            restorePiece(pieceIndex);
+            return;
+        }
+
+        for(int b: blocks) dp.resetBlock(b);
     }
 
     /**
@@ -210,12 +521,7 @@ public class PiecePicker extends BlocksEnumerator {
      * @return pieces count we already have
      */
     public final int numHave() {
-        int res = 0;
-        for(byte b: pieceStatus) {
-            if (b == PieceState.HAVE.value) ++res;
-        }
-
-        return res;
+        return haveCount;
     }
 
     public final int totalPieces() {
@@ -250,13 +556,13 @@ public class PiecePicker extends BlocksEnumerator {
         assert(pieceIndex < pieceStatus.length);
         DownloadingPiece dp = getDownloadingPiece(pieceIndex);
         assert(dp != null);
-        downloadingPieces.remove(dp);
-        pieceStatus[pieceIndex] = PieceState.HAVE.value;
+        removeDownloadingPiece(dp);
+        setPieceState(pieceIndex, PieceState.HAVE);
     }
 
     public void restoreHave(int pieceIndex) {
         assert(downloadingPieces.isEmpty());
-        pieceStatus[pieceIndex] = PieceState.HAVE.value;
+        setPieceState(pieceIndex, PieceState.HAVE);
     }
 
     public boolean havePiece(int pieceIndex) {
@@ -286,9 +592,7 @@ public class PiecePicker extends BlocksEnumerator {
         DownloadingPiece p = getDownloadingPiece(b.pieceIndex);
 
         if (p == null) {
-            p = new DownloadingPiece(b.pieceIndex, blocksInPiece(b.pieceIndex));
-            downloadingPieces.addLast(p);
-            pieceStatus[b.pieceIndex] = PieceState.DOWNLOADING.value;
+            p = addDownloadingPiece(b.pieceIndex);
         }
 
         assert(p != null);
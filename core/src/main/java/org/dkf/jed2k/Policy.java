@@ -198,7 +198,8 @@ public class Policy extends AbstractCollection<Peer> {
             ++roundRobin;
             if (!isConnectCandidate(pe)) continue;
             if (candidate != -1 && comparePeers(peers.get(candidate), pe)) continue;
-            if (pe.getNextConnection() != 0 && pe.getNextConnection() < sessionTime) continue;
+            // peer waits in remote queue or must not be connected yet
+            if (pe.getNextConnection() > sessionTime) continue;
             // 10 seconds timeout for each fail
             if (pe.getLastConnected() != 0 && (sessionTime < pe.getLastConnected() + Time.seconds(pe.getFailCount() + 1)*MIN_RECONNECT_TIMEOUT)) continue;
             candidate = current;
@@ -279,6 +280,9 @@ public class Policy extends AbstractCollection<Peer> {
                 // stupid, but simply throw exception here
                 throw new JED2KException(ErrorCode.DUPLICATE_PEER_CONNECTION);
             }
+
+            // peer connected us itself, no need to wait for it anymore
+            p.setNextConnection(0);
         }
         else {
             p = new Peer(c.getEndpoint(), false, 0);
@@ -298,6 +302,7 @@ public class Policy extends AbstractCollection<Peer> {
         if (Utils.isBit(sourceBitmask, PeerInfo.DHT)) ret |= 1 << 4;
         if (Utils.isBit(sourceBitmask, PeerInfo.INCOMING)) ret |= 1 << 3;
         if (Utils.isBit(sourceBitmask, PeerInfo.RESUME)) ret |= 1 << 2;
+        if (Utils.isBit(sourceBitmask, PeerInfo.SOURCE_EXCHANGE)) ret |= 1 << 1;
         return ret;
     }
 
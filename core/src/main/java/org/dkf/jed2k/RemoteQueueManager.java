@@ -0,0 +1,283 @@
+package org.dkf.jed2k;
+
+import org.dkf.jed2k.protocol.BitField;
+import org.dkf.jed2k.protocol.Endpoint;
+import org.dkf.jed2k.protocol.Hash;
+import org.dkf.jed2k.protocol.client.ReaskFilePing;
+
+import java.util.*;
+
+/**
+ * our places in upload queues of remote peers, used by main loop only
+ * source answered queue ranking is disconnected and keeps our place by eMule UDP reasks instead of TCP connection,
+ * reask is sent each 29 minutes like eMule does and a bit more often near the queue's head, but not often than
+ * uploaders tolerate, only one reask per UDP endpoint is in flight because answer has no file hash
+ * source is released back to its transfer for TCP connection when it is about to give us slot,
+ * doesn't answer reasks, rejects us or we wait too long, uploader giving slot usually connects us itself
+ * Created by agent on 18.10.2026.
+ */
+public class RemoteQueueManager {
+    public static final int MAX_ENTRIES = 1000;
+    public static final int MAX_REASKS_PER_TICK = 10;
+    public static final long REASK_INTERVAL = Time.minutes(29);
+    public static final long NEAR_REASK_INTERVAL = Time.minutes(10);
+    public static final int NEAR_RANK = 10;
+    public static final int READY_RANK = 1;
+    public static final long REASK_TIMEOUT = Time.seconds(30);
+    public static final int MAX_UNANSWERED = 2;
+    public static final long MAX_WAIT = Time.hours(2);
+    public static final long QUEUE_FULL_RETRY = Time.minutes(30);
+    public static final long FILE_NOT_FOUND_RETRY = Time.hours(1);
+
+    /**
+     * UDP version of peer which expects our part status in reask
+     */
+    public static final int PART_STATUS_UDP_VERSION = 4;
+
+    /**
+     * source must be returned to its transfer
+     */
+    public static class Release {
+        public final Hash hash;
+        public final Endpoint peer;
+        public final long delay;
+        public final boolean failed;
+
+        Release(final Hash hash, final Endpoint peer, long delay, boolean failed) {
+            this.hash = hash;
+            this.peer = peer;
+            this.delay = delay;
+            this.failed = failed;
+        }
+
+        @Override
+        public String toString() {
+            return "release " + peer + " of " + hash + " delay " + delay + (failed?" failed":"");
+        }
+    }
+
+    private static class Entry {
+        final Hash hash;
+        final Endpoint peer;
+        Endpoint udp;
+        int udpVersion;
+        BitField status;
+        int rank;
+        long queued;
+        long nextAsk;
+        long askSent = -1;
+        int unanswered = 0;
+
+        Entry(final Hash hash, final Endpoint peer) {
+            this.hash = hash;
+            this.peer = peer;
+        }
+    }
+
+    private final List<Entry> entries = new LinkedList<Entry>();
+    private final Map<Endpoint, Entry> asked = new HashMap<Endpoint, Entry>();
+    private final List<Release> released = new ArrayList<Release>();
+
+    /**
+     * @param rank position in remote queue
+     * @return interval between reasks
+     */
+    public static long reaskInterval(int rank) {
+        return rank <= NEAR_RANK?NEAR_REASK_INTERVAL:REASK_INTERVAL;
+    }
+
+    /**
+     * source answered queue ranking and its connection is going to be closed
+     * when there is no room for new place source is released at once
+     * @param h hash of transfer
+     * @param peer source's endpoint in transfer's peers list
+     * @param udp source's UDP endpoint
+     * @param udpVersion source's eMule UDP version
+     * @param status our part status for reask, null for unknown
+     * @param rank position in remote queue
+     * @param now current time
+     * @return true if source waits in queue
+     */
+    public boolean enqueue(final Hash h, final Endpoint peer, final Endpoint udp, int udpVersion, final BitField status, int rank, long now) {
+        Entry e = find(h, peer);
+        if (e == null) {
+            if (entries.size() >= MAX_ENTRIES) {
+                released.add(new Release(h, peer, 0, false));
+                return false;
+            }
+
+            e = new Entry(h, peer);
+            entries.add(e);
+        } else if (e.askSent != -1) {
+            asked.remove(e.udp);
+        }
+
+        e.udp = udp;
+        e.udpVersion = udpVersion;
+        e.status = status;
+        e.rank = rank;
+        e.queued = now;
+        e.nextAsk = now + reaskInterval(rank);
+        e.askSent = -1;
+        e.unanswered = 0;
+        return true;
+    }
+
+    /**
+     * expire reasks without answer and select sources must be reasked now
+     * @param now current time
+     * @return UDP endpoints and reask packets
+     */
+    public List<Pair<Endpoint, ReaskFilePing>> tick(long now) {
+        List<Pair<Endpoint, ReaskFilePing>> res = new ArrayList<Pair<Endpoint, ReaskFilePing>>();
+        Iterator<Entry> itr = entries.iterator();
+        while(itr.hasNext()) {
+            Entry e = itr.next();
+            if (e.askSent != -1 && now - e.askSent > REASK_TIMEOUT) {
+                asked.remove(e.udp);
+                e.askSent = -1;
+                e.nextAsk = now;
+                ++e.unanswered;
+            }
+
+            // source doesn't answer by UDP or our place must be refreshed, fall back to TCP reask
+            if (e.unanswered >= MAX_UNANSWERED || now - e.queued >= MAX_WAIT) {
+                if (e.askSent != -1) asked.remove(e.udp);
+                itr.remove();
+                released.add(new Release(e.hash, e.peer, 0, false));
+                continue;
+            }
+
+            if (res.size() < MAX_REASKS_PER_TICK && e.askSent == -1 && e.nextAsk <= now && !asked.containsKey(e.udp)) {
+                e.askSent = now;
+                asked.put(e.udp, e);
+                res.add(Pair.make(e.udp, packet(e)));
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * @param udp endpoint of answered source
+     * @param rank position in remote queue
+     * @param now current time
+     * @return true if answer matches sent reask
+     */
+    public boolean onReaskAck(final Endpoint udp, int rank, long now) {
+        Entry e = asked.remove(udp);
+        if (e == null) return false;
+        e.askSent = -1;
+        e.unanswered = 0;
+        e.rank = rank;
+
+        if (rank <= READY_RANK) {
+            entries.remove(e);
+            released.add(new Release(e.hash, e.peer, 0, false));
+        } else {
+            e.nextAsk = now + reaskInterval(rank);
+        }
+
+        return true;
+    }
+
+    /**
+     * source forgot us and has no room in its queue, try again much later
+     * @param udp endpoint of answered source
+     * @return true if answer matches sent reask
+     */
+    public boolean onQueueFull(final Endpoint udp) {
+        Entry e = asked.remove(udp);
+        if (e == null) return false;
+        entries.remove(e);
+        released.add(new Release(e.hash, e.peer, QUEUE_FULL_RETRY, false));
+        return true;
+    }
+
+    /**
+     * source doesn't share file anymore
+     * @param udp endpoint of answered source
+     * @return true if answer matches sent reask
+     */
+    public boolean onFileNotFound(final Endpoint udp) {
+        Entry e = asked.remove(udp);
+        if (e == null) return false;
+        entries.remove(e);
+        released.add(new Release(e.hash, e.peer, FILE_NOT_FOUND_RETRY, true));
+        return true;
+    }
+
+    /**
+     * match incoming connection's hello against our places, uploader connects queued client when it has slot
+     * @param ip address from remote peer's hello
+     * @return hash of transfer we waited for or null, the other places in the same queue stay
+     */
+    public Hash match(int ip) {
+        Iterator<Entry> itr = entries.iterator();
+        while(itr.hasNext()) {
+            Entry e = itr.next();
+            if (e.peer.getIP() == ip) {
+                if (e.askSent != -1) asked.remove(e.udp);
+                itr.remove();
+                return e.hash;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * forget places of removed transfer
+     * @param h hash of transfer
+     */
+    public void remove(final Hash h) {
+        Iterator<Entry> itr = entries.iterator();
+        while(itr.hasNext()) {
+            Entry e = itr.next();
+            if (e.hash.equals(h)) {
+                if (e.askSent != -1) asked.remove(e.udp);
+                itr.remove();
+            }
+        }
+    }
+
+    /**
+     * @return sources must be returned to their transfers since last call
+     */
+    public List<Release> released() {
+        if (released.isEmpty()) return Collections.emptyList();
+        List<Release> res = new ArrayList<Release>(released);
+        released.clear();
+        return res;
+    }
+
+    /**
+     * @param h hash of transfer
+     * @param peer source's endpoint
+     * @return our position in source's queue or -1 if we don't wait there
+     */
+    public int rank(final Hash h, final Endpoint peer) {
+        Entry e = find(h, peer);
+        return e != null?e.rank:-1;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private Entry find(final Hash h, final Endpoint peer) {
+        for(final Entry e: entries) {
+            if (e.hash.equals(h) && e.peer.equals(peer)) return e;
+        }
+
+        return null;
+    }
+
+    private static ReaskFilePing packet(final Entry e) {
+        ReaskFilePing ping = new ReaskFilePing(e.hash);
+        if (e.udpVersion >= PART_STATUS_UDP_VERSION) ping.partStatus = e.status != null?e.status:new BitField();
+        // complete sources count is not tracked
+        ping.hasCompleteSources = e.udpVersion > 2;
+        return ping;
+    }
+}
@@ -0,0 +1,67 @@
+package org.dkf.jed2k;
+
+/**
+ * adaptive depth of peer's request queue
+ * queue holds bandwidth-delay product of connection in blocks plus reserve, so new request reaches
+ * remote peer before it sends last requested block and connection never stays idle for round trip
+ * round trip time is smoothed like TCP SRTT from samples: hello/hello answer and request sent into idle queue/first data
+ * Created by agent on 18.10.2026.
+ */
+public class RequestPipeline {
+    public static final int MIN_QUEUE_SIZE = Constants.REQUEST_QUEUE_SIZE;
+    public static final int MAX_QUEUE_SIZE = 16;
+
+    /**
+     * blocks over bandwidth-delay product: block on the wire and block covers rate and rtt jitter
+     */
+    public static final int RESERVE_BLOCKS = 2;
+
+    private long rtt = -1;
+    private long requestTime = -1;
+
+    /**
+     * add round trip time sample
+     * @param sample milliseconds
+     */
+    public void addRttSample(long sample) {
+        if (sample < 0) return;
+        rtt = (rtt < 0)?sample:(7*rtt + sample)/8;
+    }
+
+    /**
+     * request was sent into empty queue, its first data arrival gives round trip sample
+     * @param now current time
+     */
+    public void onIdleRequest(long now) {
+        requestTime = now;
+    }
+
+    /**
+     * first data of requested block arrived
+     * @param now current time
+     */
+    public void onData(long now) {
+        if (requestTime != -1) {
+            addRttSample(now - requestTime);
+            requestTime = -1;
+        }
+    }
+
+    /**
+     * @return smoothed round trip time in milliseconds or -1 when unknown
+     */
+    public long getRtt() {
+        return rtt;
+    }
+
+    /**
+     * @param downloadRate current payload rate of peer in bytes per second
+     * @return count of blocks should be requested and not received yet
+     */
+    public int queueSize(long downloadRate) {
+        if (rtt < 0 || downloadRate <= 0) return MIN_QUEUE_SIZE;
+        long bdp = downloadRate*rtt/1000;
+        long blocks = (bdp + Constants.BLOCK_SIZE - 1) / Constants.BLOCK_SIZE + RESERVE_BLOCKS;
+        return (int)Math.max(MIN_QUEUE_SIZE, Math.min(MAX_QUEUE_SIZE, blocks));
+    }
+}
@@ -19,6 +19,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.util.LinkedList;
@@ -30,6 +31,13 @@ public class ServerConnection extends Connection {
     private static Logger log = LoggerFactory.getLogger(ServerConnection.class);
     private long lastPingTime = 0;
     private boolean handshakeCompleted = false;
+    private Endpoint endpoint = new Endpoint();
+    private IdChange login = null;
+
+    /**
+     * alerts of connection racing for login are delivered only when it becomes session's server connection
+     */
+    private final List<Alert> pendingAlerts = new LinkedList<Alert>();
 
     /**
      * special identifier for server connection
@@ -43,7 +51,7 @@ public class ServerConnection extends Connection {
             ByteBuffer outgoingBuffer,
             PacketCombiner packetCombiner,
             Session session) throws IOException {
-        super(incomingBuffer, outgoingBuffer, packetCombiner, session);
+        super(incomingBuffer, outgoingBuffer, packetCombiner, session, session.mainLoop());
         identifier = id;
     }
 
@@ -97,17 +105,39 @@ public class ServerConnection extends Connection {
     @Override
     public void onServerIdChange(IdChange value) throws JED2KException {
         log.debug("server id changed to {}", value);
-        session.clientId = value.clientId;
-        session.tcpFlags = value.tcpFlags;
-        session.auxPort = value.auxPort;
+        login = value;
         handshakeCompleted = true;
-        session.pushAlert(new ServerIdAlert(identifier, value.clientId));
+        session.onServerLogin(this);
+    }
+
+    /**
+     * connection becomes session's server connection
+     */
+    void activate() {
+        assert login != null;
+        session.clientId = login.clientId;
+        session.tcpFlags = login.tcpFlags;
+        session.auxPort = login.auxPort;
+        for(final Alert a: pendingAlerts) {
+            session.pushAlert(a);
+        }
+
+        pendingAlerts.clear();
+        session.pushAlert(new ServerIdAlert(identifier, login.clientId));
+    }
+
+    private void pushAlert(final Alert alert) {
+        if (session.serverConection == this) {
+            session.pushAlert(alert);
+        } else {
+            pendingAlerts.add(alert);
+        }
     }
 
     @Override
     public void onServerInfo(ServerInfo value) throws JED2KException {
         log.debug("server info {}", value);
-        session.pushAlert(new ServerInfoAlert(identifier, value));
+        pushAlert(new ServerInfoAlert(identifier, value));
     }
 
     @Override
@@ -118,13 +148,13 @@ public class ServerConnection extends Connection {
     @Override
     public void onServerMessage(Message value) throws JED2KException {
         log.debug("server message {}", value);
-        session.pushAlert(new ServerMessageAlert(identifier, value.asString()));
+        pushAlert(new ServerMessageAlert(identifier, value.asString()));
     }
 
     @Override
     public void onServerStatus(Status value) throws JED2KException {
         log.debug("server status {}", value);
-        session.pushAlert(new ServerStatusAlert(identifier, value.filesCount, value.usersCount));
+        pushAlert(new ServerStatusAlert(identifier, value.filesCount, value.usersCount));
     }
 
     @Override
@@ -170,13 +200,14 @@ public class ServerConnection extends Connection {
 
     @Override
     protected void onDisconnect(BaseErrorCode ec) {
-        // remove server connection from session
-        session.clientId = 0;
-        session.tcpFlags = 0;
-        session.auxPort = 0;
-        session.serverConection = null;
         handshakeCompleted = false;
-        session.pushAlert(new ServerConectionClosed(identifier, ec));
+        session.onServerConnectionClosed(this, ec);
+    }
+
+    @Override
+    void connect(final InetSocketAddress address) throws JED2KException {
+        if (!address.isUnresolved()) endpoint = new Endpoint(address);
+        super.connect(address);
     }
 
     @Override
@@ -246,39 +277,60 @@ public class ServerConnection extends Connection {
     @Override
     public void onFoundFileSources(FoundFileSources value)
             throws JED2KException {
-        Transfer transfer = session.transfers.get(value.hash);
+        final Transfer transfer = session.transfers.get(value.hash);
         if (transfer != null) {
             log.debug("onFoundSources {}", value.sources.size());
             log.debug("session: {}", Utils.isLowId(session.clientId)?"LOW":"HI");
+            final List<Endpoint> sources = new LinkedList<Endpoint>();
             for(final Endpoint endpoint: value.sources) {
                 if (Utils.isLowId(endpoint.getIP())) {
                     log.debug("Low ID endpoint detected {}", endpoint);
-                    if (!Utils.isLowId(session.clientId) && !session.callbacks.containsKey(endpoint.getIP())) {
-                        log.debug("send callback request to {} for hash {}", endpoint, value.hash);
-                        sendCallbackRequest(endpoint.getIP());
-                        session.callbacks.put(endpoint.getIP(), value.hash);
+                    if (!Utils.isLowId(session.clientId) && session.callbacks.request(endpoint.getIP(), value.hash, session.getCurrentTime())) {
+                        log.debug("queue callback request to {} for hash {}", endpoint, value.hash);
                     }
                 } else {
                     log.debug("to getHash {} added endpoint {}", value.hash, endpoint);
-                    try {
-                        transfer.addPeer(endpoint, PeerInfo.SERVER);
-                    } catch(JED2KException e) {
-                        e.printStackTrace();
-                        break;
-                    }
+                    sources.add(endpoint);
                 }
             }
+
+            // peers must be added in transfer's owner loop
+            session.loopFor(value.hash).execute(new Runnable() {
+                @Override
+                public void run() {
+                    for(final Endpoint endpoint: sources) {
+                        try {
+                            transfer.addPeer(endpoint, PeerInfo.SERVER);
+                        } catch(JED2KException e) {
+                            e.printStackTrace();
+                            break;
+                        }
+                    }
+                }
+            });
         }
     }
 
     @Override
     public void onCallbackRequestFailed(CallbackRequestFailed value) throws JED2KException {
-        log.debug("callback request failed {}" + value);
+        // packet has no client id, request will expire by timeout
+        log.debug("callback request failed");
     }
 
     @Override
     public void onCallbackRequestIncoming(CallbackRequestIncoming value) throws JED2KException {
-        log.debug("incoming callback request ", value.point);
+        log.debug("incoming callback request {}", value.point);
+        if (value.point.getIP() == 0 || value.point.getPort() == 0) return;
+        if (!session.callbacks.acceptIncoming(value.point, session.getCurrentTime())) {
+            log.debug("callback request to {} repeated, skip it", value.point);
+            return;
+        }
+
+        try {
+            session.openConnection(new Endpoint(value.point.getIP(), value.point.getPort()));
+        } catch(JED2KException e) {
+            log.warn("unable to connect {} on callback request {}", value.point, e);
+        }
     }
 
     @Override
@@ -303,6 +355,61 @@ public class ServerConnection extends Connection {
         throw new JED2KException(ErrorCode.SERVER_CONN_UNSUPPORTED_PACKET);
     }
 
+    @Override
+    public void onClientAICHRequest(AICHRequest value) throws JED2KException {
+        throw new JED2KException(ErrorCode.SERVER_CONN_UNSUPPORTED_PACKET);
+    }
+
+    @Override
+    public void onClientAICHAnswer(AICHAnswer value) throws JED2KException {
+        throw new JED2KException(ErrorCode.SERVER_CONN_UNSUPPORTED_PACKET);
+    }
+
+    @Override
+    public void onClientAICHFileHashRequest(AICHFileHashRequest value) throws JED2KException {
+        throw new JED2KException(ErrorCode.SERVER_CONN_UNSUPPORTED_PACKET);
+    }
+
+    @Override
+    public void onClientAICHFileHashAnswer(AICHFileHashAnswer value) throws JED2KException {
+        throw new JED2KException(ErrorCode.SERVER_CONN_UNSUPPORTED_PACKET);
+    }
+
+    @Override
+    public void onClientRequestSources2(RequestSources2 value) throws JED2KException {
+        throw new JED2KException(ErrorCode.SERVER_CONN_UNSUPPORTED_PACKET);
+    }
+
+    @Override
+    public void onClientAnswerSources2(AnswerSources2 value) throws JED2KException {
+        throw new JED2KException(ErrorCode.SERVER_CONN_UNSUPPORTED_PACKET);
+    }
+
+    @Override
+    public void onClientStartUpload(StartUpload value) throws JED2KException {
+        throw new JED2KException(ErrorCode.SERVER_CONN_UNSUPPORTED_PACKET);
+    }
+
+    @Override
+    public void onClientRequestParts32(RequestParts32 value) throws JED2KException {
+        throw new JED2KException(ErrorCode.SERVER_CONN_UNSUPPORTED_PACKET);
+    }
+
+    @Override
+    public void onClientRequestParts64(RequestParts64 value) throws JED2KException {
+        throw new JED2KException(ErrorCode.SERVER_CONN_UNSUPPORTED_PACKET);
+    }
+
+    @Override
+    public void onClientCancelTransfer(CancelTransfer value) throws JED2KException {
+        throw new JED2KException(ErrorCode.SERVER_CONN_UNSUPPORTED_PACKET);
+    }
+
+    @Override
+    public void onClientEndDownload(EndDownload value) throws JED2KException {
+        throw new JED2KException(ErrorCode.SERVER_CONN_UNSUPPORTED_PACKET);
+    }
+
     @Override
     void secondTick(long currentSessionTime) {
 
@@ -317,8 +424,7 @@ public class ServerConnection extends Connection {
 
     @Override
     Endpoint getEndpoint() {
-        // actually we have server ip/port but currently I no need them for debug purposes
-        return new Endpoint();
+        return endpoint;
     }
 
     void sendFileSourcesRequest(final Hash h, final long size) {
@@ -336,4 +442,11 @@ public class ServerConnection extends Connection {
     }
 
     public boolean isHandshakeCompleted() { return handshakeCompleted; }
+
+    /**
+     * @return client id given by server or zero before login
+     */
+    int getClientId() {
+        return login != null?login.clientId:0;
+    }
 }
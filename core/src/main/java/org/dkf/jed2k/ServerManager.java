@@ -0,0 +1,351 @@
+package org.dkf.jed2k;
+
+import org.dkf.jed2k.protocol.Endpoint;
+
+import java.util.*;
+
+/**
+ * automatic server selection from server.met list
+ * servers are pinged by UDP status requests in small batches, ranking is based on ping latency,
+ * failures count and fullness, server never answered ping is ranked as slow one
+ * login is raced on several best servers, first server gave high id wins, low id server is accepted
+ * when all other servers finished login or after login timeout
+ * failed server is not tried again for retry delay growing with failures count,
+ * failed race and lost connection start next race after reconnect delay growing up to maximum
+ * not thread safe - used by main loop only
+ * Created by agent on 18.10.2026.
+ */
+public class ServerManager {
+    public static final int RACE_SIZE = 3;
+    public static final long LOGIN_TIMEOUT = Time.seconds(10);
+    public static final long CONNECT_TIMEOUT = Time.seconds(30);
+    public static final long FIRST_PING_WAIT = Time.seconds(2);
+    public static final long PING_INTERVAL = Time.minutes(15);
+    public static final long PING_TIMEOUT = Time.seconds(10);
+    public static final int MAX_PINGS_PER_TICK = 10;
+    public static final long UNKNOWN_LATENCY = Time.seconds(5);
+    public static final long FULL_SERVER_PENALTY = Time.seconds(10);
+    public static final long FAILURE_PENALTY = Time.seconds(2);
+    public static final long SERVER_RETRY_DELAY = Time.minutes(1);
+    public static final long SERVER_MAX_RETRY_DELAY = Time.hours(1);
+    public static final long RECONNECT_MIN_DELAY = Time.seconds(5);
+    public static final long RECONNECT_MAX_DELAY = Time.minutes(5);
+    public static final long STABLE_CONNECTION_TIME = Time.minutes(5);
+
+    private static final int LOGIN_PENDING = 0;
+    private static final int LOGIN_LOW_ID = 1;
+    private static final int LOGIN_HIGH_ID = 2;
+
+    /**
+     * server from list and its measured state
+     */
+    public static class Server {
+        public final String name;
+        public final Endpoint endpoint;
+        long latency = -1;
+        int usersCount = 0;
+        int filesCount = 0;
+        int maxUsers = 0;
+        int failures = 0;
+        long retryTime = 0;
+        long pingSent = -1;
+        long lastPing = -1;
+        int challenge = 0;
+
+        Server(final String name, final Endpoint endpoint) {
+            this.name = name;
+            this.endpoint = endpoint;
+        }
+
+        /**
+         * @return ping latency in milliseconds or -1 if server didn't answer yet
+         */
+        public long getLatency() {
+            return latency;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        public int getUsersCount() {
+            return usersCount;
+        }
+
+        public int getFilesCount() {
+            return filesCount;
+        }
+
+        boolean isFull() {
+            return maxUsers > 0 && usersCount >= maxUsers;
+        }
+
+        /**
+         * @return ranking score, less is better
+         */
+        long score() {
+            long res = latency == -1?UNKNOWN_LATENCY:latency;
+            if (isFull()) res += FULL_SERVER_PENALTY;
+            return res + failures*FAILURE_PENALTY;
+        }
+
+        @Override
+        public String toString() {
+            return name + " " + endpoint + " latency " + latency + " users " + usersCount + " failures " + failures;
+        }
+    }
+
+    private static class Ranking implements Comparator<Server> {
+        @Override
+        public int compare(Server o1, Server o2) {
+            long s1 = o1.score();
+            long s2 = o2.score();
+            return s1 < s2?-1:(s1 > s2?1:0);
+        }
+    }
+
+    private final Map<Endpoint, Server> servers = new LinkedHashMap<Endpoint, Server>();
+    private final Map<Endpoint, Integer> race = new LinkedHashMap<Endpoint, Integer>();
+    private final Random random = new Random();
+    private boolean enabled = false;
+    private long serversSetTime = -1;
+    private long raceStarted = -1;
+    private long nextRace = 0;
+    private long reconnectDelay = RECONNECT_MIN_DELAY;
+    private Endpoint active = null;
+    private long activeSince = -1;
+
+    /**
+     * replace servers list, measured state of servers remaining in list is kept
+     * @param entries pairs of server name and TCP endpoint
+     * @param now current time
+     */
+    public void setServers(final Collection<Pair<String, Endpoint>> entries, long now) {
+        Map<Endpoint, Server> old = new HashMap<Endpoint, Server>(servers);
+        servers.clear();
+        for(final Pair<String, Endpoint> e: entries) {
+            Server s = old.get(e.right);
+            servers.put(e.right, s != null?s:new Server(e.left, e.right));
+        }
+
+        serversSetTime = now;
+    }
+
+    /**
+     * @param value true to connect server automatically and reconnect after connection lost
+     */
+    public void setEnabled(boolean value) {
+        enabled = value;
+        if (!enabled) cancelRace();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * expire pings without answer and select servers must be pinged now
+     * @param now current time
+     * @return TCP endpoints of servers and challenges for status requests
+     */
+    public List<Pair<Endpoint, Integer>> nextPings(long now) {
+        List<Pair<Endpoint, Integer>> res = new ArrayList<Pair<Endpoint, Integer>>();
+        for(final Server s: servers.values()) {
+            if (s.pingSent != -1 && now - s.pingSent > PING_TIMEOUT) {
+                s.pingSent = -1;
+                s.latency = -1;
+            }
+
+            if (res.size() < MAX_PINGS_PER_TICK && s.pingSent == -1 && (s.lastPing == -1 || now - s.lastPing >= PING_INTERVAL)) {
+                s.challenge = 0x55AA0000 | random.nextInt(0x10000);
+                s.pingSent = now;
+                s.lastPing = now;
+                res.add(Pair.make(s.endpoint, s.challenge));
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * @param ip address of answered server
+     * @param challenge challenge from answer
+     * @param usersCount users on server
+     * @param filesCount files on server
+     * @param maxUsers users limit of server, zero if unknown
+     * @param now current time
+     * @return true if answer matches sent ping
+     */
+    public boolean onPingAnswer(int ip, int challenge, int usersCount, int filesCount, int maxUsers, long now) {
+        for(final Server s: servers.values()) {
+            if (s.endpoint.getIP() == ip && s.pingSent != -1 && s.challenge == challenge) {
+                s.latency = now - s.pingSent;
+                s.pingSent = -1;
+                s.usersCount = usersCount;
+                s.filesCount = filesCount;
+                s.maxUsers = maxUsers;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return servers from the best to the worst
+     */
+    public List<Server> ranking() {
+        List<Server> res = new ArrayList<Server>(servers.values());
+        Collections.sort(res, new Ranking());
+        return res;
+    }
+
+    /**
+     * start new login race when automatic mode is on and there is no server connection
+     * @param now current time
+     * @param connected session has server connection
+     * @return servers must be connected now
+     */
+    public List<Server> startRace(long now, boolean connected) {
+        if (!enabled || connected || !race.isEmpty() || now < nextRace || servers.isEmpty()) return Collections.emptyList();
+
+        int answered = 0;
+        for(final Server s: servers.values()) {
+            if (s.latency != -1) ++answered;
+        }
+
+        // give pings a chance to rank servers before the first race
+        if (answered < Math.min(RACE_SIZE, servers.size()) && now - serversSetTime < FIRST_PING_WAIT) return Collections.emptyList();
+
+        List<Server> res = new ArrayList<Server>();
+        for(final Server s: ranking()) {
+            if (res.size() == RACE_SIZE) break;
+            if (s.retryTime <= now) res.add(s);
+        }
+
+        if (res.isEmpty()) {
+            scheduleRace(now);
+            return res;
+        }
+
+        for(final Server s: res) {
+            race.put(s.endpoint, LOGIN_PENDING);
+        }
+
+        raceStarted = now;
+        return res;
+    }
+
+    public boolean isRacing(final Endpoint endpoint) {
+        return race.containsKey(endpoint);
+    }
+
+    public boolean isRaceInProgress() {
+        return !race.isEmpty();
+    }
+
+    /**
+     * racing server completed login
+     * @param endpoint server
+     * @param highId true if server gave us high id
+     */
+    public void onLogin(final Endpoint endpoint, boolean highId) {
+        if (race.containsKey(endpoint)) race.put(endpoint, highId?LOGIN_HIGH_ID:LOGIN_LOW_ID);
+    }
+
+    /**
+     * server connection or login failed, server goes back in ranking and is not tried for a while
+     * @param endpoint server
+     * @param now current time
+     */
+    public void onFailed(final Endpoint endpoint, long now) {
+        race.remove(endpoint);
+        Server s = servers.get(endpoint);
+        if (s == null) return;
+        ++s.failures;
+        s.retryTime = now + Math.min(SERVER_RETRY_DELAY << Math.min(s.failures - 1, 16), SERVER_MAX_RETRY_DELAY);
+    }
+
+    /**
+     * check race state after its events and on timer
+     * @param now current time
+     * @return server must become session's server connection, other racing connections must be closed
+     */
+    public Endpoint winner(long now) {
+        if (raceStarted == -1) return null;
+
+        Endpoint lowId = null;
+        boolean pending = false;
+        for(final Map.Entry<Endpoint, Integer> e: race.entrySet()) {
+            if (e.getValue() == LOGIN_HIGH_ID) return finishRace(e.getKey(), now);
+            if (e.getValue() == LOGIN_LOW_ID && lowId == null) lowId = e.getKey();
+            if (e.getValue() == LOGIN_PENDING) pending = true;
+        }
+
+        if (lowId != null && (!pending || now - raceStarted >= LOGIN_TIMEOUT)) return finishRace(lowId, now);
+
+        if (race.isEmpty() || now - raceStarted >= CONNECT_TIMEOUT) {
+            for(final Endpoint ep: new ArrayList<Endpoint>(race.keySet())) {
+                onFailed(ep, now);
+            }
+
+            race.clear();
+            raceStarted = -1;
+            scheduleRace(now);
+        }
+
+        return null;
+    }
+
+    /**
+     * race was interrupted by user's connection or disconnection
+     */
+    public void cancelRace() {
+        race.clear();
+        raceStarted = -1;
+    }
+
+    /**
+     * session's server connection was established not by race
+     * @param endpoint server
+     * @param now current time
+     */
+    public void onActive(final Endpoint endpoint, long now) {
+        cancelRace();
+        active = endpoint;
+        activeSince = now;
+    }
+
+    /**
+     * session's server connection was closed, next race starts after reconnect delay
+     * server dropped connection too early is considered as failed
+     * @param failed connection was closed by error
+     * @param now current time
+     */
+    public void onActiveClosed(boolean failed, long now) {
+        if (active != null && failed && now - activeSince < STABLE_CONNECTION_TIME) onFailed(active, now);
+        if (active != null && now - activeSince >= STABLE_CONNECTION_TIME) reconnectDelay = RECONNECT_MIN_DELAY;
+        active = null;
+        activeSince = -1;
+        scheduleRace(now);
+    }
+
+    public long getNextRaceTime() {
+        return nextRace;
+    }
+
+    private Endpoint finishRace(final Endpoint endpoint, long now) {
+        race.clear();
+        raceStarted = -1;
+        Server s = servers.get(endpoint);
+        if (s != null) s.failures = 0;
+        active = endpoint;
+        activeSince = now;
+        return endpoint;
+    }
+
+    private void scheduleRace(long now) {
+        nextRace = now + reconnectDelay;
+        reconnectDelay = Math.min(reconnectDelay*2, RECONNECT_MAX_DELAY);
+    }
+}
@@ -5,6 +5,8 @@ import org.bitlet.weupnp.GatewayDiscover;
 import org.bitlet.weupnp.PortMappingEntry;
 import org.dkf.jed2k.alert.*;
 import org.dkf.jed2k.disk.AsyncOperationResult;
+import org.dkf.jed2k.disk.DiskEngine;
+import org.dkf.jed2k.disk.FileHandleCache;
 import org.dkf.jed2k.disk.FileHandler;
 import org.dkf.jed2k.disk.TransferCallable;
 import org.dkf.jed2k.exception.BaseErrorCode;
@@ -15,11 +17,23 @@ import org.dkf.jed2k.kad.KadSearchEntryDistinct;
 import org.dkf.jed2k.kad.Listener;
 import org.dkf.jed2k.pool.BufferPool;
 import org.dkf.jed2k.pool.Pool;
+import org.dkf.jed2k.protocol.BitField;
 import org.dkf.jed2k.protocol.Endpoint;
 import org.dkf.jed2k.protocol.Hash;
 import org.dkf.jed2k.protocol.SearchEntry;
+import org.dkf.jed2k.protocol.Serializable;
+import org.dkf.jed2k.protocol.client.FileNotFound;
+import org.dkf.jed2k.protocol.client.QueueFull;
+import org.dkf.jed2k.protocol.client.ReaskAck;
+import org.dkf.jed2k.protocol.client.ReaskFilePing;
+import org.dkf.jed2k.protocol.client.UdpPacketCombiner;
 import org.dkf.jed2k.protocol.kad.KadId;
 import org.dkf.jed2k.protocol.kad.KadSearchEntry;
+import org.dkf.jed2k.protocol.server.FoundFileSources;
+import org.dkf.jed2k.protocol.server.GlobalGetSources;
+import org.dkf.jed2k.protocol.server.GlobalServerStatusRequest;
+import org.dkf.jed2k.protocol.server.GlobalServerStatusResult;
+import org.dkf.jed2k.protocol.server.ServerMet;
 import org.dkf.jed2k.protocol.server.search.SearchRequest;
 import org.dkf.jed2k.protocol.tag.Tag;
 import org.slf4j.Logger;
@@ -34,7 +48,6 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.*;
@@ -43,58 +56,108 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Session extends Thread {
     private static Logger log = LoggerFactory.getLogger(Session.class);
-    Selector selector = null;
-    private ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<Runnable>();
     ServerConnection serverConection = null;
     private ServerSocketChannel ssc = null;
 
-    Map<Hash, Transfer> transfers = new HashMap<Hash, Transfer>();
-    ArrayList<PeerConnection> connections = new ArrayList<PeerConnection>(); // incoming connections
-    Settings settings = null;
+    /**
+     * all transfers of session, each transfer is owned by one event loop
+     */
+    Map<Hash, Transfer> transfers = new ConcurrentHashMap<Hash, Transfer>();
+    volatile Settings settings = null;
     long lastTick = Time.currentTime();
-    HashMap<Integer, Hash> callbacks = new HashMap<Integer, Hash>();
-    private ByteBuffer skipDataBuffer = null;
-    private byte[] zBuffer = null;
-    long zBufferLastAllocatedTime = 0;
+
+    /**
+     * low id callbacks in both directions, used in main loop
+     */
+    final CallbackManager callbacks = new CallbackManager();
+
+    /**
+     * server and KAD sources requests of all transfers, used in main loop
+     */
+    final SourcesScheduler sourcesScheduler = new SourcesScheduler();
+
+    /**
+     * our places in upload queues of sources kept by UDP reasks, used in main loop
+     */
+    final RemoteQueueManager remoteQueues = new RemoteQueueManager();
+
+    /**
+     * upload slots shared by upload queues of all loops, used from any loop
+     */
+    final UploadSlots uploadSlots = new UploadSlots(0);
+
+    /**
+     * automatic server selection and connections racing for login keyed by server's endpoint, used in main loop
+     */
+    private final ServerManager serverManager = new ServerManager();
+    private final Map<Endpoint, ServerConnection> racingServers = new HashMap<Endpoint, ServerConnection>();
     private BufferPool bufferPool = null;
-    private ExecutorService diskIOService = Executors.newSingleThreadExecutor();
+    private final DiskEngine diskEngine;
+    private final FileHandleCache fileHandleCache;
     private ExecutorService upnpService = Executors.newSingleThreadExecutor();
     private AtomicBoolean finished = new AtomicBoolean(false);
     private boolean aborted = false;
-    private Statistics accumulator = new Statistics();
     private GatewayDiscover discover = new GatewayDiscover();
     private GatewayDevice device = null;
 
     /**
-     * async disk io futures
+     * client-server datagram socket, opened when servers for global sources requests are set
      */
-    LinkedList<Future<AsyncOperationResult> > aioFutures = new LinkedList<Future<AsyncOperationResult>>();
+    private UDPConnection udpConnection = null;
+    private final GlobalSourcesScheduler globalSources = new GlobalSourcesScheduler();
 
     /**
-     * async originators
+     * client-client datagram socket on configured UDP port, opened on session start
      */
-    LinkedList<Transfer> aioOrigins = new LinkedList<>();
+    private UDPConnection peerUdpConnection = null;
+    private volatile int udpPort = 0;
+
+    /**
+     * server's UDP port is TCP port plus this offset
+     */
+    public static final int SERVER_UDP_PORT_OFFSET = 4;
+
+    /**
+     * selector loops, loop zero is driven by session thread and holds listen socket and server connection
+     */
+    private final EventLoop[] loops;
 
     /**
      * external DHT tracker object
      */
-    private WeakReference<DhtTracker> dhtTracker = new WeakReference<DhtTracker>(null);
+    private volatile WeakReference<DhtTracker> dhtTracker = new WeakReference<DhtTracker>(null);
 
     /**
      * sources search result callback
      */
     private static class DhtSourcesCallback implements Listener {
         final Session session;
+        final Hash hash;
         final WeakReference<Transfer> weakTransfer;
 
         public DhtSourcesCallback(final Session session, final Transfer t) {
             this.session = session;
+            this.hash = t.getHash();
             this.weakTransfer = new WeakReference<Transfer>(t);
         }
 
         @Override
         public void process(final List<KadSearchEntry> data) {
-            session.commands.add(new Runnable() {
+            session.mainLoop().post(new Runnable() {
+                @Override
+                public void run() {
+                    session.sourcesScheduler.kadSearchFinished(hash);
+                }
+            });
+
+            Transfer t = weakTransfer.get();
+            if (t == null) {
+                log.debug("[session] transfer not exists for searched result, just skip it");
+                return;
+            }
+
+            // sources must be added in transfer's owner loop
+            session.loopFor(t.getHash()).post(new Runnable() {
                 @Override
                 public void run() {
                     Transfer transfer = weakTransfer.get();
@@ -223,16 +286,53 @@ public class Session extends Thread {
     }
 
     // from last established server connection
-    int clientId    = 0;
-    int tcpFlags    = 0;
-    int auxPort     = 0;
+    volatile int clientId    = 0;
+    volatile int tcpFlags    = 0;
+    volatile int auxPort     = 0;
 
     private BlockingQueue<Alert> alerts = new LinkedBlockingQueue<Alert>();
 
     public Session(final Settings st) {
         // TODO - validate settings before usage
         settings = st;
-        bufferPool = new BufferPool(st.bufferPoolSize);
+        bufferPool = new BufferPool(st.bufferPoolSize, st.bufferPoolDirect);
+        bufferPool.setIdleTimeout(st.bufferPoolIdleTimeout*1000);
+        diskEngine = new DiskEngine(st.diskIOThreads, st.hashThreads);
+        fileHandleCache = new FileHandleCache(st.openFilesLimit);
+        serverManager.setEnabled(st.serverAutoConnect);
+        loops = new EventLoop[Math.max(1, st.eventLoops)];
+        loops[0] = new EventLoop(this, 0, this);
+        for(int i = 1; i < loops.length; ++i) {
+            loops[i] = new EventLoop(this, i, new Object());
+        }
+    }
+
+    /**
+     * @return loop driven by session thread
+     */
+    final EventLoop mainLoop() {
+        return loops[0];
+    }
+
+    final int loopsCount() {
+        return loops.length;
+    }
+
+    /**
+     * transfers are distributed on event loops by hash, owner loop never changes
+     * @param h transfer's hash
+     * @return event loop owns transfer
+     */
+    final EventLoop loopFor(final Hash h) {
+        return loops[(h.hashCode() & 0x7fffffff) % loops.length];
+    }
+
+    /**
+     * @param t transfer
+     * @return lock guards transfer's state
+     */
+    Object lockFor(final Transfer t) {
+        return loopFor(t.getHash()).getLock();
     }
 
     void closeListenSocket() {
@@ -247,6 +347,20 @@ public class Session extends Thread {
         }
     }
 
+    /**
+     * open client UDP socket for reasks of remote queues, session works without it when port is busy
+     */
+    private void openPeerUdp() {
+        if (settings.udpPort <= 0) return;
+        try {
+            peerUdpConnection = new UDPConnection(this, settings.udpPort, new UdpPacketCombiner());
+            udpPort = settings.udpPort;
+            log.info("client UDP on port {}", settings.udpPort);
+        } catch(JED2KException e) {
+            log.warn("[session] unable to open client UDP socket on port {} {}", settings.udpPort, e);
+        }
+    }
+
     /**
      * start listening server socket
      */
@@ -255,12 +369,12 @@ public class Session extends Thread {
 
         try {
             if (settings.listenPort > 0) {
-                assert selector != null;
+                assert mainLoop().selector != null;
                 log.info("start listening on port {}", settings.listenPort);
                 ssc = ServerSocketChannel.open();
                 ssc.socket().bind(new InetSocketAddress(settings.listenPort));
                 ssc.configureBlocking(false);
-                ssc.register(selector, SelectionKey.OP_ACCEPT);
+                ssc.register(mainLoop().selector, SelectionKey.OP_ACCEPT);
                 pushAlert(new ListenAlert("", settings.listenPort));
             } else {
                 log.info("no listen mode, listen port is {}", settings.listenPort);
@@ -289,43 +403,11 @@ public class Session extends Thread {
      * @throws IOException
      */
     private synchronized void on_tick(BaseErrorCode ec, int channelCount) {
-
-        if (channelCount != 0) {
-            // process channels
-            Set<SelectionKey> selectedKeys = selector.selectedKeys();
-            Iterator<SelectionKey> keyIterator = selectedKeys.iterator();
-
-            while(keyIterator.hasNext()) {
-                SelectionKey key = keyIterator.next();
-
-                if (key.isValid()) {
-
-                    if(key.isAcceptable()) {
-                        // a connection was accepted by a ServerSocketChannel.
-                        //log.trace("Key is acceptable");
-                        incomingConnection();
-                    } else if (key.isConnectable()) {
-                        // a connection was established with a remote server/peer.
-                        //log.trace("Key is connectable");
-                        ((Connection)key.attachment()).onConnectable();
-                    } else if (key.isReadable()) {
-                        // a channel is ready for reading
-                        //log.trace("Key is readable");
-                        ((Connection)key.attachment()).onReadable();
-                    } else if (key.isWritable()) {
-                        // a channel is ready for writing
-                        //log.trace("Key is writeable");
-                        ((Connection)key.attachment()).onWriteable();
-                    }
-                }
-
-                keyIterator.remove();
-            }
-        }
+        // process channels, commands and transfers of main loop
+        mainLoop().tick(channelCount);
 
         /**
-         * handle user's command and process internal tasks in
-         * transfers, peers and other structures every 1 second
+         * process session internal tasks every 1 second
          */
         long tickIntervalMs = Time.currentTime() - lastTick;
         if (tickIntervalMs >= 1000) {
@@ -335,28 +417,42 @@ public class Session extends Thread {
     }
 
     public void secondTick(long currentSessionTime, long tickIntervalMS) {
-
-        Iterator<Map.Entry<Hash, Transfer>> itr = transfers.entrySet().iterator();
-
-        while(itr.hasNext()) {
-            itr.next().getValue().secondTick(accumulator, tickIntervalMS);
-        }
-
         // second tick on server connection
         if (serverConection != null) serverConection.secondTick(tickIntervalMS);
 
-        processDiskTasks();
+        boolean canCallback = serverConection != null && serverConection.isHandshakeCompleted() && !Utils.isLowId(clientId);
+        for(final int id: callbacks.tick(currentSessionTime, canCallback)) {
+            log.debug("[session] send callback request to {}", id);
+            serverConection.sendCallbackRequest(id);
+        }
+        bufferPool.secondTick(currentSessionTime);
+        serversTick(currentSessionTime);
+        remoteQueuesTick(currentSessionTime);
+
+        for(final Pair<Hash, Long> rq: sourcesScheduler.nextServerBatch(currentSessionTime, isServerReady())) {
+            sendSourcesRequest(rq.left, rq.right);
+            onSourcesRequested(rq.left, false, currentSessionTime);
+        }
 
-        // TODO - run second tick on peer connections
-        // execute user's commands
-        Runnable r = commands.poll();
-        while(r != null) {
-            r.run();
-            r = commands.poll();
+        Pair<Hash, Long> kadRequest = sourcesScheduler.nextKadSearch(currentSessionTime, dhtTracker.get() != null);
+        if (kadRequest != null) {
+            Transfer t = transfers.get(kadRequest.left);
+            if (t != null && sendDhtSourcesRequest(kadRequest.left, kadRequest.right, t)) {
+                onSourcesRequested(kadRequest.left, true, currentSessionTime);
+            } else {
+                sourcesScheduler.kadSearchFinished(kadRequest.left);
+            }
         }
 
-        accumulator.secondTick(tickIntervalMS);
-        connectNewPeers();
+        if (udpConnection != null) {
+            Pair<Endpoint, List<GlobalGetSources>> rq = globalSources.next(currentSessionTime);
+            if (rq != null) {
+                log.debug("[session] global sources request to {} packets {}", rq.left, rq.right.size());
+                for(final GlobalGetSources packet: rq.right) {
+                    udpConnection.write(packet, rq.left);
+                }
+            }
+        }
         //log.trace(bufferPool.toString());
     }
 
@@ -364,11 +460,19 @@ public class Session extends Thread {
     public void run() {
         try {
             log.debug("Session started");
-            selector = Selector.open();
+            for(final EventLoop loop: loops) {
+                loop.open();
+            }
+
             listen();
+            openPeerUdp();
+
+            for(int i = 1; i < loops.length; ++i) {
+                loops[i].start();
+            }
 
             while(!aborted && !interrupted()) {
-                int channelCount = selector.select(1000);
+                int channelCount = mainLoop().selector.select(mainLoop().selectTimeout());
                 Time.updateCachedTime();
                 on_tick(ErrorCode.NO_ERROR, channelCount);
             }
@@ -378,13 +482,9 @@ public class Session extends Thread {
         }
         finally {
             log.info("Session is closing");
-            commands.clear();
 
-            try {
-                if (selector != null) selector.close();
-            }
-            catch(IOException e) {
-                log.error("[run] close selector failed {}", e);
+            for(int i = 1; i < loops.length; ++i) {
+                loops[i].stop();
             }
 
             // close listen socket
@@ -396,51 +496,34 @@ public class Session extends Thread {
                 }
             }
 
-            // stop server connection
-            if (serverConection != null) serverConection.close(ErrorCode.SESSION_STOPPING);
-
-            // traverse on local copy of transfers to avoid ConcurrentModificationException
-            List<Transfer> transfersCopy = new LinkedList<>();
-            transfersCopy.addAll(transfers.values());
-
-            // abort all transfers
-            for(final Transfer t: transfersCopy) {
-                t.abort(false, true);   // hard abort tasks to exit as soon as possible. buffers leak possible
-            }
-
-            transfers.clear();
-            transfersCopy.clear();
-
-            // 5 seconds for close all transfers
-            for(int i = 0; i < 50; ++i) {
-                log.info("process disk tasks {} iteration", i);
-                processDiskTasks();
-                if (aioFutures.isEmpty()) break;
-
-                try {
-                    Thread.sleep(100);
-                } catch(Exception e) {
-                    log.error("sleep error {}", e);
+            // commands posted to any loop before abort are completed, they may post further commands to other loops
+            for(int pass = 0; pass < 10 && hasCommands(); ++pass) {
+                for(final EventLoop loop: loops) {
+                    synchronized (loop.getLock()) {
+                        loop.processCommands();
+                    }
                 }
             }
 
-            if (!aioFutures.isEmpty()) {
-                log.warn("not all futures completed");
-                for(final Transfer t: transfers.values()) {
-                    log.warn("transfer {} is not finished", t.getHash());
+            // abort all transfers, wait for disk tasks and close connections in each loop
+            for(final EventLoop loop: loops) {
+                synchronized (loop.getLock()) {
+                    loop.close();
                 }
             }
 
-            ArrayList<PeerConnection> localConnections = (ArrayList<PeerConnection>) connections.clone();
-            for(final PeerConnection c: localConnections) {
-                c.close(ErrorCode.SESSION_STOPPING);
+            synchronized (this) {
+                // stop server connection
+                if (serverConection != null) serverConection.close(ErrorCode.SESSION_STOPPING);
+                cancelServerRace(ErrorCode.SESSION_STOPPING);
+                if (udpConnection != null) udpConnection.close();
+                if (peerUdpConnection != null) peerUdpConnection.close();
             }
 
-            localConnections.clear();
-            connections.clear();
+            transfers.clear();
 
             // stop service
-            diskIOService.shutdown();
+            diskEngine.shutdown();
             upnpService.shutdown();
             stopUPnPImpl("TCP");
             stopUPnPImpl("UDP");
@@ -456,7 +539,7 @@ public class Session extends Thread {
         try {
             SocketChannel sc = ssc.accept();
             PeerConnection p = PeerConnection.make(sc, this);
-            connections.add(p);
+            mainLoop().connections.add(p);
         }
         catch(IOException e) {
             log.error("Socket accept failed {}", e);
@@ -466,30 +549,45 @@ public class Session extends Thread {
         }
     }
 
+    private boolean hasCommands() {
+        for(final EventLoop loop: loops) {
+            if (loop.hasCommands()) return true;
+        }
+
+        return false;
+    }
+
     void closeConnection(PeerConnection p) {
-        connections.remove(p);
+        p.getLoop().connections.remove(p);
     }
 
+    /**
+     * connect peer without transfer in main loop, transfer is recognized after handshake
+     * @param point peer's endpoint
+     */
     void openConnection(Endpoint point) throws JED2KException {
         if (findPeerConnection(point) == null) {
             PeerConnection p = PeerConnection.make(Session.this, point, null, null);
-            if (p != null) connections.add(p);
+            mainLoop().connections.add(p);
             p.connect();
         }
     }
 
     public void connectoTo(final String id, final InetSocketAddress point) {
-        commands.add(new Runnable() {
+        mainLoop().post(new Runnable() {
             @Override
             public void run() {
                 if (serverConection != null) {
                     serverConection.close(ErrorCode.NO_ERROR);
                 }
 
+                cancelServerRace(ErrorCode.NO_ERROR);
+
                 try {
                     serverConection = ServerConnection.makeConnection(id, Session.this);
                     serverConection.connect(point);
                     Endpoint endpoint = new Endpoint(point);
+                    serverManager.onActive(endpoint, Time.currentTime());
                     log.debug("connect to server {}", endpoint);
                 } catch(JED2KException e) {
                     // emit alert - connect to server failed
@@ -500,7 +598,7 @@ public class Session extends Thread {
     }
 
     public void connectoTo(final String id, final String host, final int port) {
-        commands.add(new Runnable() {
+        mainLoop().post(new Runnable() {
             @Override
             public void run() {
                 try {
@@ -510,10 +608,13 @@ public class Session extends Thread {
                         serverConection.close(ErrorCode.NO_ERROR);
                     }
 
+                    cancelServerRace(ErrorCode.NO_ERROR);
+
                     try {
                         serverConection = ServerConnection.makeConnection(id, Session.this);
                         serverConection.connect(addr);
                         Endpoint endpoint = new Endpoint(addr);
+                        serverManager.onActive(endpoint, Time.currentTime());
                         pushAlert(new ServerConnectionAlert(id));
                         log.debug("connect to server {}", endpoint);
                     } catch(JED2KException e) {
@@ -528,10 +629,15 @@ public class Session extends Thread {
         });
     }
 
+    /**
+     * close server connection and turn off automatic server connection until next session configuration
+     */
     public void disconnectFrom() {
-        commands.add(new Runnable() {
+        mainLoop().post(new Runnable() {
             @Override
             public void run() {
+                serverManager.setEnabled(false);
+                cancelServerRace(ErrorCode.NO_ERROR);
                 if (serverConection != null) {
                     serverConection.close(ErrorCode.NO_ERROR);
                 }
@@ -545,7 +651,7 @@ public class Session extends Thread {
     }
 
     public void search(final SearchRequest value) {
-        commands.add(new Runnable() {
+        mainLoop().post(new Runnable() {
             @Override
             public void run() {
                 if (serverConection != null) {
@@ -557,7 +663,7 @@ public class Session extends Thread {
 
     public void searchDhtKeyword(final String keyword, final long minSize, final long maxSize, final int sources, final int completeSources) {
         final Session s = this;
-        commands.add(new Runnable() {
+        mainLoop().post(new Runnable() {
             @Override
             public void run() {
                 DhtTracker tracker = dhtTracker.get();
@@ -574,7 +680,7 @@ public class Session extends Thread {
 
 
     public void searchMore() {
-        commands.add(new Runnable() {
+        mainLoop().post(new Runnable() {
             @Override
             public void run() {
                 if (serverConection != null) {
@@ -586,12 +692,12 @@ public class Session extends Thread {
 
     // TODO - remove only
     public void connectToPeer(final Endpoint point) {
-        commands.add(new Runnable() {
+        mainLoop().post(new Runnable() {
             @Override
             public void run() {
                     try {
                         PeerConnection pc = PeerConnection.make(Session.this, point, null, null);
-                        connections.add(pc);
+                        mainLoop().connections.add(pc);
                         pc.connect(point.toInetSocketAddress());
                     } catch(JED2KException e) {
                         log.error("new peer connection failed {}", e);
@@ -601,7 +707,7 @@ public class Session extends Thread {
     }
 
     private PeerConnection findPeerConnection(Endpoint endpoint) {
-        for(PeerConnection p: connections) {
+        for(PeerConnection p: mainLoop().connections) {
             if (p.hasEndpoint() && endpoint.compareTo(p.getEndpoint()) == 0) return p;
         }
 
@@ -613,10 +719,13 @@ public class Session extends Thread {
      * @param s contains configuration parameters for session
      */
     public void configureSession(final Settings s) {
-    	commands.add(new Runnable() {
+    	mainLoop().post(new Runnable() {
 			@Override
 			public void run() {
 				settings = s;
+				bufferPool.setIdleTimeout(s.bufferPoolIdleTimeout*1000);
+				serverManager.setEnabled(s.serverAutoConnect);
+				if (!s.serverAutoConnect) cancelServerRace(ErrorCode.NO_ERROR);
 				listen();
 			}
     	});
@@ -642,20 +751,13 @@ public class Session extends Thread {
 
     /**
      * create new transfer in session or return previous
-     * method synchronized with session second tick method
+     * method synchronized with second tick of transfer's owner loop
      * @param h getHash of file(transfer)
      * @param size of file
      * @return TransferHandle with valid transfer of without
      */
-    public final synchronized TransferHandle addTransfer(Hash h, long size, File file) throws JED2KException {
-        Transfer t = transfers.get(h);
-
-        if (t == null) {
-            t = new Transfer(this, new AddTransferParams(h, Time.currentTimeMillis(), size, file, false));
-            transfers.put(h, t);
-        }
-
-        return new TransferHandle(this, t);
+    public final TransferHandle addTransfer(Hash h, long size, File file) throws JED2KException {
+        return addTransfer(new AddTransferParams(h, Time.currentTimeMillis(), size, file, false));
     }
 
     /**
@@ -666,15 +768,8 @@ public class Session extends Thread {
      * @return
      * @throws JED2KException
      */
-    public final synchronized TransferHandle addTransfer(Hash h, long size, FileHandler handler) throws JED2KException {
-        Transfer t = transfers.get(h);
-
-        if (t == null) {
-            t = new Transfer(this, new AddTransferParams(h, Time.currentTimeMillis(), size, handler, false));
-            transfers.put(h, t);
-        }
-
-        return new TransferHandle(this, t);
+    public final TransferHandle addTransfer(Hash h, long size, FileHandler handler) throws JED2KException {
+        return addTransfer(new AddTransferParams(h, Time.currentTimeMillis(), size, handler, false));
     }
 
     /**
@@ -684,36 +779,44 @@ public class Session extends Thread {
      * @return transfer handle
      * @throws JED2KException
      */
-    public final synchronized  TransferHandle addTransfer(final AddTransferParams atp) throws JED2KException {
-        Transfer t = transfers.get(atp.getHash());
+    public final TransferHandle addTransfer(final AddTransferParams atp) throws JED2KException {
+        EventLoop loop = loopFor(atp.getHash());
+        synchronized (loop.getLock()) {
+            Transfer t = transfers.get(atp.getHash());
+
+            if (t == null) {
+                if (atp.getHandler() != null) atp.getHandler().setHandleCache(fileHandleCache);
+                t = new Transfer(this, atp);
+                transfers.put(atp.getHash(), t);
+                loop.transfers.put(atp.getHash(), t);
+                t.start(loop);
+            }
 
-        if (t == null) {
-            t = new Transfer(this, atp);
-            transfers.put(atp.getHash(), t);
+            return new TransferHandle(this, t);
         }
-
-        return new TransferHandle(this, t);
     }
 
-    public final synchronized TransferHandle findTransfer(final Hash h) {
+    public final TransferHandle findTransfer(final Hash h) {
         return new TransferHandle(this, transfers.get(h));
     }
 
     public void removeTransfer(final Hash h, final boolean deleteFile) {
-        commands.add(new Runnable() {
+        final EventLoop loop = loopFor(h);
+        loop.post(new Runnable() {
             @Override
             public void run() {
                     Transfer t = transfers.get(h);
                     if (t != null) {
                         t.abort(deleteFile, false); // abort transfer, but do not cancel disk tasks to avoid buffers leaking
                         transfers.remove(t.getHash());
+                        loop.transfers.remove(t.getHash());
                         pushAlert(new TransferRemovedAlert(h));
                     }
             }
         });
     }
 
-    public final synchronized List<TransferHandle> getTransfers() {
+    public final List<TransferHandle> getTransfers() {
         LinkedList<TransferHandle> handles = new LinkedList<TransferHandle>();
         for(final Transfer t: transfers.values()) {
             /*if (!t.isAborted())*/ handles.add(new TransferHandle(this, t));
@@ -722,156 +825,396 @@ public class Session extends Thread {
         return handles;
     }
 
+    /**
+     * called by sources scheduler in main loop, requests of one batch go to server in one write
+     */
     void sendSourcesRequest(final Hash h, final long size) {
         if (serverConection != null) serverConection.sendFileSourcesRequest(h, size);
     }
 
-    void sendDhtSourcesRequest(final Hash h, final long size, final Transfer t) {
-        if (dhtTracker != null) {
-            try {
-                DhtTracker dht = dhtTracker.get();
-                if (dht != null) dht.searchSources(h, size, new DhtSourcesCallback(this, t));
-            } catch(JED2KException e) {
-                log.error("[session] dht search sources error {}", e);
+    /**
+     * @return true if server connection is ready for sources requests
+     */
+    boolean isServerReady() {
+        return serverConection != null && serverConection.isHandshakeCompleted();
+    }
+
+    /**
+     * transfer reports its state to sources scheduler, can be called from any loop
+     * weak and starving transfers are also registered for global sources requests
+     */
+    void updateSourcesNeed(final Hash h, final long size, final boolean want, final int sources, final int connected, final long rate) {
+        mainLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                long now = Time.currentTime();
+                int need = sourcesScheduler.update(h, size, want, sources, connected, rate, now);
+                if (need >= SourcesScheduler.NEED_WEAK) globalSources.addFile(h, size, now);
+            }
+        });
+    }
+
+    /**
+     * transfer doesn't want sources anymore, can be called from any loop
+     */
+    void removeSourcesNeed(final Hash h) {
+        mainLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                sourcesScheduler.remove(h);
+                globalSources.removeFile(h);
+                remoteQueues.remove(h);
+            }
+        });
+    }
+
+    /**
+     * source answered queue ranking and will be disconnected, our place is kept by UDP reasks
+     * can be called from any loop
+     * @param h hash of transfer
+     * @param peer source's endpoint in transfer's peers list
+     * @param udp source's UDP endpoint
+     * @param udpVersion source's eMule UDP version
+     * @param status our part status
+     * @param rank position in source's queue
+     */
+    void onRemoteQueued(final Hash h, final Endpoint peer, final Endpoint udp, final int udpVersion, final BitField status, final int rank) {
+        mainLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                log.debug("[session] wait in queue of {} for {} rank {}", peer, h, rank);
+                remoteQueues.enqueue(h, peer, udp, udpVersion, status, rank, Time.currentTime());
+                releaseQueuedPeers();
             }
+        });
+    }
+
+    /**
+     * send reasks of remote queues and give released sources back to transfers
+     * @param now current time
+     */
+    private void remoteQueuesTick(long now) {
+        for(final Pair<Endpoint, ReaskFilePing> rq: remoteQueues.tick(now)) {
+            if (peerUdpConnection != null) peerUdpConnection.write(rq.right, rq.left);
         }
+
+        releaseQueuedPeers();
     }
 
     /**
-     * executes each second
-     * traverse transfers list and try to connect new peers if limits not exceeded and transfer want more peers
+     * sources are released in transfers' owner loops
      */
-    void connectNewPeers() {
-        int stepsSinceLastConnect = 0;
-        int maxConnectionsPerSecond = settings.maxConnectionsPerSecond;
-        int numTransfers = transfers.size();
-        boolean enumerateCandidates = true;
-
-        if (numTransfers > 0 && connections.size() < settings.sessionConnectionsLimit) {
-            //log.finest("connectNewPeers with transfers count " + numTransfers);
-            while (enumerateCandidates) {
-                for (Map.Entry<Hash, Transfer> entry : transfers.entrySet()) {
-                    Transfer t = entry.getValue();
-
-                    if (t.wantMorePeers()) {
-                        try {
-                            if (t.tryConnectPeer(Time.currentTime())) {
-                                --maxConnectionsPerSecond;
-                                stepsSinceLastConnect = 0;
-                            }
-                        } catch (JED2KException e) {
-                            log.error("exception on connect new peer {}", e);
-                        }
-                    }
+    private void releaseQueuedPeers() {
+        for(final RemoteQueueManager.Release r: remoteQueues.released()) {
+            log.debug("[session] {}", r);
+            final Transfer t = transfers.get(r.hash);
+            if (t == null) continue;
+            loopFor(r.hash).execute(new Runnable() {
+                @Override
+                public void run() {
+                    t.onRemoteQueueLeft(r.peer, r.delay, r.failed);
+                }
+            });
+        }
+    }
 
-                    ++stepsSinceLastConnect;
+    /**
+     * answer of source on our reask received on client UDP socket in main loop
+     * @param point sender of datagram
+     * @param packet reask ack, queue full or file not found
+     */
+    void onReaskAnswer(final Endpoint point, final Serializable packet) {
+        boolean matched = false;
+        if (packet instanceof ReaskAck) {
+            matched = remoteQueues.onReaskAck(point, ((ReaskAck)packet).rank & 0xffff, Time.currentTime());
+        } else if (packet instanceof QueueFull) {
+            matched = remoteQueues.onQueueFull(point);
+        } else if (packet instanceof FileNotFound) {
+            matched = remoteQueues.onFileNotFound(point);
+        }
 
-                    // if we have gone two whole loops without
-                    // handing out a single connection, break
-                    if (stepsSinceLastConnect > numTransfers*2) {
-                        enumerateCandidates = false;
-                        break;
-                    }
+        if (!matched) log.debug("[session] unexpected reask answer {} from {}", packet, point);
+        releaseQueuedPeers();
+    }
 
-                    // if we should not make any more connections
-                    // attempts this tick, abort
-                    if (maxConnectionsPerSecond == 0) {
-                        enumerateCandidates = false;
-                        break;
+    /**
+     * reask of peer waiting in our queue received on client UDP socket in main loop
+     * waiting clients get slots in our queue only when they are connected, so only missing file is answered
+     * and peer asks us again by TCP
+     * @param point sender of datagram
+     * @param value reask
+     */
+    void onReaskFilePing(final Endpoint point, final ReaskFilePing value) {
+        if (!transfers.containsKey(value.hash) && peerUdpConnection != null) {
+            peerUdpConnection.write(new FileNotFound(), point);
+        }
+    }
+
+    /**
+     * save request time in transfer's owner loop
+     */
+    private void onSourcesRequested(final Hash h, final boolean dht, final long time) {
+        final Transfer t = transfers.get(h);
+        if (t == null) return;
+        loopFor(h).execute(new Runnable() {
+            @Override
+            public void run() {
+                t.onSourcesRequested(dht, time);
+            }
+        });
+    }
+
+    /**
+     * set servers for UDP global sources requests, usually from server.met
+     * entries with host name instead of address are skipped to avoid name resolution in session thread
+     * @param servers servers list
+     */
+    public void setGlobalServers(final ServerMet servers) {
+        final List<Endpoint> endpoints = new ArrayList<Endpoint>();
+        final List<Pair<String, Endpoint>> tcpServers = new ArrayList<Pair<String, Endpoint>>();
+        for(final ServerMet.ServerMetEntry e: servers.getServers()) {
+            try {
+                endpoints.add(Endpoint.fromString(e.getHost(), e.getPort() + SERVER_UDP_PORT_OFFSET));
+                tcpServers.add(Pair.make(e.getName().isEmpty()?e.getHost():e.getName(), Endpoint.fromString(e.getHost(), e.getPort())));
+            } catch(JED2KException ex) {
+                log.debug("[session] skip server {} without address for global requests", e.getHost());
+            }
+        }
+
+        mainLoop().post(new Runnable() {
+            @Override
+            public void run() {
+                globalSources.setServers(endpoints);
+                serverManager.setServers(tcpServers, Time.currentTime());
+
+                if (udpConnection == null && !endpoints.isEmpty()) {
+                    try {
+                        udpConnection = new UDPConnection(Session.this);
+                    } catch(JED2KException e) {
+                        log.error("[session] unable to open UDP socket {}", e);
                     }
                 }
+            }
+        });
+    }
 
-                // must not happen :) but still
-                if (transfers.isEmpty()) break;
+    /**
+     * ping servers, start login race when there is no server connection and check race result
+     * @param now current time
+     */
+    private void serversTick(long now) {
+        if (udpConnection != null) {
+            for(final Pair<Endpoint, Integer> ping: serverManager.nextPings(now)) {
+                udpConnection.write(new GlobalServerStatusRequest(ping.right)
+                        , new Endpoint(ping.left.getIP(), ping.left.getPort() + SERVER_UDP_PORT_OFFSET));
+            }
+        }
+
+        for(final ServerManager.Server s: serverManager.startRace(now, serverConection != null)) {
+            log.debug("[session] login race to {}", s);
+            try {
+                ServerConnection c = ServerConnection.makeConnection(s.name, this);
+                racingServers.put(s.endpoint, c);
+                c.connect(s.endpoint.toInetSocketAddress());
+            } catch(JED2KException e) {
+                log.warn("[session] unable to connect server {} {}", s, e);
+                serverManager.onFailed(s.endpoint, now);
             }
         }
+
+        checkServerRace(now);
     }
 
     /**
-     * allocate new fixed size byte buffer from session's buffer pool
-     * @return byte buffer from common session buffer pool
+     * make race winner session's server connection and close connections lost race
+     * @param now current time
      */
-    public ByteBuffer allocatePoolBuffer() throws JED2KException {
-        return bufferPool.allocate();
+    private void checkServerRace(long now) {
+        if (racingServers.isEmpty()) return;
+        Endpoint winner = serverManager.winner(now);
+        ServerConnection winnerConnection = null;
+        List<ServerConnection> losers = new ArrayList<ServerConnection>();
+        Iterator<Map.Entry<Endpoint, ServerConnection>> itr = racingServers.entrySet().iterator();
+        while(itr.hasNext()) {
+            Map.Entry<Endpoint, ServerConnection> e = itr.next();
+            if (e.getKey().equals(winner)) {
+                winnerConnection = e.getValue();
+                itr.remove();
+            } else if (!serverManager.isRacing(e.getKey())) {
+                losers.add(e.getValue());
+                itr.remove();
+            }
+        }
+
+        for(final ServerConnection c: losers) {
+            c.close(ErrorCode.NO_ERROR);
+        }
+
+        if (winnerConnection != null) {
+            log.info("[session] server {} won login race", winnerConnection.getIdentifier());
+            serverConection = winnerConnection;
+            serverConection.activate();
+        }
+    }
+
+    private void cancelServerRace(final BaseErrorCode ec) {
+        serverManager.cancelRace();
+        List<ServerConnection> racing = new ArrayList<ServerConnection>(racingServers.values());
+        racingServers.clear();
+        for(final ServerConnection c: racing) {
+            c.close(ec);
+        }
     }
 
     /**
-     * sometimes we need to skip some data received from peer
-     * skip data buffer is one shared data buffer for all connections
-     * @return byte buffer
+     * server connection completed login
+     * @param c connection
      */
-    ByteBuffer allocateSkipDataBufer() {
-        if (skipDataBuffer == null) {
-            skipDataBuffer = ByteBuffer.allocate(Constants.BLOCK_SIZE_INT);
+    void onServerLogin(final ServerConnection c) {
+        if (c == serverConection) {
+            c.activate();
+            return;
         }
 
-        return skipDataBuffer.duplicate();
+        for(final Map.Entry<Endpoint, ServerConnection> e: racingServers.entrySet()) {
+            if (e.getValue() == c) {
+                serverManager.onLogin(e.getKey(), !Utils.isLowId(c.getClientId()));
+                checkServerRace(Time.currentTime());
+                return;
+            }
+        }
     }
 
-    Pool<ByteBuffer> getBufferPool() {
-        return bufferPool;
+    /**
+     * server connection was closed, racing connection is considered as failed login
+     * @param c connection
+     * @param ec reason
+     */
+    void onServerConnectionClosed(final ServerConnection c, final BaseErrorCode ec) {
+        long now = Time.currentTime();
+        if (c == serverConection) {
+            clientId = 0;
+            tcpFlags = 0;
+            auxPort = 0;
+            serverConection = null;
+            callbacks.clear();
+            sourcesScheduler.resetServer();
+            serverManager.onActiveClosed(ec != ErrorCode.NO_ERROR && ec != ErrorCode.SESSION_STOPPING, now);
+            pushAlert(new ServerConectionClosed(c.getIdentifier(), ec));
+            return;
+        }
+
+        Iterator<Map.Entry<Endpoint, ServerConnection>> itr = racingServers.entrySet().iterator();
+        while(itr.hasNext()) {
+            Map.Entry<Endpoint, ServerConnection> e = itr.next();
+            if (e.getValue() == c) {
+                log.debug("[session] server {} failed login race {}", c.getIdentifier(), ec);
+                itr.remove();
+                serverManager.onFailed(e.getKey(), now);
+                checkServerRace(now);
+                return;
+            }
+        }
     }
 
     /**
-     * provide one per session temporary buffer for inflate z data
-     * @return common z buffer for decompress compressed data
+     * UDP status answer of server
+     * @param point sender of datagram
+     * @param value answer
      */
-    byte[] allocateTemporaryInflateBuffer() {
-        zBufferLastAllocatedTime = Time.currentTime();
-        if (zBuffer == null) zBuffer = new byte[Constants.BLOCK_SIZE_INT];
-        return zBuffer;
+    void onServerStatusResult(final Endpoint point, final GlobalServerStatusResult value) {
+        if (!serverManager.onPingAnswer(point.getIP(), value.challenge, value.usersCount, value.filesCount, value.maxUsers, Time.currentTime())) {
+            log.debug("[session] unexpected server status from {}", point);
+        }
     }
 
     /**
-     * execute async disk operation
-     * @param task special task
-     * @return future
+     * @param point sender of datagram
+     * @return true if datagram was sent by server from global servers list
      */
-    public void submitDiskTask(TransferCallable<AsyncOperationResult> task) {
-        assert task.getTransfer() != null;
-        aioFutures.add(diskIOService.submit(task));
-        aioOrigins.add(task.getTransfer());
-        assert aioFutures.size() == aioOrigins.size();
+    boolean isUdpServer(final Endpoint point) {
+        return globalSources.isServer(point.getIP());
     }
 
-    public void removeDiskTask(final Transfer t) {
-        assert aioFutures.size() == aioOrigins.size();
-
-        Iterator<Transfer> trItr = aioOrigins.iterator();
-        Iterator<Future<AsyncOperationResult>> fItr = aioFutures.iterator();
-        while(trItr.hasNext()) {
-            Future<AsyncOperationResult> future = fItr.next();
-            Transfer tran = trItr.next();
-
-            if (tran == t) {
-                future.cancel(false);
-                trItr.remove();
-                fItr.remove();
+    /**
+     * global sources answer received on UDP socket in main loop
+     * low id sources are skipped since callback is possible only through server we are connected to
+     * @param value sources of file
+     */
+    void onGlobalFoundSources(final FoundFileSources value) {
+        final Transfer transfer = transfers.get(value.hash);
+        if (transfer == null) return;
+
+        final List<Endpoint> sources = new ArrayList<Endpoint>();
+        for(final Endpoint endpoint: value.sources) {
+            if (!Utils.isLowId(endpoint.getIP()) && endpoint.getPort() != 0) sources.add(endpoint);
+        }
+
+        log.debug("[session] global sources {} of {} for {}", sources.size(), value.sources.size(), value.hash);
+        if (sources.isEmpty()) return;
+
+        // peers must be added in transfer's owner loop
+        loopFor(value.hash).execute(new Runnable() {
+            @Override
+            public void run() {
+                for(final Endpoint endpoint: sources) {
+                    try {
+                        transfer.addPeer(endpoint, PeerInfo.SERVER);
+                    } catch(JED2KException e) {
+                        log.error("[session] unable to add global source {} to {} {}", endpoint, transfer, e);
+                        break;
+                    }
+                }
             }
+        });
+    }
+
+    /**
+     * @return true if search was started
+     */
+    boolean sendDhtSourcesRequest(final Hash h, final long size, final Transfer t) {
+        DhtTracker dht = dhtTracker.get();
+        if (dht == null) return false;
+
+        try {
+            log.debug("[session] request peers on KAD {}", h);
+            dht.searchSources(h, size, new DhtSourcesCallback(this, t));
+            return true;
+        } catch(JED2KException e) {
+            log.error("[session] dht search sources error {}", e);
         }
+
+        return false;
     }
 
-    private void processDiskTasks() {
-        assert aioOrigins.size() == aioFutures.size();
+    /**
+     * allocate new fixed size byte buffer from session's buffer pool
+     * @return byte buffer from common session buffer pool
+     */
+    public ByteBuffer allocatePoolBuffer() throws JED2KException {
+        return bufferPool.allocate();
+    }
 
-        while(!aioFutures.isEmpty()) {
-            Future<AsyncOperationResult> res = aioFutures.peek();
-            if (!res.isDone()) break;
-            res = aioFutures.poll();
-            Transfer t = aioOrigins.poll();
+    Pool<ByteBuffer> getBufferPool() {
+        return bufferPool;
+    }
 
-            try {
-                res.get().onCompleted();
-            } catch (InterruptedException e) {
-                log.warn("second tick aio InterruptedException {}", e);
-            } catch (ExecutionException e) {
-                log.warn("second tick aio ExecutionException {}", e);
-            } catch(Exception e) {
-                log.error("general error on processing async operation result {}", e);
-            }
-        }
+    /**
+     * execute async disk operation
+     * @param task special task
+     * @return future
+     */
+    public void submitDiskTask(TransferCallable<AsyncOperationResult> task) {
+        assert task.getTransfer() != null;
+        loopFor(task.getTransfer().getHash()).submitDiskTask(diskEngine, task);
+    }
 
-        assert aioFutures.size() == aioOrigins.size();
+    /**
+     * cancel all disk tasks of transfer are not started yet
+     * @param t transfer
+     */
+    public void removeDiskTask(final Transfer t) {
+        t.cancelDiskTasks();
     }
 
     @Override
@@ -882,6 +1225,11 @@ public class Session extends Thread {
     public Hash getUserAgent() { return settings.userAgent; }
     public int getClientId() { return clientId; }
     public int getListenPort() { return settings.listenPort; }
+
+    /**
+     * @return port of client UDP socket or zero when socket is not opened
+     */
+    public int getUdpPort() { return udpPort; }
     public String getClientName() { return settings.clientName; }
     public String getModName() { return settings.modName; }
     public int getAppVersion() { return settings.version; }
@@ -900,10 +1248,10 @@ public class Session extends Thread {
 
     /**
      * stop main session cycle
-     * guarantees all previous commands were completed
+     * guarantees all commands posted before to any event loop were completed when session finished
      */
     public void abort() {
-        commands.add(new Runnable() {
+        mainLoop().post(new Runnable() {
             @Override
             public void run() {
                 aborted = true;
@@ -915,27 +1263,40 @@ public class Session extends Thread {
      * save resume data on all transfers needs to save resume data
      */
     public void saveResumeData() {
-        commands.add(new Runnable() {
-            @Override
-            public void run() {
-                for(final Transfer t: transfers.values()) {
-                    if (t.isNeedSaveResumeData()) {
-                        try {
-                            AddTransferParams atp = new AddTransferParams(t.getHash(), t.getCreateTime(), t.size(), t.getFile(), t.isPaused());
-                            atp.resumeData.setData(t.resumeData());
-                            pushAlert(new TransferResumeDataAlert(t.getHash(), atp));
-                        } catch(JED2KException e) {
-                            log.error("prepare resume data for {} failed {}", t.getHash(), e);
+        for(final EventLoop loop: loops) {
+            loop.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (final Transfer t : loop.transfers.values()) {
+                        if (t.isNeedSaveResumeData()) {
+                            try {
+                                AddTransferParams atp = new AddTransferParams(t.getHash(), t.getCreateTime(), t.size(), t.getFile(), t.isPaused());
+                                atp.resumeData.setData(t.resumeData());
+                                pushAlert(new TransferResumeDataAlert(t.getHash(), atp));
+                            } catch (JED2KException e) {
+                                log.error("prepare resume data for {} failed {}", t.getHash(), e);
+                            }
                         }
                     }
                 }
-            }
-        });
+            });
+        }
     }
 
-    synchronized  public Pair<Long, Long> getDownloadUploadRate() {
-        long dr = accumulator.downloadRate();
-        long ur = accumulator.uploadRate();
+    /**
+     * rates are summarized over all loops, each loop is locked separately
+     * @return download and upload rates of session
+     */
+    public Pair<Long, Long> getDownloadUploadRate() {
+        long dr = 0;
+        long ur = 0;
+        for(final EventLoop loop: loops) {
+            synchronized (loop.getLock()) {
+                dr += loop.accumulator.downloadRate();
+                ur += loop.accumulator.uploadRate();
+            }
+        }
+
         return Pair.make(dr, ur);
     }
 
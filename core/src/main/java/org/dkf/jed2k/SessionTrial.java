@@ -40,6 +40,11 @@ public class SessionTrial extends Session {
         }
     }
 
+    @Override
+    boolean isServerReady() {
+        return true;
+    }
+
     @Override
     public String toString() {
         return "SessionTrial";
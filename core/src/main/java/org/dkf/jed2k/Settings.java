@@ -7,6 +7,10 @@ public class Settings {
     public String modName = "jed2k";
     public String clientName = "jed2k";
     public int listenPort = 4661;
+
+    /**
+     * client UDP port for reasks of remote upload queues, applied on session start, zero disables UDP reasks
+     */
     public int udpPort = 4662;
     public int version = 0x3c;
     public int modMajor = 0;
@@ -18,6 +22,16 @@ public class Settings {
     public int peerConnectionTimeout = 5;
     public int sessionConnectionsLimit = 20;
     public int bufferPoolSize = 250;    // dataSize of buffer pool in blocks of 180K
+
+    /**
+     * use direct buffers in buffer pool, applied on session creation only
+     */
+    public boolean bufferPoolDirect = false;
+
+    /**
+     * free buffers of pool unused longer than this time in seconds are released, zero keeps them forever
+     */
+    public long bufferPoolIdleTimeout = 60;
     public int maxConnectionsPerSecond = 10;    // for testing purposes
     public int compressionVersion = 0;  // use 1 for activate compression
     public int serverSearchTimeout = 15;    // seconds
@@ -27,6 +41,46 @@ public class Settings {
      */
     public long serverPingTimeout = 0;
 
+    /**
+     * count of selector event loops peer connections and transfers are distributed on
+     * one loop means all network processing in session thread
+     */
+    public int eventLoops = 1;
+
+    /**
+     * threads of disk engine for file access and for pieces hashing, applied on session creation only
+     * operations of one transfer are executed serially, different transfers in parallel
+     */
+    public int diskIOThreads = 2;
+    public int hashThreads = 1;
+
+    /**
+     * max count of open files in session, applied on session creation only
+     */
+    public int openFilesLimit = 64;
+
+    /**
+     * count of peers we upload to simultaneously, zero disables upload
+     * slots are shared by all event loops, queue size is divided between them
+     */
+    public int uploadSlots = 4;
+
+    /**
+     * upload rate limit of one slot in bytes per second, zero means unlimited
+     */
+    public int uploadSlotRate = 0;
+
+    /**
+     * max count of peers waiting for upload slot
+     */
+    public int uploadQueueSize = 100;
+
+    /**
+     * connect to the best servers of global servers list automatically and reconnect after connection lost
+     * servers are set by session's setGlobalServers, explicit disconnect turns automatic mode off until next configuration
+     */
+    public boolean serverAutoConnect = false;
+
     @Override
     public String toString() {
         return "Settings{" +
@@ -45,10 +99,20 @@ public class Settings {
                 ", peerConnectionTimeout=" + peerConnectionTimeout +
                 ", sessionConnectionsLimit=" + sessionConnectionsLimit +
                 ", bufferPoolSize=" + bufferPoolSize +
+                ", bufferPoolDirect=" + bufferPoolDirect +
+                ", bufferPoolIdleTimeout=" + bufferPoolIdleTimeout +
                 ", maxConnectionsPerSecond=" + maxConnectionsPerSecond +
                 ", compressionVersion=" + compressionVersion +
                 ", serverSearchTimeout=" + serverSearchTimeout +
                 ", serverPingTimeout=" + serverPingTimeout +
+                ", eventLoops=" + eventLoops +
+                ", diskIOThreads=" + diskIOThreads +
+                ", hashThreads=" + hashThreads +
+                ", openFilesLimit=" + openFilesLimit +
+                ", uploadSlots=" + uploadSlots +
+                ", uploadSlotRate=" + uploadSlotRate +
+                ", uploadQueueSize=" + uploadQueueSize +
+                ", serverAutoConnect=" + serverAutoConnect +
                 '}';
     }
 }
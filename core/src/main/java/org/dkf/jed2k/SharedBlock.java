@@ -0,0 +1,125 @@
+package org.dkf.jed2k;
+
+import org.dkf.jed2k.data.Range;
+import org.dkf.jed2k.data.Region;
+
+import java.nio.ByteBuffer;
+
+/**
+ * end game block received by several peers, each peer requests own part of block's remaining bytes
+ * all peers read data into one buffer and report each received chunk, block completes when no bytes are left
+ * and is written by the peer whose chunk was the last one
+ * all owners are connections of one transfer, so block is used by loop's thread only
+ * Created by agent on 18.10.2026.
+ */
+public class SharedBlock {
+
+    /**
+     * remaining part of block smaller than two data packets is not split
+     */
+    public static final long MIN_SPLIT_SIZE = 2*10240;
+
+    private final ByteBuffer buffer;
+    private Region left;
+    private final int blockSize;
+    private int refs = 1;
+    private boolean written = false;
+
+    /**
+     * @param buffer buffer of first owner
+     * @param left range of block not received yet by first owner
+     * @param blockSize size of whole block
+     */
+    public SharedBlock(final ByteBuffer buffer, final Range left, int blockSize) {
+        this(buffer, new Region(left), blockSize);
+    }
+
+    /**
+     * @param buffer buffer of first owner
+     * @param left ranges of block not received yet by first owner
+     * @param blockSize size of whole block
+     */
+    public SharedBlock(final ByteBuffer buffer, final Region left, int blockSize) {
+        this.buffer = buffer;
+        Range[] ranges = new Range[left.size()];
+        for(int i = 0; i < ranges.length; ++i) {
+            ranges[i] = Range.make(left.get(i).left, left.get(i).right);
+        }
+
+        this.left = new Region(ranges);
+
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * new owner takes upper half of last remaining range, previous owner of that range must drop it from own part
+     * remaining ranges are kept separated by owners, so the next split divides the newest owner's part
+     * @return range for new owner or null if remaining range is too small
+     */
+    public Range split() {
+        if (left.empty()) return null;
+        Range last = left.get(left.size() - 1);
+        if (last.right - last.left < MIN_SPLIT_SIZE) return null;
+        ++refs;
+        Range part = Range.make(last.left + (last.right - last.left)/2, last.right);
+        Range[] ranges = new Range[left.size() + 1];
+        for(int i = 0; i < left.size() - 1; ++i) {
+            ranges[i] = left.get(i);
+        }
+
+        ranges[ranges.length - 2] = Range.make(last.left, part.left);
+        ranges[ranges.length - 1] = Range.make(part.left, part.right);
+        left = new Region(ranges);
+        return part;
+    }
+
+    /**
+     * @param r range of block was received by one of owners
+     * @return true if all block's data received
+     */
+    public boolean receive(final Range r) {
+        left.sub(r);
+        return left.empty();
+    }
+
+    /**
+     * @return independent view of buffer for new owner's reading
+     */
+    public ByteBuffer view() {
+        return buffer.duplicate();
+    }
+
+    /**
+     * @return buffer with whole block prepared for reading
+     */
+    public ByteBuffer block() {
+        buffer.clear();
+        buffer.limit(blockSize);
+        return buffer;
+    }
+
+    /**
+     * buffer was passed to disk and must not return to pool by owners
+     */
+    public void markWritten() {
+        written = true;
+    }
+
+    /**
+     * owner doesn't use block anymore
+     * @return true if buffer must be returned to pool
+     */
+    public boolean release() {
+        assert refs > 0;
+        return --refs == 0 && !written;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("shared block refs{%d} left{%d}", refs, left.size());
+    }
+}
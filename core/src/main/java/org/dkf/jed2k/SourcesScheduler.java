@@ -0,0 +1,225 @@
+package org.dkf.jed2k;
+
+import org.dkf.jed2k.protocol.Hash;
+
+import java.util.*;
+
+/**
+ * session wide pacing of sources requests to server and KAD
+ * transfers report their state periodically, scheduler ranks them by need:
+ * transfer without connections is starving, transfer with few connections or low rate is weak,
+ * others are satisfied and asked rarely, transfer doesn't want sources when it is paused, finished or has full peers list
+ * server receives batch of requests not often than batch interval, KAD searches are spaced and limited in count
+ * in both cases the most needy transfers asked longest time ago go first
+ * not thread safe - used by main loop only
+ * Created by agent on 18.10.2026.
+ */
+public class SourcesScheduler {
+    public static final int NEED_NONE = -1;
+    public static final int NEED_SATISFIED = 0;
+    public static final int NEED_WEAK = 1;
+    public static final int NEED_STARVING = 2;
+
+    public static final int WEAK_CONNECTIONS = 3;
+    public static final long WEAK_RATE = 10*1024;
+
+    public static final int MAX_SERVER_REQUESTS_PER_BATCH = 15;
+    public static final long SERVER_BATCH_INTERVAL = Time.seconds(10);
+    public static final int MAX_KAD_SEARCHES = 3;
+    public static final long KAD_SEARCH_INTERVAL = Time.seconds(10);
+    public static final long KAD_SEARCH_TIMEOUT = Time.minutes(2);
+    public static final long ENTRY_EXPIRATION = Time.seconds(30);
+
+    /**
+     * reask intervals indexed by need
+     */
+    private static final long[] SERVER_REASK = {Time.minutes(20), Time.minutes(5), Time.minutes(1)};
+    private static final long[] KAD_REASK = {Time.minutes(60), Time.minutes(30), Time.minutes(10)};
+
+    private static class Entry {
+        final Hash hash;
+        long size;
+        int need = NEED_NONE;
+        int sources = 0;
+        long lastUpdate;
+        long lastServerRequest = -1;
+        long lastKadRequest = -1;
+        long kadStarted = -1;
+
+        Entry(final Hash hash, long now) {
+            this.hash = hash;
+            lastUpdate = now;
+        }
+    }
+
+    private static class ServerOrder implements Comparator<Entry> {
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            if (o1.need != o2.need) return o2.need - o1.need;
+            if (o1.lastServerRequest != o2.lastServerRequest) return o1.lastServerRequest < o2.lastServerRequest?-1:1;
+            return o1.sources - o2.sources;
+        }
+    }
+
+    private static class KadOrder implements Comparator<Entry> {
+        @Override
+        public int compare(Entry o1, Entry o2) {
+            if (o1.need != o2.need) return o2.need - o1.need;
+            if (o1.lastKadRequest != o2.lastKadRequest) return o1.lastKadRequest < o2.lastKadRequest?-1:1;
+            return o1.sources - o2.sources;
+        }
+    }
+
+    private final Map<Hash, Entry> entries = new HashMap<Hash, Entry>();
+    private long lastServerBatch = -1;
+    private long lastKadSearch = -1;
+    private int activeKadSearches = 0;
+
+    /**
+     * @param want transfer wants more sources
+     * @param connected count of transfer's connections
+     * @param rate transfer's download rate in bytes per second
+     * @return need level of transfer
+     */
+    public static int need(boolean want, int connected, long rate) {
+        if (!want) return NEED_NONE;
+        if (connected == 0) return NEED_STARVING;
+        if (connected < WEAK_CONNECTIONS || rate < WEAK_RATE) return NEED_WEAK;
+        return NEED_SATISFIED;
+    }
+
+    /**
+     * register transfer's current state, transfer must report itself not rarely than expiration time
+     * @param h hash of transfer
+     * @param size size of file
+     * @param want transfer wants more sources
+     * @param sources count of known sources
+     * @param connected count of connections
+     * @param rate download rate in bytes per second
+     * @param now current time
+     * @return need level of transfer
+     */
+    public int update(final Hash h, long size, boolean want, int sources, int connected, long rate, long now) {
+        Entry e = entries.get(h);
+        if (e == null) {
+            e = new Entry(h, now);
+            entries.put(h, e);
+        }
+
+        e.size = size;
+        e.need = need(want, connected, rate);
+        e.sources = sources;
+        e.lastUpdate = now;
+        return e.need;
+    }
+
+    public void remove(final Hash h) {
+        Entry e = entries.remove(h);
+        if (e != null && e.kadStarted != -1) --activeKadSearches;
+    }
+
+    /**
+     * server connection was changed, sources of the new server are not known yet
+     */
+    public void resetServer() {
+        for(final Entry e: entries.values()) {
+            e.lastServerRequest = -1;
+        }
+    }
+
+    /**
+     * @param now current time
+     * @param canSend server connection is ready for requests
+     * @return files must be requested on server now as hash and size pairs
+     */
+    public List<Pair<Hash, Long>> nextServerBatch(long now, boolean canSend) {
+        expire(now);
+        if (!canSend) return Collections.emptyList();
+        if (lastServerBatch != -1 && now - lastServerBatch < SERVER_BATCH_INTERVAL) return Collections.emptyList();
+
+        List<Entry> candidates = new ArrayList<Entry>();
+        for(final Entry e: entries.values()) {
+            if (e.need != NEED_NONE && (e.lastServerRequest == -1 || now - e.lastServerRequest >= SERVER_REASK[e.need])) {
+                candidates.add(e);
+            }
+        }
+
+        if (candidates.isEmpty()) return Collections.emptyList();
+        Collections.sort(candidates, new ServerOrder());
+
+        List<Pair<Hash, Long>> res = new ArrayList<Pair<Hash, Long>>();
+        for(final Entry e: candidates) {
+            if (res.size() == MAX_SERVER_REQUESTS_PER_BATCH) break;
+            e.lastServerRequest = now;
+            res.add(Pair.make(e.hash, e.size));
+        }
+
+        lastServerBatch = now;
+        return res;
+    }
+
+    /**
+     * @param now current time
+     * @param canSearch KAD is available
+     * @return file must be searched on KAD now as hash and size pair or null
+     */
+    public Pair<Hash, Long> nextKadSearch(long now, boolean canSearch) {
+        expire(now);
+        if (!canSearch || activeKadSearches >= MAX_KAD_SEARCHES) return null;
+        if (lastKadSearch != -1 && now - lastKadSearch < KAD_SEARCH_INTERVAL) return null;
+
+        Entry best = null;
+        KadOrder order = new KadOrder();
+        for(final Entry e: entries.values()) {
+            if (e.need == NEED_NONE || e.kadStarted != -1) continue;
+            if (e.lastKadRequest != -1 && now - e.lastKadRequest < KAD_REASK[e.need]) continue;
+            if (best == null || order.compare(e, best) < 0) best = e;
+        }
+
+        if (best == null) return null;
+        best.lastKadRequest = now;
+        best.kadStarted = now;
+        ++activeKadSearches;
+        lastKadSearch = now;
+        return Pair.make(best.hash, best.size);
+    }
+
+    /**
+     * KAD search of file was completed
+     * @param h hash of file
+     */
+    public void kadSearchFinished(final Hash h) {
+        Entry e = entries.get(h);
+        if (e != null && e.kadStarted != -1) {
+            e.kadStarted = -1;
+            --activeKadSearches;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int activeKadSearches() {
+        return activeKadSearches;
+    }
+
+    /**
+     * remove transfers stopped to report themselves and forget KAD searches without result
+     */
+    private void expire(long now) {
+        Iterator<Entry> itr = entries.values().iterator();
+        while(itr.hasNext()) {
+            Entry e = itr.next();
+            if (e.kadStarted != -1 && now - e.kadStarted > KAD_SEARCH_TIMEOUT) {
+                e.kadStarted = -1;
+                --activeKadSearches;
+            }
+
+            if (now - e.lastUpdate > ENTRY_EXPIRATION) {
+                if (e.kadStarted != -1) --activeKadSearches;
+                itr.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,509 @@
+package org.dkf.jed2k;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dkf.jed2k.data.Range;
+import org.dkf.jed2k.exception.ErrorCode;
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.Hash;
+import org.dkf.jed2k.util.ThreadPool;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * optional local HTTP server streams files of transfers by hash: GET http://127.0.0.1:port/HASH[/name]
+ * single byte range requests are supported, so media players can seek in file while it is downloading
+ * only verified pieces are sent, file's data goes to socket by FileChannel.transferTo without copying to heap
+ * request waits for missing piece and switches transfer to streaming mode from position it needs
+ * server is external to session like DHT tracker: create, start and stop it by abort
+ * Created by agent on 18.10.2026.
+ */
+@Slf4j
+public class StreamServer extends Thread {
+    public static final int MAX_CLIENTS = 4;
+    public static final int MAX_HEADER_SIZE = 8192;
+    public static final long PIECE_WAIT_TIMEOUT = Time.seconds(60);
+
+    /**
+     * requests of one transfer which had to wait for pieces, more are closed so one file can't hold all client threads
+     */
+    public static final int MAX_WAITERS = 2;
+    private static final long PIECE_WAIT_INTERVAL = 200;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    /**
+     * parsed request line and headers server uses
+     */
+    public static class Request {
+        public final String method;
+        public final String path;
+        public final String range;
+
+        public Request(final String method, final String path, final String range) {
+            this.method = method;
+            this.path = path;
+            this.range = range;
+        }
+    }
+
+    private final Session session;
+    private final ServerSocketChannel ssc;
+    private final ExecutorService clients = ThreadPool.newThreadPool("stream server", MAX_CLIENTS, true);
+
+    /**
+     * position of request waiting for piece
+     */
+    private static class Waiter {
+        long position;
+    }
+
+    /**
+     * requests waiting for pieces of transfer, streaming starts from the lowest position of them
+     * and is stopped when last of them finished
+     */
+    private final Map<Hash, List<Waiter>> streams = new HashMap<Hash, List<Waiter>>();
+    private volatile boolean aborted = false;
+
+    /**
+     * listen on loopback interface only
+     * @param session session owns transfers
+     * @param port listen port, zero for any free port
+     * @throws JED2KException when port can't be bound
+     */
+    public StreamServer(final Session session, int port) throws JED2KException {
+        this(session, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public StreamServer(final Session session, final InetSocketAddress point) throws JED2KException {
+        super("stream server");
+        setDaemon(true);
+        this.session = session;
+        try {
+            ssc = ServerSocketChannel.open();
+            ssc.socket().setReuseAddress(true);
+            ssc.socket().bind(point);
+        } catch(IOException e) {
+            throw new JED2KException(e, ErrorCode.IO_EXCEPTION);
+        }
+    }
+
+    public int getPort() {
+        return ssc.socket().getLocalPort();
+    }
+
+    /**
+     * @param h transfer's hash
+     * @return url of transfer's file on this server
+     */
+    public String getUrl(final Hash h) {
+        return "http://" + ssc.socket().getInetAddress().getHostAddress() + ":" + getPort() + "/" + h.toString();
+    }
+
+    @Override
+    public void run() {
+        log.info("[stream server] started on {}", getPort());
+
+        try {
+            while(!aborted) {
+                final SocketChannel sc = ssc.accept();
+                try {
+                    clients.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            serve(sc);
+                        }
+                    });
+                } catch(RejectedExecutionException e) {
+                    log.warn("[stream server] too many clients, reject {}", sc.socket().getRemoteSocketAddress());
+                    close(sc);
+                }
+            }
+        } catch(IOException e) {
+            if (!aborted) log.error("[stream server] accept failed {}", e);
+        } finally {
+            clients.shutdownNow();
+            try {
+                ssc.close();
+            } catch(IOException e) {
+                log.error("[stream server] listen socket close error {}", e);
+            }
+
+            log.info("[stream server] finished");
+        }
+    }
+
+    /**
+     * stop accepting requests and interrupt active requests
+     */
+    public void abort() {
+        aborted = true;
+        try {
+            ssc.close();
+        } catch(IOException e) {
+            log.error("[stream server] listen socket close error {}", e);
+        }
+    }
+
+    private void serve(final SocketChannel sc) {
+        Hash h = null;
+        TransferHandle handle = null;
+        Waiter waiter = null;
+        try {
+            sc.socket().setSoTimeout((int)Time.seconds(30));
+            Request rq = parseRequest(sc.socket().getInputStream());
+
+            if (!"GET".equals(rq.method) && !"HEAD".equals(rq.method)) {
+                respond(sc, "405 Method Not Allowed");
+                return;
+            }
+
+            h = parseHash(rq.path);
+            handle = (h != null)?session.findTransfer(h):null;
+            File file = (handle != null)?handle.getFile():null;
+            if (file == null) {
+                respond(sc, "404 Not Found");
+                return;
+            }
+
+            long size = handle.getSize();
+            Range r;
+            try {
+                r = parseRange(rq.range, size);
+            } catch(JED2KException e) {
+                respond(sc, "416 Range Not Satisfiable", "Content-Range: bytes */" + size);
+                return;
+            }
+
+            StringBuilder sb = new StringBuilder();
+            String contentType = URLConnection.guessContentTypeFromName(file.getName());
+            sb.append("Content-Type: ").append((contentType != null)?contentType:"application/octet-stream").append("\r\n");
+            sb.append("Accept-Ranges: bytes\r\n");
+
+            boolean partial = isByteRange(rq.range);
+            if (partial) {
+                sb.append("Content-Range: bytes ").append(r.left).append("-").append(r.right - 1).append("/").append(size).append("\r\n");
+            }
+
+            sb.append("Content-Length: ").append((r != null)?r.right - r.left:0);
+
+            // waiter is taken before headers, response can't be cut after status was sent
+            boolean get = "GET".equals(rq.method) && r != null;
+            if (get && !haveRange(handle, r)) {
+                waiter = acquireStream(h);
+                if (waiter == null) {
+                    log.debug("[stream server] {} too many waiting requests", h);
+                    respond(sc, "503 Service Unavailable", "Content-Length: 0\r\nRetry-After: 1");
+                    return;
+                }
+            }
+
+            respond(sc, partial?"206 Partial Content":"200 OK", sb.toString());
+
+            if (get) {
+                stream(h, handle, file, r, sc, waiter);
+            }
+        } catch(JED2KException e) {
+            log.debug("[stream server] bad request {}", e);
+            try {
+                respond(sc, "400 Bad Request");
+            } catch(IOException ex) {
+                log.debug("[stream server] unable to respond {}", ex);
+            }
+        } catch(IOException e) {
+            // player closes connection when it seeks
+            log.debug("[stream server] connection closed {}", e.toString());
+        } finally {
+            if (waiter != null) releaseStream(h, handle, waiter);
+            close(sc);
+        }
+    }
+
+    /**
+     * @return true when all pieces of range are verified and range can be sent without waiting
+     */
+    private static boolean haveRange(final TransferHandle handle, final Range r) {
+        if (r.right <= r.left) return true;
+        for(int i = (int)(r.left / Constants.PIECE_SIZE); i <= (int)((r.right - 1) / Constants.PIECE_SIZE); ++i) {
+            if (!handle.havePiece(i)) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * send range in parts of verified pieces, wait for next piece when it is missing
+     * @param waiter request's waiter taken before headers, null when range was complete
+     */
+    private void stream(final Hash h, final TransferHandle handle, final File file, final Range r, final SocketChannel sc, final Waiter waiter) throws IOException {
+        FileInputStream is = null;
+        long pos = r.left;
+
+        try {
+            while(pos < r.right && !aborted) {
+                int piece = (int)(pos / Constants.PIECE_SIZE);
+
+                if (!handle.havePiece(piece)) {
+                    if (waiter == null) {
+                        log.debug("[stream server] {} piece {} lost after response started", h, piece);
+                        return;
+                    }
+
+                    // bump priority of pieces from current position
+                    updateStream(h, handle, waiter, pos);
+                    if (!waitPiece(handle, piece, sc)) {
+                        log.debug("[stream server] {} piece {} wait cancelled", h, piece);
+                        return;
+                    }
+                }
+
+                // send all sequential pieces we have in one call
+                long end = Math.min(r.right, (piece + 1)*Constants.PIECE_SIZE);
+                while(end < r.right && handle.havePiece((int)(end / Constants.PIECE_SIZE))) {
+                    end = Math.min(r.right, end + Constants.PIECE_SIZE);
+                }
+
+                if (is == null) is = new FileInputStream(file);
+                FileChannel fc = is.getChannel();
+
+                while(pos < end) {
+                    long n = fc.transferTo(pos, end - pos, sc);
+                    if (n <= 0) throw new IOException("file is shorter than transfer size");
+                    pos += n;
+                }
+            }
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch(IOException e) {
+                    log.error("[stream server] file close error {}", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true when piece is ready, false on timeout, abort or when player closed connection
+     */
+    private boolean waitPiece(final TransferHandle handle, int piece, final SocketChannel sc) throws IOException {
+        long deadline = Time.currentTimeHiRes() + PIECE_WAIT_TIMEOUT;
+        ByteBuffer probe = ByteBuffer.allocate(256);
+        while(!aborted && handle.isValid() && Time.currentTimeHiRes() < deadline) {
+            if (handle.havePiece(piece)) return true;
+            if (isClosedByPeer(sc, probe)) return false;
+            try {
+                Thread.sleep(PIECE_WAIT_INTERVAL);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * player sends nothing after request, so end of stream means it went away, other bytes are dropped
+     * @param sc request's channel
+     * @param probe scratch buffer
+     * @return true if remote side closed connection
+     */
+    private static boolean isClosedByPeer(final SocketChannel sc, final ByteBuffer probe) throws IOException {
+        sc.configureBlocking(false);
+        try {
+            int n;
+            do {
+                probe.clear();
+                n = sc.read(probe);
+            } while(n > 0);
+
+            return n == -1;
+        } finally {
+            sc.configureBlocking(true);
+        }
+    }
+
+    /**
+     * @return new waiter or null when transfer has too many waiting requests
+     */
+    private synchronized Waiter acquireStream(final Hash h) {
+        List<Waiter> waiters = streams.get(h);
+        if (waiters == null) {
+            waiters = new ArrayList<Waiter>(MAX_WAITERS);
+            streams.put(h, waiters);
+        }
+
+        if (waiters.size() >= MAX_WAITERS) return null;
+        Waiter w = new Waiter();
+        waiters.add(w);
+        return w;
+    }
+
+    /**
+     * move waiter's position, transfer streams from the lowest position of all its waiters
+     */
+    private synchronized void updateStream(final Hash h, final TransferHandle handle, final Waiter waiter, long position) {
+        waiter.position = position;
+        handle.setStreaming(lowestPosition(streams.get(h)), 0);
+    }
+
+    private synchronized void releaseStream(final Hash h, final TransferHandle handle, final Waiter waiter) {
+        List<Waiter> waiters = streams.get(h);
+        assert waiters != null;
+        if (waiters != null) waiters.remove(waiter);
+        if (waiters == null || waiters.isEmpty()) {
+            streams.remove(h);
+            handle.stopStreaming();
+        } else {
+            handle.setStreaming(lowestPosition(waiters), 0);
+        }
+    }
+
+    private static long lowestPosition(final List<Waiter> waiters) {
+        long res = Long.MAX_VALUE;
+        for(final Waiter w: waiters) {
+            res = Math.min(res, w.position);
+        }
+
+        return res;
+    }
+
+    private static void respond(final SocketChannel sc, final String status) throws IOException {
+        respond(sc, status, "Content-Length: 0");
+    }
+
+    private static void respond(final SocketChannel sc, final String status, final String headers) throws IOException {
+        ByteBuffer buffer = ASCII.encode("HTTP/1.1 " + status + "\r\n" + headers + "\r\nConnection: close\r\n\r\n");
+        while(buffer.hasRemaining()) sc.write(buffer);
+    }
+
+    private static void close(final SocketChannel sc) {
+        try {
+            sc.close();
+        } catch(IOException e) {
+            log.error("[stream server] socket close error {}", e);
+        }
+    }
+
+    /**
+     * read request line and headers until empty line
+     * @param is request stream
+     * @return request
+     * @throws JED2KException on malformed or too long request
+     * @throws IOException on read error or end of stream
+     */
+    public static Request parseRequest(final InputStream is) throws JED2KException, IOException {
+        StringBuilder line = new StringBuilder();
+        String method = null;
+        String path = null;
+        String range = null;
+        int total = 0;
+
+        while(true) {
+            int c = is.read();
+            if (c == -1) throw new JED2KException(ErrorCode.END_OF_STREAM);
+            if (++total > MAX_HEADER_SIZE) throw new JED2KException(ErrorCode.HTTP_BAD_REQUEST);
+            if (c == '\r') continue;
+            if (c != '\n') {
+                line.append((char)c);
+                continue;
+            }
+
+            if (line.length() == 0) break;
+
+            if (method == null) {
+                String[] parts = line.toString().split(" ");
+                if (parts.length != 3 || !parts[2].startsWith("HTTP/")) throw new JED2KException(ErrorCode.HTTP_BAD_REQUEST);
+                method = parts[0];
+                path = parts[1];
+            } else {
+                int colon = line.indexOf(":");
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Range")) {
+                    range = line.substring(colon + 1).trim();
+                }
+            }
+
+            line.setLength(0);
+        }
+
+        if (method == null) throw new JED2KException(ErrorCode.HTTP_BAD_REQUEST);
+        return new Request(method, path, range);
+    }
+
+    /**
+     * @param path request path /HASH or /HASH/file name
+     * @return transfer hash or null if path has no valid hash
+     */
+    public static Hash parseHash(final String path) {
+        if (path == null || !path.startsWith("/")) return null;
+        int end = path.indexOf('/', 1);
+        String value = (end == -1)?path.substring(1):path.substring(1, end);
+        if (!value.matches("[0-9a-fA-F]{32}")) return null;
+        return Hash.fromString(value);
+    }
+
+    /**
+     * @param value value of Range header or null
+     * @return true if value is single range of bytes, other ranges are ignored
+     */
+    public static boolean isByteRange(final String value) {
+        return value != null && value.toLowerCase(Locale.US).startsWith("bytes=") && value.indexOf(',') == -1;
+    }
+
+    /**
+     * single range of bytes unit is supported, unsupported ranges mean whole file like no range header
+     * @param value value of Range header or null
+     * @param size file size
+     * @return range with exclusive right bound or null for empty file
+     * @throws JED2KException when range is outside of file
+     */
+    public static Range parseRange(final String value, long size) throws JED2KException {
+        long left = 0;
+        long right = size;
+
+        if (isByteRange(value)) {
+            String spec = value.substring("bytes=".length()).trim();
+            int dash = spec.indexOf('-');
+            if (dash == -1) throw new JED2KException(ErrorCode.HTTP_RANGE_NOT_SATISFIABLE);
+
+            try {
+                String first = spec.substring(0, dash).trim();
+                String last = spec.substring(dash + 1).trim();
+                if (first.isEmpty()) {
+                    // suffix range: last bytes of file
+                    long suffix = Long.parseLong(last);
+                    if (suffix <= 0) throw new JED2KException(ErrorCode.HTTP_RANGE_NOT_SATISFIABLE);
+                    left = Math.max(0, size - suffix);
+                } else {
+                    left = Long.parseLong(first);
+                    if (!last.isEmpty()) {
+                        right = Math.min(size, Long.parseLong(last) + 1);
+                    }
+                }
+            } catch(NumberFormatException e) {
+                throw new JED2KException(e, ErrorCode.HTTP_RANGE_NOT_SATISFIABLE);
+            }
+
+            if (left >= right) throw new JED2KException(ErrorCode.HTTP_RANGE_NOT_SATISFIABLE);
+        }
+
+        return (left < right)?Range.make(left, right):null;
+    }
+}
@@ -0,0 +1,166 @@
+package org.dkf.jed2k;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * hashed timer wheel for timed work of event loop
+ * schedule and cancel are O(1), each advance touches only buckets of elapsed ticks
+ * not thread safe - all calls must be guarded by owner loop's lock
+ * Created by agent on 18.10.2026.
+ */
+public class TimerWheel {
+    public static final long DEFAULT_TICK_MS = 100;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /**
+     * scheduled task handle
+     */
+    public static class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long rounds;
+        private boolean cancelled = false;
+        private boolean expired = false;
+
+        private Timeout(final Runnable task, long deadline, long rounds) {
+            this.task = task;
+            this.deadline = deadline;
+            this.rounds = rounds;
+        }
+
+        /**
+         * task won't be executed, handle will be removed from wheel when its bucket is visited
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isExpired() {
+            return expired;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+    }
+
+    private final long tickMs;
+    private final int mask;
+    private final List<LinkedList<Timeout>> buckets;
+
+    /**
+     * next tick to process and time of last advance
+     */
+    private long currentTick;
+    private long currentTime;
+    private int size = 0;
+
+    public TimerWheel() {
+        this(DEFAULT_TICK_MS, DEFAULT_WHEEL_SIZE, Time.currentTime());
+    }
+
+    /**
+     * @param tickMs duration of one tick in milliseconds
+     * @param wheelSize count of buckets, must be power of two
+     * @param startTime current time in milliseconds
+     */
+    public TimerWheel(long tickMs, int wheelSize, long startTime) {
+        assert tickMs > 0;
+        assert wheelSize > 0 && (wheelSize & (wheelSize - 1)) == 0;
+        this.tickMs = tickMs;
+        this.mask = wheelSize - 1;
+        buckets = new ArrayList<>(wheelSize);
+        for(int i = 0; i < wheelSize; ++i) buckets.add(new LinkedList<Timeout>());
+        currentTime = startTime;
+        currentTick = startTime / tickMs;
+    }
+
+    /**
+     * @param delayMs delay in milliseconds from time of last advance
+     * @param task task to execute
+     * @return handle for cancellation
+     */
+    public Timeout schedule(long delayMs, final Runnable task) {
+        assert task != null;
+        long deadline = currentTime + Math.max(0, delayMs);
+        // round deadline up to tick, task never fires before deadline
+        long deadlineTick = Math.max(currentTick, (deadline + tickMs - 1) / tickMs);
+        Timeout t = new Timeout(task, deadline, (deadlineTick - currentTick) / buckets.size());
+        buckets.get((int)(deadlineTick & mask)).add(t);
+        ++size;
+        return t;
+    }
+
+    /**
+     * execute all tasks with deadline not later than now
+     * tasks can schedule new tasks, they will be executed on later advances
+     * @param now current time in milliseconds
+     * @return count of executed tasks
+     */
+    public int advance(long now) {
+        if (now < currentTime) return 0;
+        currentTime = now;
+        long targetTick = now / tickMs;
+        List<Timeout> expired = null;
+
+        // no reason to visit each bucket more than once per advance
+        long lastTick = Math.min(targetTick, currentTick + buckets.size() - 1);
+
+        while(currentTick <= targetTick) {
+            if (currentTick <= lastTick) {
+                Iterator<Timeout> itr = buckets.get((int)(currentTick & mask)).iterator();
+                while(itr.hasNext()) {
+                    Timeout t = itr.next();
+                    if (t.cancelled) {
+                        itr.remove();
+                        --size;
+                    } else if (t.rounds <= (targetTick - currentTick) / buckets.size()) {
+                        itr.remove();
+                        --size;
+                        if (expired == null) expired = new LinkedList<>();
+                        expired.add(t);
+                    } else {
+                        t.rounds -= (targetTick - currentTick) / buckets.size() + 1;
+                    }
+                }
+                ++currentTick;
+            } else {
+                currentTick = targetTick + 1;
+            }
+        }
+
+        if (expired == null) return 0;
+
+        int res = 0;
+        for(final Timeout t: expired) {
+            if (t.cancelled) continue;
+            t.expired = true;
+            t.task.run();
+            ++res;
+        }
+
+        return res;
+    }
+
+    /**
+     * @return count of scheduled tasks including cancelled but not removed yet
+     */
+    public int size() {
+        return size;
+    }
+
+    public final boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long getTickMs() {
+        return tickMs;
+    }
+}
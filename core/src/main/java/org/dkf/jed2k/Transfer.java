@@ -3,20 +3,27 @@ package org.dkf.jed2k;
 import lombok.extern.slf4j.Slf4j;
 import org.dkf.jed2k.alert.*;
 import org.dkf.jed2k.data.PieceBlock;
+import org.dkf.jed2k.data.PieceHashState;
+import org.dkf.jed2k.disk.AsyncAICHVerify;
+import org.dkf.jed2k.disk.AsyncHash;
 import org.dkf.jed2k.disk.AsyncRelease;
 import org.dkf.jed2k.disk.AsyncRestore;
 import org.dkf.jed2k.disk.PieceManager;
 import org.dkf.jed2k.exception.BaseErrorCode;
 import org.dkf.jed2k.exception.ErrorCode;
 import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.hash.AICHHashTree;
+import org.dkf.jed2k.protocol.AICHHash;
 import org.dkf.jed2k.protocol.BitField;
 import org.dkf.jed2k.protocol.Endpoint;
 import org.dkf.jed2k.protocol.Hash;
 import org.dkf.jed2k.protocol.TransferResumeData;
+import org.dkf.jed2k.protocol.client.AICHAnswer;
 
 import java.io.File;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.Future;
 
 @Slf4j
 public class Transfer {
@@ -62,14 +69,38 @@ public class Transfer {
     private HashSet<PeerConnection> connections = new HashSet<PeerConnection>();
 
     /**
-     * session time when new peers request will be executed
+     * interval of transfer's state reports to session's sources scheduler
      */
-    private long nextTimeForSourcesRequest = 0;
+    private static final long SOURCES_REPORT_INTERVAL = Time.seconds(5);
 
     /**
-     * session time when new peers request to KAD will be executed
+     * source exchange limits like in eMule: file with few sources asks every new peer,
+     * rare file asks one peer in SOURCE_FILE_REASK, common file is penalized
+     * the same peer is asked once in SOURCE_CLIENT_REASK
      */
-    private long nextTimeForDhtSourcesRequest = 0;
+    public static final int RARE_FILE = 50;
+    public static final long SOURCE_CLIENT_REASK = Time.minutes(40);
+    public static final long SOURCE_FILE_REASK = Time.minutes(5);
+    public static final int COMMON_FILE_PENALTY = 4;
+    public static final int MAX_EXCHANGE_SOURCES = 50;
+    private long lastSourceExchange = 0;
+
+    /**
+     * owner event loop, null until transfer is started in session
+     */
+    private EventLoop loop = null;
+
+    /**
+     * timer of reports to sources scheduler
+     */
+    private TimerWheel.Timeout sourcesTimer = null;
+
+    /**
+     * times of last sources requests and last new source from server, KAD or source exchange, zero if never happened
+     */
+    private long lastServerSourcesRequest = 0;
+    private long lastKadSourcesRequest = 0;
+    private long lastNewSource = 0;
 
     /**
      * disk io
@@ -92,6 +123,56 @@ public class Transfer {
 
     private SpeedMonitor speedMon = new SpeedMonitor(30);
 
+    /**
+     * disk tasks submitted by this transfer and not processed yet
+     */
+    private Set<Future<?>> diskTasks = new HashSet<Future<?>>();
+
+    /**
+     * hash midstates of partial pieces reported by disk engine, saved in resume data
+     */
+    private Map<Integer, PieceHashState> hashStates = new HashMap<Integer, PieceHashState>();
+
+    /**
+     * AICH master hash is trusted when at least AICH_TRUST_SOURCES peers reported it
+     * and it is AICH_TRUST_PERCENT of all reports
+     */
+    private static final int AICH_TRUST_SOURCES = 2;
+    private static final int AICH_TRUST_PERCENT = 92;
+
+    /**
+     * time to wait AICH recovery data before failed piece is downloaded again completely
+     */
+    private static final long AICH_REQUEST_TIMEOUT = Time.seconds(30);
+
+    /**
+     * streaming mode: seconds of playback buffered by time-critical pieces and minimal count of those pieces
+     */
+    public static final long STREAMING_BUFFER_TIME = 30;
+    public static final int MIN_STREAMING_WINDOW = 2;
+
+    /**
+     * trusted AICH master hash or null
+     */
+    private AICHHash aichHash = null;
+
+    /**
+     * AICH master hashes reported by peers with IPs of reported peers while master hash isn't trusted
+     * each peer is counted once, repeated answers don't add votes
+     */
+    private Map<AICHHash, Set<Integer>> aichVotes = new HashMap<AICHHash, Set<Integer>>();
+
+    /**
+     * pieces failed hash check awaiting recovery data, value is timeout of request
+     */
+    private Map<Integer, TimerWheel.Timeout> aichRequests = new HashMap<Integer, TimerWheel.Timeout>();
+
+    /**
+     * blocks verified by AICH in pieces downloading corrupted blocks again
+     * hash of such piece is calculated from file
+     */
+    private Map<Integer, Set<Integer>> verifiedBlocks = new HashMap<Integer, Set<Integer>>();
+
     public Transfer(Session s, final AddTransferParams atp) throws JED2KException {
         assert(s != null);
         this.hash = atp.getHash();
@@ -140,19 +221,69 @@ public class Transfer {
      * restore transfer's state using saved resume data
      * set have pieces directly into picker
      * restore partial pieces using step by step: allocate buffer -> async restore -> precess result
+     * blocks covered by saved hash midstate of piece are marked finished without reading from disk
      * @param rd resume data
      */
     void restore(final TransferResumeData rd) throws JED2KException {
         setHashSet(this.hash, rd.hashes);
+        if (rd.aichHash.haveData()) aichHash = rd.aichHash.getData();
 
         for(int i = 0; i < rd.pieces.size(); ++i) {
             if (rd.pieces.getBit(i)) picker.restoreHave(i);
         }
 
+        Set<PieceBlock> downloaded = new HashSet<PieceBlock>();
+        for(final PieceBlock b: rd.downloadedBlocks) downloaded.add(b);
+
+        // pieces in AICH recovery have no hash state, their blocks are marked finished and piece hash is read from file
+        for(final PieceBlock b: rd.verifiedBlocks) {
+            if (b.pieceIndex >= numPieces || picker.havePiece(b.pieceIndex) || !downloaded.contains(b)) continue;
+            Set<Integer> blocks = verifiedBlocks.get(b.pieceIndex);
+            if (blocks == null) {
+                blocks = new HashSet<Integer>();
+                verifiedBlocks.put(b.pieceIndex, blocks);
+                picker.downloadPiece(b.pieceIndex);
+                pm.beginRecovery(b.pieceIndex);
+            }
+
+            blocks.add(b.pieceBlock);
+        }
+
+        for(final PieceHashState hs: rd.hashStates) {
+            if (!hs.isValid() || hs.pieceIndex >= numPieces || picker.havePiece(hs.pieceIndex)
+                    || isRecovering(hs.pieceIndex)
+                    || hs.hashedBlocks > picker.blocksInPiece(hs.pieceIndex)) continue;
+            boolean complete = true;
+            for(int i = 0; i < hs.hashedBlocks && complete; ++i) {
+                complete = downloaded.contains(new PieceBlock(hs.pieceIndex, i));
+            }
+
+            if (!complete) {
+                log.warn("{} hash state {} doesn't match downloaded blocks", hash, hs);
+                continue;
+            }
+
+            picker.downloadPiece(hs.pieceIndex);
+            for(int i = 0; i < hs.hashedBlocks; ++i) {
+                picker.markAsFinished(new PieceBlock(hs.pieceIndex, i));
+            }
+
+            pm.restoreHashState(hs);
+            hashStates.put(hs.pieceIndex, hs);
+        }
+
         for(final PieceBlock b: rd.downloadedBlocks) {
+            if (isRecovering(b.pieceIndex)) {
+                picker.markAsFinished(b);
+                continue;
+            }
+
+            PieceHashState hs = hashStates.get(b.pieceIndex);
+            if (hs != null && b.pieceBlock < hs.hashedBlocks) continue;
             picker.downloadPiece(b.pieceIndex);
-            ByteBuffer buffer = session.allocatePoolBuffer();
-            if (buffer == null) {
+            // storage with views of file data restores blocks without buffers
+            ByteBuffer buffer = pm.supportsViews()?null:session.allocatePoolBuffer();
+            if (buffer == null && !pm.supportsViews()) {
                 log.warn("{} have no enough buffers to restore transfer {} "
                         , session.getBufferPool()
                         , b);
@@ -166,6 +297,12 @@ public class Transfer {
 
         }
 
+        for(int piece: verifiedBlocks.keySet()) {
+            if (picker.isPieceFinished(piece)) session.submitDiskTask(new AsyncHash(this, piece, true));
+        }
+
+        if (lastResumeBlock == null) setState(TransferStatus.TransferState.DOWNLOADING);
+
         if (isFinished()) {
             // for finished transfers no need to save resume data
             setState(TransferStatus.TransferState.FINISHED);
@@ -211,11 +348,45 @@ public class Transfer {
         //return numPieces() - picker.numHave() == 0;
     }
 
+    /**
+     * @param pieceIndex piece
+     * @return true if piece was downloaded and its hash verified
+     */
+    public boolean havePiece(int pieceIndex) {
+        return picker == null || picker.havePiece(pieceIndex);
+    }
+
     void weHave(int pieceIndex) {
         assert(picker != null);
         picker.weHave(pieceIndex);
     }
 
+    /**
+     * streaming mode: pieces playback reaches in STREAMING_BUFFER_TIME seconds get deadline and are downloaded first
+     * other pieces are downloaded in usual order
+     * @param position playback position in bytes
+     * @param bitrate media bytes per second, zero when unknown
+     */
+    void setStreaming(long position, long bitrate) {
+        if (picker == null || position < 0 || position >= size) return;
+        int window = MIN_STREAMING_WINDOW;
+        if (bitrate > 0) {
+            // playback position usually is in the middle of piece
+            window = Math.max(window, Utils.divCeil(bitrate*STREAMING_BUFFER_TIME, Constants.PIECE_SIZE).intValue() + 1);
+        }
+
+        picker.setDeadline((int)(position / Constants.PIECE_SIZE), window);
+        log.debug("{} streaming from {} window {} pieces", hash, position, window);
+    }
+
+    void stopStreaming() {
+        if (picker != null) picker.clearDeadline();
+    }
+
+    boolean isStreaming() {
+        return picker != null && picker.isStreaming();
+    }
+
     final boolean isPaused() {
         return pause;
     }
@@ -232,22 +403,113 @@ public class Transfer {
         stat.add(s);
     }
 
-    final void addPeer(Endpoint endpoint, int sourceFlag) throws JED2KException {
-        policy.addPeer(new Peer(endpoint, true, sourceFlag));
+    final boolean addPeer(Endpoint endpoint, int sourceFlag) throws JED2KException {
+        boolean added = policy.addPeer(new Peer(endpoint, true, sourceFlag));
+        if (added && (sourceFlag & (PeerInfo.SERVER | PeerInfo.DHT | PeerInfo.SOURCE_EXCHANGE)) != 0) {
+            lastNewSource = Time.currentTime();
+        }
+
+        return added;
+    }
+
+    /**
+     * sources scheduler has sent request for this transfer
+     * @param dht true for KAD search
+     * @param time request time
+     */
+    void onSourcesRequested(boolean dht, long time) {
+        if (dht) {
+            lastKadSourcesRequest = time;
+        } else {
+            lastServerSourcesRequest = time;
+        }
+    }
+
+    /**
+     * @param p connected peer supports source exchange
+     * @return true if we should ask peer for its sources now
+     */
+    public boolean isSourceRequestAllowed(final Peer p) {
+        if (isPaused() || isAborted() || isFinished() || policy.size() >= Policy.MAX_PEER_LIST_SIZE) return false;
+        long now = Time.currentTime();
+        boolean neverAsked = p.getLastSourceRequest() == 0;
+        long sinceClient = now - p.getLastSourceRequest();
+        long sinceFile = now - lastSourceExchange;
+        int sources = policy.size();
+
+        if (sources <= RARE_FILE/5) return neverAsked || sinceClient > SOURCE_CLIENT_REASK;
+        if (sources <= RARE_FILE) return (neverAsked || sinceClient > SOURCE_CLIENT_REASK) && sinceFile > SOURCE_FILE_REASK;
+        return (neverAsked || sinceClient > SOURCE_CLIENT_REASK*COMMON_FILE_PENALTY)
+                && sinceFile > SOURCE_FILE_REASK*COMMON_FILE_PENALTY;
+    }
+
+    public void onSourceRequest(final Peer p) {
+        lastSourceExchange = Time.currentTime();
+        p.setLastSourceRequest(lastSourceExchange);
+    }
+
+    /**
+     * @param exclude endpoint of requester
+     * @return high id peers we connected to without failures
+     */
+    public List<Endpoint> getExchangeSources(final Endpoint exclude) {
+        List<Endpoint> res = new ArrayList<Endpoint>();
+        for(final Peer p: policy) {
+            if (res.size() >= MAX_EXCHANGE_SOURCES) break;
+            if (!p.isConnectable() || p.getFailCount() != 0 || p.getLastConnected() == 0) continue;
+            if (Utils.isLowId(p.getEndpoint().getIP()) || p.getEndpoint().equals(exclude)) continue;
+            res.add(p.getEndpoint());
+        }
+
+        return res;
     }
 
     final void removePeerConnection(PeerConnection c) {
+        final Peer p = c.getPeer();
         policy.conectionClosed(c, Time.currentTime());
         c.setPeer(null);
+
+        // try to connect peer again exactly when its reconnect timeout expires
+        if (loop != null && p != null && !isAborted() && policy.isConnectCandidate(p)) {
+            loop.timers.schedule(Time.seconds(p.getFailCount() + 1)*Policy.MIN_RECONNECT_TIMEOUT, new Runnable() {
+                @Override
+                public void run() {
+                    loop.tryConnect(Transfer.this);
+                }
+            });
+        }
+
         // TODO - can't remove peer from collection due to simultaneous collection modification exception
         //connections.remove(c);
     }
 
+    /**
+     * source we waited in queue of by UDP reasks is returned to peers list
+     * @param endpoint source's endpoint
+     * @param delay milliseconds before source can be connected
+     * @param failed source rejected us
+     */
+    void onRemoteQueueLeft(final Endpoint endpoint, long delay, boolean failed) {
+        Peer p = policy.get(endpoint);
+        if (p == null || p.hasConnection() || isAborted()) return;
+        if (failed) p.setFailCount(p.getFailCount() + 1);
+        p.setNextConnection(Time.currentTime() + delay);
+
+        if (loop != null && policy.isConnectCandidate(p)) {
+            loop.timers.schedule(delay, new Runnable() {
+                @Override
+                public void run() {
+                    loop.tryConnect(Transfer.this);
+                }
+            });
+        }
+    }
+
     public PeerConnection connectoToPeer(Peer peerInfo) throws JED2KException {
         peerInfo.setLastConnected(Time.currentTime());
         peerInfo.setNextConnection(0);
         PeerConnection c = PeerConnection.make(session, peerInfo.getEndpoint(), this, peerInfo);
-        session.connections.add(c);
+        c.getLoop().connections.add(c);
         connections.add(c);
         policy.setConnection(peerInfo, c);
         c.connect();
@@ -261,10 +523,16 @@ public class Transfer {
         if (isFinished()) throw new JED2KException(ErrorCode.TRANSFER_FINISHED);
         policy.newConnection(c);
         connections.add(c);
-        session.connections.add(c);
         c.setTransfer(this);
     }
 
+    /**
+     * @return copy of transfer's connections, connections can be closed while iterating over it
+     */
+    List<PeerConnection> getConnections() {
+        return new ArrayList<>(connections);
+    }
+
     public void callPolicy(Peer peerInfo, PeerConnection c) {
         policy.setConnection(peerInfo, c);
     }
@@ -285,23 +553,36 @@ public class Transfer {
         return policy.connectOnePeer(sessionTime);
     }
 
-	void secondTick(final Statistics accumulator, long tickIntervalMS) {
-
-        if (!isPaused() && !isAborted() && !isFinished() && connections.isEmpty()) {
+    /**
+     * start timed work of transfer in owner event loop
+     * @param loop owner loop
+     */
+    void start(final EventLoop loop) {
+        this.loop = loop;
+        sourcesTimer = scheduleSourcesReport(0);
+    }
 
-            if (nextTimeForSourcesRequest < Time.currentTime()) {
-                log.debug("[transfer] request peers on server {}", hash);
-                session.sendSourcesRequest(hash, size);
-                nextTimeForSourcesRequest = Time.currentTime() + Time.minutes(1);
-            }
+    private boolean wantMoreSources() {
+        return !isPaused() && !isAborted() && !isFinished() && policy.size() < Policy.MAX_PEER_LIST_SIZE;
+    }
 
-            if (nextTimeForDhtSourcesRequest < Time.currentTime()) {
-                log.debug("[transfer] request peers on KAD {}", hash);
-                session.sendDhtSourcesRequest(hash, size, this);
-                nextTimeForDhtSourcesRequest = Time.currentTime() + Time.minutes(10);
+    /**
+     * report transfer's state to session's sources scheduler, requests to server and KAD are made by scheduler
+     * @param delay delay in milliseconds
+     * @return timer handle
+     */
+    private TimerWheel.Timeout scheduleSourcesReport(long delay) {
+        return loop.timers.schedule(delay, new Runnable() {
+            @Override
+            public void run() {
+                if (isAborted()) return;
+                session.updateSourcesNeed(hash, size, wantMoreSources(), policy.size(), connections.size(), stat.downloadPayloadRate());
+                sourcesTimer = scheduleSourcesReport(SOURCES_REPORT_INTERVAL);
             }
-        }
+        });
+    }
 
+	void secondTick(final Statistics accumulator, long tickIntervalMS) {
         Iterator<PeerConnection> itr = connections.iterator();
         while(itr.hasNext()) {
             PeerConnection c = itr.next();
@@ -344,6 +625,13 @@ public class Transfer {
 
         if (abort) return;
         abort = true;
+        if (sourcesTimer != null) sourcesTimer.cancel();
+        session.removeSourcesNeed(hash);
+        for(final TimerWheel.Timeout t: aichRequests.values()) {
+            if (t != null) t.cancel();
+        }
+
+        aichRequests.clear();
         disconnectAll(ErrorCode.TRANSFER_ABORTED);
         if (interruptTasksInOrder) session.removeDiskTask(this);
         session.submitDiskTask(new AsyncRelease(this, deleteFile));
@@ -393,6 +681,13 @@ public class Transfer {
     }
 
     public void onBlockWriteCompleted(final PieceBlock b, final List<ByteBuffer> buffers, final BaseErrorCode ec) {
+        onBlockWriteCompleted(b, buffers, ec, null);
+    }
+
+    /**
+     * @param hashState midstate of block's piece hash after block was registered or null
+     */
+    public void onBlockWriteCompleted(final PieceBlock b, final List<ByteBuffer> buffers, final BaseErrorCode ec, final PieceHashState hashState) {
         log.debug("block {} write completed: {} free buffers: {}",
                 b, ec, (buffers!=null)?buffers.size():0);
 
@@ -407,6 +702,7 @@ public class Transfer {
 
         if (ec == ErrorCode.NO_ERROR) {
             picker.markAsFinished(b);
+            if (hashState != null) hashStates.put(hashState.pieceIndex, hashState);
             needSaveResumeData = true;
         } else {
             picker.abortDownload(b, null);  // state of block must be writing!
@@ -423,13 +719,16 @@ public class Transfer {
     public void onPieceHashCompleted(final int pieceIndex, final Hash hash) {
         assert hash != null;
         assert hashSet.size() > pieceIndex;
+        hashStates.remove(pieceIndex);
+        boolean recovered = verifiedBlocks.remove(pieceIndex) != null;
 
         if (hash != null && (hashSet.get(pieceIndex).compareTo(hash) != 0)) {
             log.error("restore piece {} due to expected getHash {} != {} was calculated"
                     , pieceIndex
                     , hashSet.get(pieceIndex)
                     , hash);
-            picker.restorePiece(pieceIndex);
+            // piece failed again after recovery - download it completely
+            if (recovered || !requestRecoveryData(pieceIndex)) picker.restorePiece(pieceIndex);
         }
         else {
             piecePassed(pieceIndex);
@@ -438,6 +737,154 @@ public class Transfer {
         needSaveResumeData = true;
     }
 
+    /**
+     * @return trusted AICH master hash or null
+     */
+    public AICHHash getAICHHash() {
+        return aichHash;
+    }
+
+    final boolean needAICHHash() {
+        return aichHash == null;
+    }
+
+    /**
+     * set trusted AICH master hash, for example from link
+     * @param h master hash
+     */
+    void setAICHHash(final AICHHash h) {
+        if (aichHash != null) return;
+        aichHash = new AICHHash(h);
+        aichVotes.clear();
+        needSaveResumeData = true;
+    }
+
+    /**
+     * AICH master hash reported by peer, becomes trusted when enough different peers agree
+     * @param h master hash
+     * @param voter IP of reported peer
+     */
+    void onAICHHashReceived(final AICHHash h, int voter) {
+        if (aichHash != null) return;
+        int total = 0;
+        for(final Set<Integer> voters: aichVotes.values()) {
+            if (voters.contains(voter)) return;
+            total += voters.size();
+        }
+
+        Set<Integer> voters = aichVotes.get(h);
+        if (voters == null) {
+            voters = new HashSet<Integer>();
+            aichVotes.put(new AICHHash(h), voters);
+        }
+
+        voters.add(voter);
+        int votes = voters.size();
+        ++total;
+
+        if (votes >= AICH_TRUST_SOURCES && votes*100 >= total*AICH_TRUST_PERCENT) {
+            log.debug("{} trusted AICH hash {} reports {} of {}", hash, h, votes, total);
+            setAICHHash(h);
+        }
+    }
+
+    /**
+     * @param pieceIndex piece
+     * @return true if piece downloads only blocks corrupted according AICH
+     */
+    public boolean isRecovering(int pieceIndex) {
+        return verifiedBlocks.containsKey(pieceIndex);
+    }
+
+    /**
+     * request recovery data of failed piece from connected peer supporting AICH and having piece
+     * piece stays finished in picker until recovery completes or request timeout expires
+     * @param pieceIndex piece failed hash check
+     * @return true if request was sent
+     */
+    private boolean requestRecoveryData(final int pieceIndex) {
+        // without loop's timers request would never expire and piece would stay in recovery forever
+        if (loop == null || aichHash == null || aichRequests.containsKey(pieceIndex)
+                || !AICHHashTree.forFile(size, aichHash).isRecoverable(pieceIndex)) return false;
+
+        for(final PeerConnection c: connections) {
+            if (c.isDisconnecting() || !c.supportsAICH() || !c.hasPiece(pieceIndex)) continue;
+            log.debug("{} request AICH recovery data of piece {} from {}", hash, pieceIndex, c.getEndpoint());
+            c.requestRecoveryData(pieceIndex, aichHash);
+            aichRequests.put(pieceIndex, loop.timers.schedule(AICH_REQUEST_TIMEOUT, new Runnable() {
+                @Override
+                public void run() {
+                    if (aichRequests.remove(pieceIndex) == null || isAborted()) return;
+                    log.debug("{} AICH recovery data of piece {} timed out", hash, pieceIndex);
+                    picker.restorePiece(pieceIndex);
+                }
+            }));
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * recovery data received from peer, verify it against trusted master hash and check piece data on disk
+     * @param pieceIndex requested piece
+     * @param answer answer of peer
+     */
+    void onAICHRecoveryData(final int pieceIndex, final AICHAnswer answer) {
+        if (!aichRequests.containsKey(pieceIndex)) return;
+        TimerWheel.Timeout timeout = aichRequests.remove(pieceIndex);
+        if (timeout != null) timeout.cancel();
+
+        List<AICHHash> hashes = null;
+        if (answer.hasData() && answer.part.intValue() == pieceIndex && answer.aichHash.equals(aichHash)) {
+            AICHHashTree tree = AICHHashTree.forFile(size, aichHash);
+            try {
+                tree.readRecoveryData(pieceIndex, answer.getData());
+                if (tree.verify()) hashes = tree.blockHashes(pieceIndex);
+            } catch(JED2KException e) {
+                log.warn("{} incorrect AICH recovery data of piece {}: {}", hash, pieceIndex, e);
+            }
+        }
+
+        if (hashes == null) {
+            log.warn("{} no valid AICH recovery data for piece {}", hash, pieceIndex);
+            picker.restorePiece(pieceIndex);
+            needSaveResumeData = true;
+            return;
+        }
+
+        session.submitDiskTask(new AsyncAICHVerify(this, pieceIndex, hashes));
+    }
+
+    /**
+     * piece data was checked by AICH block hashes
+     * @param pieceIndex piece
+     * @param corruptedBlocks ed2k blocks containing corrupted data
+     * @param buffers free buffers
+     * @param ec result code
+     */
+    public void onAICHVerifyCompleted(final int pieceIndex, final List<Integer> corruptedBlocks, final List<ByteBuffer> buffers, final BaseErrorCode ec) {
+        for (ByteBuffer buffer : buffers) {
+            session.getBufferPool().deallocate(buffer, Time.currentTime());
+        }
+
+        int blocksCount = picker.blocksInPiece(pieceIndex);
+        if (ec != ErrorCode.NO_ERROR || corruptedBlocks == null || corruptedBlocks.isEmpty() || corruptedBlocks.size() >= blocksCount) {
+            log.warn("{} AICH recovery of piece {} failed {} corrupted blocks {}"
+                    , hash, pieceIndex, ec, (corruptedBlocks != null)?corruptedBlocks.size():0);
+            picker.restorePiece(pieceIndex);
+        } else {
+            log.debug("{} AICH recovery of piece {} corrupted blocks {}", hash, pieceIndex, corruptedBlocks);
+            Set<Integer> verified = new HashSet<Integer>();
+            for(int i = 0; i < blocksCount; ++i) verified.add(i);
+            verified.removeAll(corruptedBlocks);
+            verifiedBlocks.put(pieceIndex, verified);
+            picker.restoreBlocks(pieceIndex, corruptedBlocks);
+        }
+
+        needSaveResumeData = true;
+    }
+
     public void onReleaseFile(final BaseErrorCode c, final List<ByteBuffer> buffers, boolean deleteFile) {
         assert buffers != null;
         log.debug("release file completed {} release byte buffers count {} file {}"
@@ -474,9 +921,19 @@ public class Transfer {
                 for(int j = 0; j < dp.getBlocksCount(); ++j) {
                     if (dp.isFinished(j)) trd.downloadedBlocks.add(new PieceBlock(dp.pieceIndex, j));
                 }
+
+                PieceHashState hs = hashStates.get(dp.pieceIndex);
+                if (hs != null && hs.isValid()) trd.hashStates.add(hs);
+
+                Set<Integer> verified = verifiedBlocks.get(dp.pieceIndex);
+                if (verified != null) {
+                    for(int j: verified) trd.verifiedBlocks.add(new PieceBlock(dp.pieceIndex, j));
+                }
             }
         }
 
+        if (aichHash != null) trd.aichHash.setData(aichHash);
+
         // temporary do not save peers
         needSaveResumeData = false;
         return trd;
@@ -534,6 +991,9 @@ public class Transfer {
         status.downloadPayloadRate = (int)stat.downloadPayloadRate();
         status.upload = stat.totalUpload();
         status.uploadRate = (int)stat.uploadRate();
+        status.lastServerSourcesRequest = lastServerSourcesRequest;
+        status.lastKadSourcesRequest = lastKadSourcesRequest;
+        status.lastNewSource = lastNewSource;
 
         if (status.totalWanted == 0)        {
             status.progressPPM = 1000000;
@@ -589,4 +1049,25 @@ public class Transfer {
     boolean isNeedSaveResumeData() {
         return needSaveResumeData;
     }
+
+    void addDiskTask(final Future<?> task) {
+        diskTasks.add(task);
+    }
+
+    void removeDiskTask(final Future<?> task) {
+        diskTasks.remove(task);
+    }
+
+    /**
+     * cancel disk tasks which are not started yet, completion of cancelled tasks will be ignored
+     */
+    void cancelDiskTasks() {
+        for(final Future<?> task: new ArrayList<Future<?>>(diskTasks)) {
+            task.cancel(false);
+        }
+    }
+
+    final int numDiskTasks() {
+        return diskTasks.size();
+    }
 }
@@ -10,7 +10,7 @@ import java.util.List;
 
 /**
  * transfer handle for manipulation of transfer outside of session
- * all manipulations of session data in transfers are synchronized via main session object
+ * all manipulations of session data in transfers are synchronized via lock of event loop owns transfer
  * handle can be invalid if session has no transfer linked with it
  * Created by inkpot on 26.07.2016.
  */
@@ -30,6 +30,16 @@ public class TransferHandle implements Comparable<TransferHandle> {
         transfer = new WeakReference<Transfer>(t);
     }
 
+    /**
+     * transfer's state is guarded by owner event loop's lock
+     * @param t transfer
+     * @return lock object, session itself when lock is not available
+     */
+    private Object lockOf(final Transfer t) {
+        Object lock = ses.lockFor(t);
+        return (lock != null)?lock:ses;
+    }
+
     public final boolean isValid() {
         return transfer.get() != null;
     }
@@ -37,7 +47,7 @@ public class TransferHandle implements Comparable<TransferHandle> {
     public final Hash getHash() {
         Transfer t = transfer.get();
         if (t != null) {
-            synchronized (ses) {
+            synchronized (lockOf(t)) {
                 return t.getHash();
             }
         }
@@ -48,7 +58,7 @@ public class TransferHandle implements Comparable<TransferHandle> {
     public final long getCreateTime() {
         Transfer t = transfer.get();
         if (t != null) {
-            synchronized (ses) {
+            synchronized (lockOf(t)) {
                 return t.getCreateTime();
             }
         }
@@ -59,7 +69,7 @@ public class TransferHandle implements Comparable<TransferHandle> {
     public final long getSize() {
         Transfer t = transfer.get();
         if (t != null) {
-            synchronized (ses) {
+            synchronized (lockOf(t)) {
                 return t.size();
             }
         }
@@ -70,7 +80,7 @@ public class TransferHandle implements Comparable<TransferHandle> {
     public final File getFile() {
         Transfer t = transfer.get();
         if (t != null) {
-            synchronized (ses) {
+            synchronized (lockOf(t)) {
                 return t.getFile();
             }
         }
@@ -81,7 +91,7 @@ public class TransferHandle implements Comparable<TransferHandle> {
     public final void pause() {
         Transfer t = transfer.get();
         if (t != null) {
-            synchronized (ses) {
+            synchronized (lockOf(t)) {
                 t.pause();
             }
         }
@@ -90,7 +100,7 @@ public class TransferHandle implements Comparable<TransferHandle> {
     public final void resume() {
         Transfer t = transfer.get();
         if (t != null) {
-            synchronized (ses) {
+            synchronized (lockOf(t)) {
                 t.resume();
             }
         }
@@ -100,7 +110,7 @@ public class TransferHandle implements Comparable<TransferHandle> {
         boolean res = false;
         Transfer t = transfer.get();
         if (t != null) {
-            synchronized (ses) {
+            synchronized (lockOf(t)) {
                 res = t.isPaused();
             }
         }
@@ -111,7 +121,7 @@ public class TransferHandle implements Comparable<TransferHandle> {
         boolean res = false;
         Transfer t = transfer.get();
         if (t != null) {
-            synchronized (ses) {
+            synchronized (lockOf(t)) {
                 res = !t.isPaused();
             }
         }
@@ -122,7 +132,7 @@ public class TransferHandle implements Comparable<TransferHandle> {
         boolean res = false;
         Transfer t = transfer.get();
         if (t != null) {
-            synchronized (ses) {
+            synchronized (lockOf(t)) {
                 res = t.isFinished();
             }
 
@@ -131,10 +141,62 @@ public class TransferHandle implements Comparable<TransferHandle> {
         return res;
     }
 
+    /**
+     * @param pieceIndex piece
+     * @return true if piece was downloaded and verified, data of piece in file can be read
+     */
+    public final boolean havePiece(int pieceIndex) {
+        boolean res = false;
+        Transfer t = transfer.get();
+        if (t != null) {
+            synchronized (lockOf(t)) {
+                res = t.havePiece(pieceIndex);
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * download file for playback while it is downloading
+     * pieces playback reaches soon are downloaded before others, call again when playback position changes
+     * @param position playback position in bytes
+     * @param bitrate media bytes per second, zero when unknown
+     */
+    public final void setStreaming(long position, long bitrate) {
+        Transfer t = transfer.get();
+        if (t != null) {
+            synchronized (lockOf(t)) {
+                t.setStreaming(position, bitrate);
+            }
+        }
+    }
+
+    public final void stopStreaming() {
+        Transfer t = transfer.get();
+        if (t != null) {
+            synchronized (lockOf(t)) {
+                t.stopStreaming();
+            }
+        }
+    }
+
+    public final boolean isStreaming() {
+        boolean res = false;
+        Transfer t = transfer.get();
+        if (t != null) {
+            synchronized (lockOf(t)) {
+                res = t.isStreaming();
+            }
+        }
+
+        return res;
+    }
+
     public TransferResumeData getResumeData() {
         Transfer t = transfer.get();
         if (t != null) {
-            synchronized (ses) {
+            synchronized (lockOf(t)) {
                 return t.resumeData();
             }
         }
@@ -145,7 +207,7 @@ public class TransferHandle implements Comparable<TransferHandle> {
     public TransferStatus getStatus() {
         Transfer t = transfer.get();
         if (t != null) {
-            synchronized (ses) {
+            synchronized (lockOf(t)) {
                 return t.getStatus();
             }
         }
@@ -156,7 +218,7 @@ public class TransferHandle implements Comparable<TransferHandle> {
     public List<PeerInfo> getPeersInfo() {
         Transfer t = transfer.get();
         if (t != null) {
-            synchronized (ses) {
+            synchronized (lockOf(t)) {
                 return t.getPeersInfo();
             }
         }
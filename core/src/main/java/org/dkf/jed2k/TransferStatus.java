@@ -32,6 +32,14 @@ public class TransferStatus {
     public BitField pieces;
     public int numPieces            = 0;
 
+    /**
+     * freshness of sources: times of last requests to server and KAD
+     * and of last new source from server, KAD or source exchange, zero when never happened
+     */
+    public long lastServerSourcesRequest    = 0;
+    public long lastKadSourcesRequest       = 0;
+    public long lastNewSource               = 0;
+
     @Override
     public String toString() {
         return "TransferStatus{" +
@@ -50,6 +58,9 @@ public class TransferStatus {
                 ", eta=" + eta +
                 ", pieces=" + pieces +
                 ", numPieces=" + numPieces +
+                ", lastServerSourcesRequest=" + lastServerSourcesRequest +
+                ", lastKadSourcesRequest=" + lastKadSourcesRequest +
+                ", lastNewSource=" + lastNewSource +
                 '}';
     }
 }
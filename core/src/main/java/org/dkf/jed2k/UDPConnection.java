@@ -8,44 +8,84 @@ import org.dkf.jed2k.protocol.Endpoint;
 import org.dkf.jed2k.protocol.PacketCombiner;
 import org.dkf.jed2k.protocol.PacketHeader;
 import org.dkf.jed2k.protocol.Serializable;
+import org.dkf.jed2k.protocol.client.FileNotFound;
+import org.dkf.jed2k.protocol.client.QueueFull;
+import org.dkf.jed2k.protocol.client.ReaskAck;
+import org.dkf.jed2k.protocol.client.ReaskFilePing;
+import org.dkf.jed2k.protocol.kad.KadPacketHeader;
+import org.dkf.jed2k.protocol.server.GlobalFoundSources;
+import org.dkf.jed2k.protocol.server.GlobalServerStatusResult;
+import org.dkf.jed2k.protocol.server.UdpPacketCombiner;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
-import java.nio.channels.ClosedChannelException;
+import java.nio.ByteOrder;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
 import java.util.LinkedList;
 
 /**
- *
+ * UDP socket of session registered on main loop's selector, session has two of them like eMule does
+ * client-server socket on any free port sends global sources requests and status pings, passes answers of known servers to session
+ * client-client socket on configured port sends reasks of remote queues and passes reasks and answers of peers to session
  * @author apavlov
  *
  */
 @Slf4j
 public class UDPConnection {
-    private ByteBuffer bufferIncoming;
-    private ByteBuffer bufferOutgoing;
-    private LinkedList<Pair<Serializable, Endpoint>> outgoingOrder =
+    public static final int BUFFER_SIZE = 4096;
+
+    private final ByteBuffer bufferIncoming;
+    private final ByteBuffer bufferOutgoing;
+    private final LinkedList<Pair<Serializable, Endpoint>> outgoingOrder =
             new LinkedList<Pair<Serializable, Endpoint> >();
 
-    private SelectionKey key = null;
-    private Statistics stat = new Statistics();
-    final Session session;
-    DatagramChannel channel;
-    private final PacketCombiner packetCombainer = new org.dkf.jed2k.protocol.server.PacketCombiner();  // temp code
+    private final SelectionKey key;
+    private final Statistics stat = new Statistics();
+    private final Session session;
+    private final DatagramChannel channel;
+    private final PacketCombiner combiner;
+    private final boolean servers;
+    private final PacketHeader header = new KadPacketHeader();
+
+    /**
+     * client-server socket
+     */
+    public UDPConnection(final Session session) throws JED2KException {
+        this(session, 0, new UdpPacketCombiner());
+    }
 
-    public UDPConnection(final Session session) {
+    /**
+     * @param session owner session
+     * @param port local port, zero for any free port
+     * @param combiner packets of socket, datagrams of client-server socket are accepted from known servers only
+     */
+    public UDPConnection(final Session session, int port, final PacketCombiner combiner) throws JED2KException {
         this.session = session;
+        this.combiner = combiner;
+        servers = combiner instanceof UdpPacketCombiner;
+        bufferIncoming = ByteBuffer.allocate(BUFFER_SIZE);
+        bufferOutgoing = ByteBuffer.allocate(BUFFER_SIZE);
+        bufferIncoming.order(ByteOrder.LITTLE_ENDIAN);
+        bufferOutgoing.order(ByteOrder.LITTLE_ENDIAN);
+        combiner.setReusePackets(false);
+        DatagramChannel dc = null;
+
         try {
-            bufferIncoming = ByteBuffer.allocate(4096);
-            bufferOutgoing = ByteBuffer.allocate(4096);
-            channel = DatagramChannel.open();
-            channel.configureBlocking(false);
-            key = channel.register(session.selector, SelectionKey.OP_READ, this);
-        } catch(ClosedChannelException e) {
-            log.error("[udp] closed channel exception {}", e.getMessage());
+            dc = DatagramChannel.open();
+            dc.configureBlocking(false);
+            dc.socket().bind(port != 0?new InetSocketAddress(port):null);
+            key = dc.register(session.mainLoop().selector, SelectionKey.OP_READ, this);
+            channel = dc;
         } catch(IOException e) {
-            log.error("[udp] i/o exception {}", e.getMessage());
+            log.error("[udp] unable to open channel {}", e.getMessage());
+            try {
+                if (dc != null) dc.close();
+            } catch(IOException ex) {
+                log.error("[udp] channel close exception {}", ex.getMessage());
+            }
+            throw new JED2KException(e, ErrorCode.IO_EXCEPTION);
         }
     }
 
@@ -57,47 +97,89 @@ public class UDPConnection {
         }
     }
 
-    public void onReadable() throws JED2KException {
-        bufferIncoming.clear();
-        try {
-            channel.receive(bufferIncoming);
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
+    /**
+     * read all pending datagrams, datagram may contain several packets
+     */
+    void onReadable() {
+        while(true) {
+            bufferIncoming.clear();
+            InetSocketAddress address;
+
+            try {
+                address = (InetSocketAddress)channel.receive(bufferIncoming);
+            } catch (IOException e) {
+                log.warn("[udp] receive error {}", e.getMessage());
+                return;
+            }
+
+            if (address == null) return;
+            bufferIncoming.flip();
+            stat.receiveBytes(bufferIncoming.remaining(), 0);
+            Endpoint source = new Endpoint(address);
 
-        bufferIncoming.flip();
-        // read packet header and body here
-        stat.receiveBytes(bufferIncoming.remaining(), 0);
-        PacketHeader header = new PacketHeader();
-        header.get(bufferIncoming);
-        packetCombainer.unpack(header, bufferIncoming);
+            if (servers && !session.isUdpServer(source)) {
+                log.debug("[udp] skip datagram from unknown endpoint {}", source);
+                continue;
+            }
+
+            try {
+                while(bufferIncoming.remaining() >= KadPacketHeader.KAD_SIZE) {
+                    header.get(bufferIncoming);
+                    if (!header.isDefined()) throw new JED2KException(ErrorCode.PACKET_HEADER_UNDEFINED);
+                    header.reset(header.key(), bufferIncoming.remaining());
+                    Serializable s = combiner.unpack(header, bufferIncoming);
+                    if (s instanceof GlobalFoundSources) {
+                        session.onGlobalFoundSources((GlobalFoundSources)s);
+                    } else if (s instanceof GlobalServerStatusResult) {
+                        session.onServerStatusResult(source, (GlobalServerStatusResult)s);
+                    } else if (s instanceof ReaskFilePing) {
+                        session.onReaskFilePing(source, (ReaskFilePing)s);
+                    } else if (s instanceof ReaskAck || s instanceof QueueFull || s instanceof FileNotFound) {
+                        session.onReaskAnswer(source, s);
+                    } else {
+                        log.debug("[udp] unexpected packet {} from {}", header, source);
+                    }
+                }
+            } catch(JED2KException e) {
+                log.warn("[udp] unable to parse datagram from {} {}", source, e);
+            }
+        }
     }
 
-    public void onWriteable() {
-        try {
-            bufferOutgoing.clear();
-            Pair<Serializable, Endpoint> point = outgoingOrder.poll();
+    void onWriteable() {
+        while(!outgoingOrder.isEmpty()) {
+            Pair<Serializable, Endpoint> point = outgoingOrder.peek();
 
-            if (point != null) {
-                if (!packetCombainer.pack(point.left, bufferOutgoing)) throw new JED2KException(ErrorCode.FAIL);
+            try {
+                bufferOutgoing.clear();
+                if (!combiner.pack(point.left, bufferOutgoing)) throw new JED2KException(ErrorCode.BUFFER_TOO_LARGE);
                 bufferOutgoing.flip();
-                stat.sendBytes(bufferOutgoing.remaining(), 0);
-                channel.write(bufferOutgoing);
-            }
-            else {
-                key.interestOps(SelectionKey.OP_READ);
+                int size = bufferOutgoing.remaining();
+                if (channel.send(bufferOutgoing, point.right.toInetSocketAddress()) == 0) return;
+                stat.sendBytes(size, 0);
+            } catch(JED2KException e) {
+                log.warn("[udp] unable to send packet {} to {} {}", point.left, point.right, e);
+            } catch (IOException e) {
+                log.warn("[udp] send to {} error {}", point.right, e.getMessage());
             }
 
-            return;
-        }
-        catch(JED2KException e) {
-            log.warn("[udp writeable] jed2k error {}", e);
-            assert(false);
-        } catch (IOException e) {
-            log.warn("[udp writeable] i/o error {}", e);
+            outgoingOrder.poll();
         }
 
-        close();
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * datagrams are sent when socket becomes writeable
+     * @param packet data
+     * @param point target endpoint
+     */
+    public void write(final Serializable packet, final Endpoint point) {
+        outgoingOrder.add(Pair.make(packet, point));
+        if (outgoingOrder.size() == 1) key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    public Statistics statistics() {
+        return stat;
     }
 }
@@ -0,0 +1,240 @@
+package org.dkf.jed2k;
+
+import org.dkf.jed2k.protocol.Hash;
+
+import java.util.*;
+
+/**
+ * upload slots and waiting queue of event loop, clients are identified by user hash
+ * clients get slots in order of their first request, waiting client keeps its place after disconnect
+ * and gets slot when it is connected again, place is lost when client doesn't ask again for expiration time
+ * uploading client gives its slot back after slot quota was sent when somebody connected waits for it
+ * here or in another queue shares the same slots
+ * not thread safe - used by owner loop only, shared slots are synchronized by themselves
+ * Created by agent on 18.10.2026.
+ * @param <C> connection type
+ */
+public class UploadQueue<C> {
+    public static final long ENTRY_EXPIRATION = Time.hours(1);
+    public static final long SLOT_QUOTA = Constants.PIECE_SIZE;
+
+    private static class Entry<C> {
+        final Hash client;
+        C connection = null;
+        long lastSeen;
+        long uploaded = 0;
+
+        Entry(final Hash client, long now) {
+            this.client = client;
+            lastSeen = now;
+        }
+    }
+
+    private final LinkedHashMap<Hash, Entry<C>> waiting = new LinkedHashMap<Hash, Entry<C>>();
+    private final Map<Hash, Entry<C>> uploading = new HashMap<Hash, Entry<C>>();
+    private final UploadSlots slots;
+    private int queueSize;
+
+    public UploadQueue(int slots, int queueSize) {
+        this(new UploadSlots(slots), queueSize);
+    }
+
+    /**
+     * @param slots upload slots shared with other queues
+     * @param queueSize max count of waiting clients
+     */
+    public UploadQueue(final UploadSlots slots, int queueSize) {
+        assert slots != null;
+        this.slots = slots;
+        setQueueSize(queueSize);
+    }
+
+    /**
+     * @param slots count of simultaneous uploads, changes slots shared with other queues too
+     * @param queueSize max count of waiting clients
+     */
+    public void setLimits(int slots, int queueSize) {
+        this.slots.setLimit(slots);
+        setQueueSize(queueSize);
+    }
+
+    /**
+     * @param queueSize max count of waiting clients
+     */
+    public void setQueueSize(int queueSize) {
+        this.queueSize = Math.max(0, queueSize);
+    }
+
+    /**
+     * client asks for upload
+     * @param client user hash of remote peer, copied by queue
+     * @param connection connection of client
+     * @param now current time
+     * @return zero if client has upload slot, position in waiting queue starting from 1 or -1 when queue is full
+     */
+    public int request(final Hash client, final C connection, long now) {
+        Entry<C> e = uploading.get(client);
+        if (e != null) {
+            e.connection = connection;
+            e.lastSeen = now;
+            return 0;
+        }
+
+        e = waiting.get(client);
+        if (e == null) {
+            if (waiting.size() >= queueSize && !slots.hasFree()) return -1;
+            // caller's hash may be changed later, key must not
+            e = new Entry<C>(new Hash(client), now);
+            waiting.put(e.client, e);
+        }
+
+        e.connection = connection;
+        e.lastSeen = now;
+
+        if (firstConnected() == e && slots.acquire(this)) {
+            grant(e);
+            return 0;
+        }
+
+        return rank(client);
+    }
+
+    /**
+     * @param client user hash of remote peer
+     * @return position in waiting queue starting from 1, zero for uploading client, -1 for unknown client
+     */
+    public int rank(final Hash client) {
+        if (uploading.containsKey(client)) return 0;
+        int pos = 1;
+        for(final Hash h: waiting.keySet()) {
+            if (h.equals(client)) return pos;
+            ++pos;
+        }
+
+        return -1;
+    }
+
+    /**
+     * client's connection was closed, uploading client loses slot, waiting client keeps its place
+     * @param client user hash of remote peer
+     * @param connection closed connection, entry of client's another connection stays unchanged
+     * @param now current time
+     */
+    public void disconnected(final Hash client, final C connection, long now) {
+        Entry<C> e = uploading.get(client);
+        if (e != null && e.connection == connection) revoke(client);
+
+        e = waiting.get(client);
+        if (e != null && e.connection == connection) {
+            e.connection = null;
+            e.lastSeen = now;
+        }
+    }
+
+    /**
+     * client doesn't want upload anymore
+     * @param client user hash of remote peer
+     */
+    public void remove(final Hash client) {
+        revoke(client);
+        waiting.remove(client);
+    }
+
+    /**
+     * account data sent to uploading client
+     * @param client user hash of remote peer
+     * @param bytes count of sent bytes
+     * @param now current time
+     * @return true if client has sent its slot quota and must give slot to client waiting here or in another queue,
+     * client goes to queue's end
+     */
+    public boolean onUploaded(final Hash client, long bytes, long now) {
+        Entry<C> e = uploading.get(client);
+        if (e == null) return false;
+        e.uploaded += bytes;
+
+        if (e.uploaded >= SLOT_QUOTA && (firstConnected() != null || slots.isWantedByOthers(this))) {
+            revoke(client);
+            e.uploaded = 0;
+            e.lastSeen = now;
+            waiting.put(e.client, e);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * forget waiting clients didn't ask for upload too long and give free slots to connected waiting clients
+     * @param now current time
+     * @return connections of clients got slots
+     */
+    public List<C> tick(long now) {
+        Iterator<Entry<C>> itr = waiting.values().iterator();
+        while(itr.hasNext()) {
+            Entry<C> e = itr.next();
+            if (e.connection == null && now - e.lastSeen > ENTRY_EXPIRATION) itr.remove();
+        }
+
+        Entry<C> e = firstConnected();
+        if (e == null) {
+            slots.satisfied(this);
+            return Collections.emptyList();
+        }
+
+        List<C> res = new ArrayList<C>();
+        while(e != null && slots.acquire(this)) {
+            grant(e);
+            res.add(e.connection);
+            e = firstConnected();
+        }
+
+        if (e == null) slots.satisfied(this);
+        return res;
+    }
+
+    /**
+     * @return connections of uploading clients
+     */
+    public List<C> uploadingConnections() {
+        List<C> res = new ArrayList<C>(uploading.size());
+        for(final Entry<C> e: uploading.values()) {
+            if (e.connection != null) res.add(e.connection);
+        }
+
+        return res;
+    }
+
+    public boolean isUploading(final Hash client) {
+        return uploading.containsKey(client);
+    }
+
+    public int uploadingCount() {
+        return uploading.size();
+    }
+
+    public int waitingCount() {
+        return waiting.size();
+    }
+
+    private Entry<C> firstConnected() {
+        for(final Entry<C> e: waiting.values()) {
+            if (e.connection != null) return e;
+        }
+
+        return null;
+    }
+
+    /**
+     * slot must be acquired by caller
+     */
+    private void grant(final Entry<C> e) {
+        waiting.remove(e.client);
+        e.uploaded = 0;
+        uploading.put(e.client, e);
+    }
+
+    private void revoke(final Hash client) {
+        if (uploading.remove(client) != null) slots.release();
+    }
+}
@@ -0,0 +1,73 @@
+package org.dkf.jed2k;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * upload slots of session shared by upload queues of all event loops, so slots of idle loop are used by busy one
+ * queue couldn't get slot for its waiting client is remembered as starving and next free slot is kept for it
+ * thread safe
+ * Created by agent on 18.10.2026.
+ */
+public class UploadSlots {
+    private int limit;
+    private int used = 0;
+    private final Set<Object> starving = new HashSet<Object>();
+
+    public UploadSlots(int limit) {
+        setLimit(limit);
+    }
+
+    /**
+     * @param limit count of simultaneous uploads, new limit doesn't revoke slots already taken
+     */
+    public synchronized void setLimit(int limit) {
+        this.limit = Math.max(0, limit);
+    }
+
+    /**
+     * @param owner queue asks slot for its first waiting client
+     * @return true if slot was taken, otherwise owner is starving until it gets slot or calls satisfied
+     */
+    public synchronized boolean acquire(final Object owner) {
+        if (used < limit && (starving.isEmpty() || starving.contains(owner))) {
+            ++used;
+            starving.remove(owner);
+            return true;
+        }
+
+        starving.add(owner);
+        return false;
+    }
+
+    /**
+     * return slot taken by acquire
+     */
+    public synchronized void release() {
+        assert used > 0;
+        if (used > 0) --used;
+    }
+
+    /**
+     * @param owner queue has no connected waiting clients anymore
+     */
+    public synchronized void satisfied(final Object owner) {
+        starving.remove(owner);
+    }
+
+    /**
+     * @param owner queue asks
+     * @return true when another queue waits for slot
+     */
+    public synchronized boolean isWantedByOthers(final Object owner) {
+        return starving.size() > (starving.contains(owner)?1:0);
+    }
+
+    public synchronized boolean hasFree() {
+        return used < limit;
+    }
+
+    public synchronized int used() {
+        return used;
+    }
+}
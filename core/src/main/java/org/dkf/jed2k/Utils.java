@@ -205,6 +205,17 @@ public final class Utils {
         return (a.longValue() + b.longValue() - 1)/b.longValue();
     }
 
+    /**
+     * split total to parts without rounding up, first parts get remainder by one
+     * @param total value to split
+     * @param parts count of parts
+     * @param index index of part
+     * @return part's share, sum of all shares equals total
+     */
+    public static int divShare(int total, int parts, int index) {
+        return total/parts + (index < total % parts?1:0);
+    }
+
     public static Hash fingerprint(Hash hash, byte first, byte second) {
         hash.set(5, first);
         hash.set(15, second);
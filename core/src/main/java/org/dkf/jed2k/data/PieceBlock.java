@@ -3,6 +3,7 @@ package org.dkf.jed2k.data;
 import org.dkf.jed2k.Constants;
 import org.dkf.jed2k.exception.ErrorCode;
 import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.PacketFactory;
 import org.dkf.jed2k.protocol.Serializable;
 
 import java.nio.BufferUnderflowException;
@@ -13,6 +14,13 @@ import java.nio.ByteBuffer;
  * each piece contains few few blocks, from 1 to BLOCKS_PER_PIECE constant
  */
 public class PieceBlock implements Comparable<PieceBlock>, Serializable {
+    public static final PacketFactory<PieceBlock> FACTORY = new PacketFactory<PieceBlock>() {
+        @Override
+        public PieceBlock create() {
+            return new PieceBlock();
+        }
+    };
+
     public int pieceIndex;
     public int pieceBlock;
 
@@ -0,0 +1,84 @@
+package org.dkf.jed2k.data;
+
+import org.dkf.jed2k.Constants;
+import org.dkf.jed2k.exception.ErrorCode;
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.PacketFactory;
+import org.dkf.jed2k.protocol.Serializable;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * MD4 midstate of partial piece after its contiguous hashed blocks
+ * allows to continue piece hashing after restart without reading those blocks from disk
+ * Created by agent on 18.10.2026.
+ */
+public class PieceHashState implements Serializable {
+    public static final PacketFactory<PieceHashState> FACTORY = new PacketFactory<PieceHashState>() {
+        @Override
+        public PieceHashState create() {
+            return new PieceHashState();
+        }
+    };
+
+    public int pieceIndex;
+    public int hashedBlocks;
+    public final int[] context = new int[4];
+    public long count;
+
+    public PieceHashState() {
+        pieceIndex = -1;
+        hashedBlocks = 0;
+        count = 0;
+    }
+
+    public PieceHashState(int pieceIndex, int hashedBlocks, final int[] context, long count) {
+        assert context.length == 4;
+        this.pieceIndex = pieceIndex;
+        this.hashedBlocks = hashedBlocks;
+        System.arraycopy(context, 0, this.context, 0, 4);
+        this.count = count;
+    }
+
+    /**
+     * @return true if state describes whole blocks from piece's beginning
+     */
+    public boolean isValid() {
+        return pieceIndex >= 0 && hashedBlocks > 0 && hashedBlocks < Constants.BLOCKS_PER_PIECE
+                && count == hashedBlocks*Constants.BLOCK_SIZE;
+    }
+
+    @Override
+    public ByteBuffer get(ByteBuffer src) throws JED2KException {
+        try {
+            pieceIndex = src.getInt();
+            hashedBlocks = src.getInt();
+            for(int i = 0; i < context.length; ++i) context[i] = src.getInt();
+            count = src.getLong();
+        } catch(BufferUnderflowException e) {
+            throw new JED2KException(ErrorCode.BUFFER_UNDERFLOW_EXCEPTION);
+        } catch(Exception e) {
+            throw new JED2KException(ErrorCode.BUFFER_GET_EXCEPTION);
+        }
+
+        return src;
+    }
+
+    @Override
+    public ByteBuffer put(ByteBuffer dst) throws JED2KException {
+        dst.putInt(pieceIndex).putInt(hashedBlocks);
+        for(final int c: context) dst.putInt(c);
+        return dst.putLong(count);
+    }
+
+    @Override
+    public int bytesCount() {
+        return 4 + 4 + 4*4 + 8;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("piece{%d} hashed blocks{%d}", pieceIndex, hashedBlocks);
+    }
+}
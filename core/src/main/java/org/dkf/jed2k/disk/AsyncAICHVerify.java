@@ -0,0 +1,51 @@
+package org.dkf.jed2k.disk;
+
+import org.dkf.jed2k.Transfer;
+import org.dkf.jed2k.exception.BaseErrorCode;
+import org.dkf.jed2k.exception.ErrorCode;
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.AICHHash;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * verify data of piece failed hash check against trusted AICH block hashes
+ * when part of blocks is corrupted piece is switched to recovery mode in hashing stage
+ * Created by agent on 18.10.2026.
+ */
+public class AsyncAICHVerify extends TransferCallable<AsyncOperationResult> {
+    private final int pieceIndex;
+    private final List<AICHHash> hashes;
+    private List<Integer> corruptedBlocks = null;
+    private BaseErrorCode code = ErrorCode.NO_ERROR;
+
+    public AsyncAICHVerify(final Transfer t, int pieceIndex, final List<AICHHash> hashes) {
+        super(t);
+        this.pieceIndex = pieceIndex;
+        this.hashes = hashes;
+    }
+
+    @Override
+    public void performIO() {
+        try {
+            corruptedBlocks = getTransfer().getPieceManager().verifyBlocks(pieceIndex, hashes, getTransfer().size());
+        } catch(JED2KException e) {
+            code = e.getErrorCode();
+        }
+    }
+
+    @Override
+    public AsyncOperationResult call() throws Exception {
+        List<ByteBuffer> buffers = new LinkedList<>();
+        PieceManager pm = getTransfer().getPieceManager();
+
+        if (code == ErrorCode.NO_ERROR && !corruptedBlocks.isEmpty()
+                && corruptedBlocks.size() < pm.blocksInPiece(pieceIndex)) {
+            buffers = pm.beginRecovery(pieceIndex);
+        }
+
+        return new AsyncAICHVerifyResult(getTransfer(), pieceIndex, corruptedBlocks, buffers, code);
+    }
+}
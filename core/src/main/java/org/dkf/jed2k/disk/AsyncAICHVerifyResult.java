@@ -0,0 +1,36 @@
+package org.dkf.jed2k.disk;
+
+import org.dkf.jed2k.Transfer;
+import org.dkf.jed2k.exception.BaseErrorCode;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Created by agent on 18.10.2026.
+ */
+public class AsyncAICHVerifyResult implements AsyncOperationResult {
+    final Transfer transfer;
+    final int piece;
+    final List<Integer> corruptedBlocks;
+    final List<ByteBuffer> buffers;
+    final BaseErrorCode code;
+
+    public AsyncAICHVerifyResult(final Transfer t, int piece, final List<Integer> corruptedBlocks, final List<ByteBuffer> buffers, final BaseErrorCode code) {
+        this.transfer = t;
+        this.piece = piece;
+        this.corruptedBlocks = corruptedBlocks;
+        this.buffers = buffers;
+        this.code = code;
+    }
+
+    @Override
+    public void onCompleted() {
+        transfer.onAICHVerifyCompleted(piece, corruptedBlocks, buffers, code);
+    }
+
+    @Override
+    public BaseErrorCode getCode() {
+        return code;
+    }
+}
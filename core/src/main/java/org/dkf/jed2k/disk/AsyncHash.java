@@ -1,21 +1,46 @@
 package org.dkf.jed2k.disk;
 
 import org.dkf.jed2k.Transfer;
+import org.dkf.jed2k.exception.JED2KException;
 import org.dkf.jed2k.protocol.Hash;
 
 /**
  * Created by ap197_000 on 16.08.2016.
+ * piece recovered by AICH is hashed reading its data from file since verified blocks weren't hashed on write
  */
 public class AsyncHash extends TransferCallable<AsyncOperationResult> {
     private final int pieceIndex;
+    private final boolean fromDisk;
+    private Hash diskHash = null;
 
     public AsyncHash(final Transfer t, int pieceIndex) {
+        this(t, pieceIndex, false);
+    }
+
+    public AsyncHash(final Transfer t, int pieceIndex, boolean fromDisk) {
         super(t);
         this.pieceIndex = pieceIndex;
+        this.fromDisk = fromDisk;
+    }
+
+    @Override
+    public void performIO() {
+        if (!fromDisk) return;
+        try {
+            diskHash = getTransfer().getPieceManager().hashPieceFromDisk(pieceIndex, getTransfer().size());
+        } catch(JED2KException e) {
+            // piece will be downloaded again
+            diskHash = Hash.INVALID;
+        }
     }
 
     @Override
     public AsyncOperationResult call() throws Exception {
+        if (fromDisk) {
+            getTransfer().getPieceManager().endRecovery(pieceIndex);
+            return new AsyncHashResult(diskHash, getTransfer(), pieceIndex);
+        }
+
         Hash h = getTransfer().getPieceManager().hashPiece(pieceIndex);
         return new AsyncHashResult(h, getTransfer(), pieceIndex);
     }
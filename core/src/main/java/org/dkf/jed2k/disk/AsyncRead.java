@@ -0,0 +1,78 @@
+package org.dkf.jed2k.disk;
+
+import org.dkf.jed2k.PeerConnection;
+import org.dkf.jed2k.Transfer;
+import org.dkf.jed2k.data.Range;
+import org.dkf.jed2k.exception.BaseErrorCode;
+import org.dkf.jed2k.exception.ErrorCode;
+import org.dkf.jed2k.exception.JED2KException;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/**
+ * reads range of file requested by uploading peer into pool buffer
+ * data is compressed in hashing stage when peer supports compression and compressed data is smaller
+ * Created by agent on 18.10.2026.
+ */
+public class AsyncRead extends TransferCallable<AsyncOperationResult> {
+    private final PeerConnection connection;
+    private final Range range;
+    private final ByteBuffer buffer;
+    private final boolean compress;
+    private BaseErrorCode code = ErrorCode.NO_ERROR;
+
+    public AsyncRead(final Transfer t, final PeerConnection c, final Range r, final ByteBuffer buffer, boolean compress) {
+        super(t);
+        assert r.right - r.left <= buffer.capacity();
+        connection = c;
+        range = r;
+        this.buffer = buffer;
+        this.compress = compress;
+    }
+
+    @Override
+    public void performIO() {
+        buffer.clear();
+        buffer.limit((int)(range.right - range.left));
+        try {
+            getTransfer().getPieceManager().readData(buffer, range.left);
+        } catch(JED2KException e) {
+            code = e.getErrorCode();
+        }
+    }
+
+    @Override
+    public AsyncOperationResult call() throws Exception {
+        ByteBuffer compressed = null;
+        if (compress && code == ErrorCode.NO_ERROR) compressed = deflate(buffer);
+        return new AsyncReadResult(connection, range, buffer, compressed, code);
+    }
+
+    /**
+     * @param data source, position isn't changed
+     * @return compressed data or null when compression doesn't reduce size
+     */
+    static ByteBuffer deflate(final ByteBuffer data) {
+        byte[] src = new byte[data.remaining()];
+        data.duplicate().get(src);
+        byte[] dst = new byte[src.length];
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+        try {
+            deflater.setInput(src);
+            deflater.finish();
+            int size = deflater.deflate(dst);
+            // output buffer must not be filled since compressed data has to be smaller than source
+            if (!deflater.finished() || size >= src.length) return null;
+            return ByteBuffer.wrap(dst, 0, size);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public int getPriority() {
+        return PRIORITY_UPLOAD;
+    }
+}
@@ -0,0 +1,36 @@
+package org.dkf.jed2k.disk;
+
+import org.dkf.jed2k.PeerConnection;
+import org.dkf.jed2k.data.Range;
+import org.dkf.jed2k.exception.BaseErrorCode;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Created by agent on 18.10.2026.
+ */
+public class AsyncReadResult implements AsyncOperationResult {
+    final PeerConnection connection;
+    final Range range;
+    final ByteBuffer buffer;
+    final ByteBuffer compressed;
+    final BaseErrorCode code;
+
+    AsyncReadResult(final PeerConnection c, final Range r, final ByteBuffer buffer, final ByteBuffer compressed, final BaseErrorCode code) {
+        connection = c;
+        range = r;
+        this.buffer = buffer;
+        this.compressed = compressed;
+        this.code = code;
+    }
+
+    @Override
+    public void onCompleted() {
+        connection.onUploadReadCompleted(range, buffer, compressed, code);
+    }
+
+    @Override
+    public BaseErrorCode getCode() {
+        return code;
+    }
+}
@@ -14,11 +14,16 @@ public class AsyncRelease extends TransferCallable<AsyncOperationResult> {
         this.deleteFile = deleteFile;
     }
 
+    @Override
+    public void performIO() {
+        getTransfer().getPieceManager().closeFile(deleteFile);
+    }
+
     @Override
     public AsyncOperationResult call() throws Exception {
         return new AsyncReleaseResult(ErrorCode.NO_ERROR
                 , getTransfer()
-                , getTransfer().getPieceManager().releaseFile(deleteFile)
+                , getTransfer().getPieceManager().abort()
                 , deleteFile);
     }
 }
@@ -2,6 +2,7 @@ package org.dkf.jed2k.disk;
 
 import org.dkf.jed2k.Transfer;
 import org.dkf.jed2k.data.PieceBlock;
+import org.dkf.jed2k.exception.BaseErrorCode;
 import org.dkf.jed2k.exception.ErrorCode;
 import org.dkf.jed2k.exception.JED2KException;
 
@@ -10,11 +11,14 @@ import java.util.LinkedList;
 
 /**
  * Created by inkpot on 24.08.2016.
+ * restores block into pool buffer or, when buffer is null, uses view of file data
  */
 public class AsyncRestore extends TransferCallable<AsyncOperationResult> {
     private final PieceBlock block;
     private final long fileSize;
     private final ByteBuffer buffer;
+    private ByteBuffer view = null;
+    private BaseErrorCode code = ErrorCode.NO_ERROR;
 
     public AsyncRestore(final Transfer t, final PieceBlock b, long fs, final ByteBuffer bf) {
         super(t);
@@ -24,17 +28,44 @@ public class AsyncRestore extends TransferCallable<AsyncOperationResult> {
     }
 
     @Override
-    public AsyncOperationResult call() throws Exception {
+    public void performIO() {
         try {
+            if (buffer == null) {
+                view = getTransfer().getPieceManager().readBlockView(block, fileSize);
+            } else {
+                getTransfer().getPieceManager().readBlockData(block, buffer, fileSize);
+            }
+        } catch(JED2KException e) {
+            code = e.getErrorCode();
+        }
+    }
+
+    @Override
+    public AsyncOperationResult call() throws Exception {
+        if (code != ErrorCode.NO_ERROR) {
             return new AsyncWriteResult(block
-                    , getTransfer().getPieceManager().restoreBlock(block, buffer, fileSize)
+                    , (buffer != null)?new LinkedList<ByteBuffer>(){{addLast(buffer);}}:new LinkedList<ByteBuffer>()
                     , getTransfer()
-                    , ErrorCode.NO_ERROR);
-        } catch(JED2KException e) {
+                    , code);
+        }
+
+        if (view != null) {
             return new AsyncWriteResult(block
-                    , new LinkedList<ByteBuffer>(){{addLast(buffer);}}
+                    , getTransfer().getPieceManager().registerView(block, view)
                     , getTransfer()
-                    , e.getErrorCode());
+                    , ErrorCode.NO_ERROR
+                    , getTransfer().getPieceManager().hashState(block.pieceIndex));
         }
+
+        return new AsyncWriteResult(block
+                , getTransfer().getPieceManager().registerBlock(block, buffer)
+                , getTransfer()
+                , ErrorCode.NO_ERROR
+                , getTransfer().getPieceManager().hashState(block.pieceIndex));
+    }
+
+    @Override
+    public int getPriority() {
+        return PRIORITY_RESTORE;
     }
 }
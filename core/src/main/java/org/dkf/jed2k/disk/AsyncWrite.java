@@ -2,6 +2,7 @@ package org.dkf.jed2k.disk;
 
 import org.dkf.jed2k.Transfer;
 import org.dkf.jed2k.data.PieceBlock;
+import org.dkf.jed2k.exception.BaseErrorCode;
 import org.dkf.jed2k.exception.ErrorCode;
 import org.dkf.jed2k.exception.JED2KException;
 
@@ -16,6 +17,7 @@ import java.util.LinkedList;
 public class AsyncWrite extends TransferCallable<AsyncOperationResult> {
     final PieceBlock block;
     final ByteBuffer buffer;
+    private BaseErrorCode code = ErrorCode.NO_ERROR;
 
     // TODO - check parameters here, most likely no need peer request, use piece block here
     public AsyncWrite(final PieceBlock block, final ByteBuffer b, final Transfer t) {
@@ -30,16 +32,26 @@ public class AsyncWrite extends TransferCallable<AsyncOperationResult> {
     }
 
     @Override
-    public AsyncOperationResult call() throws Exception {
+    public void performIO() {
         try {
-            return new AsyncWriteResult(block
-                    , getTransfer().getPieceManager().writeBlock(block, buffer)
-                    , getTransfer(), ErrorCode.NO_ERROR);
+            getTransfer().getPieceManager().writeBlockData(block, buffer);
         } catch(JED2KException e) {
+            code = e.getErrorCode();
+        }
+    }
+
+    @Override
+    public AsyncOperationResult call() throws Exception {
+        if (code != ErrorCode.NO_ERROR) {
             return new AsyncWriteResult(block
                     , new LinkedList<ByteBuffer>(){{addLast(buffer);}}
                     , getTransfer()
-                    , e.getErrorCode());
+                    , code);
         }
+
+        return new AsyncWriteResult(block
+                , getTransfer().getPieceManager().registerBlock(block, buffer)
+                , getTransfer(), ErrorCode.NO_ERROR
+                , getTransfer().getPieceManager().hashState(block.pieceIndex));
     }
 }
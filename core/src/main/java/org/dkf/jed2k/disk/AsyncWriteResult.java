@@ -2,6 +2,7 @@ package org.dkf.jed2k.disk;
 
 import org.dkf.jed2k.Transfer;
 import org.dkf.jed2k.data.PieceBlock;
+import org.dkf.jed2k.data.PieceHashState;
 import org.dkf.jed2k.exception.BaseErrorCode;
 
 import java.nio.ByteBuffer;
@@ -15,17 +16,26 @@ public class AsyncWriteResult implements AsyncOperationResult {
     final Transfer transfer;
     final BaseErrorCode code;
     final PieceBlock block;
+    final PieceHashState hashState;
 
     public AsyncWriteResult(final PieceBlock b, final List<ByteBuffer> buffers, final Transfer t, final BaseErrorCode ec) {
+        this(b, buffers, t, ec, null);
+    }
+
+    /**
+     * @param hashState midstate of block's piece hash after block registration
+     */
+    public AsyncWriteResult(final PieceBlock b, final List<ByteBuffer> buffers, final Transfer t, final BaseErrorCode ec, final PieceHashState hashState) {
         this.block = b;
         this.buffers = buffers;
         transfer = t;
         this.code = ec;
+        this.hashState = hashState;
     }
 
     @Override
     public void onCompleted() {
-        transfer.onBlockWriteCompleted(block, buffers, getCode());
+        transfer.onBlockWriteCompleted(block, buffers, getCode(), hashState);
     }
 
     @Override
@@ -8,6 +8,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 
 /**
  * Created by inkpot on 30.01.2017.
@@ -15,8 +17,36 @@ import java.io.IOException;
 @Slf4j
 public class DesktopFileHandler extends FileHandler {
 
+    /**
+     * use positional mode with one read/write channel
+     */
+    private final boolean positional;
+
     public DesktopFileHandler(final File file) {
+        this(file, true);
+    }
+
+    /**
+     * @param file target file
+     * @param positional true for one read/write channel, false for separate output and input streams
+     */
+    public DesktopFileHandler(final File file, boolean positional) {
         super(file);
+        this.positional = positional;
+    }
+
+    @Override
+    protected boolean isPositional() {
+        return positional;
+    }
+
+    @Override
+    protected FileChannel allocateChannel() throws JED2KException {
+        try {
+            return new RandomAccessFile(file, "rw").getChannel();
+        } catch(IOException e) {
+            throw new JED2KException(ErrorCode.IO_EXCEPTION);
+        }
     }
 
     @Override
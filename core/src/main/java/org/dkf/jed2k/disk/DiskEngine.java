@@ -0,0 +1,75 @@
+package org.dkf.jed2k.disk;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.RunnableFuture;
+
+/**
+ * disk operations of transfers executed in two pipelined stages
+ * file access goes through transfer's serial queue in disk pool, then hashing goes through
+ * transfer's serial queue in hashing pool, so one slow file or piece hash doesn't stall other transfers
+ * each transfer's operations keep submission order in both stages
+ * Created by agent on 18.10.2026.
+ */
+@Slf4j
+public class DiskEngine {
+    private final StripedExecutor diskPool;
+    private final StripedExecutor hashPool;
+
+    /**
+     * @param diskThreads count of threads for file access
+     * @param hashThreads count of threads for hashing
+     */
+    public DiskEngine(int diskThreads, int hashThreads) {
+        diskPool = new StripedExecutor("jed2k-disk", diskThreads);
+        hashPool = new StripedExecutor("jed2k-hash", hashThreads);
+    }
+
+    /**
+     * execute operation, completion is the future runs operation's call in hashing stage
+     * cancelled before start completion skips both stages
+     * @param op transfer's operation
+     * @param completion future wraps op
+     */
+    public void submit(final TransferCallable<?> op, final RunnableFuture<?> completion) {
+        assert op.getTransfer() != null;
+        final Object key = op.getTransfer();
+        final int priority = op.getPriority();
+
+        diskPool.execute(key, priority, new Runnable() {
+            @Override
+            public void run() {
+                if (completion.isDone()) return;
+                op.performIO();
+                hashPool.execute(key, priority, completion);
+            }
+        });
+    }
+
+    /**
+     * @return count of operations in both stages
+     */
+    public int pendingTasks() {
+        return diskPool.pendingTasks() + hashPool.pendingTasks();
+    }
+
+    /**
+     * executes already submitted operations and stops threads
+     */
+    public void shutdown() {
+        diskPool.shutdown();
+        try {
+            if (!diskPool.awaitTermination(5000)) log.warn("[disk engine] disk pool not finished");
+        } catch(InterruptedException e) {
+            log.error("[disk engine] await interrupted {}", e);
+        }
+
+        // hash stage receives last tasks from disk stage, so it is stopped after disk pool drained
+        hashPool.shutdown();
+        try {
+            if (!hashPool.awaitTermination(5000)) log.warn("[disk engine] hash pool not finished");
+        } catch(InterruptedException e) {
+            log.error("[disk engine] await interrupted {}", e);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package org.dkf.jed2k.disk;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dkf.jed2k.exception.JED2KException;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * session wide LRU cache of read/write file channels of handlers in positional mode
+ * limits count of open descriptors, least recently used channel not in use is closed when limit reached
+ * channel in use is never closed, so count of open channels can exceed limit while all of them are in use
+ * Created by agent on 18.10.2026.
+ */
+@Slf4j
+public class FileHandleCache {
+
+    private static class Entry {
+        final FileChannel channel;
+        int pins = 0;
+
+        /**
+         * handler was removed while channel was in use, channel is closed on last release
+         */
+        boolean doomed = false;
+
+        Entry(final FileChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final int capacity;
+    private final LinkedHashMap<FileHandler, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param capacity max count of open channels
+     */
+    public FileHandleCache(int capacity) {
+        assert capacity > 0;
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * open handler's channel if it is not in cache and pin it until release
+     * @param handler file handler in positional mode
+     * @return open channel
+     * @throws JED2KException
+     */
+    public synchronized FileChannel acquire(final FileHandler handler) throws JED2KException {
+        Entry e = entries.get(handler);
+        if (e == null) {
+            evict(capacity - 1);
+            e = new Entry(handler.allocateChannel());
+            entries.put(handler, e);
+        }
+
+        // handler is opened again before pending close, keep channel
+        e.doomed = false;
+        ++e.pins;
+        return e.channel;
+    }
+
+    /**
+     * unpin channel after operation completed
+     * @param handler file handler
+     */
+    public synchronized void release(final FileHandler handler) {
+        Entry e = entries.get(handler);
+        if (e != null) {
+            assert e.pins > 0;
+            --e.pins;
+            if (e.pins == 0 && e.doomed) {
+                entries.remove(handler);
+                close(e.channel);
+            }
+        }
+
+        if (entries.size() > capacity) evict(capacity);
+    }
+
+    /**
+     * close handler's channel and remove it from cache
+     * channel in use by disk or hash thread is closed when the last of them releases it
+     * @param handler file handler
+     */
+    public synchronized void remove(final FileHandler handler) {
+        Entry e = entries.get(handler);
+        if (e == null) return;
+        if (e.pins > 0) {
+            e.doomed = true;
+            return;
+        }
+
+        entries.remove(handler);
+        close(e.channel);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public final int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * close least recently used channels not in use until count of channels is not greater than limit
+     * @param limit required count of channels
+     */
+    private void evict(int limit) {
+        Iterator<Map.Entry<FileHandler, Entry>> itr = entries.entrySet().iterator();
+        while(entries.size() > limit && itr.hasNext()) {
+            Map.Entry<FileHandler, Entry> e = itr.next();
+            if (e.getValue().pins == 0) {
+                log.trace("[file cache] evict {}", e.getKey().getFile());
+                itr.remove();
+                close(e.getValue().channel);
+            }
+        }
+    }
+
+    private static void close(final FileChannel c) {
+        try {
+            c.close();
+        } catch(IOException e) {
+            log.error("[file cache] unable to close channel {}", e.toString());
+        }
+    }
+}
@@ -1,17 +1,22 @@
 package org.dkf.jed2k.disk;
 
 import lombok.extern.slf4j.Slf4j;
+import org.dkf.jed2k.exception.ErrorCode;
 import org.dkf.jed2k.exception.JED2KException;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
 /**
  * Created by inkpot on 30.01.2017.
  * common file interface with open and close(delete) feature
+ * handler supports two modes: separate output and input streams channels with position and write/read
+ * or positional mode with one read/write channel, optionally shared through session's file handle cache
  */
 @Slf4j
 public abstract class FileHandler {
@@ -23,6 +28,15 @@ public abstract class FileHandler {
     private FileInputStream rStream;
     private FileChannel[] channels = {null, null};
 
+    /**
+     * read/write channel of positional mode when handler has no cache, guarded by handler's monitor
+     * disk and hash threads pin channel for operation, close of pinned channel is postponed to the last release
+     */
+    private FileChannel channel = null;
+    private int channelPins = 0;
+    private boolean channelDoomed = false;
+    private FileHandleCache cache = null;
+
     public FileHandler(final File file) {
         this.file = file;
     }
@@ -47,7 +61,131 @@ public abstract class FileHandler {
         return channels[READ];
     }
 
+    /**
+     * @param cache session's file handle cache for positional mode
+     */
+    public void setHandleCache(final FileHandleCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * write all buffer's data to file starting from position
+     * positional mode doesn't change channel position, so doesn't block concurrent access to file
+     * @param buffer data source
+     * @param position offset in file
+     * @throws IOException
+     * @throws JED2KException
+     */
+    public void write(final ByteBuffer buffer, long position) throws IOException, JED2KException {
+        if (isPositional()) {
+            FileChannel c = acquireChannel();
+            try {
+                long pos = position;
+                while(buffer.hasRemaining()) pos += c.write(buffer, pos);
+            } finally {
+                releaseChannel();
+            }
+        } else {
+            getWriteChannel().position(position);
+            while(buffer.hasRemaining()) getWriteChannel().write(buffer);
+        }
+    }
+
+    /**
+     * read data from file starting from position until buffer is full
+     * @param buffer destination
+     * @param position offset in file
+     * @throws IOException
+     * @throws JED2KException
+     */
+    public void read(final ByteBuffer buffer, long position) throws IOException, JED2KException {
+        if (isPositional()) {
+            FileChannel c = acquireChannel();
+            try {
+                long pos = position;
+                while(buffer.hasRemaining()) {
+                    int n = c.read(buffer, pos);
+                    if (n == -1) throw new EOFException();
+                    pos += n;
+                }
+            } finally {
+                releaseChannel();
+            }
+        } else {
+            getReadChannel().position(position);
+            while(buffer.hasRemaining()) getReadChannel().read(buffer);
+        }
+    }
+
+    /**
+     * @param position offset in file
+     * @param size count of bytes
+     * @return read only buffer with file's data without copying or null when handler doesn't support it
+     * @throws JED2KException
+     */
+    public ByteBuffer view(long position, int size) throws JED2KException {
+        return null;
+    }
+
+    /**
+     * @return true if view returns file's data
+     */
+    public boolean supportsViews() {
+        return false;
+    }
+
+    /**
+     * get read/write channel of positional mode, must be paired with releaseChannel
+     * @return open channel
+     * @throws JED2KException
+     */
+    protected FileChannel acquireChannel() throws JED2KException {
+        if (cache != null) return cache.acquire(this);
+        synchronized (this) {
+            if (channel == null) channel = allocateChannel();
+            channelDoomed = false;
+            ++channelPins;
+            return channel;
+        }
+    }
+
+    protected void releaseChannel() {
+        if (cache != null) {
+            cache.release(this);
+            return;
+        }
+
+        synchronized (this) {
+            assert channelPins > 0;
+            if (--channelPins == 0 && channelDoomed) closeChannel();
+        }
+    }
+
+    private void closeChannel() {
+        channelDoomed = false;
+        if (channel == null) return;
+
+        try {
+            channel.close();
+        } catch(IOException e) {
+            log.error("unable to close file channel {}", e.toString());
+        }
+        finally {
+            channel = null;
+        }
+    }
+
     public void closeChannels() {
+        if (cache != null) cache.remove(this);
+
+        synchronized (this) {
+            if (channelPins > 0) {
+                channelDoomed = true;
+            } else {
+                closeChannel();
+            }
+        }
+
         for(int i = 0; i < channels.length; ++i) {
             try {
                 if (channels[i] != null) {
@@ -93,6 +231,23 @@ public abstract class FileHandler {
     }
 
 
+    /**
+     * @return true if handler works in positional mode and implements allocateChannel
+     */
+    protected boolean isPositional() {
+        return false;
+    }
+
+    /**
+     * open one channel for read and write without file truncation
+     * handlers without positional mode never get here
+     * @return channel for positional access
+     * @throws JED2KException
+     */
+    protected FileChannel allocateChannel() throws JED2KException {
+        throw new JED2KException(ErrorCode.INTERNAL_ERROR);
+    }
+
     protected abstract FileOutputStream allocateOutputStream() throws JED2KException;
     protected abstract FileInputStream allocateInputStream() throws JED2KException;
     protected abstract void deleteFile() throws JED2KException;
@@ -0,0 +1,255 @@
+package org.dkf.jed2k.disk;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dkf.jed2k.Constants;
+import org.dkf.jed2k.exception.ErrorCode;
+import org.dkf.jed2k.exception.JED2KException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * storage backend maps file by windows and copies blocks directly into mapping
+ * windows are aligned to pieces, so block never crosses window border
+ * restore reads blocks as views of mapping without pool buffers
+ * least recently used window is flushed and dropped when windows limit reached, evict can be called explicitly
+ * Created by agent on 18.10.2026.
+ */
+@Slf4j
+public class MappedFileHandler extends FileHandler {
+    public static final int DEFAULT_WINDOW_PIECES = 4;
+    public static final int DEFAULT_MAX_WINDOWS = 4;
+
+    private final long fileSize;
+    private final long windowSize;
+    private final int maxWindows;
+
+    /**
+     * mapped windows by index in access order
+     */
+    private final LinkedHashMap<Long, MappedByteBuffer> windows = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * windows dropped while views of them could be alive, unmapped explicitly on file delete if not collected yet
+     */
+    private final List<WeakReference<MappedByteBuffer>> dropped = new LinkedList<>();
+
+    public MappedFileHandler(final File file, long fileSize) {
+        this(file, fileSize, DEFAULT_WINDOW_PIECES, DEFAULT_MAX_WINDOWS);
+    }
+
+    /**
+     * @param file target file
+     * @param fileSize size of transfer, file is never mapped beyond it
+     * @param windowPieces count of pieces in one window
+     * @param maxWindows max count of mapped windows
+     */
+    public MappedFileHandler(final File file, long fileSize, int windowPieces, int maxWindows) {
+        super(file);
+        assert fileSize > 0;
+        assert windowPieces > 0;
+        assert maxWindows > 0;
+        this.fileSize = fileSize;
+        this.windowSize = windowPieces*Constants.PIECE_SIZE;
+        this.maxWindows = maxWindows;
+    }
+
+    @Override
+    protected boolean isPositional() {
+        return true;
+    }
+
+    @Override
+    protected FileChannel allocateChannel() throws JED2KException {
+        try {
+            return new RandomAccessFile(file, "rw").getChannel();
+        } catch(IOException e) {
+            throw new JED2KException(ErrorCode.IO_EXCEPTION);
+        }
+    }
+
+    /**
+     * @param position offset in file
+     * @param size count of bytes, range must be inside one window
+     * @return duplicate of window positioned on range
+     */
+    private synchronized ByteBuffer range(long position, int size) throws JED2KException {
+        if (position < 0 || position + size > fileSize) throw new JED2KException(ErrorCode.IO_EXCEPTION);
+        long index = position / windowSize;
+        long start = index*windowSize;
+        assert position + size <= start + windowSize;
+        MappedByteBuffer window = windows.get(index);
+
+        if (window == null) {
+            if (windows.size() >= maxWindows) evictEldest();
+            FileChannel c = acquireChannel();
+            try {
+                window = c.map(FileChannel.MapMode.READ_WRITE, start, Math.min(windowSize, fileSize - start));
+            } catch(IOException e) {
+                log.error("unable to map window {} of {} {}", index, file, e);
+                throw new JED2KException(ErrorCode.IO_EXCEPTION);
+            } finally {
+                releaseChannel();
+            }
+
+            windows.put(index, window);
+        }
+
+        ByteBuffer res = window.duplicate();
+        res.position((int)(position - start));
+        res.limit(res.position() + size);
+        return res;
+    }
+
+    @Override
+    public void write(final ByteBuffer buffer, long position) throws IOException, JED2KException {
+        range(position, buffer.remaining()).put(buffer);
+    }
+
+    @Override
+    public void read(final ByteBuffer buffer, long position) throws IOException, JED2KException {
+        buffer.put(range(position, buffer.remaining()));
+    }
+
+    @Override
+    public ByteBuffer view(long position, int size) throws JED2KException {
+        return range(position, size).slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public boolean supportsViews() {
+        return true;
+    }
+
+    private void evictEldest() {
+        Iterator<Map.Entry<Long, MappedByteBuffer>> itr = windows.entrySet().iterator();
+        if (itr.hasNext()) {
+            drop(itr.next().getValue());
+            itr.remove();
+        }
+    }
+
+    private void drop(final MappedByteBuffer w) {
+        w.force();
+        Iterator<WeakReference<MappedByteBuffer>> itr = dropped.iterator();
+        while(itr.hasNext()) {
+            if (itr.next().get() == null) itr.remove();
+        }
+
+        dropped.add(new WeakReference<>(w));
+    }
+
+    /**
+     * flush all windows to disk and drop them
+     * mapping is released by GC when no views of it are alive or by file delete
+     */
+    public synchronized void evict() {
+        for(final MappedByteBuffer w: windows.values()) {
+            drop(w);
+        }
+
+        windows.clear();
+    }
+
+    public synchronized int getWindowsCount() {
+        return windows.size();
+    }
+
+    @Override
+    public void closeChannels() {
+        evict();
+        super.closeChannels();
+    }
+
+    /**
+     * all windows are unmapped explicitly before delete since Windows refuses to delete mapped file
+     * views given out by restore must not be read after that, transfer's disk tasks are finished when file is deleted
+     * runtime without buffer cleaner(Android) leaves mapping to GC, delete failure is reported then
+     * @throws JED2KException when file wasn't deleted
+     */
+    @Override
+    protected void deleteFile() throws JED2KException {
+        close();
+        List<MappedByteBuffer> mapped = new ArrayList<>();
+        synchronized (this) {
+            for(final WeakReference<MappedByteBuffer> ref: dropped) {
+                MappedByteBuffer w = ref.get();
+                if (w != null) mapped.add(w);
+            }
+
+            dropped.clear();
+        }
+
+        for(final MappedByteBuffer w: mapped) {
+            unmap(w);
+        }
+
+        if (!file.delete() && file.exists()) {
+            log.error("unable to delete mapped file {}", file);
+            throw new JED2KException(ErrorCode.UNABLE_TO_DELETE_FILE);
+        }
+    }
+
+    /**
+     * release mapping of buffer through its cleaner: Unsafe.invokeCleaner since Java 9, DirectBuffer.cleaner before
+     * @param buffer mapped buffer, must not be used after call
+     * @return true if mapping was released
+     */
+    static boolean unmap(final MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field f = unsafeClass.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            invokeCleaner.invoke(f.get(null), buffer);
+            return true;
+        } catch(NoSuchMethodException e) {
+            // Java 8 and older
+        } catch(Exception e) {
+            log.debug("unable to unmap buffer by unsafe {}", e.toString());
+            return false;
+        }
+
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner == null) return false;
+            Method clean = cleaner.getClass().getMethod("clean");
+            clean.setAccessible(true);
+            clean.invoke(cleaner);
+            return true;
+        } catch(Exception e) {
+            log.debug("unable to unmap buffer by cleaner {}", e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * handler is always positional, streams are never requested
+     */
+    @Override
+    protected FileInputStream allocateInputStream() throws JED2KException {
+        throw new JED2KException(ErrorCode.INTERNAL_ERROR);
+    }
+
+    @Override
+    protected FileOutputStream allocateOutputStream() throws JED2KException {
+        throw new JED2KException(ErrorCode.INTERNAL_ERROR);
+    }
+}
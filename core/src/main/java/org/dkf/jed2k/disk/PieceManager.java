@@ -5,17 +5,19 @@ import org.dkf.jed2k.BlockManager;
 import org.dkf.jed2k.BlocksEnumerator;
 import org.dkf.jed2k.Constants;
 import org.dkf.jed2k.data.PieceBlock;
+import org.dkf.jed2k.data.PieceHashState;
 import org.dkf.jed2k.exception.ErrorCode;
 import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.hash.AICHHashTree;
+import org.dkf.jed2k.hash.MD4;
+import org.dkf.jed2k.protocol.AICHHash;
 import org.dkf.jed2k.protocol.Hash;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.channels.NonWritableChannelException;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
 
 /**
  * Created by inkpot on 15.07.2016.
@@ -26,6 +28,17 @@ public class PieceManager extends BlocksEnumerator {
     private final FileHandler handler;
     private LinkedList<BlockManager> blockMgrs = new LinkedList<BlockManager>();
 
+    /**
+     * registered views of file data, they are not pool buffers and never returned to requester
+     */
+    private final Set<ByteBuffer> views = Collections.newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>());
+
+    /**
+     * pieces partially recovered by AICH, their blocks aren't hashed on write since verified blocks are on disk only
+     * piece hash is calculated from file when all blocks are written
+     */
+    private final Set<Integer> recoveringPieces = new HashSet<>();
+
     public PieceManager(final FileHandler handler, int pieceCount, int blocksInLastPiece) {
         super(pieceCount, blocksInLastPiece);
         this.handler = handler;
@@ -42,16 +55,22 @@ public class PieceManager extends BlocksEnumerator {
     }
 
     /**
-     * actual write data to file
+     * actual write data to file and register block for hashing
      * @param b block
      * @param buffer data source
      */
     public List<ByteBuffer> writeBlock(PieceBlock b, final ByteBuffer buffer) throws JED2KException {
-        FileChannel c = handler.getWriteChannel();
-        assert c != null;
+        writeBlockData(b, buffer);
+        return registerBlock(b, buffer);
+    }
+
+    /**
+     * write data to file only, disk stage of write block
+     * @param b block
+     * @param buffer data source, rewound after write
+     */
+    public void writeBlockData(PieceBlock b, final ByteBuffer buffer) throws JED2KException {
         long bytesOffset = b.blocksOffset()* Constants.BLOCK_SIZE;
-        BlockManager mgr = getBlockManager(b.pieceIndex);
-        assert(mgr != null);
 
         // TODO - add error handling here with correct buffer return to requester
         try {
@@ -59,11 +78,15 @@ public class PieceManager extends BlocksEnumerator {
             // stage 1 - write block to disk, possibly error occurred
             // buffer must have remaining data
             assert(buffer.hasRemaining());
-            handler.getWriteChannel().position(bytesOffset);
-            while(buffer.hasRemaining()) handler.getWriteChannel().write(buffer);
+            handler.write(buffer, bytesOffset);
             buffer.rewind();
             log.debug("write block {} finished", b);
         }
+        catch(JED2KException e) {
+            log.error("unable to open file for write block {}", e);
+            handler.closeChannels();
+            throw e;
+        }
         catch(IOException e) {
             log.error("i/o error on write block {}", e);
             handler.closeChannels();    // do not use total close since in Android we are not able to open it again
@@ -77,9 +100,93 @@ public class PieceManager extends BlocksEnumerator {
             handler.closeChannels();    // do not use total close since in Android we are not able to open it again
             throw new JED2KException(ErrorCode.INTERNAL_ERROR);
         }
+    }
+
+    /**
+     * hashing stage of write or restore block - update piece hash and return obsolete blocks if possible
+     * @param b block
+     * @param buffer block data
+     * @return free buffers
+     */
+    public List<ByteBuffer> registerBlock(PieceBlock b, final ByteBuffer buffer) {
+        if (recoveringPieces.contains(b.pieceIndex)) {
+            List<ByteBuffer> res = new LinkedList<>();
+            res.add(buffer);
+            return releaseViews(res);
+        }
 
-        // stage 2 - prepare getHash and return obsolete blocks if possible
-        return mgr.registerBlock(b.pieceBlock, buffer);
+        BlockManager mgr = getBlockManager(b.pieceIndex);
+        assert(mgr != null);
+        List<ByteBuffer> res = mgr.registerBlock(b.pieceBlock, buffer);
+        assert res != null;
+        return releaseViews(res);
+    }
+
+    /**
+     * @param pieceIndex piece
+     * @return midstate of piece's hash or null if piece has no hashed blocks
+     */
+    public PieceHashState hashState(int pieceIndex) {
+        for(BlockManager mgr: blockMgrs) {
+            if (mgr.getPieceIndex() == pieceIndex) return mgr.hashState();
+        }
+
+        return null;
+    }
+
+    /**
+     * continue piece hashing from saved midstate, used on restore before any block of piece registered
+     * @param state valid midstate
+     */
+    public void restoreHashState(final PieceHashState state) {
+        getBlockManager(state.pieceIndex).restoreState(state);
+    }
+
+    /**
+     * @return true if handler provides views of file data and restore needs no buffers
+     */
+    public boolean supportsViews() {
+        return handler.supportsViews();
+    }
+
+    /**
+     * disk stage of restore block using view of file data instead of buffer
+     * @param b piece block of data
+     * @param fileSize size of file associated with transfer
+     * @return read only view of block
+     * @throws JED2KException
+     */
+    public ByteBuffer readBlockView(PieceBlock b, long fileSize) throws JED2KException {
+        assert(fileSize > 0);
+        ByteBuffer view = handler.view(b.blocksOffset()*Constants.BLOCK_SIZE, b.size(fileSize));
+        if (view == null) throw new JED2KException(ErrorCode.INTERNAL_ERROR);
+        return view;
+    }
+
+    /**
+     * hashing stage of restore block using view
+     * @param b piece block
+     * @param view view of block data from readBlockView
+     * @return free pool buffers
+     */
+    public List<ByteBuffer> registerView(PieceBlock b, final ByteBuffer view) {
+        views.add(view);
+        return registerBlock(b, view);
+    }
+
+    /**
+     * remove views from free buffers list since they aren't owned by pool
+     * @param buffers free buffers
+     * @return the same list without views
+     */
+    private List<ByteBuffer> releaseViews(final List<ByteBuffer> buffers) {
+        if (views.isEmpty()) return buffers;
+        Iterator<ByteBuffer> itr = buffers.iterator();
+        while(itr.hasNext()) {
+            if (views.remove(itr.next())) itr.remove();
+        }
+
+        return buffers;
     }
 
     /**
@@ -93,12 +200,21 @@ public class PieceManager extends BlocksEnumerator {
      * @throws JED2KException
      */
     public List<ByteBuffer> restoreBlock(PieceBlock b, ByteBuffer buffer, long  fileSize) throws JED2KException {
-        FileChannel c = handler.getReadChannel();
-        assert c != null;
+        readBlockData(b, buffer, fileSize);
+        return registerBlock(b, buffer);
+    }
+
+    /**
+     * read block data from file to buffer, disk stage of restore block
+     * @param b piece block of data
+     * @param buffer destination, flipped after read
+     * @param fileSize size of file associated with transfer
+     * @throws JED2KException
+     */
+    public void readBlockData(PieceBlock b, ByteBuffer buffer, long fileSize) throws JED2KException {
         assert(fileSize > 0);
 
         long bytesOffset = b.blocksOffset()*Constants.BLOCK_SIZE;
-        BlockManager mgr = getBlockManager(b.pieceIndex);
 
         // prepare buffer for reading from file
         buffer.clear();
@@ -106,19 +222,118 @@ public class PieceManager extends BlocksEnumerator {
 
         try {
             // read data from file to buffer
-            handler.getReadChannel().position(bytesOffset);
-            while(buffer.hasRemaining()) handler.getReadChannel().read(buffer);
+            handler.read(buffer, bytesOffset);
             buffer.flip();
         }
         catch(IOException e) {
             throw new JED2KException(ErrorCode.IO_EXCEPTION);
         }
 
-        // register buffer as usual in blocks manager and return free blocks
         assert(buffer.remaining() == b.size(fileSize));
-        List<ByteBuffer> res = mgr.registerBlock(b.pieceBlock, buffer);
-        assert res != null;
-        return res;
+    }
+
+    /**
+     * read range of file for upload, disk stage
+     * @param buffer destination, bytes from position to limit are read, flipped after read
+     * @param offset offset of range in file
+     * @throws JED2KException
+     */
+    public void readData(final ByteBuffer buffer, long offset) throws JED2KException {
+        try {
+            handler.read(buffer, offset);
+            buffer.flip();
+        }
+        catch(IOException e) {
+            throw new JED2KException(ErrorCode.IO_EXCEPTION);
+        }
+    }
+
+    /**
+     * switch piece to recovery mode, hashing stage
+     * @param pieceIndex piece
+     * @return free buffers of piece's hashing state
+     */
+    public List<ByteBuffer> beginRecovery(int pieceIndex) {
+        recoveringPieces.add(pieceIndex);
+        List<ByteBuffer> res = new LinkedList<>();
+        Iterator<BlockManager> itr = blockMgrs.iterator();
+        while(itr.hasNext()) {
+            BlockManager mgr = itr.next();
+            if (mgr.getPieceIndex() == pieceIndex) {
+                res.addAll(mgr.getBuffers());
+                itr.remove();
+            }
+        }
+
+        return releaseViews(res);
+    }
+
+    /**
+     * leave recovery mode after piece hash was calculated from file, hashing stage
+     * @param pieceIndex piece
+     */
+    public void endRecovery(int pieceIndex) {
+        recoveringPieces.remove(pieceIndex);
+    }
+
+    /**
+     * calculate piece hash reading its data from file, disk stage
+     * @param pieceIndex piece
+     * @param fileSize size of file associated with transfer
+     * @return hash of piece
+     * @throws JED2KException
+     */
+    public Hash hashPieceFromDisk(int pieceIndex, long fileSize) throws JED2KException {
+        MD4 hasher = new MD4();
+        ByteBuffer buffer = ByteBuffer.allocate(Constants.BLOCK_SIZE_INT);
+        for(int i = 0; i < blocksInPiece(pieceIndex); ++i) {
+            readBlockData(new PieceBlock(pieceIndex, i), buffer, fileSize);
+            hasher.update(buffer);
+        }
+
+        return Hash.fromBytes(hasher.digest());
+    }
+
+    /**
+     * compare data of piece in file with hashes of its AICH blocks, disk stage
+     * AICH block doesn't match ed2k block, so each failed AICH block marks one or two ed2k blocks
+     * @param pieceIndex piece
+     * @param hashes hashes of piece's AICH blocks in order
+     * @param fileSize size of file associated with transfer
+     * @return sorted indexes of ed2k blocks in piece containing corrupted data
+     * @throws JED2KException
+     */
+    public List<Integer> verifyBlocks(int pieceIndex, final List<AICHHash> hashes, long fileSize) throws JED2KException {
+        long pieceOffset = pieceIndex*Constants.PIECE_SIZE;
+        long pieceSize = Math.min(Constants.PIECE_SIZE, fileSize - pieceOffset);
+        ByteBuffer buffer = ByteBuffer.allocate((int)AICHHashTree.BLOCK_SIZE);
+        SortedSet<Integer> res = new TreeSet<>();
+        long offset = 0;
+
+        for(final AICHHash expected: hashes) {
+            if (offset >= pieceSize) throw new JED2KException(ErrorCode.AICH_RECOVERY_DATA_INCORRECT);
+            int size = (int)Math.min(AICHHashTree.BLOCK_SIZE, pieceSize - offset);
+            buffer.clear();
+            buffer.limit(size);
+
+            try {
+                handler.read(buffer, pieceOffset + offset);
+            } catch(IOException e) {
+                throw new JED2KException(ErrorCode.IO_EXCEPTION);
+            }
+
+            buffer.flip();
+            if (expected == null || !expected.equals(AICHHash.hash(buffer))) {
+                for(long i = offset/Constants.BLOCK_SIZE; i <= (offset + size - 1)/Constants.BLOCK_SIZE; ++i) {
+                    res.add((int)i);
+                }
+            }
+
+            offset += size;
+        }
+
+        if (offset != pieceSize) throw new JED2KException(ErrorCode.AICH_RECOVERY_DATA_INCORRECT);
+        return new ArrayList<>(res);
     }
 
     public Hash hashPiece(int pieceIndex) {
@@ -134,14 +349,21 @@ public class PieceManager extends BlocksEnumerator {
      * @return list of ByteBuffers for buffer pool deallocation
      */
     public List<ByteBuffer> releaseFile(boolean deleteFile) {
+        closeFile(deleteFile);
+        return abort();
+    }
+
+    /**
+     * close and optionally delete file, disk stage of release file
+     * @param deleteFile delete file after close
+     */
+    public void closeFile(boolean deleteFile) {
         handler.close();
         try {
             if (deleteFile) handler.deleteFile();
         } catch(JED2KException e) {
             log.error("unable to delete file {}", e);
         }
-
-        return abort();
     }
 
     /**
@@ -155,8 +377,9 @@ public class PieceManager extends BlocksEnumerator {
         }
 
         blockMgrs.clear();
+        recoveringPieces.clear();
 
-        return res;
+        return releaseViews(res);
     }
 
     /**
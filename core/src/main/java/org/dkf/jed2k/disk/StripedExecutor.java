@@ -0,0 +1,177 @@
+package org.dkf.jed2k.disk;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+
+/**
+ * executor with serial queue per key on top of fixed count of worker threads
+ * tasks with the same key are executed one by one in submission order, different keys run in parallel
+ * when a worker is free it takes queue which head task has the highest priority(lowest value),
+ * queues with equal priority are served in order of their head task submission
+ * Created by agent on 18.10.2026.
+ */
+@Slf4j
+public class StripedExecutor {
+
+    private static class Task {
+        final Runnable r;
+        final int priority;
+        final long seq;
+
+        Task(final Runnable r, int priority, long seq) {
+            this.r = r;
+            this.priority = priority;
+            this.seq = seq;
+        }
+    }
+
+    private static class Stripe {
+        final Object key;
+        final LinkedList<Task> tasks = new LinkedList<>();
+
+        Stripe(final Object key) {
+            this.key = key;
+        }
+    }
+
+    private static final Comparator<Stripe> HEAD_ORDER = new Comparator<Stripe>() {
+        @Override
+        public int compare(Stripe o1, Stripe o2) {
+            Task t1 = o1.tasks.getFirst();
+            Task t2 = o2.tasks.getFirst();
+            if (t1.priority != t2.priority) return t1.priority < t2.priority?-1:1;
+            if (t1.seq == t2.seq) return 0;
+            return t1.seq < t2.seq?-1:1;
+        }
+    };
+
+    /**
+     * all stripes which have tasks, running stripe stays here but is not in ready queue
+     */
+    private final Map<Object, Stripe> stripes = new HashMap<>();
+    private final PriorityQueue<Stripe> ready = new PriorityQueue<>(11, HEAD_ORDER);
+    private final Thread[] workers;
+    private long seq = 0;
+    private int pending = 0;
+    private boolean shutdown = false;
+
+    /**
+     * @param name threads name prefix
+     * @param threads count of worker threads
+     */
+    public StripedExecutor(final String name, int threads) {
+        assert threads > 0;
+        workers = new Thread[Math.max(1, threads)];
+        for(int i = 0; i < workers.length; ++i) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            }, name + "-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * add task to tail of key's queue
+     * @param key queue key, compared by equals
+     * @param priority lower value executes earlier among queues
+     * @param r task
+     */
+    public synchronized void execute(final Object key, int priority, final Runnable r) {
+        assert key != null;
+        assert r != null;
+        if (shutdown) throw new IllegalStateException("executor is shut down");
+        Stripe s = stripes.get(key);
+        if (s == null) {
+            s = new Stripe(key);
+            stripes.put(key, s);
+        }
+
+        s.tasks.addLast(new Task(r, priority, seq++));
+        ++pending;
+        // queue with only new task is neither running nor ready
+        if (s.tasks.size() == 1) {
+            ready.add(s);
+            notify();
+        }
+    }
+
+    private void work() {
+        while(true) {
+            Stripe s;
+            Task t;
+
+            synchronized (this) {
+                while(ready.isEmpty() && !(shutdown && pending == 0)) {
+                    try {
+                        wait();
+                    } catch(InterruptedException e) {
+                        return;
+                    }
+                }
+
+                if (ready.isEmpty()) {
+                    notifyAll();
+                    return;
+                }
+
+                s = ready.poll();
+                t = s.tasks.getFirst();
+            }
+
+            try {
+                t.r.run();
+            } catch(Throwable e) {
+                log.error("[striped executor] task failed", e);
+            } finally {
+                // stripe must be released even if task broke worker, otherwise key's queue hangs forever
+                synchronized (this) {
+                    s.tasks.removeFirst();
+                    --pending;
+                    if (s.tasks.isEmpty()) {
+                        stripes.remove(s.key);
+                        if (shutdown && pending == 0) notifyAll();
+                    } else {
+                        ready.add(s);
+                        notify();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return count of submitted but not finished tasks
+     */
+    public synchronized int pendingTasks() {
+        return pending;
+    }
+
+    /**
+     * stop accept new tasks, already submitted tasks will be executed
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        notifyAll();
+    }
+
+    /**
+     * @param timeoutMs milliseconds to wait
+     * @return true if all workers finished
+     */
+    public boolean awaitTermination(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for(final Thread w: workers) {
+            long rest = deadline - System.currentTimeMillis();
+            if (rest <= 0) return false;
+            w.join(rest);
+            if (w.isAlive()) return false;
+        }
+
+        return true;
+    }
+}
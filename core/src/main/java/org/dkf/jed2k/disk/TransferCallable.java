@@ -6,13 +6,33 @@ import org.dkf.jed2k.Transfer;
 import java.util.concurrent.Callable;
 
 /**
+ * transfer's disk operation executed by disk engine in two stages
+ * file access in performIO in disk pool, CPU work(hashing) in call in hashing pool
  * Created by apavlov on 29.05.17.
  */
 @Getter
 public abstract class TransferCallable<V> implements Callable<V> {
+    public static final int PRIORITY_WRITE = 0;
+    public static final int PRIORITY_RESTORE = 1;
+    public static final int PRIORITY_UPLOAD = 2;
+
     private final Transfer transfer;
 
     public TransferCallable(final Transfer t) {
         this.transfer = t;
     }
+
+    /**
+     * file access stage, executed in transfer's serial queue of disk pool before call
+     * errors must be stored in object and reported from call
+     */
+    public void performIO() {
+    }
+
+    /**
+     * @return priority of operation in disk engine, lower value executes earlier
+     */
+    public int getPriority() {
+        return PRIORITY_WRITE;
+    }
 }
@@ -78,8 +78,14 @@ public enum ErrorCode implements BaseErrorCode {
     GITHUB_CFG_IP_IS_NULL(94, "Ip is null in github kad config"),
     GITHUB_CFG_PORTS_ARE_NULL(95, "Ports are null in github kad config"),
     GITHUB_CFG_PORTS_ARE_EMPTY(96, "Ports are empty in github kad config"),
-
-    FAIL(100, "Fail");
+    AICH_RECOVERY_DATA_INCORRECT(97, "AICH recovery data is incorrect or doesn't match trusted root hash"),
+    HTTP_BAD_REQUEST(98, "HTTP request is malformed or unsupported"),
+    HTTP_RANGE_NOT_SATISFIABLE(99, "HTTP range is outside of file"),
+
+    FAIL(100, "Fail"),
+    UPLOAD_REQUEST_INCORRECT(101, "Requested range is outside of file or not verified"),
+    UPLOAD_QUEUE_FULL(102, "Upload queue is full"),
+    UPLOAD_BEFORE_HELLO(103, "Upload requested before hello");
 
     private final int code;
     private final String description;
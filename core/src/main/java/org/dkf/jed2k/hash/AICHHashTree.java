@@ -0,0 +1,296 @@
+package org.dkf.jed2k.hash;
+
+import org.dkf.jed2k.Constants;
+import org.dkf.jed2k.exception.ErrorCode;
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.AICHHash;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * eMule compatible AICH hash tree: binary SHA-1 tree over 180KB blocks of file
+ * nodes above part level are split by parts, nodes inside part are split by blocks
+ * node identifier is path from root: leading 1 bit is root, next bits are 1 for left and 0 for right branch
+ * recovery data of part contains hashes of siblings on path from root to part and hashes of all part's blocks
+ * Created by agent on 18.10.2026.
+ */
+public class AICHHashTree {
+    /**
+     * AICH block size, differs from ed2k request block size
+     */
+    public static final long BLOCK_SIZE = 184320;
+
+    private final long dataSize;
+    private final boolean leftBranch;
+    private final long baseSize;
+    private AICHHash hash = null;
+    private AICHHashTree left = null;
+    private AICHHashTree right = null;
+
+    private AICHHashTree(long dataSize, boolean leftBranch, long baseSize) {
+        assert dataSize > 0;
+        this.dataSize = dataSize;
+        this.leftBranch = leftBranch;
+        this.baseSize = baseSize;
+    }
+
+    /**
+     * @param fileSize size of file
+     * @param root master hash or null
+     * @return empty tree of file with root hash
+     */
+    public static AICHHashTree forFile(long fileSize, final AICHHash root) {
+        AICHHashTree res = new AICHHashTree(fileSize, true, childBase(fileSize));
+        res.hash = root;
+        return res;
+    }
+
+    private static long childBase(long size) {
+        return (size <= Constants.PIECE_SIZE)?BLOCK_SIZE:Constants.PIECE_SIZE;
+    }
+
+    public final AICHHash getHash() {
+        return hash;
+    }
+
+    private boolean isLeaf() {
+        return dataSize <= baseSize;
+    }
+
+    private long leftSize() {
+        long blocks = dataSize / baseSize + ((dataSize % baseSize != 0)?1:0);
+        return ((leftBranch?blocks + 1:blocks) / 2)*baseSize;
+    }
+
+    private AICHHashTree left() {
+        if (left == null) {
+            long size = leftSize();
+            left = new AICHHashTree(size, true, childBase(size));
+        }
+
+        return left;
+    }
+
+    private AICHHashTree right() {
+        if (right == null) {
+            long size = dataSize - leftSize();
+            right = new AICHHashTree(size, false, childBase(size));
+        }
+
+        return right;
+    }
+
+    /**
+     * @param start offset of range in node
+     * @param size size of range
+     * @param path list of nodes from this to found node, filled when not null
+     * @return node describes exactly range or null if range is not a node
+     */
+    private AICHHashTree find(long start, long size, final List<AICHHashTree> path) {
+        if (start < 0 || size <= 0 || start + size > dataSize) return null;
+        if (path != null) path.add(this);
+        if (start == 0 && size == dataSize) return this;
+        if (isLeaf()) return null;
+        long leftSize = leftSize();
+        if (start < leftSize) return left().find(start, size, path);
+        return right().find(start - leftSize, size, path);
+    }
+
+    /**
+     * @param pieceIndex ed2k piece index, AICH part is the same range of file
+     * @return size of part
+     */
+    private long partSize(int pieceIndex) {
+        return Math.min(Constants.PIECE_SIZE, dataSize - pieceIndex*Constants.PIECE_SIZE);
+    }
+
+    /**
+     * recovery data is available only for parts larger than one AICH block
+     * @param pieceIndex piece
+     * @return true if part can be recovered
+     */
+    public boolean isRecoverable(int pieceIndex) {
+        long offset = pieceIndex*Constants.PIECE_SIZE;
+        return offset < dataSize && partSize(pieceIndex) > BLOCK_SIZE;
+    }
+
+    /**
+     * set hash of node by its identifier, existing hash is never replaced
+     * @param ident node identifier
+     * @param h hash
+     * @return false if identifier doesn't point to node
+     */
+    boolean setHash(int ident, final AICHHash h) {
+        if (ident == 0) return false;
+        AICHHashTree node = this;
+        for(int bit = 30 - Integer.numberOfLeadingZeros(ident); bit >= 0; --bit) {
+            if (node.isLeaf()) return false;
+            node = (((ident >>> bit) & 1) == 1)?node.left():node.right();
+        }
+
+        if (node.hash == null) node.hash = h;
+        return true;
+    }
+
+    private static int childIdent(int ident, final AICHHashTree child) {
+        return (ident << 1) | (child.leftBranch?1:0);
+    }
+
+    /**
+     * calculate missing hashes of nodes from their children without verification
+     */
+    private void recalculate() {
+        if (left != null) left.recalculate();
+        if (right != null) right.recalculate();
+        if (hash == null && left != null && right != null && left.hash != null && right.hash != null) {
+            hash = AICHHash.hash(left.hash, right.hash);
+        }
+    }
+
+    private boolean check() {
+        if (hash == null) return false;
+        if (left == null && right == null) return true;
+        if (left == null || right == null || left.hash == null || right.hash == null) return false;
+        return hash.equals(AICHHash.hash(left.hash, right.hash)) && left.check() && right.check();
+    }
+
+    /**
+     * fill missing hashes and check every node with children matches them
+     * @return true if tree is consistent with root hash
+     */
+    public boolean verify() {
+        recalculate();
+        return check();
+    }
+
+    /**
+     * read recovery data of part into tree, 16 bit identifiers section followed by 32 bit identifiers section
+     * @param pieceIndex part index
+     * @param src recovery data
+     * @throws JED2KException when data is malformed or doesn't describe part
+     */
+    public void readRecoveryData(int pieceIndex, final ByteBuffer src) throws JED2KException {
+        List<AICHHashTree> path = new LinkedList<>();
+        AICHHashTree part = find(pieceIndex*Constants.PIECE_SIZE, partSize(pieceIndex), path);
+        if (part == null || hash == null) throw new JED2KException(ErrorCode.AICH_RECOVERY_DATA_INCORRECT);
+        int expected = path.size() - 1 + part.leavesCount();
+
+        try {
+            int count = src.getShort() & 0xffff;
+            if (count != 0 && count != expected) throw new JED2KException(ErrorCode.AICH_RECOVERY_DATA_INCORRECT);
+            boolean wide = false;
+            if (count == 0 && src.remaining() >= 2) {
+                count = src.getShort() & 0xffff;
+                wide = true;
+            }
+
+            if (count != expected) throw new JED2KException(ErrorCode.AICH_RECOVERY_DATA_INCORRECT);
+
+            for(int i = 0; i < count; ++i) {
+                int ident = wide?src.getInt():(src.getShort() & 0xffff);
+                AICHHash h = new AICHHash();
+                h.get(src);
+                // never allow master hash to be overwritten
+                if (ident == 1 || !setHash(ident, h)) throw new JED2KException(ErrorCode.AICH_RECOVERY_DATA_INCORRECT);
+            }
+        } catch(BufferUnderflowException e) {
+            throw new JED2KException(ErrorCode.BUFFER_UNDERFLOW_EXCEPTION);
+        }
+
+        // data of other part could have the same count of hashes
+        for(final AICHHash h: blockHashes(pieceIndex)) {
+            if (h == null) throw new JED2KException(ErrorCode.AICH_RECOVERY_DATA_INCORRECT);
+        }
+    }
+
+    /**
+     * write recovery data of part, tree must contain all required hashes
+     * @param pieceIndex part index
+     * @param dst destination
+     * @param wide use 32 bit identifiers, required for large files
+     * @throws JED2KException when tree has no required hashes
+     */
+    public void writeRecoveryData(int pieceIndex, final ByteBuffer dst, boolean wide) throws JED2KException {
+        List<AICHHashTree> path = new LinkedList<>();
+        AICHHashTree part = find(pieceIndex*Constants.PIECE_SIZE, partSize(pieceIndex), path);
+        if (part == null) throw new JED2KException(ErrorCode.AICH_RECOVERY_DATA_INCORRECT);
+        if (wide) dst.putShort((short)0);
+        dst.putShort((short)(path.size() - 1 + part.leavesCount()));
+
+        int ident = 1;
+        AICHHashTree parent = null;
+        for(final AICHHashTree node: path) {
+            if (parent != null) {
+                AICHHashTree sibling = (node == parent.left)?parent.right:parent.left;
+                if (sibling == null || sibling.hash == null) throw new JED2KException(ErrorCode.AICH_RECOVERY_DATA_INCORRECT);
+                putHash(dst, childIdent(ident, sibling), sibling.hash, wide);
+                ident = childIdent(ident, node);
+            }
+
+            parent = node;
+        }
+
+        part.writeLeaves(dst, ident, wide);
+        if (!wide) dst.putShort((short)0);
+    }
+
+    private void writeLeaves(final ByteBuffer dst, int ident, boolean wide) throws JED2KException {
+        if (isLeaf()) {
+            if (hash == null) throw new JED2KException(ErrorCode.AICH_RECOVERY_DATA_INCORRECT);
+            putHash(dst, ident, hash, wide);
+        } else {
+            left().writeLeaves(dst, childIdent(ident, left), wide);
+            right().writeLeaves(dst, childIdent(ident, right), wide);
+        }
+    }
+
+    private static void putHash(final ByteBuffer dst, int ident, final AICHHash h, boolean wide) throws JED2KException {
+        if (wide) dst.putInt(ident); else dst.putShort((short)ident);
+        h.put(dst);
+    }
+
+    private int leavesCount() {
+        return (int)(dataSize / BLOCK_SIZE + ((dataSize % BLOCK_SIZE != 0)?1:0));
+    }
+
+    private void collectLeaves(final List<AICHHashTree> res) {
+        if (isLeaf()) {
+            res.add(this);
+        } else {
+            left().collectLeaves(res);
+            right().collectLeaves(res);
+        }
+    }
+
+    /**
+     * @param pieceIndex part index
+     * @return hashes of part's AICH blocks in order, null entries for unknown hashes
+     */
+    public List<AICHHash> blockHashes(int pieceIndex) {
+        AICHHashTree part = find(pieceIndex*Constants.PIECE_SIZE, partSize(pieceIndex), null);
+        assert part != null;
+        List<AICHHashTree> leaves = new LinkedList<>();
+        part.collectLeaves(leaves);
+        List<AICHHash> res = new LinkedList<>();
+        for(final AICHHashTree leaf: leaves) res.add(leaf.hash);
+        return res;
+    }
+
+    /**
+     * set hash of AICH block, used to build tree from file data
+     * @param offset block offset in file, must be aligned to block inside part
+     * @param h hash of block data
+     * @return false if offset isn't block's offset
+     */
+    public boolean setBlockHash(long offset, final AICHHash h) {
+        long partOffset = offset % Constants.PIECE_SIZE;
+        long size = Math.min(BLOCK_SIZE, Math.min(Constants.PIECE_SIZE - partOffset, dataSize - offset));
+        AICHHashTree node = find(offset, size, null);
+        if (node == null || !node.isLeaf()) return false;
+        node.hash = h;
+        return true;
+    }
+}
@@ -95,6 +95,38 @@ public  class MD4 extends MessageDigest implements Cloneable
     public Object clone() { return new MD4(this); }
 
 
+// Midstate access
+//...........................................................................
+
+    /**
+     * @return copy of interim context words
+     */
+    public int[] getContext() {
+        return context.clone();
+    }
+
+    /**
+     * @return count of bytes processed so far
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * continue digest from saved midstate, count must be multiple of block length
+     * since input buffer isn't saved
+     * @param context interim context words
+     * @param count count of processed bytes
+     */
+    public void restoreState(final int[] context, long count) {
+        assert context.length == 4;
+        assert count % BLOCK_LENGTH == 0;
+        engineReset();
+        System.arraycopy(context, 0, this.context, 0, 4);
+        this.count = count;
+    }
+
+
 // JCE methods
 //...........................................................................
 
@@ -9,7 +9,7 @@ import org.dkf.jed2k.protocol.UInt32;
  */
 @Getter
 public class DhtState implements NodeEntryFun {
-    private Container<UInt32, NodeEntry> entries = Container.makeInt(NodeEntry.class);
+    private Container<UInt32, NodeEntry> entries = Container.makeInt(NodeEntry.FACTORY);
 
     @Override
     public void fun(NodeEntry e) {
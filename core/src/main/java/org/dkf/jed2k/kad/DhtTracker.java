@@ -33,7 +33,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 public class DhtTracker extends Thread {
     private NodeImpl node;
     private ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<Runnable>();
-    private Selector selector = null;
+    private volatile Selector selector = null;
     private DatagramChannel channel = null;
     private SelectionKey key = null;
     private int listenPort;
@@ -50,6 +50,11 @@ public class DhtTracker extends Thread {
     private static int OUTPUT_BUFFER_LIMIT = 8128;
     private static int INPUT_BUFFER_LIMIT = 8128;
 
+    /**
+     * selector timeout while RPC timeouts are pending
+     */
+    private static long RPC_TIMER_RESOLUTION = 100;
+
     public DhtTracker(int listenPort
             , final KadId id
             , final InetSocketAddress storagePoint) {
@@ -94,7 +99,7 @@ public class DhtTracker extends Thread {
             incomingHeader = new KadPacketHeader();
 
             while (!aborted && !interrupted()) {
-                int channelCount = selector.select(1000);
+                int channelCount = selector.select(node.hasTransactions()?RPC_TIMER_RESOLUTION:1000);
                 // TODO - do not update global time here when we work in main session scope
                 Time.updateCachedTime();
                 tick(channelCount);
@@ -147,20 +152,32 @@ public class DhtTracker extends Thread {
             }
         }
 
-        // process user's command every second
+        // user's commands are processed immediately, selector is woken up on post
+        Runnable r = commands.poll();
+        while(r != null) {
+            r.run();
+            r = commands.poll();
+        }
+
+        node.processTimeouts();
+
         long tickIntervalMs = Time.currentTime() - lastTick;
         if (tickIntervalMs >= 1000) {
             node.tick();
-
             lastTick = Time.currentTime();
-            Runnable r = commands.poll();
-            while(r != null) {
-                r.run();
-                r = commands.poll();
-            }
         }
     }
 
+    /**
+     * add command to tracker's queue and wake up selector to execute it as soon as possible
+     * @param r command
+     */
+    private void post(final Runnable r) {
+        commands.add(r);
+        Selector s = selector;
+        if (s != null) s.wakeup();
+    }
+
     public int getOutputBufferLimit() {
         return OUTPUT_BUFFER_LIMIT;
     }
@@ -309,7 +326,7 @@ public class DhtTracker extends Thread {
      */
     public void addEntries(final List<NodeEntry> entries) {
         assert entries != null;
-        commands.add(new Runnable() {
+        post(new Runnable() {
             @Override
             public void run() {
                 for(final NodeEntry e: entries) {
@@ -329,7 +346,7 @@ public class DhtTracker extends Thread {
      */
     public void addKadEntries(final List<KadEntry> entries) {
         assert entries != null;
-        commands.add(new Runnable() {
+        post(new Runnable() {
             @Override
             public void run() {
                 int i = 0;
@@ -391,7 +408,7 @@ public class DhtTracker extends Thread {
     }
 
     public void status() {
-        commands.add(new Runnable() {
+        post(new Runnable() {
             @Override
             public void run() {
                 node.logStatus();
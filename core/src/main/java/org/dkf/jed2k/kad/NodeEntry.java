@@ -7,6 +7,7 @@ import org.dkf.jed2k.Time;
 import org.dkf.jed2k.exception.JED2KException;
 import org.dkf.jed2k.protocol.Endpoint;
 import org.dkf.jed2k.protocol.Hash;
+import org.dkf.jed2k.protocol.PacketFactory;
 import org.dkf.jed2k.protocol.Serializable;
 import org.dkf.jed2k.protocol.kad.KadId;
 
@@ -20,6 +21,13 @@ import java.nio.ByteBuffer;
 @ToString
 @EqualsAndHashCode(exclude = {"timeoutCount", "firstSeen"})
 public class NodeEntry implements Serializable {
+    public static final PacketFactory<NodeEntry> FACTORY = new PacketFactory<NodeEntry>() {
+        @Override
+        public NodeEntry create() {
+            return new NodeEntry();
+        }
+    };
+
     private KadId id;
     private Endpoint endpoint;
     private int portTcp = 0;
@@ -110,7 +110,6 @@ public class NodeImpl implements ReqDispatcher {
     public void tick() {
         assert !isAborted();
 
-        rpc.tick();
         if (!runningRequests.isEmpty()) {
             log.trace("[node] running requests {}", runningRequests.size());
         }
@@ -269,6 +268,20 @@ public class NodeImpl implements ReqDispatcher {
         }
     }
 
+    /**
+     * fire expired RPC timeouts, called on each tracker loop pass
+     */
+    public void processTimeouts() {
+        rpc.tick();
+    }
+
+    /**
+     * @return true if some requests wait for responses
+     */
+    public boolean hasTransactions() {
+        return rpc.hasTransactions();
+    }
+
     public boolean invoke(final Serializable s, final Endpoint ep, final Observer o) {
         try {
             assert tracker != null;
@@ -2,14 +2,17 @@ package org.dkf.jed2k.kad;
 
 import lombok.extern.slf4j.Slf4j;
 import org.dkf.jed2k.Time;
+import org.dkf.jed2k.TimerWheel;
 import org.dkf.jed2k.Utils;
 import org.dkf.jed2k.kad.traversal.observer.Observer;
 import org.dkf.jed2k.protocol.Endpoint;
 import org.dkf.jed2k.protocol.Serializable;
 
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by inkpot on 21.11.2016.
@@ -22,6 +25,12 @@ public class RpcManager {
     private boolean destructing = false;
     private List<Observer> transactions = new LinkedList<>();
 
+    /**
+     * short and full timeouts of each registered observer
+     */
+    private final TimerWheel timers = new TimerWheel();
+    private final Map<Observer, TimerWheel.Timeout[]> timeouts = new IdentityHashMap<>();
+
     /**
      *  register observer in RPC manager only for future processing responses and timeouts
      *  @param o observer
@@ -29,6 +38,36 @@ public class RpcManager {
     public void invoke(final Observer o) {
         log.debug("[rpc] invoke {}", o);
         transactions.add(o);
+        TimerWheel.Timeout[] handles = {
+                timers.schedule(Time.seconds(SHORT_TIMEOUT), new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!o.hasShortTimeout()) o.shortTimeout();
+                    }
+                }),
+                timers.schedule(Time.seconds(TIMEOUT), new Runnable() {
+                    @Override
+                    public void run() {
+                        log.debug("[rpc] timeout {}", o);
+                        transactions.remove(o);
+                        timeouts.remove(o);
+                        o.timeout();
+                    }
+                })
+        };
+
+        timeouts.put(o, handles);
+    }
+
+    /**
+     * cancel observer's timers when it leaves transactions list
+     * @param o observer
+     */
+    private void cancelTimeouts(final Observer o) {
+        TimerWheel.Timeout[] handles = timeouts.remove(o);
+        if (handles != null) {
+            for(final TimerWheel.Timeout t: handles) t.cancel();
+        }
     }
 
     public Observer incoming(final Serializable s, final Endpoint ep) {
@@ -54,6 +93,7 @@ public class RpcManager {
                 // all responses must be in one timeout range - doesn't matter how many responses we got - start time wont be changed
                 if (!o.expectMultipleResponses()) {
                     itr.remove();
+                    cancelTimeouts(o);
                 }
 
                 break;
@@ -82,6 +122,7 @@ public class RpcManager {
             if (o.getEndpoint().equals(ep)) {
                 log.debug("[rpc] found unreachable transaction {}", ep);
                 itr.remove();
+                cancelTimeouts(o);
                 o.timeout();
                 break;
             }
@@ -92,68 +133,25 @@ public class RpcManager {
         assert !destructing;
         destructing = true;
         for(final Observer o : transactions) {
+            cancelTimeouts(o);
             o.abort();
         }
 
         transactions.clear();
     }
 
+    /**
+     * fire expired short and full timeouts of observers
+     * short timeout fires once per observer, full timeout removes observer from transactions
+     */
     public void tick() {
-        //	look for observers that have timed out
-        if (transactions.isEmpty()) return;
-        log.trace("[rpc] transactions size {}", transactions.size());
-
-        List<Observer> timeouts = new LinkedList<>();
-
-        long now = Time.currentTime();
-        final Long[] last = {new Long(0)};
-
-        for(final Observer o: transactions) {
-            assert o.getSentTime() >= last[0];
-            last[0] = o.getSentTime();
-        }
-
-        Iterator<Observer> itr = transactions.iterator();
-        while(itr.hasNext()) {
-            Observer o = itr.next();
-            // if we reach an observer that hasn't timed out
-            // break, because every observer after this one will
-            // also not have timed out yet
-            long diff = now - o.getSentTime();
-            if (diff < Time.seconds(TIMEOUT)) {
-                log.debug("[rpc] no timeout {} < {} time {}, send time {}", diff, Time.seconds(TIMEOUT), now, o.getSentTime());
-                break;
-            }
-
-            log.debug("[rpc] timeout {}", o);
-            itr.remove();
-            timeouts.add(o);
-        }
-
-        for(final Observer o: timeouts) {
-            o.timeout();
-        }
-
-        timeouts.clear();
-
-        itr = transactions.iterator();
-        while(itr.hasNext()) {
-            Observer o = itr.next();
-            // if we reach an observer that hasn't timed out
-            // break, because every observer after this one will
-            // also not have timed out yet
-            long diff = now - o.getSentTime();
-            if (diff < Time.seconds(SHORT_TIMEOUT)) {
-                break;
-            }
-
-            if (o.hasShortTimeout()) continue;
-            timeouts.add(o);
-        }
-
-        for (Observer o : timeouts) {
-            o.shortTimeout();
-        }
+        timers.advance(Time.currentTime());
+    }
 
+    /**
+     * @return true if there are observers waiting for responses or timeouts
+     */
+    public boolean hasTransactions() {
+        return !transactions.isEmpty();
     }
 }
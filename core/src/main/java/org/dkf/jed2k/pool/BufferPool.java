@@ -9,18 +9,31 @@ import java.nio.ByteBuffer;
 
 /**
  * Created by inkpot on 08.07.2016.
+ * pool of block size buffers, heap or direct
+ * direct buffers avoid extra copy in socket and file channels, but their memory is released by GC only
+ * so idle timeout should be used to return memory of burst
  */
 @Slf4j
 public class BufferPool extends Pool<ByteBuffer> {
+    private final boolean direct;
 
     public BufferPool(int maxBuffers) {
+        this(maxBuffers, false);
+    }
+
+    public BufferPool(int maxBuffers, boolean direct) {
         super(maxBuffers);
+        this.direct = direct;
+    }
+
+    public boolean isDirect() {
+        return direct;
     }
 
     @Override
     protected ByteBuffer createObject() throws JED2KException {
         try {
-            return ByteBuffer.allocate(Constants.BLOCK_SIZE_INT);
+            return direct?ByteBuffer.allocateDirect(Constants.BLOCK_SIZE_INT):ByteBuffer.allocate(Constants.BLOCK_SIZE_INT);
         } catch(OutOfMemoryError e) {
             log.error("Buffer pool allocation {} raised out of memory error {}"
                     , Constants.BLOCK_SIZE_INT
@@ -33,4 +46,9 @@ public class BufferPool extends Pool<ByteBuffer> {
             throw new JED2KException(ErrorCode.INTERNAL_ERROR);
         }
     }
+
+    @Override
+    protected void reset(ByteBuffer buffer) {
+        buffer.clear();
+    }
 }
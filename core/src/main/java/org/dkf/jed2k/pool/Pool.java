@@ -1,52 +1,120 @@
 package org.dkf.jed2k.pool;
 
-import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.dkf.jed2k.exception.ErrorCode;
 import org.dkf.jed2k.exception.JED2KException;
 
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Created by apavlov on 06.03.17.
+ * thread safe pool without locks: small per thread cache of free objects in front of shared lock-free stack
+ * thread cache is touched by owner thread only, shared stack is used when cache is empty or full
+ * free objects released earlier than idle timeout are dropped from shared stack on second tick
+ * objects in thread caches of other threads are not trimmed, their count is limited by thread cache size
  */
-@Getter
 @Slf4j
 public abstract class Pool<T> {
-    private int maxBuffersCount = 0;
-    private int allocatedBuffersCount = 0;
-    private int maxAllocatedCount = 0;
-    LinkedList<T> freeBuffers = new LinkedList<>();
-    LinkedList<Long> bufferReleaseTimes = new LinkedList<Long>();
+    public static final int DEFAULT_THREAD_CACHE_SIZE = 4;
 
+    /**
+     * free object with its release time, node of shared stack
+     */
+    private static final class Entry<T> {
+        final T object;
+        final long releaseTime;
+        Entry<T> next;
+
+        Entry(final T object, long releaseTime) {
+            this.object = object;
+            this.releaseTime = releaseTime;
+        }
+    }
+
+    private final AtomicReference<Entry<T>> head = new AtomicReference<>();
+    private final ThreadLocal<ArrayDeque<Entry<T>>> threadCache = new ThreadLocal<ArrayDeque<Entry<T>>>() {
+        @Override
+        protected ArrayDeque<Entry<T>> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
+
+    private final int threadCacheSize;
+    private volatile int maxBuffersCount;
+    private volatile long idleTimeout = 0;
+    private final AtomicInteger allocatedBuffersCount = new AtomicInteger(0);
+    private final AtomicInteger cachedBuffersCount = new AtomicInteger(0);
+    private final AtomicInteger maxAllocatedCount = new AtomicInteger(0);
+
+    /**
+     * metrics: objects created, allocations refused, free objects dropped
+     */
+    private final AtomicLong createdCount = new AtomicLong(0);
+    private final AtomicLong failuresCount = new AtomicLong(0);
+    private final AtomicLong trimmedCount = new AtomicLong(0);
 
     public Pool(int maxBuffers) {
+        this(maxBuffers, DEFAULT_THREAD_CACHE_SIZE);
+    }
+
+    /**
+     * @param maxBuffers max count of objects allocated and cached
+     * @param threadCacheSize max count of free objects in cache of each thread, zero disables thread caches
+     */
+    public Pool(int maxBuffers, int threadCacheSize) {
         assert(maxBuffers > 0);
+        assert(threadCacheSize >= 0);
         maxBuffersCount = maxBuffers;
+        this.threadCacheSize = threadCacheSize;
     }
 
     protected abstract T createObject() throws JED2KException ;
 
+    /**
+     * prepare free object for reuse
+     * @param object object from cache
+     */
+    protected void reset(T object) {
+
+    }
+
     public T allocate() throws JED2KException {
-        T b = freeBuffers.poll();
-        bufferReleaseTimes.poll();
-        assert(freeBuffers.size() == bufferReleaseTimes.size());
+        // reserve place for object first, so concurrent allocations never exceed limit
+        int allocated;
+        do {
+            allocated = allocatedBuffersCount.get();
+            if (allocated >= maxBuffersCount) {
+                failuresCount.incrementAndGet();
+                log.warn("Pool allocate no memory, allocated buffers count {} max buffers {}"
+                        , allocated
+                        , maxBuffersCount);
+                throw new JED2KException(ErrorCode.NO_MEMORY);
+            }
+        } while(!allocatedBuffersCount.compareAndSet(allocated, allocated + 1));
 
-        if (b == null && allocatedBuffersCount < maxBuffersCount) {
-            b = createObject();
-        }
+        updateMaxAllocated(allocated + 1);
 
-        if (b != null) {
-            allocatedBuffersCount++;
-            maxAllocatedCount = Math.max(maxAllocatedCount, allocatedBuffersCount);
-        } else {
-            log.warn("Pool allocate no memory, allocated buffers count {} max buffers {}"
-                    , allocatedBuffersCount
-                    , maxAllocatedCount);
-            throw new JED2KException(ErrorCode.NO_MEMORY);
+        Entry<T> e = threadCache.get().pollFirst();
+        if (e == null) e = pop();
+
+        if (e != null) {
+            cachedBuffersCount.decrementAndGet();
+            reset(e.object);
+            return e.object;
         }
 
-        return b;
+        try {
+            T b = createObject();
+            createdCount.incrementAndGet();
+            return b;
+        } catch(JED2KException ex) {
+            allocatedBuffersCount.decrementAndGet();
+            failuresCount.incrementAndGet();
+            throw ex;
+        }
     }
 
     /**
@@ -57,35 +125,165 @@ public abstract class Pool<T> {
      */
     public void deallocate(T b, long sessionTime) {
         assert(b != null);
-        assert(freeBuffers.size() == bufferReleaseTimes.size());
-        allocatedBuffersCount--;
+        int allocated = allocatedBuffersCount.decrementAndGet();
+        assert(allocated >= 0);
+
         // add free buffer to cache only if limit not exceeded
-        if (maxBuffersCount > allocatedBuffersCount + getCachedBuffersCount()) {
-            freeBuffers.addFirst(b);
-            bufferReleaseTimes.addFirst(sessionTime);
+        int cached;
+        do {
+            cached = cachedBuffersCount.get();
+            if (maxBuffersCount <= allocated + cached) return;
+        } while(!cachedBuffersCount.compareAndSet(cached, cached + 1));
+
+        Entry<T> e = new Entry<>(b, sessionTime);
+        ArrayDeque<Entry<T>> cache = threadCache.get();
+        if (cache.size() < threadCacheSize) {
+            cache.addFirst(e);
+        } else {
+            push(e);
         }
     }
 
-    public int getCachedBuffersCount() {
-        return freeBuffers.size();
+    private void push(final Entry<T> e) {
+        Entry<T> h;
+        do {
+            h = head.get();
+            e.next = h;
+        } while(!head.compareAndSet(h, e));
     }
 
-    int reduceCache(int cacheSize) {
-        if (cacheSize == 0) {
-            freeBuffers.clear();
-            bufferReleaseTimes.clear();
-        } else {
-            while(freeBuffers.size() > cacheSize) {
-                freeBuffers.removeFirst();
-                bufferReleaseTimes.removeFirst();
+    private Entry<T> pop() {
+        Entry<T> h;
+        do {
+            h = head.get();
+            if (h == null) return null;
+        } while(!head.compareAndSet(h, h.next));
+        h.next = null;
+        return h;
+    }
+
+    private void updateMaxAllocated(int allocated) {
+        int max;
+        do {
+            max = maxAllocatedCount.get();
+            if (allocated <= max) return;
+        } while(!maxAllocatedCount.compareAndSet(max, allocated));
+    }
+
+    /**
+     * move free objects of current thread's cache to shared stack
+     */
+    private void flushThreadCache() {
+        ArrayDeque<Entry<T>> cache = threadCache.get();
+        Entry<T> e;
+        while((e = cache.pollLast()) != null) push(e);
+    }
+
+    /**
+     * take whole shared stack, drop entries rejected by filter and return rest to stack in the same order
+     * every node is pushed to stack once only, so pop never sees the same node twice
+     * concurrent allocations meanwhile see empty stack and create new objects
+     * @param keep count of newest entries to keep, negative for no limit
+     * @param releasedBefore drop entries released before this time
+     * @return count of dropped entries
+     */
+    private int trim(int keep, long releasedBefore) {
+        Entry<T> e = head.getAndSet(null);
+        Entry<T> first = null;
+        Entry<T> last = null;
+        int kept = 0;
+        int dropped = 0;
+
+        while(e != null) {
+            Entry<T> next = e.next;
+            if ((keep < 0 || kept < keep) && e.releaseTime >= releasedBefore) {
+                // never return taken node to stack, new node excludes ABA for concurrent pop
+                Entry<T> copy = new Entry<>(e.object, e.releaseTime);
+                if (last == null) first = copy; else last.next = copy;
+                last = copy;
+                ++kept;
+            } else {
+                ++dropped;
             }
+
+            e = next;
+        }
+
+        if (first != null) {
+            Entry<T> h;
+            do {
+                h = head.get();
+                last.next = h;
+            } while(!head.compareAndSet(h, first));
         }
 
-        return freeBuffers.size();
+        cachedBuffersCount.addAndGet(-dropped);
+        trimmedCount.addAndGet(dropped);
+        return dropped;
+    }
+
+    public int getCachedBuffersCount() {
+        return cachedBuffersCount.get();
+    }
+
+    public int getAllocatedBuffersCount() {
+        return allocatedBuffersCount.get();
+    }
+
+    public int getMaxAllocatedCount() {
+        return maxAllocatedCount.get();
+    }
+
+    public int getMaxBuffersCount() {
+        return maxBuffersCount;
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
     }
 
+    public long getFailuresCount() {
+        return failuresCount.get();
+    }
+
+    public long getTrimmedCount() {
+        return trimmedCount.get();
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @param idleTimeout free objects released earlier than this period in milliseconds are dropped, zero disables trimming
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        assert(idleTimeout >= 0);
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * reduce cache of shared stack and current thread
+     * @param cacheSize new size
+     * @return count of cached buffers
+     */
+    int reduceCache(int cacheSize) {
+        flushThreadCache();
+        trim(cacheSize, Long.MIN_VALUE);
+        return getCachedBuffersCount();
+    }
+
+    /**
+     * drop free buffers are idle longer than idle timeout
+     * @param currentSessionTime current session time
+     */
     public void secondTick(long currentSessionTime) {
-        // free obsolete buffers
+        if (idleTimeout > 0) {
+            // ticking thread's cache is trimmed too
+            flushThreadCache();
+            int dropped = (head.get() != null)?trim(-1, currentSessionTime - idleTimeout):0;
+            if (dropped > 0) log.debug("[pool] dropped {} idle buffers, {}", dropped, this);
+        }
     }
 
     /**
@@ -93,7 +291,7 @@ public abstract class Pool<T> {
      * if new limit less than previous this call will try to reduce cache to satisfy new border
      * @param maxBuffers new buffers count available for allocation in this buffer pool
      */
-    public void setMaxBuffersCount(int maxBuffers) {
+    public synchronized void setMaxBuffersCount(int maxBuffers) {
         assert(maxBuffers > 0);
         if (maxBuffers < maxBuffersCount) {
             // ok, max buffers count less than previous, try to reduce cache
@@ -106,6 +304,7 @@ public abstract class Pool<T> {
 
     @Override
     public String toString() {
-        return "buffer pool max{" + maxBuffersCount + "} allocated/maxallocated {" + allocatedBuffersCount + "/" + maxAllocatedCount + "} free {" + freeBuffers.size() + "}";
+        return "buffer pool max{" + maxBuffersCount + "} allocated/maxallocated {" + getAllocatedBuffersCount() + "/" + getMaxAllocatedCount()
+                + "} free {" + getCachedBuffersCount() + "} created/failed/trimmed {" + getCreatedCount() + "/" + getFailuresCount() + "/" + getTrimmedCount() + "}";
     }
 }
@@ -0,0 +1,123 @@
+package org.dkf.jed2k.protocol;
+
+import org.dkf.jed2k.exception.ErrorCode;
+import org.dkf.jed2k.exception.JED2KException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import static org.dkf.jed2k.Utils.byte2String;
+
+/**
+ * SHA-1 hash of AICH hash tree node
+ * Created by agent on 18.10.2026.
+ */
+public class AICHHash implements Serializable {
+    public static final PacketFactory<AICHHash> FACTORY = new PacketFactory<AICHHash>() {
+        @Override
+        public AICHHash create() {
+            return new AICHHash();
+        }
+    };
+
+    public static final int HASH_SIZE = 20;
+
+    private final byte[] value = new byte[HASH_SIZE];
+
+    public AICHHash() {
+
+    }
+
+    public AICHHash(final AICHHash h) {
+        assign(h);
+    }
+
+    public AICHHash assign(final AICHHash h) {
+        System.arraycopy(h.value, 0, value, 0, HASH_SIZE);
+        return this;
+    }
+
+    public static AICHHash fromBytes(byte[] value) {
+        assert value.length == HASH_SIZE;
+        AICHHash res = new AICHHash();
+        System.arraycopy(value, 0, res.value, 0, HASH_SIZE);
+        return res;
+    }
+
+    public static AICHHash fromString(String value) {
+        assert value.length() == HASH_SIZE*2;
+        AICHHash res = new AICHHash();
+        for (int i = 0; i < HASH_SIZE*2; i += 2) {
+            res.value[i/2] = (byte) ((Character.digit(value.charAt(i), 16) << 4) + Character.digit(value.charAt(i+1), 16));
+        }
+
+        return res;
+    }
+
+    public static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    /**
+     * @param data remaining bytes of buffer, buffer is consumed
+     * @return SHA-1 of data
+     */
+    public static AICHHash hash(final ByteBuffer data) {
+        MessageDigest md = digest();
+        md.update(data);
+        return fromBytes(md.digest());
+    }
+
+    /**
+     * @return hash of tree node with two children
+     */
+    public static AICHHash hash(final AICHHash left, final AICHHash right) {
+        MessageDigest md = digest();
+        md.update(left.value);
+        md.update(right.value);
+        return fromBytes(md.digest());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof AICHHash && Arrays.equals(value, ((AICHHash)obj).value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(value);
+    }
+
+    @Override
+    public String toString() {
+        return byte2String(value);
+    }
+
+    @Override
+    public ByteBuffer get(ByteBuffer src) throws JED2KException {
+        try {
+            return src.get(value);
+        } catch(BufferUnderflowException e) {
+            throw new JED2KException(ErrorCode.BUFFER_UNDERFLOW_EXCEPTION);
+        } catch(Exception e) {
+            throw new JED2KException(ErrorCode.BUFFER_GET_EXCEPTION);
+        }
+    }
+
+    @Override
+    public ByteBuffer put(ByteBuffer dst) throws JED2KException {
+        return dst.put(value);
+    }
+
+    @Override
+    public int bytesCount() {
+        return HASH_SIZE;
+    }
+}
@@ -1,6 +1,5 @@
 package org.dkf.jed2k.protocol;
 
-import org.dkf.jed2k.exception.ErrorCode;
 import org.dkf.jed2k.exception.JED2KException;
 
 import java.nio.ByteBuffer;
@@ -18,7 +17,7 @@ import java.util.*;
 public class Container<N extends UNumber, E extends Serializable> extends AbstractCollection<E> implements Serializable{
     private final N n;
     private LinkedList<E> collection = null;
-    private final Class<E> clazz;
+    private final PacketFactory<E> factory;
 
     private LinkedList<E> holder() {
         if (collection == null) collection = new LinkedList<E>();
@@ -26,8 +25,12 @@ public class Container<N extends UNumber, E extends Serializable> extends Abstra
     }
 
     public Container(N n, Class<E> clazz) {
+        this(n, new ReflectivePacketFactory<E>(clazz));
+    }
+
+    public Container(N n, PacketFactory<E> factory) {
         this.n = n;
-        this.clazz = clazz;
+        this.factory = factory;
     }
 
     public static<S extends UNumber, T extends Serializable> Container<S, T> make(S s, Class<T> clazz) {
@@ -46,6 +49,18 @@ public class Container<N extends UNumber, E extends Serializable> extends Abstra
         return new Container<UInt32, T>(new UInt32(0), clazz);
     }
 
+    public static <T extends Serializable> Container<UInt8, T> makeByte(PacketFactory<T> factory) {
+        return new Container<UInt8, T>(new UInt8(0), factory);
+    }
+
+    public static <T extends Serializable> Container<UInt16, T> makeShort(PacketFactory<T> factory) {
+        return new Container<UInt16, T>(new UInt16(0), factory);
+    }
+
+    public static <T extends Serializable> Container<UInt32, T> makeInt(PacketFactory<T> factory) {
+        return new Container<UInt32, T>(new UInt32(0), factory);
+    }
+
     public void assignFrom(final Iterable<E> origin) {
         for(final E e: origin) {
             holder().add(e);
@@ -108,20 +123,21 @@ public class Container<N extends UNumber, E extends Serializable> extends Abstra
         }
     }
 
+    /**
+     * replaces content by elements from buffer, previous list isn't modified
+     * since it can be still referenced by consumer of previous content
+     * list and elements are allocated on each decode even when owner packet is reused: KAD handlers keep ids and
+     * endpoints of results in routing table and search observers keep result lists, so elements can't be overwritten
+     */
     @Override
     public ByteBuffer get(ByteBuffer src) throws JED2KException {
         n.get(src);
+        collection = null;
 
-        try {
-            for (int i = 0; i < n.intValue(); ++i) {
-                E e = clazz.newInstance();
-                e.get(src);
-                holder().add(e);
-            }
-        } catch (InstantiationException e) {
-            throw new JED2KException(ErrorCode.GENERIC_INSTANTIATION_ERROR);
-        } catch (IllegalAccessException e1) {
-            throw new JED2KException(ErrorCode.GENERIC_ILLEGAL_ACCESS);
+        for (int i = 0; i < n.intValue(); ++i) {
+            E e = factory.create();
+            e.get(src);
+            holder().add(e);
         }
 
         return src;
@@ -0,0 +1,197 @@
+package org.dkf.jed2k.protocol;
+
+import org.dkf.jed2k.Constants;
+import org.dkf.jed2k.exception.ErrorCode;
+import org.dkf.jed2k.exception.JED2KException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * zlib inflate helper owned by one thread - event loop or DHT tracker
+ * keeps free inflaters for reuse and one growing output buffer for packed packets
+ * heap buffers are inflated without copying, direct buffers go through small scratch arrays
+ * Created by agent on 18.10.2026.
+ */
+public class Decompressor {
+    private static Logger log = LoggerFactory.getLogger(Decompressor.class);
+
+    public static final int MAX_FREE_INFLATERS = 8;
+    public static final int INITIAL_OUTPUT_SIZE = Constants.BLOCK_SIZE_INT;
+    public static final int MAX_OUTPUT_SIZE = 16*1024*1024;
+    private static final int SCRATCH_SIZE = 64*1024;
+
+    private final ArrayDeque<Inflater> inflaters = new ArrayDeque<>();
+    private ByteBuffer output = null;
+    private byte[] inputScratch = null;
+    private byte[] outputScratch = null;
+    private long createdCount = 0;
+
+    /**
+     * @return free inflater in initial state, must be returned by release
+     */
+    public Inflater acquire() {
+        Inflater inflater = inflaters.pollFirst();
+        if (inflater == null) {
+            inflater = new Inflater();
+            ++createdCount;
+        }
+
+        return inflater;
+    }
+
+    /**
+     * reset inflater and keep it for next acquire, native resources are freed when too many free inflaters
+     * @param inflater inflater obtained by acquire
+     */
+    public void release(final Inflater inflater) {
+        assert inflater != null;
+        if (inflaters.size() < MAX_FREE_INFLATERS) {
+            inflater.reset();
+            inflaters.addFirst(inflater);
+        } else {
+            inflater.end();
+        }
+    }
+
+    /**
+     * inflate whole packed payload
+     * @param src compressed data, consumed completely
+     * @return inflated data ready for reading, valid until next call
+     * @throws JED2KException on corrupted data or when result exceeds max output size
+     */
+    public ByteBuffer inflate(final ByteBuffer src) throws JED2KException {
+        // do not hold memory of one huge packet
+        if (output == null || output.capacity() > MAX_OUTPUT_SIZE / 4) {
+            output = ByteBuffer.allocate(INITIAL_OUTPUT_SIZE);
+            output.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        output.clear();
+        Inflater inflater = acquire();
+
+        try {
+            setInput(inflater, src);
+
+            while(!inflater.finished()) {
+                if (!output.hasRemaining()) grow();
+                int n = inflater.inflate(output.array(), output.arrayOffset() + output.position(), output.remaining());
+                output.position(output.position() + n);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) throw new JED2KException(ErrorCode.INFLATE_ERROR);
+                    // truncated stream, use data were inflated
+                    if (inflater.needsInput()) break;
+                }
+            }
+
+            log.trace("compressed data size {} uncompressed data size {}", inflater.getBytesRead(), output.position());
+        } catch(DataFormatException e) {
+            throw new JED2KException(ErrorCode.INFLATE_ERROR);
+        } finally {
+            src.position(src.limit());
+            release(inflater);
+        }
+
+        output.flip();
+        return output;
+    }
+
+    /**
+     * feed next chunk of compressed stream to inflater and put inflated bytes into destination
+     * @param inflater inflater of stream
+     * @param src next compressed bytes, consumed completely
+     * @param dst destination, position moves forward on inflated bytes count
+     * @return count of inflated bytes
+     * @throws JED2KException on corrupted data or when destination has no space for inflated data
+     */
+    public int inflate(final Inflater inflater, final ByteBuffer src, final ByteBuffer dst) throws JED2KException {
+        int total = 0;
+
+        try {
+            setInput(inflater, src);
+
+            while(!inflater.finished()) {
+                int chunk;
+                int n;
+                if (!dst.hasRemaining()) {
+                    // any byte still buffered inside inflater doesn't fit destination
+                    if (outputScratch == null) outputScratch = new byte[SCRATCH_SIZE];
+                    if (inflater.inflate(outputScratch, 0, 1) != 0) throw new JED2KException(ErrorCode.INFLATE_ERROR);
+                    chunk = 1;
+                    n = 0;
+                } else if (dst.hasArray()) {
+                    chunk = dst.remaining();
+                    n = inflater.inflate(dst.array(), dst.arrayOffset() + dst.position(), chunk);
+                    dst.position(dst.position() + n);
+                } else {
+                    if (outputScratch == null) outputScratch = new byte[SCRATCH_SIZE];
+                    chunk = Math.min(outputScratch.length, dst.remaining());
+                    n = inflater.inflate(outputScratch, 0, chunk);
+                    dst.put(outputScratch, 0, n);
+                }
+
+                total += n;
+                // filled output may leave inflated bytes inside inflater even when all input was consumed
+                if (n == chunk) continue;
+                if (inflater.needsInput()) break;
+                // no progress: stream needs dictionary
+                if (n == 0 && !inflater.finished()) throw new JED2KException(ErrorCode.INFLATE_ERROR);
+            }
+        } catch(DataFormatException e) {
+            throw new JED2KException(ErrorCode.INFLATE_ERROR);
+        } finally {
+            src.position(src.limit());
+        }
+
+        return total;
+    }
+
+    private void setInput(final Inflater inflater, final ByteBuffer src) {
+        if (src.hasArray()) {
+            inflater.setInput(src.array(), src.arrayOffset() + src.position(), src.remaining());
+        } else {
+            if (inputScratch == null || inputScratch.length < src.remaining()) {
+                inputScratch = new byte[Math.max(SCRATCH_SIZE, src.remaining())];
+            }
+
+            int len = src.remaining();
+            src.duplicate().get(inputScratch, 0, len);
+            inflater.setInput(inputScratch, 0, len);
+        }
+    }
+
+    private void grow() throws JED2KException {
+        if (output.capacity() >= MAX_OUTPUT_SIZE) {
+            log.error("inflated data exceeds {} bytes", MAX_OUTPUT_SIZE);
+            throw new JED2KException(ErrorCode.INFLATE_ERROR);
+        }
+
+        ByteBuffer res = ByteBuffer.allocate(Math.min(output.capacity()*2, MAX_OUTPUT_SIZE));
+        res.order(ByteOrder.LITTLE_ENDIAN);
+        output.flip();
+        res.put(output);
+        output = res;
+    }
+
+    public int getFreeInflatersCount() {
+        return inflaters.size();
+    }
+
+    public long getCreatedCount() {
+        return createdCount;
+    }
+
+    /**
+     * free native resources of all free inflaters
+     */
+    public void close() {
+        Inflater inflater;
+        while((inflater = inflaters.pollFirst()) != null) inflater.end();
+        output = null;
+    }
+}
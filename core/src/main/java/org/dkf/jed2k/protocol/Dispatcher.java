@@ -38,4 +38,15 @@ public interface Dispatcher {
     public void onClientSendingPart64(SendingPart64 value) throws JED2KException;
     public void onClientCompressedPart32(CompressedPart32 value) throws JED2KException;
     public void onClientCompressedPart64(CompressedPart64 value) throws JED2KException;
+    public void onClientAICHRequest(AICHRequest value) throws JED2KException;
+    public void onClientAICHAnswer(AICHAnswer value) throws JED2KException;
+    public void onClientAICHFileHashRequest(AICHFileHashRequest value) throws JED2KException;
+    public void onClientAICHFileHashAnswer(AICHFileHashAnswer value) throws JED2KException;
+    public void onClientRequestSources2(RequestSources2 value) throws JED2KException;
+    public void onClientAnswerSources2(AnswerSources2 value) throws JED2KException;
+    public void onClientStartUpload(StartUpload value) throws JED2KException;
+    public void onClientRequestParts32(RequestParts32 value) throws JED2KException;
+    public void onClientRequestParts64(RequestParts64 value) throws JED2KException;
+    public void onClientCancelTransfer(CancelTransfer value) throws JED2KException;
+    public void onClientEndDownload(EndDownload value) throws JED2KException;
 }
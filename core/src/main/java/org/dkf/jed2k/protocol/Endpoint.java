@@ -13,6 +13,13 @@ import static org.dkf.jed2k.Utils.ip2String;
 import static org.dkf.jed2k.Utils.sizeof;
 
 public final class Endpoint implements Serializable, Comparable<Endpoint> {
+    public static final PacketFactory<Endpoint> FACTORY = new PacketFactory<Endpoint>() {
+        @Override
+        public Endpoint create() {
+            return new Endpoint();
+        }
+    };
+
     private int ip = 0;
     private int port = 0;
 
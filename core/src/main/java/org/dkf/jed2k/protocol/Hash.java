@@ -14,6 +14,13 @@ import java.util.Random;
 import static org.dkf.jed2k.Utils.byte2String;
 
 public class Hash implements Serializable, Comparable<Hash> {
+    public static final PacketFactory<Hash> FACTORY = new PacketFactory<Hash>() {
+        @Override
+        public Hash create() {
+            return new Hash();
+        }
+    };
+
 
     protected final byte[] value = {
             (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00,
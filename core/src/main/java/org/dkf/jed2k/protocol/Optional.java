@@ -12,10 +12,14 @@ import java.nio.ByteBuffer;
  */
 public class Optional<Data extends Serializable> implements Serializable {
     private Data data = null;
-    private final Class<Data> clazz;
+    private final PacketFactory<Data> factory;
 
     public Optional(Class<Data> clazz) {
-        this.clazz = clazz;
+        this(new ReflectivePacketFactory<Data>(clazz));
+    }
+
+    public Optional(PacketFactory<Data> factory) {
+        this.factory = factory;
     }
 
     public void setData(Data d) {
@@ -47,14 +51,8 @@ public class Optional<Data extends Serializable> implements Serializable {
         }
 
         if (flag == (byte)1) {
-            try {
-                data = clazz.newInstance();
-                data.get(src);
-            } catch (InstantiationException e) {
-                throw new JED2KException(ErrorCode.GENERIC_INSTANTIATION_ERROR);
-            } catch (IllegalAccessException e1) {
-                throw new JED2KException(ErrorCode.GENERIC_ILLEGAL_ACCESS);
-            }
+            data = factory.create();
+            data.get(src);
         } else {
             data = null;
         }
@@ -96,15 +94,11 @@ public class Optional<Data extends Serializable> implements Serializable {
 
         Optional<?> optional = (Optional<?>) o;
 
-        if (data != null ? !data.equals(optional.data) : optional.data != null) return false;
-        return !(clazz != null ? !clazz.equals(optional.clazz) : optional.clazz != null);
-
+        return data != null ? data.equals(optional.data) : optional.data == null;
     }
 
     @Override
     public int hashCode() {
-        int result = data != null ? data.hashCode() : 0;
-        result = 31 * result + (clazz != null ? clazz.hashCode() : 0);
-        return result;
+        return data != null ? data.hashCode() : 0;
     }
 }
@@ -1,16 +1,13 @@
 package org.dkf.jed2k.protocol;
 
-import org.dkf.jed2k.exception.ErrorCode;
 import org.dkf.jed2k.exception.JED2KException;
 import org.dkf.jed2k.util.HexDump;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
+import java.util.HashMap;
+import java.util.Map;
 
 public abstract class PacketCombiner {
 
@@ -33,6 +30,38 @@ public abstract class PacketCombiner {
 
     private PacketHeader reusableHeader = new PacketHeader();
 
+    /**
+     * decoded packets marked as reusable by packet key, each packet type is decoded into its own object
+     * combiner serves one connection, so packet is reused after previous one was dispatched
+     */
+    private final Map<PacketKey, Serializable> reusablePackets = new HashMap<>();
+    private boolean reusePackets = true;
+
+    /**
+     * inflater of packed packets, shared with other combiners of the same thread
+     */
+    private Decompressor decompressor = null;
+
+    /**
+     * @param reuse decode reusable packets into the same objects, disable when consumer keeps packets
+     */
+    public void setReusePackets(boolean reuse) {
+        reusePackets = reuse;
+        if (!reuse) reusablePackets.clear();
+    }
+
+    /**
+     * @param decompressor inflate helper of thread which uses this combiner
+     */
+    public void setDecompressor(final Decompressor decompressor) {
+        this.decompressor = decompressor;
+    }
+
+    private Decompressor getDecompressor() {
+        if (decompressor == null) decompressor = new Decompressor();
+        return decompressor;
+    }
+
     /**
      *
      * @param header - packet header
@@ -46,68 +75,28 @@ public abstract class PacketCombiner {
 
         // special case for packed protocol - both tcp and KAD udp
         if (header.key().protocol == ProtocolType.OP_PACKEDPROT.value || header.key().protocol == ProtocolType.OP_KAD_COMPRESSED_UDP.value) {
-            int memSize = src.remaining();
-            byte[] compressedData = null;
-            byte[] plainData = null;
-            try {
-                compressedData = new byte[src.remaining()];
-                plainData = new byte[src.remaining() * 10];
-            } catch(OutOfMemoryError e) {
-                log.error("PacketCombiner out of memory on unpack, memory size {}", memSize*10);
-                throw new JED2KException(ErrorCode.NO_MEMORY);
-            }
-
-            try {
-                src.get(compressedData);
-            } catch(BufferUnderflowException e) {
-                throw new JED2KException(ErrorCode.BUFFER_UNDERFLOW_EXCEPTION);
-            } catch(Exception e) {
-                throw new JED2KException(ErrorCode.BUFFER_GET_EXCEPTION);
-            }
-
-            Inflater decompresser = new Inflater();
-            decompresser.setInput(compressedData, 0, compressedData.length);
-            int resultLength;
-            try {
-                resultLength = decompresser.inflate(plainData);
-                log.trace("Compressed data size {} uncompressed data size {}", compressedData.length, resultLength);
-            } catch(DataFormatException e) {
-                throw new JED2KException(ErrorCode.INFLATE_ERROR);
-            }
-
-            decompresser.end();
-            src.clear();
-
-            // TODO (apavlov) need mechanism to increase buffer size and set it to originator because now buffer will use only once
-            if (src.capacity() < resultLength) {
-                log.debug("re-create input buffer due to decompress size to {}", resultLength);
-                src = ByteBuffer.allocate(resultLength);
-                src.order(ByteOrder.LITTLE_ENDIAN);
-            }
-
-            src.put(plainData, 0, resultLength);
-            src.flip();
+            // inflate into decompressor's buffer, original buffer stays with connection
+            src = getDecompressor().inflate(src);
+            int resultLength = src.remaining();
+            log.trace("[combiner] packed packet {} inflated to {} bytes", header, resultLength);
             header.reset(header.key(), resultLength);   // use correct protocol value here to be compatible with HashMap
         }
 
         PacketKey key = header.key();
-        Class<? extends Serializable> clazz = keyToPacket(key);
-        Serializable ph;
-
-        if (clazz != null) {
-            try {
-                ph = clazz.newInstance();
-            } catch(InstantiationException e) {
-                throw new JED2KException(e, ErrorCode.GENERIC_INSTANTIATION_ERROR);
-            } catch (IllegalAccessException e) {
-                throw new JED2KException(e, ErrorCode.GENERIC_ILLEGAL_ACCESS);
+        Serializable ph = reusePackets?reusablePackets.get(key):null;
+
+        if (ph == null) {
+            PacketFactory<? extends Serializable> factory = keyToFactory(key);
+            if (factory != null) {
+                ph = factory.create();
+                if (reusePackets && ph instanceof ReusablePacket) reusablePackets.put(key, ph);
+            } else {
+                log.error("[combiner] unable to find correspond packet for {}", header);
+                log.trace("[combiner] packet dump \n{}", HexDump.dump(src.array()
+                        , 0
+                        , Math.min(src.remaining(), Math.min(Math.max(header.size, 0), 256))));
+                ph = new BytesSkipper(serviceSize(header));
             }
-        } else {
-            log.error("[combiner] unable to find correspond packet for {}", header);
-            log.trace("[combiner] packet dump \n{}", HexDump.dump(src.array()
-                    , 0
-                    , Math.min(src.remaining(), Math.min(Math.max(header.size, 0), 256))));
-            ph = new BytesSkipper(serviceSize(header));
         }
 
         if (ph instanceof SoftSerializable) {
@@ -129,12 +118,25 @@ public abstract class PacketCombiner {
      * @throws JED2KException
      */
     public boolean pack(Serializable object, ByteBuffer dst) throws JED2KException {
+        return pack(object, 0, dst);
+    }
+
+    /**
+     * pack packet's fields only, payload data follows them on wire and is written by caller
+     * @param object - serializable structure
+     * @param payloadSize - count of payload bytes after structure, counted in packet's size
+     * @param dst - destination byte buffer
+     * @return true if buffer has enough space for packing
+     * @throws JED2KException
+     */
+    public boolean pack(Serializable object, int payloadSize, ByteBuffer dst) throws JED2KException {
         PacketKey key = classToKey(object.getClass());
         assert(key != null);
+        assert(payloadSize >= 0);
         // use appropriate header here
         PacketHeader outgoingHeader = getHeader();
         if ((outgoingHeader.bytesCount() + object.bytesCount()) < dst.remaining()) {
-            outgoingHeader.reset(key, object.bytesCount() + 1);
+            outgoingHeader.reset(key, object.bytesCount() + payloadSize + 1);
             assert(outgoingHeader.isDefined());
             outgoingHeader.put(dst);
             object.put(dst);
@@ -144,7 +146,7 @@ public abstract class PacketCombiner {
         return false;
     }
 
-    protected abstract Class<? extends Serializable> keyToPacket(PacketKey key);
+    protected abstract PacketFactory<? extends Serializable> keyToFactory(PacketKey key);
     protected abstract PacketKey classToKey(Class<? extends Serializable> clazz);
     public abstract int serviceSize(PacketHeader ph);
 
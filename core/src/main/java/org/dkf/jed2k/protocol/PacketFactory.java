@@ -0,0 +1,12 @@
+package org.dkf.jed2k.protocol;
+
+import org.dkf.jed2k.exception.JED2KException;
+
+/**
+ * creates empty structure for deserialization, registered per opcode in packet combiners
+ * and used by containers for their elements instead of reflection
+ * Created by agent on 18.10.2026.
+ */
+public interface PacketFactory<T extends Serializable> {
+    T create() throws JED2KException;
+}
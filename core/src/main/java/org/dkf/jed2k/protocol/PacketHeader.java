@@ -20,6 +20,11 @@ public class PacketHeader implements Serializable {
     protected int size         = 0;
     protected byte packet      = 0;
 
+    /**
+     * last returned key, packet keys are immutable so the same key is returned while protocol and packet don't change
+     */
+    private PacketKey lastKey = null;
+
     public final boolean isDefined() {
         return protocol != OP_UNDEFINED && packet != OP_UNDEFINED;
     }
@@ -70,6 +75,10 @@ public class PacketHeader implements Serializable {
 
     public final PacketKey key() {
         assert(isDefined());
-        return new PacketKey(protocol, packet);
+        if (lastKey == null || lastKey.protocol != protocol || lastKey.packet != packet) {
+            lastKey = new PacketKey(protocol, packet);
+        }
+
+        return lastKey;
     }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package org.dkf.jed2k.protocol;
+
+import org.dkf.jed2k.exception.ErrorCode;
+import org.dkf.jed2k.exception.JED2KException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * factory for structures without registered factory, default constructor is resolved once
+ * used for rarely deserialized structures like resume data
+ * Created by agent on 18.10.2026.
+ */
+public class ReflectivePacketFactory<T extends Serializable> implements PacketFactory<T> {
+    private final Class<T> clazz;
+    private Constructor<T> constructor = null;
+
+    public ReflectivePacketFactory(final Class<T> clazz) {
+        assert clazz != null;
+        this.clazz = clazz;
+    }
+
+    @Override
+    public T create() throws JED2KException {
+        try {
+            if (constructor == null) constructor = clazz.getDeclaredConstructor();
+            return constructor.newInstance();
+        } catch(NoSuchMethodException | InstantiationException | InvocationTargetException e) {
+            throw new JED2KException(e, ErrorCode.GENERIC_INSTANTIATION_ERROR);
+        } catch(IllegalAccessException e) {
+            throw new JED2KException(e, ErrorCode.GENERIC_ILLEGAL_ACCESS);
+        }
+    }
+}
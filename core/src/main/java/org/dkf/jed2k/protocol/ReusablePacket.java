@@ -0,0 +1,10 @@
+package org.dkf.jed2k.protocol;
+
+/**
+ * marks packet which packet combiner may decode into the same object again
+ * packet must overwrite all its state in get and handlers must not keep reference to packet or its fields
+ * elements of packet's containers are decoded into new objects, so handlers may keep them
+ * Created by agent on 18.10.2026.
+ */
+public interface ReusablePacket extends Serializable {
+}
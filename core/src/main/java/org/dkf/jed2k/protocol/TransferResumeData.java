@@ -1,6 +1,7 @@
 package org.dkf.jed2k.protocol;
 
 import org.dkf.jed2k.data.PieceBlock;
+import org.dkf.jed2k.data.PieceHashState;
 import org.dkf.jed2k.exception.JED2KException;
 
 import java.nio.ByteBuffer;
@@ -11,26 +12,45 @@ import java.nio.ByteBuffer;
  *
  */
 public class TransferResumeData implements Serializable {
-    public Container<UInt16, Hash> hashes  = Container.makeShort(Hash.class);
+    public Container<UInt16, Hash> hashes  = Container.makeShort(Hash.FACTORY);
     public BitField pieces = new BitField();
-    public Container<UInt16, PieceBlock> downloadedBlocks = Container.makeShort(PieceBlock.class);
-    public Container<UInt16, Endpoint> peers = Container.makeShort(Endpoint.class);
+    public Container<UInt16, PieceBlock> downloadedBlocks = Container.makeShort(PieceBlock.FACTORY);
+    public Container<UInt16, Endpoint> peers = Container.makeShort(Endpoint.FACTORY);
+
+    /**
+     * hash midstates of partial pieces, absent in resume data of previous versions
+     */
+    public Container<UInt16, PieceHashState> hashStates = Container.makeShort(PieceHashState.FACTORY);
+
+    /**
+     * blocks verified by AICH in pieces under recovery and trusted AICH master hash, absent in previous versions
+     */
+    public Container<UInt16, PieceBlock> verifiedBlocks = Container.makeShort(PieceBlock.FACTORY);
+    public Optional<AICHHash> aichHash = new Optional<>(AICHHash.FACTORY);
 
     @Override
     public ByteBuffer get(ByteBuffer src) throws JED2KException {
-        return peers.get(downloadedBlocks.get(pieces.get(hashes.get(src))));
+        peers.get(downloadedBlocks.get(pieces.get(hashes.get(src))));
+        if (src.hasRemaining()) hashStates.get(src);
+        if (src.hasRemaining()) verifiedBlocks.get(src);
+        if (src.hasRemaining()) aichHash.get(src);
+        return src;
     }
 
     @Override
     public ByteBuffer put(ByteBuffer dst) throws JED2KException {
-        return peers.put(
-                downloadedBlocks.put(
-                        pieces.put(
-                                hashes.put(dst))));
+        return aichHash.put(
+                verifiedBlocks.put(
+                    hashStates.put(
+                        peers.put(
+                            downloadedBlocks.put(
+                                pieces.put(
+                                    hashes.put(dst)))))));
     }
 
     @Override
     public int bytesCount() {
-        return hashes.bytesCount() + pieces.bytesCount() + downloadedBlocks.bytesCount() + peers.bytesCount();
+        return hashes.bytesCount() + pieces.bytesCount() + downloadedBlocks.bytesCount() + peers.bytesCount() + hashStates.bytesCount()
+                + verifiedBlocks.bytesCount() + aichHash.bytesCount();
     }
 }
@@ -0,0 +1,98 @@
+package org.dkf.jed2k.protocol.client;
+
+import org.dkf.jed2k.exception.ErrorCode;
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * part's recovery data
+ * <file hash 16><part 2><AICH master hash 20><recovery data>
+ * remote peer answers with file hash only when it has no recovery data
+ * Created by agent on 18.10.2026.
+ */
+public class AICHAnswer implements Serializable, Dispatchable {
+    public final Hash hash = new Hash();
+    public final UInt16 part = new UInt16();
+    public final AICHHash aichHash = new AICHHash();
+    private byte[] data = null;
+
+    public AICHAnswer() {
+
+    }
+
+    /**
+     * answer without recovery data
+     * @param hash file hash
+     */
+    public AICHAnswer(final Hash hash) {
+        this.hash.assign(hash);
+    }
+
+    public AICHAnswer(final Hash hash, int part, final AICHHash aichHash, final ByteBuffer data) {
+        this.hash.assign(hash);
+        this.part.assign(part);
+        this.aichHash.assign(aichHash);
+        this.data = new byte[data.remaining()];
+        data.get(this.data);
+    }
+
+    /**
+     * @return false if remote peer has no recovery data
+     */
+    public boolean hasData() {
+        return data != null;
+    }
+
+    /**
+     * @return little endian view of recovery data
+     */
+    public ByteBuffer getData() {
+        assert data != null;
+        return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public ByteBuffer get(ByteBuffer src) throws JED2KException {
+        hash.get(src);
+        if (src.remaining() < part.bytesCount() + aichHash.bytesCount()) {
+            data = null;
+            src.position(src.limit());
+            return src;
+        }
+
+        aichHash.get(part.get(src));
+        data = new byte[src.remaining()];
+        try {
+            src.get(data);
+        } catch(Exception e) {
+            throw new JED2KException(ErrorCode.BUFFER_GET_EXCEPTION);
+        }
+
+        return src;
+    }
+
+    @Override
+    public ByteBuffer put(ByteBuffer dst) throws JED2KException {
+        hash.put(dst);
+        if (data == null) return dst;
+        return aichHash.put(part.put(dst)).put(data);
+    }
+
+    @Override
+    public int bytesCount() {
+        return hash.bytesCount() + ((data != null)?part.bytesCount() + aichHash.bytesCount() + data.length:0);
+    }
+
+    @Override
+    public void dispatch(Dispatcher dispatcher) throws JED2KException {
+        dispatcher.onClientAICHAnswer(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AICHAnswer %s part %d %s data %d", hash, part.intValue(), aichHash, (data != null)?data.length:0);
+    }
+}
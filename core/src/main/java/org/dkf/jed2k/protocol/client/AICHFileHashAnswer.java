@@ -0,0 +1,40 @@
+package org.dkf.jed2k.protocol.client;
+
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.*;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <file hash 16><AICH master hash 20>
+ * Created by agent on 18.10.2026.
+ */
+public class AICHFileHashAnswer implements Serializable, Dispatchable {
+    public final Hash hash = new Hash();
+    public final AICHHash aichHash = new AICHHash();
+
+    @Override
+    public ByteBuffer get(ByteBuffer src) throws JED2KException {
+        return aichHash.get(hash.get(src));
+    }
+
+    @Override
+    public ByteBuffer put(ByteBuffer dst) throws JED2KException {
+        return aichHash.put(hash.put(dst));
+    }
+
+    @Override
+    public int bytesCount() {
+        return hash.bytesCount() + aichHash.bytesCount();
+    }
+
+    @Override
+    public void dispatch(Dispatcher dispatcher) throws JED2KException {
+        dispatcher.onClientAICHFileHashAnswer(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AICHFileHashAnswer %s %s", hash, aichHash);
+    }
+}
@@ -0,0 +1,31 @@
+package org.dkf.jed2k.protocol.client;
+
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.Dispatchable;
+import org.dkf.jed2k.protocol.Dispatcher;
+import org.dkf.jed2k.protocol.Hash;
+
+/**
+ * request of file's AICH master hash
+ * Created by agent on 18.10.2026.
+ */
+public class AICHFileHashRequest extends Hash implements Dispatchable {
+
+    public AICHFileHashRequest(Hash hash) {
+        super(hash);
+    }
+
+    public AICHFileHashRequest() {
+        super();
+    }
+
+    @Override
+    public void dispatch(Dispatcher dispatcher) throws JED2KException {
+        dispatcher.onClientAICHFileHashRequest(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AICHFileHashRequest %s", super.toString());
+    }
+}
@@ -0,0 +1,52 @@
+package org.dkf.jed2k.protocol.client;
+
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.*;
+
+import java.nio.ByteBuffer;
+
+/**
+ * request of part's recovery data
+ * <file hash 16><part 2><AICH master hash 20>
+ * Created by agent on 18.10.2026.
+ */
+public class AICHRequest implements Serializable, Dispatchable {
+    public final Hash hash = new Hash();
+    public final UInt16 part = new UInt16();
+    public final AICHHash aichHash = new AICHHash();
+
+    public AICHRequest() {
+
+    }
+
+    public AICHRequest(final Hash hash, int part, final AICHHash aichHash) {
+        this.hash.assign(hash);
+        this.part.assign(part);
+        this.aichHash.assign(aichHash);
+    }
+
+    @Override
+    public ByteBuffer get(ByteBuffer src) throws JED2KException {
+        return aichHash.get(part.get(hash.get(src)));
+    }
+
+    @Override
+    public ByteBuffer put(ByteBuffer dst) throws JED2KException {
+        return aichHash.put(part.put(hash.put(dst)));
+    }
+
+    @Override
+    public int bytesCount() {
+        return hash.bytesCount() + part.bytesCount() + aichHash.bytesCount();
+    }
+
+    @Override
+    public void dispatch(Dispatcher dispatcher) throws JED2KException {
+        dispatcher.onClientAICHRequest(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AICHRequest %s part %d %s", hash, part.intValue(), aichHash);
+    }
+}
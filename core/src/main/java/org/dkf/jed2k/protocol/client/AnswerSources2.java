@@ -0,0 +1,105 @@
+package org.dkf.jed2k.protocol.client;
+
+import org.dkf.jed2k.Utils;
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * source exchange v2 answer, layout of source depends on version
+ * <version 1><file hash 16><count 2>(<id 4><port 2><server ip 4><server port 2>[<user hash 16>][<crypt options 1>])[count]
+ * user hash since version 2, crypt options since version 4
+ * since version 3 id of high id source has reversed byte order, endpoints here have usual ed2k order
+ * Created by agent on 18.10.2026.
+ */
+public class AnswerSources2 implements Serializable, Dispatchable {
+
+    public static class Source {
+        public final Endpoint point = new Endpoint();
+        public final Endpoint server = new Endpoint();
+        public final Hash userHash = new Hash();
+        public byte cryptOptions = 0;
+
+        public Source() {
+
+        }
+
+        public Source(final Endpoint point) {
+            this.point.assign(point);
+        }
+
+        @Override
+        public String toString() {
+            return point.toString();
+        }
+    }
+
+    public final UInt8 version = new UInt8(RequestSources2.SOURCE_EXCHANGE2_VERSION);
+    public final Hash hash = new Hash();
+    public final List<Source> sources = new ArrayList<Source>();
+
+    private static int convertId(int id, int version) {
+        return (version >= 3 && !Utils.isLowId(id))?Integer.reverseBytes(id):id;
+    }
+
+    @Override
+    public ByteBuffer get(ByteBuffer src) throws JED2KException {
+        hash.get(version.get(src));
+        UInt16 count = new UInt16(0);
+        count.get(src);
+        int v = version.intValue();
+        sources.clear();
+
+        for(int i = 0; i < count.intValue(); ++i) {
+            Source s = new Source();
+            s.point.get(src);
+            s.point.setIP(convertId(s.point.getIP(), v));
+            s.server.get(src);
+            if (v >= 2) s.userHash.get(src);
+            if (v >= 4) {
+                UInt8 crypt = new UInt8(0);
+                crypt.get(src);
+                s.cryptOptions = crypt.byteValue();
+            }
+
+            sources.add(s);
+        }
+
+        return src;
+    }
+
+    @Override
+    public ByteBuffer put(ByteBuffer dst) throws JED2KException {
+        int v = version.intValue();
+        new UInt16(sources.size()).put(hash.put(version.put(dst)));
+
+        for(final Source s: sources) {
+            new Endpoint(convertId(s.point.getIP(), v), s.point.getPort()).put(dst);
+            s.server.put(dst);
+            if (v >= 2) s.userHash.put(dst);
+            if (v >= 4) new UInt8(s.cryptOptions).put(dst);
+        }
+
+        return dst;
+    }
+
+    @Override
+    public int bytesCount() {
+        int v = version.intValue();
+        int sourceSize = 2*(4 + 2) + ((v >= 2)?Hash.INVALID.bytesCount():0) + ((v >= 4)?1:0);
+        return version.bytesCount() + hash.bytesCount() + 2 + sources.size()*sourceSize;
+    }
+
+    @Override
+    public void dispatch(Dispatcher dispatcher) throws JED2KException {
+        dispatcher.onClientAnswerSources2(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AnswerSources2 v%d %s sources %d", version.intValue(), hash, sources.size());
+    }
+}
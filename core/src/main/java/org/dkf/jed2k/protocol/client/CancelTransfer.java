@@ -1,6 +1,14 @@
 package org.dkf.jed2k.protocol.client;
 
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.Dispatchable;
+import org.dkf.jed2k.protocol.Dispatcher;
 import org.dkf.jed2k.protocol.WithoutDataPacket;
 
-public class CancelTransfer extends WithoutDataPacket {
+public class CancelTransfer extends WithoutDataPacket implements Dispatchable {
+
+    @Override
+    public void dispatch(Dispatcher dispatcher) throws JED2KException {
+        dispatcher.onClientCancelTransfer(this);
+    }
 }
@@ -1,7 +1,14 @@
 package org.dkf.jed2k.protocol.client;
 
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.Dispatchable;
+import org.dkf.jed2k.protocol.Dispatcher;
 import org.dkf.jed2k.protocol.Hash;
 
-public class EndDownload extends Hash {
+public class EndDownload extends Hash implements Dispatchable {
 
+    @Override
+    public void dispatch(Dispatcher dispatcher) throws JED2KException {
+        dispatcher.onClientEndDownload(this);
+    }
 }
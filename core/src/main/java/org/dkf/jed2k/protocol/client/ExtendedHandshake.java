@@ -11,7 +11,7 @@ public class ExtendedHandshake implements Serializable {
 
     public final UInt8 version = Unsigned.uint8();
     public final UInt8 protocolVersion = Unsigned.uint8(EMULE_PROTOCOL);
-    public final Container<UInt32, Tag> properties = Container.makeInt(Tag.class);
+    public final Container<UInt32, Tag> properties = Container.makeInt(Tag.FACTORY);
 
     @Override
     public ByteBuffer get(ByteBuffer src) throws JED2KException {
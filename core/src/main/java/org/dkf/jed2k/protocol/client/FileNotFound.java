@@ -0,0 +1,10 @@
+package org.dkf.jed2k.protocol.client;
+
+import org.dkf.jed2k.protocol.WithoutDataPacket;
+
+/**
+ * uploader hasn't file asked by UDP reask OP_FILENOTFOUND
+ * Created by agent on 18.10.2026.
+ */
+public class FileNotFound extends WithoutDataPacket {
+}
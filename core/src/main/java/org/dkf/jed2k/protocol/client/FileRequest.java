@@ -10,6 +10,10 @@ public class FileRequest extends Hash implements Dispatchable {
         super(h);
     }
 
+    public FileRequest() {
+        super();
+    }
+
     @Override
     public void dispatch(Dispatcher dispatcher) throws JED2KException {
         dispatcher.onClientFileRequest(this);
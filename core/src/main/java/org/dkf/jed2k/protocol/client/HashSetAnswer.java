@@ -9,7 +9,7 @@ import java.nio.ByteBuffer;
 @Data
 public class HashSetAnswer implements Serializable, Dispatchable {
     private final Hash hash = new Hash();
-    private final Container<UInt16, Hash> parts = Container.makeShort(Hash.class);
+    private final Container<UInt16, Hash> parts = Container.makeShort(Hash.FACTORY);
 
     @Override
     public ByteBuffer get(ByteBuffer src) throws JED2KException {
@@ -9,7 +9,7 @@ import java.nio.ByteBuffer;
 public class HelloAnswer implements Serializable, Dispatchable {
     public final Hash hash = new Hash();
     public final Endpoint point = new Endpoint();
-    public final Container<UInt32, Tag> properties = Container.makeInt(Tag.class);
+    public final Container<UInt32, Tag> properties = Container.makeInt(Tag.FACTORY);
     public final Endpoint serverPoint = new Endpoint();
 
     @Override
@@ -94,14 +94,15 @@ public class PacketCombiner extends org.dkf.jed2k.protocol.PacketCombiner {
         }
     }
 
-    protected static final Map<PacketKey, Class<? extends Serializable>> supportedPacketsClient;
+    protected static final Map<PacketKey, PacketFactory<? extends Serializable>> supportedPacketsClient;
     protected static final Map<Class<? extends Serializable>, PacketKey> struct2KeyClient;
 
-    private static void addHandlerClient(byte protocol, byte type, Class<? extends Serializable> clazz) {
+    private static <T extends Serializable> void addHandlerClient(byte protocol, byte type, Class<T> clazz, PacketFactory<T> factory) {
         PacketKey pk = new PacketKey(protocol, type);
         assert(!supportedPacketsClient.containsKey(pk));
         assert(clazz != null);
-        supportedPacketsClient.put(pk, clazz);
+        assert(factory != null);
+        supportedPacketsClient.put(pk, factory);
         struct2KeyClient.put(clazz, pk);
     }
 
@@ -131,45 +132,53 @@ public class PacketCombiner extends org.dkf.jed2k.protocol.PacketCombiner {
     private static PacketKey pkClientSendingCompPart64 = PacketKey.pk(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_COMPRESSEDPART_I64.value);
 
     static {
-        supportedPacketsClient = new TreeMap<PacketKey, Class<? extends Serializable>>();
+        supportedPacketsClient = new TreeMap<PacketKey, PacketFactory<? extends Serializable>>();
         struct2KeyClient = new HashMap<Class<? extends Serializable>, PacketKey>();
 
         // client <-> client tcp messages section
-        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_HELLO.value, Hello.class);
-        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_HELLOANSWER.value, HelloAnswer.class);
-        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_EMULEINFO.value, ExtHello.class);
-        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_EMULEINFOANSWER.value, ExtHelloAnswer.class);
+        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_HELLO.value, Hello.class, new PacketFactory<Hello>() { @Override public Hello create() { return new Hello(); } });
+        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_HELLOANSWER.value, HelloAnswer.class, new PacketFactory<HelloAnswer>() { @Override public HelloAnswer create() { return new HelloAnswer(); } });
+        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_EMULEINFO.value, ExtHello.class, new PacketFactory<ExtHello>() { @Override public ExtHello create() { return new ExtHello(); } });
+        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_EMULEINFOANSWER.value, ExtHelloAnswer.class, new PacketFactory<ExtHelloAnswer>() { @Override public ExtHelloAnswer create() { return new ExtHelloAnswer(); } });
 
-        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_REQUESTFILENAME.value, FileRequest.class);
-        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_REQFILENAMEANSWER.value, FileAnswer.class);
+        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_REQUESTFILENAME.value, FileRequest.class, new ReflectivePacketFactory<FileRequest>(FileRequest.class));
+        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_REQFILENAMEANSWER.value, FileAnswer.class, new PacketFactory<FileAnswer>() { @Override public FileAnswer create() { return new FileAnswer(); } });
 
-        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_CANCELTRANSFER.value, CancelTransfer.class);
+        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_CANCELTRANSFER.value, CancelTransfer.class, new PacketFactory<CancelTransfer>() { @Override public CancelTransfer create() { return new CancelTransfer(); } });
 
-        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_SETREQFILEID.value, FileStatusRequest.class);
-        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_FILEREQANSNOFIL.value, NoFileStatus.class);
-        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_FILESTATUS.value, FileStatusAnswer.class);
+        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_SETREQFILEID.value, FileStatusRequest.class, new PacketFactory<FileStatusRequest>() { @Override public FileStatusRequest create() { return new FileStatusRequest(); } });
+        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_FILEREQANSNOFIL.value, NoFileStatus.class, new PacketFactory<NoFileStatus>() { @Override public NoFileStatus create() { return new NoFileStatus(); } });
+        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_FILESTATUS.value, FileStatusAnswer.class, new PacketFactory<FileStatusAnswer>() { @Override public FileStatusAnswer create() { return new FileStatusAnswer(); } });
 
-        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_HASHSETREQUEST.value, HashSetRequest.class);
-        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_HASHSETANSWER.value, HashSetAnswer.class);
+        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_HASHSETREQUEST.value, HashSetRequest.class, new PacketFactory<HashSetRequest>() { @Override public HashSetRequest create() { return new HashSetRequest(); } });
+        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_HASHSETANSWER.value, HashSetAnswer.class, new PacketFactory<HashSetAnswer>() { @Override public HashSetAnswer create() { return new HashSetAnswer(); } });
 
-        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_STARTUPLOADREQ.value, StartUpload.class);
-        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_ACCEPTUPLOADREQ.value, AcceptUpload.class);
-        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_QUEUERANKING.value, QueueRanking.class);
-        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_OUTOFPARTREQS.value, OutOfParts.class);
+        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_STARTUPLOADREQ.value, StartUpload.class, new ReflectivePacketFactory<StartUpload>(StartUpload.class));
+        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_ACCEPTUPLOADREQ.value, AcceptUpload.class, new PacketFactory<AcceptUpload>() { @Override public AcceptUpload create() { return new AcceptUpload(); } });
+        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_QUEUERANKING.value, QueueRanking.class, new PacketFactory<QueueRanking>() { @Override public QueueRanking create() { return new QueueRanking(); } });
+        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_OUTOFPARTREQS.value, OutOfParts.class, new PacketFactory<OutOfParts>() { @Override public OutOfParts create() { return new OutOfParts(); } });
 
-        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_REQUESTPARTS.value, RequestParts32.class);
-        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_REQUESTPARTS_I64.value, RequestParts64.class);
-        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_SENDINGPART.value, SendingPart32.class);
-        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_SENDINGPART_I64.value, SendingPart64.class);
+        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_REQUESTPARTS.value, RequestParts32.class, new PacketFactory<RequestParts32>() { @Override public RequestParts32 create() { return new RequestParts32(); } });
+        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_REQUESTPARTS_I64.value, RequestParts64.class, new PacketFactory<RequestParts64>() { @Override public RequestParts64 create() { return new RequestParts64(); } });
+        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_SENDINGPART.value, SendingPart32.class, new PacketFactory<SendingPart32>() { @Override public SendingPart32 create() { return new SendingPart32(); } });
+        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_SENDINGPART_I64.value, SendingPart64.class, new PacketFactory<SendingPart64>() { @Override public SendingPart64 create() { return new SendingPart64(); } });
 
-        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_COMPRESSEDPART.value, CompressedPart32.class);
-        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_COMPRESSEDPART_I64.value, CompressedPart64.class);
+        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_COMPRESSEDPART.value, CompressedPart32.class, new PacketFactory<CompressedPart32>() { @Override public CompressedPart32 create() { return new CompressedPart32(); } });
+        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_COMPRESSEDPART_I64.value, CompressedPart64.class, new PacketFactory<CompressedPart64>() { @Override public CompressedPart64 create() { return new CompressedPart64(); } });
 
-        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_END_OF_DOWNLOAD.value, EndDownload.class);
+        addHandlerClient(ProtocolType.OP_EDONKEYPROT.value, StandardClientTcp.OP_END_OF_DOWNLOAD.value, EndDownload.class, new PacketFactory<EndDownload>() { @Override public EndDownload create() { return new EndDownload(); } });
+
+        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_AICHREQUEST.value, AICHRequest.class, new PacketFactory<AICHRequest>() { @Override public AICHRequest create() { return new AICHRequest(); } });
+        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_AICHANSWER.value, AICHAnswer.class, new PacketFactory<AICHAnswer>() { @Override public AICHAnswer create() { return new AICHAnswer(); } });
+        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_AICHFILEHASHREQ.value, AICHFileHashRequest.class, new PacketFactory<AICHFileHashRequest>() { @Override public AICHFileHashRequest create() { return new AICHFileHashRequest(); } });
+        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_AICHFILEHASHANS.value, AICHFileHashAnswer.class, new PacketFactory<AICHFileHashAnswer>() { @Override public AICHFileHashAnswer create() { return new AICHFileHashAnswer(); } });
+
+        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_REQUESTSOURCES2.value, RequestSources2.class, new PacketFactory<RequestSources2>() { @Override public RequestSources2 create() { return new RequestSources2(); } });
+        addHandlerClient(ProtocolType.OP_EMULEPROT.value, ExtendedClientTcp.OP_ANSWERSOURCES2.value, AnswerSources2.class, new PacketFactory<AnswerSources2>() { @Override public AnswerSources2 create() { return new AnswerSources2(); } });
     }
 
     @Override
-    protected Class<? extends Serializable> keyToPacket(PacketKey key) {
+    protected PacketFactory<? extends Serializable> keyToFactory(PacketKey key) {
         return supportedPacketsClient.get(key);
     }
 
@@ -0,0 +1,10 @@
+package org.dkf.jed2k.protocol.client;
+
+import org.dkf.jed2k.protocol.WithoutDataPacket;
+
+/**
+ * uploader doesn't know asking client by UDP reask and its queue is full OP_QUEUEFULL
+ * Created by agent on 18.10.2026.
+ */
+public class QueueFull extends WithoutDataPacket {
+}
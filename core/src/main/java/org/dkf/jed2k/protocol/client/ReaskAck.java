@@ -0,0 +1,54 @@
+package org.dkf.jed2k.protocol.client;
+
+import org.dkf.jed2k.exception.ErrorCode;
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.BitField;
+import org.dkf.jed2k.protocol.Serializable;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import static org.dkf.jed2k.Utils.sizeof;
+
+/**
+ * answer of uploader on UDP reask OP_REASKACK [<PART STATUS>]<RANK 2>
+ * part status is sent to peers with UDP version above 3 only
+ * Created by agent on 18.10.2026.
+ */
+public class ReaskAck implements Serializable {
+    public BitField partStatus = null;
+    public short rank = 0;
+
+    @Override
+    public ByteBuffer get(ByteBuffer src) throws JED2KException {
+        try {
+            partStatus = null;
+            if (src.remaining() > sizeof(rank)) {
+                partStatus = new BitField();
+                partStatus.get(src);
+            }
+
+            rank = src.getShort();
+            src.position(src.limit());
+            return src;
+        } catch(BufferUnderflowException e) {
+            throw new JED2KException(ErrorCode.BUFFER_UNDERFLOW_EXCEPTION);
+        }
+    }
+
+    @Override
+    public ByteBuffer put(ByteBuffer dst) throws JED2KException {
+        if (partStatus != null) partStatus.put(dst);
+        return dst.putShort(rank);
+    }
+
+    @Override
+    public int bytesCount() {
+        return (partStatus != null?partStatus.bytesCount():0) + sizeof(rank);
+    }
+
+    @Override
+    public String toString() {
+        return "reask ack rank " + rank;
+    }
+}
@@ -0,0 +1,68 @@
+package org.dkf.jed2k.protocol.client;
+
+import org.dkf.jed2k.exception.ErrorCode;
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.BitField;
+import org.dkf.jed2k.protocol.Hash;
+import org.dkf.jed2k.protocol.Serializable;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import static org.dkf.jed2k.Utils.sizeof;
+
+/**
+ * UDP reask of queued downloader OP_REASKFILEPING <HASH 16>[<PART STATUS>][<COMPLETE SOURCES 2>]
+ * part status is sent to peers with UDP version above 3, complete sources count to peers with version above 2
+ * fields presence is recognized by datagram's rest on receive
+ * Created by agent on 18.10.2026.
+ */
+public class ReaskFilePing implements Serializable {
+    public final Hash hash = new Hash();
+    public BitField partStatus = null;
+    public short completeSources = 0;
+    public boolean hasCompleteSources = true;
+
+    public ReaskFilePing() {}
+
+    public ReaskFilePing(final Hash h) {
+        hash.assign(h);
+    }
+
+    @Override
+    public ByteBuffer get(ByteBuffer src) throws JED2KException {
+        try {
+            hash.get(src);
+            partStatus = null;
+            if (src.remaining() > sizeof(completeSources)) {
+                partStatus = new BitField();
+                partStatus.get(src);
+            }
+
+            hasCompleteSources = src.remaining() >= sizeof(completeSources);
+            completeSources = hasCompleteSources?src.getShort():0;
+            src.position(src.limit());
+            return src;
+        } catch(BufferUnderflowException e) {
+            throw new JED2KException(ErrorCode.BUFFER_UNDERFLOW_EXCEPTION);
+        }
+    }
+
+    @Override
+    public ByteBuffer put(ByteBuffer dst) throws JED2KException {
+        hash.put(dst);
+        if (partStatus != null) partStatus.put(dst);
+        if (hasCompleteSources) dst.putShort(completeSources);
+        return dst;
+    }
+
+    @Override
+    public int bytesCount() {
+        return hash.bytesCount() + (partStatus != null?partStatus.bytesCount():0) + (hasCompleteSources?sizeof(completeSources):0);
+    }
+
+    @Override
+    public String toString() {
+        return "reask " + hash + " complete sources " + completeSources;
+    }
+}
@@ -1,11 +1,14 @@
 package org.dkf.jed2k.protocol.client;
 
 import org.dkf.jed2k.Constants;
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.Dispatchable;
+import org.dkf.jed2k.protocol.Dispatcher;
 import org.dkf.jed2k.protocol.Hash;
 import org.dkf.jed2k.protocol.UInt32;
 import org.dkf.jed2k.protocol.Unsigned;
 
-public class RequestParts32 extends RequestParts<UInt32> {
+public class RequestParts32 extends RequestParts<UInt32> implements Dispatchable {
 
     public RequestParts32() {
         super();
@@ -26,6 +29,11 @@ public class RequestParts32 extends RequestParts<UInt32> {
         return hash.bytesCount() + Constants.PARTS_IN_REQUEST*2*UInt32.SIZE;
     }
 
+    @Override
+    public void dispatch(Dispatcher dispatcher) throws JED2KException {
+        dispatcher.onClientRequestParts32(this);
+    }
+
     @Override
     public String toString() {
         return "RequestParts32 " + super.toString();
@@ -0,0 +1,52 @@
+package org.dkf.jed2k.protocol.client;
+
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.*;
+
+import java.nio.ByteBuffer;
+
+/**
+ * source exchange v2 request
+ * <version 1><options 2><file hash 16>
+ * Created by agent on 18.10.2026.
+ */
+public class RequestSources2 implements Serializable, Dispatchable {
+    public static final int SOURCE_EXCHANGE2_VERSION = 4;
+
+    public final UInt8 version = new UInt8(SOURCE_EXCHANGE2_VERSION);
+    public final UInt16 options = new UInt16(0);
+    public final Hash hash = new Hash();
+
+    public RequestSources2() {
+
+    }
+
+    public RequestSources2(final Hash h) {
+        hash.assign(h);
+    }
+
+    @Override
+    public ByteBuffer get(ByteBuffer src) throws JED2KException {
+        return hash.get(options.get(version.get(src)));
+    }
+
+    @Override
+    public ByteBuffer put(ByteBuffer dst) throws JED2KException {
+        return hash.put(options.put(version.put(dst)));
+    }
+
+    @Override
+    public int bytesCount() {
+        return version.bytesCount() + options.bytesCount() + hash.bytesCount();
+    }
+
+    @Override
+    public void dispatch(Dispatcher dispatcher) throws JED2KException {
+        dispatcher.onClientRequestSources2(this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RequestSources2 v%d %s", version.intValue(), hash);
+    }
+}
@@ -4,10 +4,11 @@ import org.dkf.jed2k.exception.JED2KException;
 import org.dkf.jed2k.hash.MD4;
 import org.dkf.jed2k.protocol.Dispatchable;
 import org.dkf.jed2k.protocol.Dispatcher;
+import org.dkf.jed2k.protocol.ReusablePacket;
 import org.dkf.jed2k.protocol.UInt64;
 import org.dkf.jed2k.protocol.Unsigned;
 
-public class SendingPart64 extends SendingPart<UInt64> implements Dispatchable {
+public class SendingPart64 extends SendingPart<UInt64> implements Dispatchable, ReusablePacket {
 
     // for packet combiner
     public static int SIZE = MD4.HASH_SIZE + UInt64.SIZE*2;
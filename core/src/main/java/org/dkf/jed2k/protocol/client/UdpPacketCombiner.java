@@ -0,0 +1,75 @@
+package org.dkf.jed2k.protocol.client;
+
+import org.dkf.jed2k.protocol.PacketFactory;
+import org.dkf.jed2k.protocol.PacketHeader;
+import org.dkf.jed2k.protocol.PacketKey;
+import org.dkf.jed2k.protocol.Serializable;
+import org.dkf.jed2k.protocol.kad.KadPacketHeader;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * client <-> client eMule UDP packets, header has no size field like KAD header
+ * opcodes overlap with eMule TCP packets, so UDP packets have own combiner
+ * Created by agent on 18.10.2026.
+ */
+public class UdpPacketCombiner extends org.dkf.jed2k.protocol.PacketCombiner {
+
+    enum ClientClientUdp {
+        OP_REASKFILEPING(0x90),     // <HASH 16>[<PART STATUS>][<COMPLETE SOURCES 2>]
+        OP_REASKACK(0x91),          // [<PART STATUS>]<RANK 2>
+        OP_FILENOTFOUND(0x92),      // (null)
+        OP_QUEUEFULL(0x93);         // (null)
+
+        public final byte value;
+
+        ClientClientUdp(int v) {
+            value = (byte)v;
+        }
+    }
+
+    private static final Map<PacketKey, PacketFactory<? extends Serializable>> supportedPacketsUdp;
+    private static final Map<Class<? extends Serializable>, PacketKey> struct2KeyUdp;
+
+    private final PacketHeader header = new KadPacketHeader();
+
+    private static <T extends Serializable> void addHandler(byte type, Class<T> clazz, PacketFactory<T> factory) {
+        PacketKey pk = new PacketKey(ProtocolType.OP_EMULEPROT.value, type);
+        assert(!supportedPacketsUdp.containsKey(pk));
+        assert(clazz != null);
+        assert(factory != null);
+        supportedPacketsUdp.put(pk, factory);
+        struct2KeyUdp.put(clazz, pk);
+    }
+
+    static {
+        supportedPacketsUdp = new TreeMap<PacketKey, PacketFactory<? extends Serializable>>();
+        struct2KeyUdp = new HashMap<Class<? extends Serializable>, PacketKey>();
+        addHandler(ClientClientUdp.OP_REASKFILEPING.value, ReaskFilePing.class, new PacketFactory<ReaskFilePing>() { @Override public ReaskFilePing create() { return new ReaskFilePing(); } });
+        addHandler(ClientClientUdp.OP_REASKACK.value, ReaskAck.class, new PacketFactory<ReaskAck>() { @Override public ReaskAck create() { return new ReaskAck(); } });
+        addHandler(ClientClientUdp.OP_FILENOTFOUND.value, FileNotFound.class, new PacketFactory<FileNotFound>() { @Override public FileNotFound create() { return new FileNotFound(); } });
+        addHandler(ClientClientUdp.OP_QUEUEFULL.value, QueueFull.class, new PacketFactory<QueueFull>() { @Override public QueueFull create() { return new QueueFull(); } });
+    }
+
+    @Override
+    protected PacketFactory<? extends Serializable> keyToFactory(PacketKey key) {
+        return supportedPacketsUdp.get(key);
+    }
+
+    @Override
+    protected PacketKey classToKey(Class<? extends Serializable> clazz) {
+        return struct2KeyUdp.get(clazz);
+    }
+
+    @Override
+    public int serviceSize(PacketHeader ph) {
+        return ph.sizePacket();
+    }
+
+    @Override
+    protected PacketHeader getHeader() {
+        return header;
+    }
+}
@@ -21,7 +21,7 @@ public class Kad2BootstrapRes implements Serializable {
     private KadId kid = new KadId();
     private UInt16 portTcp = new UInt16();
     private UInt8 version = new UInt8();
-    private Container<UInt16, KadEntry> contacts = Container.makeShort(KadEntry.class);
+    private Container<UInt16, KadEntry> contacts = Container.makeShort(KadEntry.FACTORY);
 
     @Override
     public ByteBuffer get(ByteBuffer src) throws JED2KException {
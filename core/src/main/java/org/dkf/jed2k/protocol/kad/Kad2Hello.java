@@ -22,7 +22,7 @@ public class Kad2Hello implements Serializable {
     private KadId kid = new KadId();
     private UInt16 portTcp = new UInt16();
     private UInt8 version = new UInt8();
-    private Container<UInt8, Tag> info = Container.makeByte(Tag.class);;
+    private Container<UInt8, Tag> info = Container.makeByte(Tag.FACTORY);;
 
     @Override
     public ByteBuffer get(ByteBuffer src) throws JED2KException {
@@ -2,6 +2,7 @@ package org.dkf.jed2k.protocol.kad;
 
 import lombok.ToString;
 import org.dkf.jed2k.kad.ReqDispatcher;
+import org.dkf.jed2k.protocol.ReusablePacket;
 
 import java.net.InetSocketAddress;
 
@@ -9,7 +10,7 @@ import java.net.InetSocketAddress;
  * Created by inkpot on 15.11.2016.
  */
 @ToString
-public class Kad2HelloReq extends Kad2Hello implements KadDispatchable {
+public class Kad2HelloReq extends Kad2Hello implements KadDispatchable, ReusablePacket {
     @Override
     public void dispatch(ReqDispatcher dispatcher, final InetSocketAddress address) {
         dispatcher.process(this, address);
@@ -16,7 +16,7 @@ import java.nio.ByteBuffer;
 @Data
 public class Kad2PublishKeysReq implements Serializable, KadDispatchable {
     private KadId keywordId = new KadId();
-    private Container<UInt16, KadSearchEntry> sources = Container.makeShort(KadSearchEntry.class);
+    private Container<UInt16, KadSearchEntry> sources = Container.makeShort(KadSearchEntry.FACTORY);
 
     @Override
     public ByteBuffer get(ByteBuffer src) throws JED2KException {
@@ -5,7 +5,7 @@ import lombok.Setter;
 import lombok.ToString;
 import org.dkf.jed2k.exception.JED2KException;
 import org.dkf.jed2k.protocol.Container;
-import org.dkf.jed2k.protocol.Serializable;
+import org.dkf.jed2k.protocol.ReusablePacket;
 import org.dkf.jed2k.protocol.UInt8;
 
 import java.nio.ByteBuffer;
@@ -16,9 +16,9 @@ import java.nio.ByteBuffer;
 @Getter
 @Setter
 @ToString
-public class Kad2Res implements Serializable {
+public class Kad2Res implements ReusablePacket {
     private KadId target = new KadId();
-    private Container<UInt8, KadEntry> results = Container.makeByte(KadEntry.class);
+    private Container<UInt8, KadEntry> results = Container.makeByte(KadEntry.FACTORY);
 
     @Override
     public ByteBuffer get(ByteBuffer src) throws JED2KException {
@@ -4,7 +4,7 @@ import lombok.Getter;
 import lombok.ToString;
 import org.dkf.jed2k.exception.JED2KException;
 import org.dkf.jed2k.protocol.Container;
-import org.dkf.jed2k.protocol.Serializable;
+import org.dkf.jed2k.protocol.ReusablePacket;
 import org.dkf.jed2k.protocol.UInt16;
 
 import java.nio.ByteBuffer;
@@ -14,10 +14,10 @@ import java.nio.ByteBuffer;
  */
 @Getter
 @ToString
-public class Kad2SearchRes implements Serializable {
+public class Kad2SearchRes implements ReusablePacket {
     private KadId source = new KadId();
     private KadId target = new KadId();
-    private Container<UInt16, KadSearchEntry> results = Container.makeShort(KadSearchEntry.class);
+    private Container<UInt16, KadSearchEntry> results = Container.makeShort(KadSearchEntry.FACTORY);
 
     @Override
     public ByteBuffer get(ByteBuffer src) throws JED2KException {
@@ -2,6 +2,7 @@ package org.dkf.jed2k.protocol.kad;
 
 import lombok.Data;
 import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.PacketFactory;
 import org.dkf.jed2k.protocol.Serializable;
 
 import java.nio.ByteBuffer;
@@ -11,6 +12,13 @@ import java.nio.ByteBuffer;
  */
 @Data
 public class KadEntry implements Serializable {
+    public static final PacketFactory<KadEntry> FACTORY = new PacketFactory<KadEntry>() {
+        @Override
+        public KadEntry create() {
+            return new KadEntry();
+        }
+    };
+
     private KadId kid = null;
     private KadEndpoint kadEndpoint = null;
     private byte version;
@@ -18,7 +18,7 @@ public class KadNodesDat implements Serializable {
     private UInt32 numContacts = new UInt32();
     private UInt32 version = new UInt32();
     private UInt32 bootstrapEdition = new UInt32();
-    Container<UInt32, KadEntry> bootstrapEntries = Container.makeInt(KadEntry.class);
+    Container<UInt32, KadEntry> bootstrapEntries = Container.makeInt(KadEntry.FACTORY);
     List<KadEntry> contacts = new LinkedList<>();
     List<KadExtEntry> extContacts = new LinkedList<>();
 
@@ -18,8 +18,15 @@ import java.nio.ByteBuffer;
 @ToString
 @EqualsAndHashCode(exclude = "info")
 public class KadSearchEntry implements Serializable, SearchEntry {
+    public static final PacketFactory<KadSearchEntry> FACTORY = new PacketFactory<KadSearchEntry>() {
+        @Override
+        public KadSearchEntry create() {
+            return new KadSearchEntry();
+        }
+    };
+
     private KadId kid = null;
-    private Container<UInt8, Tag> info = Container.makeByte(Tag.class);
+    private Container<UInt8, Tag> info = Container.makeByte(Tag.FACTORY);
 
     public KadSearchEntry() {
         this.kid = new KadId();
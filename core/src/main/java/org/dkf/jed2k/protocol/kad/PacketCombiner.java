@@ -1,5 +1,6 @@
 package org.dkf.jed2k.protocol.kad;
 
+import org.dkf.jed2k.protocol.PacketFactory;
 import org.dkf.jed2k.protocol.PacketHeader;
 import org.dkf.jed2k.protocol.PacketKey;
 import org.dkf.jed2k.protocol.Serializable;
@@ -91,58 +92,59 @@ public class PacketCombiner extends org.dkf.jed2k.protocol.PacketCombiner {
 
     private KadPacketHeader header = new KadPacketHeader();
 
-    private static final Map<PacketKey, Class<? extends Serializable>> supportedPacketsKad;
+    private static final Map<PacketKey, PacketFactory<? extends Serializable>> supportedPacketsKad;
     private static final Map<Class<? extends Serializable>, PacketKey> struct2KeyKad;
 
-    private static void addHandler(byte protocol, byte type, Class<? extends Serializable> clazz) {
+    private static <T extends Serializable> void addHandler(byte protocol, byte type, Class<T> clazz, PacketFactory<T> factory) {
         PacketKey pk = new PacketKey(protocol, type);
         assert(!supportedPacketsKad.containsKey(pk));
         assert(clazz != null);
-        supportedPacketsKad.put(pk, clazz);
+        assert(factory != null);
+        supportedPacketsKad.put(pk, factory);
         struct2KeyKad.put(clazz, pk);
     }
 
-    private static void addKadHandler(byte type, Class<? extends  Serializable> clazz) {
-        addHandler(OP_KADEMLIAHEADER, type, clazz);
+    private static <T extends Serializable> void addKadHandler(byte type, Class<T> clazz, PacketFactory<T> factory) {
+        addHandler(OP_KADEMLIAHEADER, type, clazz, factory);
     }
 
     static {
-        supportedPacketsKad = new TreeMap<PacketKey, Class<? extends Serializable>>();
+        supportedPacketsKad = new TreeMap<PacketKey, PacketFactory<? extends Serializable>>();
         struct2KeyKad = new HashMap<Class<? extends Serializable>, PacketKey>();
 
 
-        addKadHandler(KadUdp.KADEMLIA2_PING.value, Kad2Ping.class);
-        addKadHandler(KadUdp.KADEMLIA2_PONG.value, Kad2Pong.class);
+        addKadHandler(KadUdp.KADEMLIA2_PING.value, Kad2Ping.class, new PacketFactory<Kad2Ping>() { @Override public Kad2Ping create() { return new Kad2Ping(); } });
+        addKadHandler(KadUdp.KADEMLIA2_PONG.value, Kad2Pong.class, new PacketFactory<Kad2Pong>() { @Override public Kad2Pong create() { return new Kad2Pong(); } });
 
-        addKadHandler(KadUdp.KADEMLIA2_REQ.value, Kad2Req.class);
-        addKadHandler(KadUdp.KADEMLIA2_RES.value, Kad2Res.class);
+        addKadHandler(KadUdp.KADEMLIA2_REQ.value, Kad2Req.class, new PacketFactory<Kad2Req>() { @Override public Kad2Req create() { return new Kad2Req(); } });
+        addKadHandler(KadUdp.KADEMLIA2_RES.value, Kad2Res.class, new PacketFactory<Kad2Res>() { @Override public Kad2Res create() { return new Kad2Res(); } });
 
         //addKadHandler(KadUdp.KADEMLIA_REQ.value, Kad2Req.class);
         //addKadHandler(KadUdp.KADEMLIA_RES.value, Kad2Res.class);
 
-        addKadHandler(KadUdp.KADEMLIA2_HELLO_REQ.value, Kad2HelloReq.class);
-        addKadHandler(KadUdp.KADEMLIA2_HELLO_RES.value, Kad2HelloRes.class);
+        addKadHandler(KadUdp.KADEMLIA2_HELLO_REQ.value, Kad2HelloReq.class, new PacketFactory<Kad2HelloReq>() { @Override public Kad2HelloReq create() { return new Kad2HelloReq(); } });
+        addKadHandler(KadUdp.KADEMLIA2_HELLO_RES.value, Kad2HelloRes.class, new PacketFactory<Kad2HelloRes>() { @Override public Kad2HelloRes create() { return new Kad2HelloRes(); } });
 
-        addKadHandler(KadUdp.KADEMLIA2_SEARCH_SOURCE_REQ.value, Kad2SearchSourcesReq.class);
-        addKadHandler(KadUdp.KADEMLIA2_SEARCH_KEY_REQ.value, Kad2SearchKeysReq.class);
-        addKadHandler(KadUdp.KADEMLIA2_SEARCH_NOTES_REQ.value, Kad2SearchNotesReq.class);
-        addKadHandler(KadUdp.KADEMLIA2_SEARCH_RES.value, Kad2SearchRes.class);
+        addKadHandler(KadUdp.KADEMLIA2_SEARCH_SOURCE_REQ.value, Kad2SearchSourcesReq.class, new PacketFactory<Kad2SearchSourcesReq>() { @Override public Kad2SearchSourcesReq create() { return new Kad2SearchSourcesReq(); } });
+        addKadHandler(KadUdp.KADEMLIA2_SEARCH_KEY_REQ.value, Kad2SearchKeysReq.class, new PacketFactory<Kad2SearchKeysReq>() { @Override public Kad2SearchKeysReq create() { return new Kad2SearchKeysReq(); } });
+        addKadHandler(KadUdp.KADEMLIA2_SEARCH_NOTES_REQ.value, Kad2SearchNotesReq.class, new PacketFactory<Kad2SearchNotesReq>() { @Override public Kad2SearchNotesReq create() { return new Kad2SearchNotesReq(); } });
+        addKadHandler(KadUdp.KADEMLIA2_SEARCH_RES.value, Kad2SearchRes.class, new PacketFactory<Kad2SearchRes>() { @Override public Kad2SearchRes create() { return new Kad2SearchRes(); } });
 
-        addKadHandler(KadUdp.KADEMLIA2_BOOTSTRAP_REQ.value, Kad2BootstrapReq.class);
-        addKadHandler(KadUdp.KADEMLIA2_BOOTSTRAP_RES.value, Kad2BootstrapRes.class);
+        addKadHandler(KadUdp.KADEMLIA2_BOOTSTRAP_REQ.value, Kad2BootstrapReq.class, new PacketFactory<Kad2BootstrapReq>() { @Override public Kad2BootstrapReq create() { return new Kad2BootstrapReq(); } });
+        addKadHandler(KadUdp.KADEMLIA2_BOOTSTRAP_RES.value, Kad2BootstrapRes.class, new PacketFactory<Kad2BootstrapRes>() { @Override public Kad2BootstrapRes create() { return new Kad2BootstrapRes(); } });
 
-        addKadHandler(KadUdp.KADEMLIA_FIREWALLED_REQ.value, KadFirewalledReq.class);
-        addKadHandler(KadUdp.KADEMLIA_FIREWALLED2_REQ.value, Kad2FirewalledReq.class);
-        addKadHandler(KadUdp.KADEMLIA2_FIREWALLUDP.value, Kad2FirewalledUdp.class);
-        addKadHandler(KadUdp.KADEMLIA_FIREWALLED_RES.value, Kad2FirewalledRes.class);
+        addKadHandler(KadUdp.KADEMLIA_FIREWALLED_REQ.value, KadFirewalledReq.class, new PacketFactory<KadFirewalledReq>() { @Override public KadFirewalledReq create() { return new KadFirewalledReq(); } });
+        addKadHandler(KadUdp.KADEMLIA_FIREWALLED2_REQ.value, Kad2FirewalledReq.class, new PacketFactory<Kad2FirewalledReq>() { @Override public Kad2FirewalledReq create() { return new Kad2FirewalledReq(); } });
+        addKadHandler(KadUdp.KADEMLIA2_FIREWALLUDP.value, Kad2FirewalledUdp.class, new PacketFactory<Kad2FirewalledUdp>() { @Override public Kad2FirewalledUdp create() { return new Kad2FirewalledUdp(); } });
+        addKadHandler(KadUdp.KADEMLIA_FIREWALLED_RES.value, Kad2FirewalledRes.class, new PacketFactory<Kad2FirewalledRes>() { @Override public Kad2FirewalledRes create() { return new Kad2FirewalledRes(); } });
 
-        addKadHandler(KadUdp.KADEMLIA2_PUBLISH_KEY_REQ.value, Kad2PublishKeysReq.class);
-        addKadHandler(KadUdp.KADEMLIA2_PUBLISH_SOURCE_REQ.value, Kad2PublishSourcesReq.class);
-        addKadHandler(KadUdp.KADEMLIA2_PUBLISH_RES.value, Kad2PublishRes.class);
+        addKadHandler(KadUdp.KADEMLIA2_PUBLISH_KEY_REQ.value, Kad2PublishKeysReq.class, new PacketFactory<Kad2PublishKeysReq>() { @Override public Kad2PublishKeysReq create() { return new Kad2PublishKeysReq(); } });
+        addKadHandler(KadUdp.KADEMLIA2_PUBLISH_SOURCE_REQ.value, Kad2PublishSourcesReq.class, new PacketFactory<Kad2PublishSourcesReq>() { @Override public Kad2PublishSourcesReq create() { return new Kad2PublishSourcesReq(); } });
+        addKadHandler(KadUdp.KADEMLIA2_PUBLISH_RES.value, Kad2PublishRes.class, new PacketFactory<Kad2PublishRes>() { @Override public Kad2PublishRes create() { return new Kad2PublishRes(); } });
     }
 
     @Override
-    protected Class<? extends Serializable> keyToPacket(PacketKey key) {
+    protected PacketFactory<? extends Serializable> keyToFactory(PacketKey key) {
         return supportedPacketsKad.get(key);
     }
 
@@ -1,11 +1,13 @@
 package org.dkf.jed2k.protocol.server;
 
 import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.Dispatchable;
+import org.dkf.jed2k.protocol.Dispatcher;
 import org.dkf.jed2k.protocol.Serializable;
 
 import java.nio.ByteBuffer;
 
-public class CallbackRequestFailed implements Serializable {
+public class CallbackRequestFailed implements Serializable, Dispatchable {
 
     @Override
     public ByteBuffer get(ByteBuffer src) throws JED2KException {
@@ -21,4 +23,9 @@ public class CallbackRequestFailed implements Serializable {
     public int bytesCount() {
         return 0;
     }
+
+    @Override
+    public void dispatch(Dispatcher dispatcher) throws JED2KException {
+        dispatcher.onCallbackRequestFailed(this);
+    }
 }
@@ -1,12 +1,14 @@
 package org.dkf.jed2k.protocol.server;
 
 import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.Dispatchable;
+import org.dkf.jed2k.protocol.Dispatcher;
 import org.dkf.jed2k.protocol.Endpoint;
 import org.dkf.jed2k.protocol.Serializable;
 
 import java.nio.ByteBuffer;
 
-public class CallbackRequestIncoming implements Serializable {
+public class CallbackRequestIncoming implements Serializable, Dispatchable {
     public Endpoint point = new Endpoint();
 
     @Override
@@ -23,4 +25,9 @@ public class CallbackRequestIncoming implements Serializable {
     public int bytesCount() {
         return point.bytesCount();
     }
+
+    @Override
+    public void dispatch(Dispatcher dispatcher) throws JED2KException {
+        dispatcher.onCallbackRequestIncoming(this);
+    }
 }
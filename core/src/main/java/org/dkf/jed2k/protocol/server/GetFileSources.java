@@ -69,7 +69,8 @@ public class GetFileSources implements Serializable {
 
     @Override
     public int bytesCount() {
-        return hash.bytesCount() + sizeof(lowPart) + ((hiPart != 0)?sizeof(hiPart):0);
+        // large file has zero marker before low and high parts
+        return hash.bytesCount() + sizeof(lowPart) + ((hiPart != 0)?sizeof(hiPart)*2:0);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,9 @@
+package org.dkf.jed2k.protocol.server;
+
+/**
+ * UDP answer OP_GLOBFOUNDSOURCES on global sources request, has layout of TCP found sources
+ * server concatenates answers for several files into one datagram, each next answer starts with own header
+ * Created by agent on 18.10.2026.
+ */
+public class GlobalFoundSources extends FoundFileSources {
+}
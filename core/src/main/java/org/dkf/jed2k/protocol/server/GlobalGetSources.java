@@ -0,0 +1,58 @@
+package org.dkf.jed2k.protocol.server;
+
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.Hash;
+import org.dkf.jed2k.protocol.Serializable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * UDP global sources request OP_GLOBGETSOURCES2 for several files in one datagram
+ * each file is <HASH 16><SIZE 4> or <HASH 16><0 4><SIZE 8> for large files, count is defined by datagram size
+ * Created by agent on 18.10.2026.
+ */
+public class GlobalGetSources implements Serializable {
+    public final List<GetFileSources> files = new ArrayList<GetFileSources>();
+
+    public void addFile(final Hash h, long size) {
+        files.add(new GetFileSources(h, (int)(size >>> 32), (int)(size & 0xFFFFFFFFL)));
+    }
+
+    @Override
+    public ByteBuffer get(ByteBuffer src) throws JED2KException {
+        files.clear();
+        while(src.hasRemaining()) {
+            GetFileSources gfs = new GetFileSources();
+            gfs.get(src);
+            files.add(gfs);
+        }
+
+        return src;
+    }
+
+    @Override
+    public ByteBuffer put(ByteBuffer dst) throws JED2KException {
+        for(final GetFileSources gfs: files) {
+            gfs.put(dst);
+        }
+
+        return dst;
+    }
+
+    @Override
+    public int bytesCount() {
+        int res = 0;
+        for(final GetFileSources gfs: files) {
+            res += gfs.bytesCount();
+        }
+
+        return res;
+    }
+
+    @Override
+    public String toString() {
+        return "global get sources " + files.size();
+    }
+}
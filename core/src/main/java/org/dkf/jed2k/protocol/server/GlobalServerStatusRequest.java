@@ -0,0 +1,52 @@
+package org.dkf.jed2k.protocol.server;
+
+import org.dkf.jed2k.exception.ErrorCode;
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.Serializable;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import static org.dkf.jed2k.Utils.sizeof;
+
+/**
+ * UDP server status ping OP_GLOBSERVSTATREQ <CHALLENGE 4>, server echoes challenge in answer
+ * Created by agent on 18.10.2026.
+ */
+public class GlobalServerStatusRequest implements Serializable {
+    public int challenge = 0;
+
+    public GlobalServerStatusRequest() {
+    }
+
+    public GlobalServerStatusRequest(int challenge) {
+        this.challenge = challenge;
+    }
+
+    @Override
+    public ByteBuffer get(ByteBuffer src) throws JED2KException {
+        try {
+            challenge = src.getInt();
+            return src;
+        } catch(BufferUnderflowException e) {
+            throw new JED2KException(ErrorCode.BUFFER_UNDERFLOW_EXCEPTION);
+        } catch(Exception e) {
+            throw new JED2KException(ErrorCode.BUFFER_GET_EXCEPTION);
+        }
+    }
+
+    @Override
+    public ByteBuffer put(ByteBuffer dst) throws JED2KException {
+        return dst.putInt(challenge);
+    }
+
+    @Override
+    public int bytesCount() {
+        return sizeof(challenge);
+    }
+
+    @Override
+    public String toString() {
+        return "challenge: " + challenge;
+    }
+}
@@ -0,0 +1,54 @@
+package org.dkf.jed2k.protocol.server;
+
+import org.dkf.jed2k.exception.ErrorCode;
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.Serializable;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import static org.dkf.jed2k.Utils.sizeof;
+
+/**
+ * UDP server status answer OP_GLOBSERVSTATRES <CHALLENGE 4><USERS 4><FILES 4>[<MAXUSERS 4>...]
+ * old servers stop after files count, newer ones append max users, files limits, flags and so on
+ * only max users is used, the rest of datagram is skipped
+ * Created by agent on 18.10.2026.
+ */
+public class GlobalServerStatusResult implements Serializable {
+    public int challenge = 0;
+    public int usersCount = 0;
+    public int filesCount = 0;
+    public int maxUsers = 0;
+
+    @Override
+    public ByteBuffer get(ByteBuffer src) throws JED2KException {
+        try {
+            challenge = src.getInt();
+            usersCount = src.getInt();
+            filesCount = src.getInt();
+            maxUsers = src.remaining() >= sizeof(maxUsers)?src.getInt():0;
+            src.position(src.limit());
+            return src;
+        } catch(BufferUnderflowException e) {
+            throw new JED2KException(ErrorCode.BUFFER_UNDERFLOW_EXCEPTION);
+        } catch(Exception e) {
+            throw new JED2KException(ErrorCode.BUFFER_GET_EXCEPTION);
+        }
+    }
+
+    @Override
+    public ByteBuffer put(ByteBuffer dst) throws JED2KException {
+        return dst.putInt(challenge).putInt(usersCount).putInt(filesCount).putInt(maxUsers);
+    }
+
+    @Override
+    public int bytesCount() {
+        return sizeof(challenge) + sizeof(usersCount) + sizeof(filesCount) + sizeof(maxUsers);
+    }
+
+    @Override
+    public String toString() {
+        return "challenge: " + challenge + " users: " + usersCount + " files: " + filesCount + " max users: " + maxUsers;
+    }
+}
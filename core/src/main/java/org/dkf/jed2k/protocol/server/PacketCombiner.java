@@ -1,7 +1,9 @@
 package org.dkf.jed2k.protocol.server;
 
+import org.dkf.jed2k.protocol.PacketFactory;
 import org.dkf.jed2k.protocol.PacketHeader;
 import org.dkf.jed2k.protocol.PacketKey;
+import org.dkf.jed2k.protocol.ReflectivePacketFactory;
 import org.dkf.jed2k.protocol.Serializable;
 import org.dkf.jed2k.protocol.server.search.SearchMore;
 import org.dkf.jed2k.protocol.server.search.SearchRequest;
@@ -69,42 +71,43 @@ public class PacketCombiner extends org.dkf.jed2k.protocol.PacketCombiner {
         }
     }
 
-    protected static final Map<PacketKey, Class<? extends Serializable>> supportedPacketsServer;
+    protected static final Map<PacketKey, PacketFactory<? extends Serializable>> supportedPacketsServer;
     protected static final Map<Class<? extends Serializable>, PacketKey> struct2KeyServer;
 
-    private static void addHandler(byte protocol, byte type, Class<? extends Serializable> clazz) {
+    private static <T extends Serializable> void addHandler(byte protocol, byte type, Class<T> clazz, PacketFactory<T> factory) {
         PacketKey pk = new PacketKey(protocol, type);
         assert(!supportedPacketsServer.containsKey(pk));
         assert(clazz != null);
-        supportedPacketsServer.put(pk, clazz);
+        assert(factory != null);
+        supportedPacketsServer.put(pk, factory);
         struct2KeyServer.put(clazz, pk);
     }
 
     static {
         // temporary use TreeMap for compatibility with search common packed packets
-        supportedPacketsServer = new TreeMap<PacketKey, Class<? extends Serializable>>();
+        supportedPacketsServer = new TreeMap<PacketKey, PacketFactory<? extends Serializable>>();
         struct2KeyServer = new HashMap<Class<? extends Serializable>, PacketKey>();
 
         // client <-> server tcp messages section
-        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_LOGINREQUEST.value, LoginRequest.class);
-        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_SERVERLIST.value, ServerList.class);
-        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_GETSERVERLIST.value, GetList.class);
-        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_SERVERMESSAGE.value, Message.class);
-        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_SERVERSTATUS.value, Status.class);
-        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_IDCHANGE.value, IdChange.class);
-        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_SERVERIDENT.value, ServerInfo.class);
-        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_SEARCHRESULT.value, SearchResult.class);
-        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_SEARCHREQUEST.value, SearchRequest.class);
-        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_QUERY_MORE_RESULT.value, SearchMore.class);
-        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_GETSOURCES.value, GetFileSources.class);
-        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_FOUNDSOURCES.value, FoundFileSources.class);
-        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_CALLBACKREQUEST.value, CallbackRequest.class);
-        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_CALLBACKREQUESTED.value, CallbackRequestIncoming.class);
-        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_CALLBACK_FAIL.value, CallbackRequestFailed.class);
+        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_LOGINREQUEST.value, LoginRequest.class, new PacketFactory<LoginRequest>() { @Override public LoginRequest create() { return new LoginRequest(); } });
+        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_SERVERLIST.value, ServerList.class, new PacketFactory<ServerList>() { @Override public ServerList create() { return new ServerList(); } });
+        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_GETSERVERLIST.value, GetList.class, new PacketFactory<GetList>() { @Override public GetList create() { return new GetList(); } });
+        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_SERVERMESSAGE.value, Message.class, new PacketFactory<Message>() { @Override public Message create() { return new Message(); } });
+        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_SERVERSTATUS.value, Status.class, new PacketFactory<Status>() { @Override public Status create() { return new Status(); } });
+        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_IDCHANGE.value, IdChange.class, new PacketFactory<IdChange>() { @Override public IdChange create() { return new IdChange(); } });
+        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_SERVERIDENT.value, ServerInfo.class, new PacketFactory<ServerInfo>() { @Override public ServerInfo create() { return new ServerInfo(); } });
+        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_SEARCHRESULT.value, SearchResult.class, new PacketFactory<SearchResult>() { @Override public SearchResult create() { return new SearchResult(); } });
+        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_SEARCHREQUEST.value, SearchRequest.class, new ReflectivePacketFactory<SearchRequest>(SearchRequest.class));
+        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_QUERY_MORE_RESULT.value, SearchMore.class, new PacketFactory<SearchMore>() { @Override public SearchMore create() { return new SearchMore(); } });
+        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_GETSOURCES.value, GetFileSources.class, new PacketFactory<GetFileSources>() { @Override public GetFileSources create() { return new GetFileSources(); } });
+        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_FOUNDSOURCES.value, FoundFileSources.class, new PacketFactory<FoundFileSources>() { @Override public FoundFileSources create() { return new FoundFileSources(); } });
+        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_CALLBACKREQUEST.value, CallbackRequest.class, new ReflectivePacketFactory<CallbackRequest>(CallbackRequest.class));
+        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_CALLBACKREQUESTED.value, CallbackRequestIncoming.class, new PacketFactory<CallbackRequestIncoming>() { @Override public CallbackRequestIncoming create() { return new CallbackRequestIncoming(); } });
+        addHandler(ProtocolType.OP_EDONKEYHEADER.value, ClientServerTcp.OP_CALLBACK_FAIL.value, CallbackRequestFailed.class, new PacketFactory<CallbackRequestFailed>() { @Override public CallbackRequestFailed create() { return new CallbackRequestFailed(); } });
     }
 
     @Override
-    protected Class<? extends Serializable> keyToPacket(PacketKey key) {
+    protected PacketFactory<? extends Serializable> keyToFactory(PacketKey key) {
         return supportedPacketsServer.get(key);
     }
 
@@ -6,6 +6,7 @@ import org.dkf.jed2k.exception.ErrorCode;
 import org.dkf.jed2k.exception.JED2KException;
 import org.dkf.jed2k.protocol.Container;
 import org.dkf.jed2k.protocol.Endpoint;
+import org.dkf.jed2k.protocol.PacketFactory;
 import org.dkf.jed2k.protocol.Serializable;
 import org.dkf.jed2k.protocol.UInt32;
 import org.dkf.jed2k.protocol.tag.Tag;
@@ -22,15 +23,22 @@ public class ServerMet implements Serializable {
     private static final byte  MET_HEADER_WITH_LARGEFILES  = 0x0F;
 
     private byte header = MET_HEADER;
-    private Container<UInt32, ServerMet.ServerMetEntry>   servers = Container.makeInt(ServerMet.ServerMetEntry.class);
+    private Container<UInt32, ServerMet.ServerMetEntry>   servers = Container.makeInt(ServerMetEntry.FACTORY);
 
     public void addServer(final ServerMetEntry entry) {
         servers.add(entry);
     }
 
     public static class ServerMetEntry implements Serializable {
+        public static final PacketFactory<ServerMetEntry> FACTORY = new PacketFactory<ServerMetEntry>() {
+            @Override
+            public ServerMetEntry create() {
+                return new ServerMetEntry();
+            }
+        };
+
         final Endpoint endpoint = new Endpoint();
-        final Container<UInt32, Tag> tags = Container.makeInt(Tag.class);
+        final Container<UInt32, Tag> tags = Container.makeInt(Tag.FACTORY);
 
         public static ServerMetEntry create(int ip, int port, final String name, final String description) throws JED2KException {
             assert ip != 0;
@@ -1,10 +1,18 @@
 package org.dkf.jed2k.protocol.server;
 
 import org.dkf.jed2k.protocol.Hash;
+import org.dkf.jed2k.protocol.PacketFactory;
 import org.dkf.jed2k.protocol.SearchEntry;
 import org.dkf.jed2k.protocol.tag.Tag;
 
 public class SharedFileEntry extends UsualPacket implements SearchEntry {
+    public static final PacketFactory<SharedFileEntry> FACTORY = new PacketFactory<SharedFileEntry>() {
+        @Override
+        public SharedFileEntry create() {
+            return new SharedFileEntry();
+        }
+    };
+
 
     @Override
     public Hash getHash() {
@@ -0,0 +1,74 @@
+package org.dkf.jed2k.protocol.server;
+
+import org.dkf.jed2k.protocol.PacketFactory;
+import org.dkf.jed2k.protocol.PacketHeader;
+import org.dkf.jed2k.protocol.PacketKey;
+import org.dkf.jed2k.protocol.Serializable;
+import org.dkf.jed2k.protocol.kad.KadPacketHeader;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * client <-> server UDP packets, header has no size field like KAD header
+ * Created by agent on 18.10.2026.
+ */
+public class UdpPacketCombiner extends org.dkf.jed2k.protocol.PacketCombiner {
+
+    enum ClientServerUdp {
+        OP_GLOBGETSOURCES2(0x94),   // <HASH 16><FILESIZE 4>|<HASH 16><0 4><FILESIZE 8> (several files)
+        OP_GLOBSERVSTATREQ(0x96),   // <CHALLENGE 4>
+        OP_GLOBSERVSTATRES(0x97),   // <CHALLENGE 4><USERS 4><FILES 4>[<MAXUSERS 4>...]
+        OP_GLOBFOUNDSOURCES(0x9B);  // <HASH 16><count 1>(<ID 4><PORT 2>)[count]
+
+        public final byte value;
+
+        ClientServerUdp(int v) {
+            value = (byte)v;
+        }
+    }
+
+    private static final Map<PacketKey, PacketFactory<? extends Serializable>> supportedPacketsUdp;
+    private static final Map<Class<? extends Serializable>, PacketKey> struct2KeyUdp;
+
+    private final PacketHeader header = new KadPacketHeader();
+
+    private static <T extends Serializable> void addHandler(byte type, Class<T> clazz, PacketFactory<T> factory) {
+        PacketKey pk = new PacketKey(ProtocolType.OP_EDONKEYPROT.value, type);
+        assert(!supportedPacketsUdp.containsKey(pk));
+        assert(clazz != null);
+        assert(factory != null);
+        supportedPacketsUdp.put(pk, factory);
+        struct2KeyUdp.put(clazz, pk);
+    }
+
+    static {
+        supportedPacketsUdp = new TreeMap<PacketKey, PacketFactory<? extends Serializable>>();
+        struct2KeyUdp = new HashMap<Class<? extends Serializable>, PacketKey>();
+        addHandler(ClientServerUdp.OP_GLOBGETSOURCES2.value, GlobalGetSources.class, new PacketFactory<GlobalGetSources>() { @Override public GlobalGetSources create() { return new GlobalGetSources(); } });
+        addHandler(ClientServerUdp.OP_GLOBSERVSTATREQ.value, GlobalServerStatusRequest.class, new PacketFactory<GlobalServerStatusRequest>() { @Override public GlobalServerStatusRequest create() { return new GlobalServerStatusRequest(); } });
+        addHandler(ClientServerUdp.OP_GLOBSERVSTATRES.value, GlobalServerStatusResult.class, new PacketFactory<GlobalServerStatusResult>() { @Override public GlobalServerStatusResult create() { return new GlobalServerStatusResult(); } });
+        addHandler(ClientServerUdp.OP_GLOBFOUNDSOURCES.value, GlobalFoundSources.class, new PacketFactory<GlobalFoundSources>() { @Override public GlobalFoundSources create() { return new GlobalFoundSources(); } });
+    }
+
+    @Override
+    protected PacketFactory<? extends Serializable> keyToFactory(PacketKey key) {
+        return supportedPacketsUdp.get(key);
+    }
+
+    @Override
+    protected PacketKey classToKey(Class<? extends Serializable> clazz) {
+        return struct2KeyUdp.get(clazz);
+    }
+
+    @Override
+    public int serviceSize(PacketHeader ph) {
+        return ph.sizePacket();
+    }
+
+    @Override
+    protected PacketHeader getHeader() {
+        return header;
+    }
+}
@@ -9,7 +9,7 @@ import java.nio.ByteBuffer;
 public class UsualPacket implements Serializable {
     public Hash    hash = new Hash();
     public Endpoint point = new Endpoint();
-    public Container<UInt32, Tag> properties = Container.makeInt(Tag.class);
+    public Container<UInt32, Tag> properties = Container.makeInt(Tag.FACTORY);
 
     @Override
     public ByteBuffer get(ByteBuffer src) throws JED2KException {
@@ -15,7 +15,7 @@ import static org.dkf.jed2k.Utils.sizeof;
 @Getter
 @ToString
 public class SearchResult extends SoftSerializable implements Dispatchable {
-    private final Container<UInt32, SharedFileEntry> results = Container.makeInt(SharedFileEntry.class);
+    private final Container<UInt32, SharedFileEntry> results = Container.makeInt(SharedFileEntry.FACTORY);
     private byte moreResults = 0;
 
     @Override
@@ -20,6 +20,13 @@ import static org.dkf.jed2k.protocol.Unsigned.*;
 @Slf4j
 @EqualsAndHashCode(exclude = "value")
 public final class Tag implements Serializable {
+    public static final PacketFactory<Tag> FACTORY = new PacketFactory<Tag>() {
+        @Override
+        public Tag create() {
+            return new Tag();
+        }
+    };
+
 
     public static final byte TAGTYPE_UNDEFINED    = (byte)0x00; // special tag definition for empty objects
     public static final byte TAGTYPE_HASH16       = (byte)0x01;
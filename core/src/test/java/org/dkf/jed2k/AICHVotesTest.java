@@ -0,0 +1,48 @@
+package org.dkf.jed2k;
+
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.AICHHash;
+import org.dkf.jed2k.protocol.Hash;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import static junit.framework.Assert.*;
+
+/**
+ * AICH master hash becomes trusted by votes of different peers only
+ * Created by agent on 18.10.2026.
+ */
+public class AICHVotesTest {
+    private static final AICHHash A = AICHHash.hash(ByteBuffer.wrap(new byte[] {1}));
+    private static final AICHHash B = AICHHash.hash(ByteBuffer.wrap(new byte[] {2}));
+
+    private static Transfer transfer() throws JED2KException {
+        return new Transfer(new AddTransferParams(Hash.EMULE, Time.currentTimeMillis(), Constants.PIECE_SIZE*2, new File(""), true)
+                , new PiecePicker(2, 1));
+    }
+
+    @Test
+    public void testRepeatedVoteIsCountedOnce() throws JED2KException {
+        Transfer t = transfer();
+        t.onAICHHashReceived(A, 1);
+        t.onAICHHashReceived(A, 1);
+        t.onAICHHashReceived(A, 1);
+        assertNull(t.getAICHHash());
+        t.onAICHHashReceived(A, 2);
+        assertEquals(A, t.getAICHHash());
+    }
+
+    @Test
+    public void testPeerCantChangeVote() throws JED2KException {
+        Transfer t = transfer();
+        t.onAICHHashReceived(A, 1);
+        t.onAICHHashReceived(B, 1);
+        t.onAICHHashReceived(B, 2);
+        assertNull(t.getAICHHash());
+        t.onAICHHashReceived(A, 3);
+        // two of three peers is less than required agreement
+        assertNull(t.getAICHHash());
+    }
+}
@@ -0,0 +1,112 @@
+package org.dkf.jed2k;
+
+import org.dkf.jed2k.data.PieceBlock;
+import org.dkf.jed2k.data.Range;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static junit.framework.Assert.*;
+
+/**
+ * end game block downloaded by two peers' pending blocks on one shared buffer
+ * data is accounted chunk by chunk like connection receives sending part packets
+ */
+public class SharedPendingBlockTest {
+    private static final long TOTAL = Constants.BLOCK_SIZE*2;
+    private static final long CHUNK = 10240;
+
+    private static PeerConnection.PendingBlock first(long received) {
+        PeerConnection.PendingBlock pb = new PeerConnection.PendingBlock(new PieceBlock(0, 0), TOTAL);
+        pb.buffer = ByteBuffer.allocate(Constants.BLOCK_SIZE_INT);
+        if (received > 0) assertEquals(PeerConnection.PendingBlock.RECEIVING, pb.receive(Range.make(0, received)));
+        return pb;
+    }
+
+    private static PeerConnection.PendingBlock split(final PeerConnection.PendingBlock... owners) {
+        PeerConnection.PendingBlock pb = new PeerConnection.PendingBlock(new PieceBlock(0, 0), TOTAL);
+        assertTrue(owners[0].share(pb, Arrays.asList(owners)));
+        return pb;
+    }
+
+    /**
+     * feed chunks of range, all but the last must keep receiving
+     * @return state after the last chunk
+     */
+    private static int feed(final PeerConnection.PendingBlock pb, long from, long to) {
+        int state = PeerConnection.PendingBlock.RECEIVING;
+        for(long pos = from; pos < to; pos += CHUNK) {
+            assertEquals(PeerConnection.PendingBlock.RECEIVING, state);
+            state = pb.receive(Range.make(pos, Math.min(pos + CHUNK, to)));
+        }
+
+        return state;
+    }
+
+    @Test
+    public void testUpperHalfFirst() {
+        PeerConnection.PendingBlock a = first(CHUNK*2);
+        PeerConnection.PendingBlock b = split(a);
+        long middle = CHUNK*2 + (Constants.BLOCK_SIZE - CHUNK*2)/2;
+        assertEquals(Range.make(middle, Constants.BLOCK_SIZE), b.range);
+        assertTrue(a.shared == b.shared);
+        // first owner gave upper half away
+        assertEquals(Range.make(CHUNK*2, middle), a.dataLeft.get(0));
+
+        // splitting peer receives its part first and leaves block to first owner
+        assertEquals(PeerConnection.PendingBlock.PART_DONE, feed(b, middle, Constants.BLOCK_SIZE));
+        // first owner completes on its own part and writes whole block
+        assertEquals(PeerConnection.PendingBlock.BLOCK_DONE, feed(a, CHUNK*2, middle));
+        assertEquals(Constants.BLOCK_SIZE_INT, a.shared.block().remaining());
+    }
+
+    @Test
+    public void testLowerHalfFirst() {
+        PeerConnection.PendingBlock a = first(0);
+        PeerConnection.PendingBlock b = split(a);
+        long middle = Constants.BLOCK_SIZE/2;
+        assertEquals(PeerConnection.PendingBlock.PART_DONE, feed(a, 0, middle));
+        assertEquals(PeerConnection.PendingBlock.BLOCK_DONE, feed(b, middle, Constants.BLOCK_SIZE));
+    }
+
+    @Test
+    public void testChunkCrossesPart() {
+        PeerConnection.PendingBlock a = first(0);
+        PeerConnection.PendingBlock b = split(a);
+        long middle = Constants.BLOCK_SIZE/2;
+        assertEquals(PeerConnection.PendingBlock.RECEIVING, b.receive(Range.make(middle, middle + CHUNK)));
+        // first owner's remote sent past its part, those bytes are counted for block
+        assertEquals(PeerConnection.PendingBlock.PART_DONE, a.receive(Range.make(0, middle + CHUNK*2)));
+        assertEquals(PeerConnection.PendingBlock.BLOCK_DONE, feed(b, middle + CHUNK*2, Constants.BLOCK_SIZE));
+    }
+
+    @Test
+    public void testThirdOwnerSplitsSecond() {
+        PeerConnection.PendingBlock a = first(0);
+        PeerConnection.PendingBlock b = split(a);
+        long middle = Constants.BLOCK_SIZE/2;
+        // third peer takes upper half of second owner's part, second owner is trimmed
+        PeerConnection.PendingBlock c = split(a, b);
+        long quarter = middle + (Constants.BLOCK_SIZE - middle)/2;
+        assertEquals(Range.make(quarter, Constants.BLOCK_SIZE), c.range);
+        assertEquals(Range.make(middle, quarter), b.dataLeft.get(0));
+        assertEquals(Range.make(0, middle), a.dataLeft.get(0));
+
+        assertEquals(PeerConnection.PendingBlock.PART_DONE, feed(c, quarter, Constants.BLOCK_SIZE));
+        assertEquals(PeerConnection.PendingBlock.PART_DONE, feed(a, 0, middle));
+        assertEquals(PeerConnection.PendingBlock.BLOCK_DONE, feed(b, middle, quarter));
+    }
+
+    @Test
+    public void testCompressedFirstOwner() {
+        PeerConnection.PendingBlock a = first(0);
+        a.inflater = new java.util.zip.Inflater();
+        PeerConnection.PendingBlock b = split(a);
+        // compressed owner isn't trimmed and reports inflated data on completion only
+        assertEquals(Range.make(0, Constants.BLOCK_SIZE), a.dataLeft.get(0));
+        assertEquals(PeerConnection.PendingBlock.PART_DONE, feed(b, Constants.BLOCK_SIZE/2, Constants.BLOCK_SIZE));
+        assertEquals(PeerConnection.PendingBlock.BLOCK_DONE, a.receiveInflated(Constants.BLOCK_SIZE));
+        a.inflater.end();
+    }
+}
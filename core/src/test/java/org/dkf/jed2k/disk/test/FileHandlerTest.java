@@ -1,12 +1,14 @@
 package org.dkf.jed2k.disk.test;
 
 import org.dkf.jed2k.disk.DesktopFileHandler;
+import org.dkf.jed2k.disk.FileHandleCache;
 import org.dkf.jed2k.disk.FileHandler;
 import org.dkf.jed2k.exception.JED2KException;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
@@ -55,4 +57,113 @@ public class FileHandlerTest {
         assertFalse(fc.isOpen());
         assertFalse(read.isOpen());
     }
+
+    @Test
+    public void testPositionalModeKeepsData() throws IOException, JED2KException {
+        FileHandler fh = new DesktopFileHandler(folder.newFile("positional.dat"));
+        ByteBuffer buff = ByteBuffer.allocate(8);
+        buff.putInt(1).putInt(2);
+        buff.flip();
+        fh.write(buff, 8);
+        fh.close();
+
+        // reopen must not truncate previously written data
+        buff.clear();
+        buff.putInt(3).putInt(4);
+        buff.flip();
+        fh.write(buff, 0);
+
+        ByteBuffer res = ByteBuffer.allocate(16);
+        fh.read(res, 0);
+        res.flip();
+        assertEquals(3, res.getInt());
+        assertEquals(4, res.getInt());
+        assertEquals(1, res.getInt());
+        assertEquals(2, res.getInt());
+        fh.close();
+        assertEquals(16, fh.getFile().length());
+    }
+
+    @Test
+    public void testHandleCacheEviction() throws IOException, JED2KException {
+        FileHandleCache cache = new FileHandleCache(2);
+        FileHandler[] handlers = new FileHandler[4];
+        for(int i = 0; i < handlers.length; ++i) {
+            handlers[i] = new DesktopFileHandler(folder.newFile("cache" + i + ".dat"));
+            handlers[i].setHandleCache(cache);
+        }
+
+        for(int i = 0; i < handlers.length; ++i) {
+            ByteBuffer buff = ByteBuffer.allocate(4);
+            buff.putInt(i);
+            buff.flip();
+            handlers[i].write(buff, 0);
+            assertTrue(cache.size() <= 2);
+        }
+
+        // pinned channel is not closed even if limit exceeded
+        FileChannel pinned = cache.acquire(handlers[0]);
+        FileChannel second = cache.acquire(handlers[1]);
+        FileChannel third = cache.acquire(handlers[2]);
+        assertEquals(3, cache.size());
+        assertTrue(pinned.isOpen());
+        cache.release(handlers[0]);
+        assertEquals(2, cache.size());
+        assertFalse(pinned.isOpen());
+        assertTrue(second.isOpen());
+        cache.release(handlers[1]);
+        cache.release(handlers[2]);
+
+        for(int i = 0; i < handlers.length; ++i) {
+            ByteBuffer buff = ByteBuffer.allocate(4);
+            handlers[i].read(buff, 0);
+            buff.flip();
+            assertEquals(i, buff.getInt());
+            handlers[i].close();
+        }
+
+        assertEquals(0, cache.size());
+        assertFalse(third.isOpen());
+    }
+
+    /**
+     * exposes channel pinning of positional mode
+     */
+    private static class PinnedHandler extends DesktopFileHandler {
+        PinnedHandler(final File file) {
+            super(file);
+        }
+
+        FileChannel pin() throws JED2KException {
+            return acquireChannel();
+        }
+
+        void unpin() {
+            releaseChannel();
+        }
+    }
+
+    @Test
+    public void testCloseOfPinnedChannelIsPostponed() throws IOException, JED2KException {
+        PinnedHandler fh = new PinnedHandler(folder.newFile("pinned.dat"));
+        FileChannel c = fh.pin();
+        assertTrue(c == fh.pin());
+        fh.close();
+        assertTrue(c.isOpen());
+        fh.unpin();
+        assertTrue(c.isOpen());
+        fh.unpin();
+        assertFalse(c.isOpen());
+
+        // the same through cache
+        FileHandleCache cache = new FileHandleCache(2);
+        fh.setHandleCache(cache);
+        c = fh.pin();
+        fh.close();
+        assertTrue(c.isOpen());
+        assertEquals(1, cache.size());
+        fh.unpin();
+        assertFalse(c.isOpen());
+        assertEquals(0, cache.size());
+    }
 }
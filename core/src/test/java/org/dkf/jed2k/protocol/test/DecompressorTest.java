@@ -0,0 +1,176 @@
+package org.dkf.jed2k.protocol.test;
+
+import org.dkf.jed2k.exception.ErrorCode;
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.Decompressor;
+import org.dkf.jed2k.protocol.PacketCombiner;
+import org.dkf.jed2k.protocol.PacketHeader;
+import org.dkf.jed2k.protocol.PacketKey;
+import org.dkf.jed2k.protocol.Serializable;
+import org.dkf.jed2k.protocol.server.Message;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Created by agent on 18.10.2026.
+ */
+public class DecompressorTest {
+
+    private static byte[] deflate(final byte[] data) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] res = new byte[data.length + 1024];
+        int len = deflater.deflate(res);
+        deflater.end();
+        return Arrays.copyOf(res, len);
+    }
+
+    private static byte[] message(int size) throws JED2KException {
+        byte[] text = new byte[size];
+        Arrays.fill(text, (byte)'a');
+        Message msg = new Message();
+        msg.getSize().assign(text.length);
+        msg.setValue(text);
+        ByteBuffer buffer = ByteBuffer.allocate(msg.bytesCount());
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        msg.put(buffer);
+        return buffer.array();
+    }
+
+    @Test
+    public void testPackedPacketHighRatio() throws JED2KException {
+        byte[] plain = message(60000);
+        byte[] packed = deflate(plain);
+        // more than ten times smaller, fixed ratio output buffer is not enough
+        assertTrue(packed.length*10 < plain.length);
+
+        PacketCombiner combiner = new org.dkf.jed2k.protocol.server.PacketCombiner();
+        Decompressor decompressor = new Decompressor();
+        combiner.setDecompressor(decompressor);
+
+        for(int i = 0; i < 3; ++i) {
+            ByteBuffer src = ByteBuffer.wrap(packed);
+            src.order(ByteOrder.LITTLE_ENDIAN);
+            PacketHeader header = new PacketHeader();
+            header.reset(new PacketKey(PacketCombiner.ProtocolType.OP_PACKEDPROT.value
+                    , (byte)0x38), packed.length + 1);   // OP_SERVERMESSAGE
+            Serializable s = combiner.unpack(header, src);
+            assertTrue(s instanceof Message);
+            assertEquals(60000, ((Message)s).getValue().length);
+            assertEquals((byte)'a', ((Message)s).getValue()[59999]);
+            assertEquals(0, src.remaining());
+        }
+
+        // inflater was reused for each packet
+        assertEquals(1, decompressor.getCreatedCount());
+        assertEquals(1, decompressor.getFreeInflatersCount());
+    }
+
+    @Test
+    public void testInflateCorrupted() {
+        Decompressor decompressor = new Decompressor();
+        byte[] garbage = new byte[100];
+        new Random(1).nextBytes(garbage);
+
+        try {
+            decompressor.inflate(ByteBuffer.wrap(garbage));
+            fail("no exception on corrupted data");
+        } catch(JED2KException e) {
+            assertEquals(ErrorCode.INFLATE_ERROR, e.getErrorCode());
+        }
+
+        // inflater returned to pool after error
+        assertEquals(1, decompressor.getFreeInflatersCount());
+    }
+
+    @Test
+    public void testIncrementalInflate() throws JED2KException {
+        byte[] plain = new byte[190*1024];
+        Random rnd = new Random(2);
+        // compressible but not trivial data
+        for(int i = 0; i < plain.length; ++i) plain[i] = (byte)('a' + rnd.nextInt(4));
+        byte[] packed = deflate(plain);
+
+        Decompressor decompressor = new Decompressor();
+
+        for(final boolean direct: new boolean[] {false, true}) {
+            ByteBuffer dst = direct?ByteBuffer.allocateDirect(plain.length):ByteBuffer.allocate(plain.length);
+            ByteBuffer chunk = direct?ByteBuffer.allocateDirect(1000):ByteBuffer.allocate(1000);
+            Inflater inflater = decompressor.acquire();
+            int total = 0;
+
+            for(int offset = 0; offset < packed.length; offset += 1000) {
+                chunk.clear();
+                chunk.put(packed, offset, Math.min(1000, packed.length - offset));
+                chunk.flip();
+                total += decompressor.inflate(inflater, chunk, dst);
+                assertEquals(0, chunk.remaining());
+            }
+
+            assertTrue(inflater.finished());
+            decompressor.release(inflater);
+            assertEquals(plain.length, total);
+            dst.flip();
+            byte[] res = new byte[dst.remaining()];
+            dst.get(res);
+            assertTrue(Arrays.equals(plain, res));
+        }
+
+        assertEquals(1, decompressor.getCreatedCount());
+    }
+
+    @Test
+    public void testIncrementalInflateOverflow() throws JED2KException {
+        byte[] plain = new byte[10000];
+        byte[] packed = deflate(plain);
+        Decompressor decompressor = new Decompressor();
+        Inflater inflater = decompressor.acquire();
+
+        try {
+            decompressor.inflate(inflater, ByteBuffer.wrap(packed), ByteBuffer.allocate(5000));
+            fail("no exception on destination overflow");
+        } catch(JED2KException e) {
+            assertEquals(ErrorCode.INFLATE_ERROR, e.getErrorCode());
+        } finally {
+            decompressor.release(inflater);
+        }
+    }
+
+    @Test
+    public void testIncrementalInflateHighRatio() throws JED2KException {
+        // whole stream is consumed by first call, inflated bytes stay inside inflater beyond scratch size
+        byte[] plain = new byte[190*1024];
+        byte[] packed = deflate(plain);
+        Decompressor decompressor = new Decompressor();
+
+        for(final boolean direct: new boolean[] {false, true}) {
+            ByteBuffer dst = direct?ByteBuffer.allocateDirect(plain.length):ByteBuffer.allocate(plain.length);
+            Inflater inflater = decompressor.acquire();
+            assertEquals(plain.length, decompressor.inflate(inflater, ByteBuffer.wrap(packed), dst));
+            assertTrue(inflater.finished());
+            decompressor.release(inflater);
+        }
+
+        Inflater inflater = decompressor.acquire();
+
+        try {
+            decompressor.inflate(inflater, ByteBuffer.wrap(packed), ByteBuffer.allocateDirect(plain.length - 1));
+            fail("no exception on destination overflow");
+        } catch(JED2KException e) {
+            assertEquals(ErrorCode.INFLATE_ERROR, e.getErrorCode());
+        } finally {
+            decompressor.release(inflater);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package org.dkf.jed2k.protocol.test;
+
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.Endpoint;
+import org.dkf.jed2k.protocol.Hash;
+import org.dkf.jed2k.protocol.PacketCombiner;
+import org.dkf.jed2k.protocol.PacketHeader;
+import org.dkf.jed2k.protocol.Serializable;
+import org.dkf.jed2k.protocol.kad.KadPacketHeader;
+import org.dkf.jed2k.protocol.server.GlobalFoundSources;
+import org.dkf.jed2k.protocol.server.GlobalGetSources;
+import org.dkf.jed2k.protocol.server.GlobalServerStatusRequest;
+import org.dkf.jed2k.protocol.server.GlobalServerStatusResult;
+import org.dkf.jed2k.protocol.server.UdpPacketCombiner;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Created by agent on 18.10.2026.
+ */
+public class GlobalSourcesTest {
+
+    private static ByteBuffer allocate() {
+        ByteBuffer bb = ByteBuffer.allocate(4096);
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        return bb;
+    }
+
+    @Test
+    public void testGetSourcesPacking() throws JED2KException {
+        GlobalGetSources rq = new GlobalGetSources();
+        rq.addFile(Hash.EMULE, 1000);
+        rq.addFile(Hash.TERMINAL, 0x100000000L + 10);
+        assertEquals(16 + 4 + 16 + 12, rq.bytesCount());
+
+        PacketCombiner combiner = new UdpPacketCombiner();
+        ByteBuffer bb = allocate();
+        assertTrue(combiner.pack(rq, bb));
+        bb.flip();
+        // udp header has protocol and opcode only
+        assertEquals(2 + rq.bytesCount(), bb.remaining());
+        assertEquals((byte)0xE3, bb.get(0));
+        assertEquals((byte)0x94, bb.get(1));
+
+        PacketHeader header = new KadPacketHeader();
+        header.get(bb);
+        header.reset(header.key(), bb.remaining());
+        Serializable s = combiner.unpack(header, bb);
+        assertTrue(s instanceof GlobalGetSources);
+        GlobalGetSources res = (GlobalGetSources)s;
+        assertEquals(2, res.files.size());
+        assertEquals(Hash.EMULE, res.files.get(0).hash);
+        assertEquals(1000, res.files.get(0).lowPart);
+        assertEquals(1, res.files.get(1).hiPart);
+        assertEquals(10, res.files.get(1).lowPart);
+    }
+
+    @Test
+    public void testConcatenatedFoundSources() throws JED2KException {
+        PacketCombiner combiner = new UdpPacketCombiner();
+        ByteBuffer bb = allocate();
+
+        GlobalFoundSources first = new GlobalFoundSources();
+        first.hash.assign(Hash.EMULE);
+        first.sources.add(new Endpoint(0x0100007F, 4662));
+        GlobalFoundSources second = new GlobalFoundSources();
+        second.hash.assign(Hash.TERMINAL);
+        second.sources.add(new Endpoint(0x0200007F, 4663));
+        second.sources.add(new Endpoint(100, 4664));
+
+        assertTrue(combiner.pack(first, bb));
+        assertTrue(combiner.pack(second, bb));
+        bb.flip();
+
+        PacketHeader header = new KadPacketHeader();
+        int count = 0;
+        while(bb.remaining() >= KadPacketHeader.KAD_SIZE) {
+            header.get(bb);
+            header.reset(header.key(), bb.remaining());
+            Serializable s = combiner.unpack(header, bb);
+            assertTrue(s instanceof GlobalFoundSources);
+            GlobalFoundSources fs = (GlobalFoundSources)s;
+            if (count++ == 0) {
+                assertEquals(Hash.EMULE, fs.hash);
+                assertEquals(1, fs.sources.size());
+            } else {
+                assertEquals(Hash.TERMINAL, fs.hash);
+                assertEquals(2, fs.sources.size());
+                assertEquals(new Endpoint(100, 4664), fs.sources.get(1));
+            }
+        }
+
+        assertEquals(2, count);
+    }
+
+    @Test
+    public void testServerStatusPing() throws JED2KException {
+        PacketCombiner combiner = new UdpPacketCombiner();
+        ByteBuffer bb = allocate();
+        assertTrue(combiner.pack(new GlobalServerStatusRequest(0x55AA1234), bb));
+        bb.flip();
+        assertEquals(2 + 4, bb.remaining());
+        assertEquals((byte)0x96, bb.get(1));
+    }
+
+    @Test
+    public void testServerStatusAnswerVariableLength() throws JED2KException {
+        PacketCombiner combiner = new UdpPacketCombiner();
+        PacketHeader header = new KadPacketHeader();
+
+        // old server sends challenge, users and files only
+        ByteBuffer bb = allocate();
+        bb.put((byte)0xE3).put((byte)0x97).putInt(0x55AA0001).putInt(100).putInt(2000);
+        bb.flip();
+        header.get(bb);
+        header.reset(header.key(), bb.remaining());
+        Serializable s = combiner.unpack(header, bb);
+        assertTrue(s instanceof GlobalServerStatusResult);
+        GlobalServerStatusResult res = (GlobalServerStatusResult)s;
+        assertEquals(0x55AA0001, res.challenge);
+        assertEquals(100, res.usersCount);
+        assertEquals(2000, res.filesCount);
+        assertEquals(0, res.maxUsers);
+
+        // new server appends limits and flags
+        bb = allocate();
+        bb.put((byte)0xE3).put((byte)0x97).putInt(0x55AA0002).putInt(100).putInt(2000).putInt(5000).putInt(1).putInt(2).putInt(3);
+        bb.flip();
+        header.get(bb);
+        header.reset(header.key(), bb.remaining());
+        res = (GlobalServerStatusResult)combiner.unpack(header, bb);
+        assertEquals(0x55AA0002, res.challenge);
+        assertEquals(5000, res.maxUsers);
+        assertEquals(0, bb.remaining());
+    }
+}
@@ -6,6 +6,10 @@ import org.dkf.jed2k.protocol.Hash;
 import org.dkf.jed2k.protocol.PacketHeader;
 import org.dkf.jed2k.protocol.PacketKey;
 import org.dkf.jed2k.protocol.Serializable;
+import org.dkf.jed2k.protocol.client.FileRequest;
+import org.dkf.jed2k.protocol.client.RequestParts64;
+import org.dkf.jed2k.protocol.client.SendingPart32;
+import org.dkf.jed2k.protocol.client.StartUpload;
 import org.dkf.jed2k.protocol.server.IdChange;
 import org.dkf.jed2k.protocol.server.LoginRequest;
 import org.dkf.jed2k.protocol.server.Status;
@@ -131,4 +135,61 @@ public class PacketCombinerTest {
         assertTrue(new PacketKey(org.dkf.jed2k.protocol.PacketCombiner.ProtocolType.OP_EDONKEYHEADER.value, (byte)0x22)
                 .compareTo(new PacketKey(org.dkf.jed2k.protocol.PacketCombiner.ProtocolType.OP_PACKEDPROT.value, (byte)0x11)) == 1);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPackWithPayload() throws JED2KException {
+        ByteBuffer bb = ByteBuffer.allocate(128);
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        org.dkf.jed2k.protocol.PacketCombiner combiner = new org.dkf.jed2k.protocol.client.PacketCombiner();
+        SendingPart32 sp = new SendingPart32();
+        sp.hash.assign(Hash.EMULE);
+        sp.beginOffset.assign(1000);
+        sp.endOffset.assign(1000 + 10240);
+        assertTrue(combiner.pack(sp, 10240, bb));
+        assertEquals(PacketHeader.SIZE + SendingPart32.SIZE, bb.position());
+        bb.flip();
+
+        PacketHeader h = new PacketHeader();
+        h.get(bb);
+        assertEquals(SendingPart32.SIZE + 10240, h.sizePacket());
+        // only fields are read as packet, payload follows them
+        assertEquals(SendingPart32.SIZE, combiner.serviceSize(h));
+        SendingPart32 sp2 = (SendingPart32)combiner.unpack(h, bb);
+        assertEquals(Hash.EMULE, sp2.hash);
+        assertEquals(10240, sp2.payloadSize());
+    }
+
+    private static Serializable unpackNext(final org.dkf.jed2k.protocol.PacketCombiner combiner, final PacketHeader h, final ByteBuffer bb) throws JED2KException {
+        h.get(bb);
+        ByteBuffer packet = bb.slice();
+        packet.order(ByteOrder.LITTLE_ENDIAN);
+        packet.limit(combiner.serviceSize(h));
+        bb.position(bb.position() + packet.limit());
+        return combiner.unpack(h, packet);
+    }
+
+    @Test
+    public void testUnpackUploadRequests() throws JED2KException {
+        ByteBuffer bb = ByteBuffer.allocate(256);
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        org.dkf.jed2k.protocol.PacketCombiner combiner = new org.dkf.jed2k.protocol.client.PacketCombiner();
+        RequestParts64 rp = new RequestParts64(Hash.TERMINAL);
+        rp.append(0x100000000L, 0x100000000L + 1024);
+        assertTrue(combiner.pack(new FileRequest(Hash.EMULE), bb));
+        assertTrue(combiner.pack(new StartUpload(Hash.EMULE), bb));
+        assertTrue(combiner.pack(rp, bb));
+        bb.flip();
+
+        PacketHeader h = new PacketHeader();
+        assertEquals(Hash.EMULE, unpackNext(combiner, h, bb));
+        Serializable s = unpackNext(combiner, h, bb);
+        assertTrue(s instanceof StartUpload);
+        assertEquals(Hash.EMULE, s);
+        RequestParts64 rp2 = (RequestParts64)unpackNext(combiner, h, bb);
+        assertEquals(Hash.TERMINAL, rp2.getHash());
+        assertEquals(0x100000000L, rp2.getBeginOffset(0).longValue());
+        assertEquals(0x100000000L + 1024, rp2.getEndOffset(0).longValue());
+        assertEquals(0, rp2.getEndOffset(1).longValue());
+        assertEquals(0, bb.remaining());
+    }
+}
@@ -0,0 +1,100 @@
+package org.dkf.jed2k.protocol.test;
+
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.BitField;
+import org.dkf.jed2k.protocol.Hash;
+import org.dkf.jed2k.protocol.PacketCombiner;
+import org.dkf.jed2k.protocol.PacketHeader;
+import org.dkf.jed2k.protocol.Serializable;
+import org.dkf.jed2k.protocol.client.FileNotFound;
+import org.dkf.jed2k.protocol.client.QueueFull;
+import org.dkf.jed2k.protocol.client.ReaskAck;
+import org.dkf.jed2k.protocol.client.ReaskFilePing;
+import org.dkf.jed2k.protocol.client.UdpPacketCombiner;
+import org.dkf.jed2k.protocol.kad.KadPacketHeader;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static junit.framework.Assert.*;
+
+/**
+ * Created by agent on 18.10.2026.
+ */
+public class ReaskPacketsTest {
+
+    private static ByteBuffer allocate() {
+        ByteBuffer bb = ByteBuffer.allocate(4096);
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        return bb;
+    }
+
+    private static Serializable roundTrip(final Serializable packet, byte opcode) throws JED2KException {
+        PacketCombiner combiner = new UdpPacketCombiner();
+        ByteBuffer bb = allocate();
+        assertTrue(combiner.pack(packet, bb));
+        bb.flip();
+        assertEquals(2 + packet.bytesCount(), bb.remaining());
+        assertEquals((byte)0xC5, bb.get(0));
+        assertEquals(opcode, bb.get(1));
+
+        PacketHeader header = new KadPacketHeader();
+        header.get(bb);
+        header.reset(header.key(), bb.remaining());
+        Serializable res = combiner.unpack(header, bb);
+        assertEquals(0, bb.remaining());
+        return res;
+    }
+
+    @Test
+    public void testReaskFilePingVersions() throws JED2KException {
+        // version 3 sends complete sources count only
+        ReaskFilePing ping = new ReaskFilePing(Hash.EMULE);
+        ping.completeSources = 7;
+        ReaskFilePing res = (ReaskFilePing)roundTrip(ping, (byte)0x90);
+        assertEquals(Hash.EMULE, res.hash);
+        assertNull(res.partStatus);
+        assertTrue(res.hasCompleteSources);
+        assertEquals(7, res.completeSources);
+
+        // version 4 adds part status
+        ping.partStatus = new BitField(10);
+        ping.partStatus.setBit(3);
+        res = (ReaskFilePing)roundTrip(ping, (byte)0x90);
+        assertNotNull(res.partStatus);
+        assertEquals(10, res.partStatus.size());
+        assertTrue(res.partStatus.getBit(3));
+        assertFalse(res.partStatus.getBit(4));
+        assertEquals(7, res.completeSources);
+
+        // old peers send hash only
+        ping = new ReaskFilePing(Hash.TERMINAL);
+        ping.hasCompleteSources = false;
+        res = (ReaskFilePing)roundTrip(ping, (byte)0x90);
+        assertEquals(Hash.TERMINAL, res.hash);
+        assertNull(res.partStatus);
+        assertFalse(res.hasCompleteSources);
+    }
+
+    @Test
+    public void testReaskAnswers() throws JED2KException {
+        ReaskAck ack = new ReaskAck();
+        ack.rank = 42;
+        ReaskAck res = (ReaskAck)roundTrip(ack, (byte)0x91);
+        assertNull(res.partStatus);
+        assertEquals(42, res.rank);
+
+        // version 4 uploader sends its part status before rank
+        ack.partStatus = new BitField(20, true);
+        ack.rank = (short)40000;
+        res = (ReaskAck)roundTrip(ack, (byte)0x91);
+        assertEquals(20, res.partStatus.size());
+        assertTrue(res.partStatus.getBit(0));
+        assertTrue(res.partStatus.getBit(19));
+        assertEquals(40000, res.rank & 0xffff);
+
+        assertTrue(roundTrip(new FileNotFound(), (byte)0x92) instanceof FileNotFound);
+        assertTrue(roundTrip(new QueueFull(), (byte)0x93) instanceof QueueFull);
+    }
+}
@@ -1,9 +1,12 @@
 package org.dkf.jed2k.protocol.test;
 
 import org.dkf.jed2k.AddTransferParams;
+import org.dkf.jed2k.Constants;
 import org.dkf.jed2k.Time;
 import org.dkf.jed2k.data.PieceBlock;
+import org.dkf.jed2k.data.PieceHashState;
 import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.AICHHash;
 import org.dkf.jed2k.protocol.Hash;
 import org.dkf.jed2k.protocol.TransferResumeData;
 import org.junit.Test;
@@ -64,6 +67,56 @@ public class ResumeDataTest {
         assertFalse(trd2.pieces.getBit(3));
     }
 
+    @Test
+    public void testResumeDataHashStates() throws JED2KException {
+        TransferResumeData trd = new TransferResumeData();
+        trd.downloadedBlocks.add(new PieceBlock(2, 0));
+        ByteBuffer old = ByteBuffer.allocate(trd.bytesCount());
+        old.order(ByteOrder.LITTLE_ENDIAN);
+        trd.put(old);
+
+        trd.hashStates.add(new PieceHashState(2, 1, new int[] {1, -2, 3, -4}, Constants.BLOCK_SIZE));
+        ByteBuffer bb = ByteBuffer.allocate(trd.bytesCount());
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        trd.put(bb);
+        assertFalse(bb.hasRemaining());
+        bb.flip();
+        TransferResumeData trd2 = new TransferResumeData();
+        trd2.get(bb);
+        assertEquals(1, trd2.hashStates.size());
+        PieceHashState hs = trd2.hashStates.iterator().next();
+        assertEquals(2, hs.pieceIndex);
+        assertEquals(1, hs.hashedBlocks);
+        assertEquals(-4, hs.context[3]);
+        assertEquals(Constants.BLOCK_SIZE, hs.count);
+
+        // resume data without hash states is still readable
+        // strip size of empty hash states and verified blocks containers and AICH hash flag
+        old.flip();
+        old.limit(old.limit() - 2 - trd.verifiedBlocks.bytesCount() - trd.aichHash.bytesCount());
+        TransferResumeData trd3 = new TransferResumeData();
+        trd3.get(old);
+        assertEquals(1, trd3.downloadedBlocks.size());
+        assertEquals(0, trd3.hashStates.size());
+    }
+
+    @Test
+    public void testResumeDataAICH() throws JED2KException {
+        TransferResumeData trd = new TransferResumeData();
+        trd.verifiedBlocks.add(new PieceBlock(3, 7));
+        trd.aichHash.setData(AICHHash.fromString("0102030405060708090A0B0C0D0E0F1011121314"));
+        ByteBuffer bb = ByteBuffer.allocate(trd.bytesCount());
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        trd.put(bb);
+        assertFalse(bb.hasRemaining());
+        bb.flip();
+        TransferResumeData trd2 = new TransferResumeData();
+        trd2.get(bb);
+        assertEquals(1, trd2.verifiedBlocks.size());
+        assertEquals(new PieceBlock(3, 7), trd2.verifiedBlocks.get(0));
+        assertEquals(trd.aichHash.getData(), trd2.aichHash.getData());
+    }
+
     @Test
     public void testAddTransferParameters() throws JED2KException {
         AddTransferParams atp = new AddTransferParams(Hash.EMULE, Time.currentTimeMillis(), 100500L, new File("xxxx"), false);
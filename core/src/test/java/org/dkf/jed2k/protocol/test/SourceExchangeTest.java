@@ -0,0 +1,85 @@
+package org.dkf.jed2k.protocol.test;
+
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.Endpoint;
+import org.dkf.jed2k.protocol.Hash;
+import org.dkf.jed2k.protocol.client.AnswerSources2;
+import org.dkf.jed2k.protocol.client.RequestSources2;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Created by agent on 18.10.2026.
+ */
+public class SourceExchangeTest {
+
+    private static ByteBuffer allocate(int size) {
+        ByteBuffer bb = ByteBuffer.allocate(size);
+        bb.order(ByteOrder.LITTLE_ENDIAN);
+        return bb;
+    }
+
+    @Test
+    public void testRequest() throws JED2KException {
+        RequestSources2 rq = new RequestSources2(Hash.EMULE);
+        ByteBuffer bb = allocate(rq.bytesCount());
+        rq.put(bb);
+        assertEquals(0, bb.remaining());
+        bb.flip();
+        assertEquals(RequestSources2.SOURCE_EXCHANGE2_VERSION, bb.get(0));
+        RequestSources2 rq2 = new RequestSources2();
+        rq2.get(bb);
+        assertEquals(Hash.EMULE, rq2.hash);
+        assertEquals(RequestSources2.SOURCE_EXCHANGE2_VERSION, rq2.version.intValue());
+    }
+
+    @Test
+    public void testAnswerHybridId() throws JED2KException {
+        Endpoint high = Endpoint.fromString("192.168.1.10", 4662);
+        Endpoint low = new Endpoint(100, 4663);
+        AnswerSources2 answer = new AnswerSources2();
+        answer.hash.assign(Hash.TERMINAL);
+        answer.sources.add(new AnswerSources2.Source(high));
+        answer.sources.add(new AnswerSources2.Source(low));
+
+        ByteBuffer bb = allocate(answer.bytesCount());
+        answer.put(bb);
+        assertEquals(0, bb.remaining());
+        bb.flip();
+
+        // version 4 sends high id in reversed byte order, low id as is
+        assertEquals(Integer.reverseBytes(high.getIP()), bb.getInt(1 + 16 + 2));
+        assertEquals(100, bb.getInt(1 + 16 + 2 + 29));
+
+        AnswerSources2 res = new AnswerSources2();
+        res.get(bb);
+        assertEquals(0, bb.remaining());
+        assertEquals(Hash.TERMINAL, res.hash);
+        assertEquals(2, res.sources.size());
+        assertEquals(high, res.sources.get(0).point);
+        assertEquals(low, res.sources.get(1).point);
+    }
+
+    @Test
+    public void testAnswerVersion1() throws JED2KException {
+        Endpoint high = Endpoint.fromString("10.0.0.1", 4662);
+        ByteBuffer bb = allocate(1 + 16 + 2 + 12);
+        bb.put((byte)1);
+        Hash.EMULE.put(bb);
+        bb.putShort((short)1);
+        high.put(bb);
+        new Endpoint(0, 0).put(bb);
+        bb.flip();
+
+        AnswerSources2 res = new AnswerSources2();
+        res.get(bb);
+        assertEquals(0, bb.remaining());
+        assertEquals(1, res.sources.size());
+        assertEquals(high, res.sources.get(0).point);
+        assertEquals(Hash.INVALID, res.sources.get(0).userHash);
+    }
+}
@@ -0,0 +1,129 @@
+package org.dkf.jed2k.test;
+
+import org.dkf.jed2k.Constants;
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.hash.AICHHashTree;
+import org.dkf.jed2k.protocol.AICHHash;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Created by agent on 18.10.2026.
+ */
+public class AICHHashTreeTest {
+
+    private static AICHHash blockHash(long offset) {
+        ByteBuffer data = ByteBuffer.allocate(8);
+        data.putLong(offset);
+        data.flip();
+        return AICHHash.hash(data);
+    }
+
+    /**
+     * @return complete tree with synthetic hashes of blocks
+     */
+    private static AICHHashTree buildTree(long fileSize) {
+        AICHHashTree tree = AICHHashTree.forFile(fileSize, null);
+        for(long part = 0; part < fileSize; part += Constants.PIECE_SIZE) {
+            long partEnd = Math.min(part + Constants.PIECE_SIZE, fileSize);
+            for(long offset = part; offset < partEnd; offset += AICHHashTree.BLOCK_SIZE) {
+                assertTrue(tree.setBlockHash(offset, blockHash(offset)));
+            }
+        }
+
+        assertTrue(tree.verify());
+        assertNotNull(tree.getHash());
+        return tree;
+    }
+
+    private static List<AICHHash> expectedHashes(int piece, long fileSize) {
+        List<AICHHash> res = new LinkedList<>();
+        long partEnd = Math.min((piece + 1)*Constants.PIECE_SIZE, fileSize);
+        for(long offset = piece*Constants.PIECE_SIZE; offset < partEnd; offset += AICHHashTree.BLOCK_SIZE) {
+            res.add(blockHash(offset));
+        }
+
+        return res;
+    }
+
+    private static ByteBuffer recoveryData(final AICHHashTree tree, int piece, boolean wide) throws JED2KException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+        tree.writeRecoveryData(piece, buffer, wide);
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void testSingleBlockFile() {
+        ByteBuffer data = ByteBuffer.allocate(1000);
+        AICHHash h = AICHHash.hash(data.duplicate());
+        AICHHashTree tree = AICHHashTree.forFile(1000, null);
+        assertTrue(tree.setBlockHash(0, h));
+        assertTrue(tree.verify());
+        assertEquals(h, tree.getHash());
+        assertFalse(tree.isRecoverable(0));
+    }
+
+    @Test
+    public void testRecoveryDataRoundtrip() throws JED2KException {
+        long fileSize = Constants.PIECE_SIZE*3 + 500000;
+        AICHHashTree tree = buildTree(fileSize);
+
+        for(int piece = 0; piece < 4; ++piece) {
+            for(final boolean wide: new boolean[] {false, true}) {
+                AICHHashTree recovery = AICHHashTree.forFile(fileSize, tree.getHash());
+                recovery.readRecoveryData(piece, recoveryData(tree, piece, wide));
+                assertTrue(recovery.verify());
+                assertEquals(expectedHashes(piece, fileSize), recovery.blockHashes(piece));
+            }
+        }
+    }
+
+    @Test
+    public void testRecoveryDataMismatch() throws JED2KException {
+        long fileSize = Constants.PIECE_SIZE*2 + 10;
+        AICHHashTree tree = buildTree(fileSize);
+        assertTrue(tree.isRecoverable(1));
+        assertFalse(tree.isRecoverable(2));
+
+        // recovery data doesn't match other master hash
+        AICHHashTree other = AICHHashTree.forFile(fileSize, blockHash(1));
+        other.readRecoveryData(1, recoveryData(tree, 1, false));
+        assertFalse(other.verify());
+
+        // corrupted block hash
+        ByteBuffer data = recoveryData(tree, 1, false);
+        data.put(data.limit() - 3, (byte)(data.get(data.limit() - 3) + 1));
+        AICHHashTree corrupted = AICHHashTree.forFile(fileSize, tree.getHash());
+        corrupted.readRecoveryData(1, data);
+        assertFalse(corrupted.verify());
+
+        try {
+            AICHHashTree wrong = AICHHashTree.forFile(fileSize, tree.getHash());
+            wrong.readRecoveryData(0, recoveryData(tree, 1, false));
+            fail("data of other part must not be accepted");
+        } catch(JED2KException e) {
+            // ok
+        }
+
+        try {
+            AICHHashTree truncated = AICHHashTree.forFile(fileSize, tree.getHash());
+            ByteBuffer tdata = recoveryData(tree, 1, false);
+            tdata.limit(tdata.limit() - 40);
+            truncated.readRecoveryData(1, tdata);
+            fail("truncated data must not be accepted");
+        } catch(JED2KException e) {
+            // ok
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.dkf.jed2k.test;
 
 import org.dkf.jed2k.BlockManager;
 import org.dkf.jed2k.Constants;
+import org.dkf.jed2k.data.PieceHashState;
 import org.dkf.jed2k.hash.MD4;
 import org.dkf.jed2k.protocol.Hash;
 import org.junit.Before;
@@ -115,4 +116,34 @@ public class BlockManagerTest {
         src.retainAll(dst);
         assertEquals(src.size(), Constants.BLOCKS_PER_PIECE);
     }
+
+    @Test
+    public void testRestoreHashState() {
+        BlockManager bm = new BlockManager(0, Constants.BLOCKS_PER_PIECE);
+        assertNull(bm.hashState());
+        // register blocks 0..9 and 12, only contiguous blocks are in state
+        for(int i: new int[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 12}) {
+            buffer.position(i*(int)Constants.BLOCK_SIZE);
+            ByteBuffer localBuffer = buffer.slice();
+            localBuffer.limit((int)Constants.BLOCK_SIZE);
+            bm.registerBlock(i, localBuffer);
+        }
+
+        PieceHashState hs = bm.hashState();
+        assertNotNull(hs);
+        assertEquals(10, hs.hashedBlocks);
+        assertTrue(hs.isValid());
+
+        // continue in new manager from midstate
+        BlockManager restored = new BlockManager(0, Constants.BLOCKS_PER_PIECE);
+        restored.restoreState(hs);
+        for(int i = Constants.BLOCKS_PER_PIECE - 1; i >= hs.hashedBlocks; --i) {
+            buffer.position(i*(int)Constants.BLOCK_SIZE);
+            ByteBuffer localBuffer = buffer.slice();
+            localBuffer.limit((int)Constants.BLOCK_SIZE);
+            restored.registerBlock(i, localBuffer);
+        }
+
+        assertEquals(pieceHash, restored.pieceHash());
+    }
 }
@@ -8,6 +8,7 @@ import org.junit.Test;
 
 import java.nio.ByteBuffer;
 import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static junit.framework.Assert.*;
 
@@ -178,4 +179,91 @@ public class BufferPoolTest {
 
         buffers.clear();
     }
+
+    @Test
+    public void testIdleTrim() throws JED2KException {
+        BufferPool pool = new BufferPool(10);
+        pool.setIdleTimeout(1000);
+        LinkedList<ByteBuffer> buffers = new LinkedList<>();
+        for(int i = 0; i < 8; ++i) {
+            buffers.add(pool.allocate());
+        }
+
+        assertEquals(8, pool.getCreatedCount());
+        for(int i = 0; i < 4; ++i) pool.deallocate(buffers.poll(), 100);
+        for(int i = 0; i < 4; ++i) pool.deallocate(buffers.poll(), 900);
+        assertEquals(8, pool.getCachedBuffersCount());
+
+        pool.secondTick(1050);
+        assertEquals(8, pool.getCachedBuffersCount());
+        pool.secondTick(1500);
+        assertEquals(4, pool.getCachedBuffersCount());
+        assertEquals(4, pool.getTrimmedCount());
+
+        // cached buffers are reused and cleared
+        ByteBuffer b = pool.allocate();
+        assertEquals(0, b.position());
+        assertEquals(b.capacity(), b.limit());
+        assertEquals(8, pool.getCreatedCount());
+        pool.deallocate(b, 1500);
+
+        pool.secondTick(3000);
+        assertEquals(0, pool.getCachedBuffersCount());
+        assertEquals(0, pool.getAllocatedBuffersCount());
+        assertEquals(8, pool.getMaxAllocatedCount());
+    }
+
+    @Test
+    public void testDirectBuffers() throws JED2KException {
+        BufferPool pool = new BufferPool(2, true);
+        ByteBuffer b = pool.allocate();
+        assertTrue(b.isDirect());
+        pool.allocate();
+        try {
+            pool.allocate();
+            fail("pool limit exceeded");
+        } catch(JED2KException e) {
+            assertEquals(ErrorCode.NO_MEMORY, e.getErrorCode());
+        }
+
+        assertEquals(1, pool.getFailuresCount());
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        final BufferPool pool = new BufferPool(40);
+        final AtomicInteger errors = new AtomicInteger(0);
+        Thread[] threads = new Thread[4];
+        for(int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    LinkedList<ByteBuffer> own = new LinkedList<>();
+                    try {
+                        for(int j = 0; j < 20000; ++j) {
+                            if (own.size() < 10 && (j % 3) != 2) {
+                                own.add(pool.allocate());
+                            } else if (!own.isEmpty()) {
+                                pool.deallocate(own.poll(), j);
+                            }
+
+                            if (j % 1000 == 0) pool.secondTick(j);
+                        }
+                    } catch(JED2KException e) {
+                        errors.incrementAndGet();
+                    }
+
+                    for(final ByteBuffer b: own) pool.deallocate(b, 0);
+                }
+            });
+        }
+
+        pool.setIdleTimeout(500);
+        for(final Thread t: threads) t.start();
+        for(final Thread t: threads) t.join();
+        assertEquals(0, errors.get());
+        assertEquals(0, pool.getAllocatedBuffersCount());
+        assertTrue(pool.getMaxAllocatedCount() <= 40);
+        assertTrue(pool.getCachedBuffersCount() <= 40);
+    }
 }
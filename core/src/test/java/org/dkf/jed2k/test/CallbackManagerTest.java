@@ -0,0 +1,77 @@
+package org.dkf.jed2k.test;
+
+import org.dkf.jed2k.CallbackManager;
+import org.dkf.jed2k.protocol.Endpoint;
+import org.dkf.jed2k.protocol.Hash;
+import org.junit.Test;
+
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+/**
+ * Created by agent on 18.10.2026.
+ */
+public class CallbackManagerTest {
+
+    @Test
+    public void testOutgoingRequests() {
+        CallbackManager cm = new CallbackManager();
+        long now = 1000;
+        int count = CallbackManager.MAX_REQUESTS_PER_TICK + 2;
+        for(int i = 1; i <= count; ++i) {
+            assertTrue(cm.request(i, Hash.EMULE, now));
+        }
+
+        // second hash for the same source is merged
+        assertFalse(cm.request(1, Hash.TERMINAL, now));
+        assertEquals(count, cm.pendingCount());
+
+        // server is not ready
+        assertTrue(cm.tick(now, false).isEmpty());
+
+        List<Integer> sent = cm.tick(now, true);
+        assertEquals(CallbackManager.MAX_REQUESTS_PER_TICK, sent.size());
+        assertEquals(1, sent.get(0).intValue());
+        assertEquals(2, cm.pendingCount());
+
+        List<Hash> hashes = cm.match(1);
+        assertEquals(2, hashes.size());
+        assertEquals(Hash.EMULE, hashes.get(0));
+        assertEquals(Hash.TERMINAL, hashes.get(1));
+        assertTrue(cm.match(1).isEmpty());
+
+        // source connected before request was sent
+        assertEquals(1, cm.match(count).size());
+        assertEquals(1, cm.pendingCount());
+
+        // sent requests expire, sources are not requested again until retry interval
+        now += CallbackManager.CALLBACK_TIMEOUT + 1;
+        assertEquals(1, cm.tick(now, true).size());
+        assertEquals(1, cm.waitingCount());
+        assertFalse(cm.request(2, Hash.EMULE, now));
+        assertTrue(cm.match(2).isEmpty());
+
+        now += CallbackManager.CALLBACK_RETRY_INTERVAL;
+        cm.tick(now, true);
+        assertEquals(0, cm.waitingCount());
+        assertTrue(cm.request(2, Hash.EMULE, now));
+
+        cm.clear();
+        assertEquals(0, cm.pendingCount());
+        assertTrue(cm.match(2).isEmpty());
+    }
+
+    @Test
+    public void testIncomingRequests() {
+        CallbackManager cm = new CallbackManager();
+        Endpoint point = new Endpoint(0x0100007F, 4662);
+        long now = 1000;
+        assertTrue(cm.acceptIncoming(point, now));
+        assertFalse(cm.acceptIncoming(point, now + 10));
+        assertTrue(cm.acceptIncoming(new Endpoint(0x0100007F, 4663), now + 10));
+        now += CallbackManager.INCOMING_REPEAT_INTERVAL;
+        cm.tick(now, false);
+        assertTrue(cm.acceptIncoming(point, now));
+    }
+}
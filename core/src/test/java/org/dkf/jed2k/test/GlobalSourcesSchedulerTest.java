@@ -0,0 +1,90 @@
+package org.dkf.jed2k.test;
+
+import org.dkf.jed2k.GlobalSourcesScheduler;
+import org.dkf.jed2k.Pair;
+import org.dkf.jed2k.Time;
+import org.dkf.jed2k.protocol.Endpoint;
+import org.dkf.jed2k.protocol.Hash;
+import org.dkf.jed2k.protocol.server.GlobalGetSources;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+/**
+ * Created by agent on 18.10.2026.
+ */
+public class GlobalSourcesSchedulerTest {
+
+    private static Hash hash(int i) {
+        byte[] data = new byte[16];
+        data[0] = (byte)i;
+        data[1] = (byte)(i >> 8);
+        return Hash.fromBytes(data);
+    }
+
+    @Test
+    public void testServersCycle() {
+        GlobalSourcesScheduler gs = new GlobalSourcesScheduler();
+        long now = 1000;
+        assertNull(gs.next(now));
+
+        Endpoint s1 = new Endpoint(1, 4665);
+        Endpoint s2 = new Endpoint(2, 4665);
+        gs.setServers(Arrays.asList(s1, s2, new Endpoint(1, 4666)));
+        assertEquals(2, gs.serversCount());
+        assertTrue(gs.isServer(2));
+        assertFalse(gs.isServer(3));
+        // no files
+        assertNull(gs.next(now));
+
+        gs.addFile(Hash.EMULE, 100, now);
+        Pair<Endpoint, List<GlobalGetSources>> rq = gs.next(now);
+        assertNotNull(rq);
+        assertEquals(s1, rq.left);
+        assertEquals(1, rq.right.size());
+        assertEquals(Hash.EMULE, rq.right.get(0).files.get(0).hash);
+
+        // pacing between servers
+        assertNull(gs.next(now + 1));
+        now += GlobalSourcesScheduler.SERVER_REQUEST_INTERVAL;
+        gs.addFile(Hash.EMULE, 100, now);
+        rq = gs.next(now);
+        assertEquals(s2, rq.left);
+
+        // cycle finished, next one starts after cycle interval since first request
+        now += GlobalSourcesScheduler.SERVER_REQUEST_INTERVAL;
+        gs.addFile(Hash.EMULE, 100, now);
+        assertNull(gs.next(now));
+        now = 1000 + GlobalSourcesScheduler.SERVERS_CYCLE_INTERVAL;
+        gs.addFile(Hash.EMULE, 100, now);
+        rq = gs.next(now);
+        assertEquals(s1, rq.left);
+
+        // file expires when transfer stops asking
+        now += GlobalSourcesScheduler.FILE_EXPIRATION + 1;
+        assertNull(gs.next(now));
+        assertEquals(0, gs.filesCount());
+    }
+
+    @Test
+    public void testBatching() {
+        GlobalSourcesScheduler gs = new GlobalSourcesScheduler();
+        gs.setServers(Arrays.asList(new Endpoint(1, 4665)));
+        long now = Time.currentTime();
+        int count = GlobalSourcesScheduler.MAX_FILES_PER_PACKET*2 + 1;
+        for(int i = 0; i < count; ++i) {
+            gs.addFile(hash(i), 1000, now);
+        }
+
+        Pair<Endpoint, List<GlobalGetSources>> rq = gs.next(now);
+        assertEquals(3, rq.right.size());
+        assertEquals(GlobalSourcesScheduler.MAX_FILES_PER_PACKET, rq.right.get(0).files.size());
+        assertEquals(1, rq.right.get(2).files.size());
+        assertEquals(hash(count - 1), rq.right.get(2).files.get(0).hash);
+        // packet fits into datagram
+        assertTrue(rq.right.get(0).bytesCount() + 2 < 1024);
+    }
+}
@@ -3,8 +3,12 @@ package org.dkf.jed2k.test;
 import org.dkf.jed2k.Constants;
 import org.dkf.jed2k.data.PieceBlock;
 import org.dkf.jed2k.disk.DesktopFileHandler;
+import org.dkf.jed2k.disk.MappedFileHandler;
 import org.dkf.jed2k.disk.PieceManager;
 import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.hash.AICHHashTree;
+import org.dkf.jed2k.protocol.AICHHash;
+import org.dkf.jed2k.protocol.Hash;
 import org.dkf.jed2k.pool.BufferPool;
 import org.junit.Before;
 import org.junit.Rule;
@@ -14,9 +18,12 @@ import org.junit.rules.TemporaryFolder;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertTrue;
 
 /**
@@ -41,6 +48,7 @@ public class PieceManagerTest {
 
     ByteBuffer getBuffer(final PieceBlock b, int dataSize) throws JED2KException {
         ByteBuffer buffer = pool.allocate();
+        buffer.clear();
         buffer.limit(dataSize);
         byte data = getBlockContent(b);
         while(buffer.hasRemaining()) {
@@ -133,4 +141,115 @@ public class PieceManagerTest {
 
         assertEquals(0, pool.getAllocatedBuffersCount());
     }
+
+    @Test
+    public void testMappedStorage() throws IOException, JED2KException {
+        File f = folder.newFile("pm2.dat");
+        long fileSize = Constants.PIECE_SIZE*2 + 123;
+        MappedFileHandler handler = new MappedFileHandler(f, fileSize, 1, 1);
+        PieceManager pm = new PieceManager(handler, 3, 1);
+        PieceBlock[] blocks = {new PieceBlock(0, 0), new PieceBlock(1, 1), new PieceBlock(2, 0), new PieceBlock(1, 0)};
+        for(final PieceBlock b: blocks) {
+            pm.writeBlock(b, getBuffer(b, b.size(fileSize)));
+        }
+
+        // only one window is mapped at once
+        assertEquals(1, handler.getWindowsCount());
+        for(final ByteBuffer bb: pm.releaseFile(false)) pool.deallocate(bb, 1000);
+        assertEquals(0, handler.getWindowsCount());
+        assertEquals(fileSize, f.length());
+
+        // restore through views doesn't return any buffer for pool
+        MappedFileHandler rhandler = new MappedFileHandler(f, fileSize, 1, 1);
+        PieceManager rpm = new PieceManager(rhandler, 3, 1);
+        assertTrue(rpm.supportsViews());
+        for(final PieceBlock b: new PieceBlock[] {new PieceBlock(1, 1), new PieceBlock(0, 0), new PieceBlock(2, 0)}) {
+            ByteBuffer view = rpm.readBlockView(b, fileSize);
+            assertEquals(b.size(fileSize), view.remaining());
+            assertEquals(getBlockContent(b), view.get(0));
+            assertEquals(getBlockContent(b), view.get(view.remaining() - 1));
+            assertTrue(rpm.registerView(b, view).isEmpty());
+        }
+
+        assertTrue(rpm.releaseFile(false).isEmpty());
+
+        // data readable by usual handler
+        DesktopFileHandler dh = new DesktopFileHandler(f);
+        ByteBuffer tail = ByteBuffer.allocate(123);
+        dh.read(tail, Constants.PIECE_SIZE*2);
+        tail.flip();
+        assertEquals(getBlockContent(new PieceBlock(2, 0)), tail.get(122));
+        dh.close();
+    }
+
+    @Test
+    public void testMappedStorageDelete() throws IOException, JED2KException {
+        File f = folder.newFile("pm4.dat");
+        long fileSize = Constants.PIECE_SIZE*2 + 123;
+        MappedFileHandler handler = new MappedFileHandler(f, fileSize, 1, 1);
+        PieceManager pm = new PieceManager(handler, 3, 1);
+        // second window drops first one
+        for(final PieceBlock b: new PieceBlock[] {new PieceBlock(0, 0), new PieceBlock(1, 0)}) {
+            pm.writeBlock(b, getBuffer(b, b.size(fileSize)));
+        }
+
+        for(final ByteBuffer bb: pm.releaseFile(true)) pool.deallocate(bb, 1000);
+        assertFalse(f.exists());
+    }
+
+    @Test
+    public void testAICHRecovery() throws IOException, JED2KException {
+        File f = folder.newFile("pm3.dat");
+        long fileSize = Constants.PIECE_SIZE + 1000;
+        PieceManager pm = new PieceManager(new DesktopFileHandler(f), 2, 1);
+        for(int i = 0; i < Constants.BLOCKS_PER_PIECE; ++i) {
+            PieceBlock b = new PieceBlock(0, i);
+            for(final ByteBuffer bb: pm.writeBlock(b, getBuffer(b, Constants.BLOCK_SIZE_INT))) pool.deallocate(bb, 1000);
+        }
+
+        Hash expected = pm.hashPiece(0);
+        assertEquals(expected, pm.hashPieceFromDisk(0, fileSize));
+
+        // AICH hashes of correct data
+        List<AICHHash> hashes = new LinkedList<>();
+        ByteBuffer data = ByteBuffer.allocate((int)AICHHashTree.BLOCK_SIZE);
+        for(long offset = 0; offset < Constants.PIECE_SIZE; offset += AICHHashTree.BLOCK_SIZE) {
+            data.clear();
+            data.limit((int)Math.min(AICHHashTree.BLOCK_SIZE, Constants.PIECE_SIZE - offset));
+            while(data.hasRemaining()) {
+                data.put(getBlockContent(PieceBlock.make(offset + data.position())));
+            }
+
+            data.flip();
+            hashes.add(AICHHash.hash(data));
+        }
+
+        assertTrue(pm.verifyBlocks(0, hashes, fileSize).isEmpty());
+
+        // AICH block 6 covers end of ed2k block 5 and beginning of block 6
+        // AICH block 22 covers end of ed2k block 20 and beginning of block 21
+        DesktopFileHandler dh = new DesktopFileHandler(f);
+        ByteBuffer garbage = ByteBuffer.wrap(new byte[] {(byte)0xff});
+        dh.write(garbage, Constants.BLOCK_SIZE*6 - 1);
+        garbage.rewind();
+        dh.write(garbage, Constants.BLOCK_SIZE*21 + 1);
+        dh.close();
+        assertEquals(Arrays.asList(5, 6, 20, 21), pm.verifyBlocks(0, hashes, fileSize));
+
+        // blocks of piece in recovery are not hashed on write
+        assertTrue(pm.beginRecovery(0).isEmpty());
+        PieceBlock b = new PieceBlock(0, 5);
+        List<ByteBuffer> res = pm.writeBlock(b, getBuffer(b, Constants.BLOCK_SIZE_INT));
+        assertEquals(1, res.size());
+        pool.deallocate(res.get(0), 1000);
+        for(final int i: new int[] {6, 20, 21}) {
+            b = new PieceBlock(0, i);
+            for(final ByteBuffer bb: pm.writeBlock(b, getBuffer(b, Constants.BLOCK_SIZE_INT))) pool.deallocate(bb, 1000);
+        }
+
+        assertEquals(expected, pm.hashPieceFromDisk(0, fileSize));
+        pm.endRecovery(0);
+        assertEquals(0, pool.getAllocatedBuffersCount());
+        pm.releaseFile(false);
+    }
 }
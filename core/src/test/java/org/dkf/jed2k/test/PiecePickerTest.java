@@ -3,6 +3,7 @@ package org.dkf.jed2k.test;
 
 import org.dkf.jed2k.*;
 import org.dkf.jed2k.data.PieceBlock;
+import org.dkf.jed2k.protocol.BitField;
 import org.dkf.jed2k.protocol.Endpoint;
 import org.junit.Before;
 import org.junit.Test;
@@ -407,4 +408,263 @@ public class PiecePickerTest {
         assertEquals(3, picker.getPieceCount());
     }
 
+
+    @Test
+    public void testAvailability() {
+        PiecePicker pp = new PiecePicker(4, 3);
+        BitField bf1 = new BitField(4);
+        bf1.setBit(1);
+        bf1.setBit(3);
+        BitField bf2 = new BitField(4);
+        bf2.setBit(3);
+        BitField seed = new BitField();
+        pp.addPeerAvailability(bf1);
+        pp.addPeerAvailability(bf2);
+        pp.addPeerAvailability(seed);
+        pp.addPeerAvailability(new BitField(7));   // wrong size - ignored
+        assertEquals(1, pp.getAvailability(0));
+        assertEquals(2, pp.getAvailability(1));
+        assertEquals(1, pp.getAvailability(2));
+        assertEquals(3, pp.getAvailability(3));
+        pp.removePeerAvailability(seed);
+        pp.removePeerAvailability(bf1);
+        assertEquals(0, pp.getAvailability(0));
+        assertEquals(0, pp.getAvailability(1));
+        assertEquals(1, pp.getAvailability(3));
+    }
+
+    @Test
+    public void testPickRemotePiecesOnly() {
+        PiecePicker pp = new PiecePicker(4, 3);
+        BitField bf = new BitField(4);
+        bf.setBit(2);
+        pp.addPeerAvailability(bf);
+        LinkedList<PieceBlock> rq = new LinkedList<PieceBlock>();
+        pp.pickPieces(rq, Constants.BLOCKS_PER_PIECE*2, peer, PeerConnection.PeerSpeed.SLOW, bf);
+        assertEquals(Constants.BLOCKS_PER_PIECE, rq.size());
+        for(final PieceBlock b: rq) {
+            assertEquals(2, b.pieceIndex);
+        }
+
+        // nothing more to request from this peer
+        rq.clear();
+        pp.pickPieces(rq, 3, peer, PeerConnection.PeerSpeed.SLOW, bf);
+        assertTrue(rq.isEmpty());
+    }
+
+    @Test
+    public void testRarestFirst() {
+        PiecePicker pp = new PiecePicker(4, 3);
+        BitField common = new BitField(4);
+        common.setAll();
+        BitField rare = new BitField(4);
+        rare.setBit(0);
+        rare.setBit(1);
+        rare.setBit(2);
+        pp.addPeerAvailability(common);
+        pp.addPeerAvailability(common);
+        pp.addPeerAvailability(rare);
+        // piece 3 has the lowest availability
+        LinkedList<PieceBlock> rq = new LinkedList<PieceBlock>();
+        pp.pickPieces(rq, 3, peer, PeerConnection.PeerSpeed.SLOW, common);
+        assertEquals(3, rq.size());
+        for(final PieceBlock b: rq) {
+            assertEquals(3, b.pieceIndex);
+        }
+
+        // the rest have equal availability, all of them must be chosen
+        rq.clear();
+        pp.pickPieces(rq, Constants.BLOCKS_PER_PIECE*3, peer2, PeerConnection.PeerSpeed.SLOW, common);
+        assertEquals(Constants.BLOCKS_PER_PIECE*3, rq.size());
+        assertEquals(4, pp.numDowloadingPieces());
+    }
+
+    @Test
+    public void testSlowPeerAffinity() {
+        PiecePicker pp = new PiecePicker(4, 10);
+        Peer slow2 = new Peer(new Endpoint(333, 4662));
+        Peer fast = new Peer(new Endpoint(444, 4662));
+
+        // each slow peer gets whole piece of its own
+        LinkedList<PieceBlock> rq = new LinkedList<PieceBlock>();
+        pp.pickPieces(rq, 3, peer, PeerConnection.PeerSpeed.SLOW);
+        assertEquals(3, rq.size());
+        for(final PieceBlock b: rq) assertEquals(0, b.pieceIndex);
+        assertEquals(peer, pp.getDownloadingPiece(0).getOwner());
+
+        rq.clear();
+        pp.pickPieces(rq, 3, slow2, PeerConnection.PeerSpeed.SLOW);
+        assertEquals(3, rq.size());
+        for(final PieceBlock b: rq) assertEquals(1, b.pieceIndex);
+        assertEquals(slow2, pp.getDownloadingPiece(1).getOwner());
+
+        // slow peer continues its own piece
+        rq.clear();
+        pp.pickPieces(rq, 3, peer, PeerConnection.PeerSpeed.SLOW);
+        assertEquals(new PieceBlock(0, 3), rq.getFirst());
+
+        // fast peer shares pieces of slow peers before new piece
+        rq.clear();
+        pp.pickPieces(rq, 3, fast, PeerConnection.PeerSpeed.FAST);
+        assertEquals(3, rq.size());
+        assertEquals(new PieceBlock(0, 6), rq.getFirst());
+        assertEquals(2, pp.numDowloadingPieces());
+
+        // disconnected slow peer's piece becomes shared and next slow peer takes whole new piece
+        pp.releasePieces(peer);
+        assertNull(pp.getDownloadingPiece(0).getOwner());
+        rq.clear();
+        pp.pickPieces(rq, Constants.BLOCKS_PER_PIECE, slow2, PeerConnection.PeerSpeed.SLOW);
+        assertEquals(Constants.BLOCKS_PER_PIECE, rq.size());
+        assertEquals(new PieceBlock(1, 3), rq.getFirst());
+        assertEquals(new PieceBlock(2, 0), rq.get(Constants.BLOCKS_PER_PIECE - 3));
+        assertEquals(slow2, pp.getDownloadingPiece(2).getOwner());
+    }
+
+    @Test
+    public void testSlowPeerFallback() {
+        // no free pieces - slow peer takes free blocks of other pieces
+        PiecePicker pp = new PiecePicker(1, 10);
+        LinkedList<PieceBlock> rq = new LinkedList<PieceBlock>();
+        pp.pickPieces(rq, 3, peer, PeerConnection.PeerSpeed.SLOW);
+        assertEquals(3, rq.size());
+        rq.clear();
+        pp.pickPieces(rq, 3, peer2, PeerConnection.PeerSpeed.SLOW);
+        assertEquals(3, rq.size());
+        assertEquals(new PieceBlock(0, 3), rq.getFirst());
+        assertEquals(peer, pp.getDownloadingPiece(0).getOwner());
+    }
+
+    private static void assertCounters(final DownloadingPiece dp) {
+        int writing = 0, finished = 0, requested = 0;
+        for(int i = 0; i < dp.getBlocksCount(); ++i) {
+            if (dp.blocks[i].isWriting()) ++writing;
+            if (dp.blocks[i].isFinished()) ++finished;
+            if (dp.blocks[i].isRequested()) ++requested;
+        }
+
+        assertEquals(writing, dp.getWritingBlocksCount());
+        assertEquals(finished, dp.getFinishedBlocksCount());
+        assertEquals(requested, dp.getDownloadingBlocksCount());
+        assertEquals(writing + finished, dp.downloadedCount());
+    }
+
+    @Test
+    public void testLargeFileIndexes() {
+        // about 1 TB file
+        int pieces = 100000;
+        PiecePicker pp = new PiecePicker(pieces, 10);
+        for(int i = 0; i < pieces - 2; ++i) pp.restoreHave(i);
+        assertEquals(pieces - 2, pp.numHave());
+
+        LinkedList<PieceBlock> rq = new LinkedList<PieceBlock>();
+        pp.pickPieces(rq, Constants.BLOCKS_PER_PIECE + 5, peer, PeerConnection.PeerSpeed.FAST);
+        assertEquals(Constants.BLOCKS_PER_PIECE + 5, rq.size());
+        assertEquals(new PieceBlock(pieces - 2, 0), rq.getFirst());
+        assertEquals(new PieceBlock(pieces - 1, 4), rq.getLast());
+        assertNotNull(pp.getDownloadingPiece(pieces - 1));
+        assertNull(pp.getDownloadingPiece(0));
+
+        int counter = 0;
+        for(final PieceBlock b: rq) {
+            if (counter % 3 == 0) pp.abortDownload(b, peer);
+            else if (counter % 3 == 1) assertTrue(pp.markAsWriting(b));
+            else assertTrue(pp.markAsFinished(b));
+            ++counter;
+        }
+
+        assertCounters(pp.getDownloadingPiece(pieces - 2));
+        assertCounters(pp.getDownloadingPiece(pieces - 1));
+
+        pp.getDownloadingPiece(pieces - 2).resetBlock(1);
+        assertCounters(pp.getDownloadingPiece(pieces - 2));
+
+        // restored piece is free again and picked first
+        pp.restorePiece(pieces - 2);
+        assertNull(pp.getDownloadingPiece(pieces - 2));
+        assertEquals(1, pp.numDowloadingPieces());
+        assertTrue(pp.chooseNextPiece());
+        assertEquals(pieces - 2, pp.getDownloadingQueue().get(1).getPieceIndex());
+        assertFalse(pp.chooseNextPiece());
+
+        // pieces completion is counted without scan
+        for(int i = pieces - 2; i < pieces; ++i) {
+            DownloadingPiece dp = pp.getDownloadingPiece(i);
+            for(int j = 0; j < dp.getBlocksCount(); ++j) {
+                PieceBlock b = new PieceBlock(i, j);
+                if (!dp.blocks[j].isFinished()) {
+                    if (dp.blocks[j].isFree()) assertTrue(pp.markAsDownloading(b, peer));
+                    assertTrue(pp.markAsFinished(b));
+                }
+            }
+
+            assertCounters(dp);
+            assertTrue(pp.isPieceFinished(i));
+            pp.weHave(i);
+        }
+
+        assertEquals(pieces, pp.numHave());
+        assertEquals(0, pp.numDowloadingPieces());
+        assertFalse(pp.chooseNextPiece());
+    }
+
+    @Test
+    public void testStreamingDeadline() {
+        PiecePicker pp = new PiecePicker(10, 10);
+        Peer fast = new Peer(new Endpoint(444, 4662));
+        pp.setDeadline(5, 2);
+        assertTrue(pp.isStreaming());
+        assertTrue(pp.isTimeCritical(6));
+        assertFalse(pp.isTimeCritical(7));
+        assertFalse(pp.isTimeCritical(4));
+
+        // slow peer doesn't take time-critical blocks, usual order
+        LinkedList<PieceBlock> rq = new LinkedList<PieceBlock>();
+        pp.pickPieces(rq, 3, peer, PeerConnection.PeerSpeed.SLOW);
+        assertEquals(new PieceBlock(0, 0), rq.getFirst());
+        assertEquals(new PieceBlock(0, 2), rq.getLast());
+        assertFalse(pp.isTimeCritical(0));
+
+        // medium peer takes whole window
+        rq.clear();
+        pp.pickPieces(rq, Constants.BLOCKS_PER_PIECE*2, peer2, PeerConnection.PeerSpeed.MEDIUM);
+        assertEquals(Constants.BLOCKS_PER_PIECE*2, rq.size());
+        assertEquals(new PieceBlock(5, 0), rq.getFirst());
+        assertEquals(new PieceBlock(6, 0), rq.get(Constants.BLOCKS_PER_PIECE));
+        assertEquals(new PieceBlock(6, Constants.BLOCKS_PER_PIECE - 1), rq.getLast());
+        assertNull(pp.getDownloadingPiece(5).getOwner());
+
+        // fast peer duplicates blocks of slower peers in time-critical pieces
+        rq.clear();
+        pp.pickPieces(rq, 3, fast, PeerConnection.PeerSpeed.FAST);
+        assertEquals(3, rq.size());
+        assertEquals(new PieceBlock(5, 0), rq.getFirst());
+        assertEquals(2, pp.getDownloadingPiece(5).blocks[0].getDownloadersCount());
+
+        // slow peer still keeps out of time-critical pieces it doesn't own
+        rq.clear();
+        pp.pickPieces(rq, 1, peer, PeerConnection.PeerSpeed.SLOW);
+        assertEquals(new PieceBlock(0, 3), rq.getFirst());
+
+        // time-critical pieces we have are skipped
+        for(int i = 0; i < Constants.BLOCKS_PER_PIECE; ++i) assertTrue(pp.markAsFinished(new PieceBlock(5, i)));
+        pp.weHave(5);
+        pp.setDeadline(5, 3);
+        rq.clear();
+        pp.pickPieces(rq, 1, fast, PeerConnection.PeerSpeed.MEDIUM);
+        assertEquals(new PieceBlock(7, 0), rq.getFirst());
+
+        // slow owner of time-critical piece continues it before usual pieces
+        pp.getDownloadingPiece(7).setOwner(peer);
+        rq.clear();
+        pp.pickPieces(rq, 1, peer, PeerConnection.PeerSpeed.SLOW);
+        assertEquals(new PieceBlock(7, 1), rq.getFirst());
+
+        pp.clearDeadline();
+        assertFalse(pp.isStreaming());
+        assertFalse(pp.isTimeCritical(7));
+        rq.clear();
+        pp.pickPieces(rq, 1, fast, PeerConnection.PeerSpeed.MEDIUM);
+        assertEquals(new PieceBlock(0, 4), rq.getFirst());
+    }
 }
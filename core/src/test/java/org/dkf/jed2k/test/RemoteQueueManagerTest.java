@@ -0,0 +1,169 @@
+package org.dkf.jed2k.test;
+
+import org.dkf.jed2k.Pair;
+import org.dkf.jed2k.RemoteQueueManager;
+import org.dkf.jed2k.protocol.BitField;
+import org.dkf.jed2k.protocol.Endpoint;
+import org.dkf.jed2k.protocol.Hash;
+import org.dkf.jed2k.protocol.client.ReaskFilePing;
+import org.junit.Test;
+
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+/**
+ * Created by agent on 18.10.2026.
+ */
+public class RemoteQueueManagerTest {
+
+    private static Endpoint peer(int i) {
+        return new Endpoint(0x01000000 + i, 4662);
+    }
+
+    private static Endpoint udp(int i) {
+        return new Endpoint(0x01000000 + i, 4672);
+    }
+
+    @Test
+    public void testReaskSchedule() {
+        RemoteQueueManager rq = new RemoteQueueManager();
+        long now = 1000;
+        assertTrue(rq.enqueue(Hash.EMULE, peer(1), udp(1), 4, new BitField(3, true), 100, now));
+        assertTrue(rq.enqueue(Hash.EMULE, peer(2), udp(2), 3, null, 5, now));
+        assertEquals(2, rq.size());
+        assertTrue(rq.tick(now + 1).isEmpty());
+
+        // near the queue's head source is reasked more often
+        List<Pair<Endpoint, ReaskFilePing>> pings = rq.tick(now + RemoteQueueManager.NEAR_REASK_INTERVAL);
+        assertEquals(1, pings.size());
+        assertEquals(udp(2), pings.get(0).left);
+        assertEquals(Hash.EMULE, pings.get(0).right.hash);
+        assertNull(pings.get(0).right.partStatus);
+        assertTrue(pings.get(0).right.hasCompleteSources);
+        assertTrue(rq.onReaskAck(udp(2), 3, now + RemoteQueueManager.NEAR_REASK_INTERVAL));
+        // repeated answer is ignored
+        assertFalse(rq.onReaskAck(udp(2), 3, now + RemoteQueueManager.NEAR_REASK_INTERVAL));
+        assertEquals(3, rq.rank(Hash.EMULE, peer(2)));
+
+        // far source is reasked rarely, source near the head is reasked again
+        pings = rq.tick(now + RemoteQueueManager.REASK_INTERVAL);
+        assertEquals(2, pings.size());
+        assertEquals(udp(1), pings.get(0).left);
+        assertEquals(3, pings.get(0).right.partStatus.size());
+        assertTrue(rq.onReaskAck(udp(1), 50, now + RemoteQueueManager.REASK_INTERVAL));
+        assertTrue(rq.released().isEmpty());
+
+        // source is about to give us slot
+        assertTrue(rq.onReaskAck(udp(2), RemoteQueueManager.READY_RANK, now + RemoteQueueManager.REASK_INTERVAL));
+        List<RemoteQueueManager.Release> released = rq.released();
+        assertEquals(1, released.size());
+        assertEquals(peer(2), released.get(0).peer);
+        assertEquals(0, released.get(0).delay);
+        assertFalse(released.get(0).failed);
+        assertEquals(1, rq.size());
+        assertTrue(rq.released().isEmpty());
+    }
+
+    @Test
+    public void testOneReaskPerEndpoint() {
+        RemoteQueueManager rq = new RemoteQueueManager();
+        long now = 1000;
+        rq.enqueue(Hash.EMULE, peer(1), udp(1), 3, null, 100, now);
+        rq.enqueue(Hash.TERMINAL, peer(1), udp(1), 3, null, 100, now);
+        now += RemoteQueueManager.REASK_INTERVAL;
+        List<Pair<Endpoint, ReaskFilePing>> pings = rq.tick(now);
+        assertEquals(1, pings.size());
+        assertEquals(Hash.EMULE, pings.get(0).right.hash);
+        assertTrue(rq.tick(now + 1).isEmpty());
+
+        // answer has no hash, it belongs to reask in flight
+        assertTrue(rq.onFileNotFound(udp(1)));
+        List<RemoteQueueManager.Release> released = rq.released();
+        assertEquals(1, released.size());
+        assertEquals(Hash.EMULE, released.get(0).hash);
+        assertTrue(released.get(0).failed);
+        assertEquals(RemoteQueueManager.FILE_NOT_FOUND_RETRY, released.get(0).delay);
+
+        pings = rq.tick(now + 2);
+        assertEquals(1, pings.size());
+        assertEquals(Hash.TERMINAL, pings.get(0).right.hash);
+        assertTrue(rq.onQueueFull(udp(1)));
+        released = rq.released();
+        assertEquals(RemoteQueueManager.QUEUE_FULL_RETRY, released.get(0).delay);
+        assertFalse(released.get(0).failed);
+        assertEquals(0, rq.size());
+    }
+
+    @Test
+    public void testUnansweredAndExpired() {
+        RemoteQueueManager rq = new RemoteQueueManager();
+        long now = 1000;
+        rq.enqueue(Hash.EMULE, peer(1), udp(1), 3, null, 100, now);
+        rq.enqueue(Hash.EMULE, peer(2), udp(2), 3, null, 100, now);
+        now += RemoteQueueManager.REASK_INTERVAL;
+        assertEquals(2, rq.tick(now).size());
+        assertTrue(rq.onReaskAck(udp(2), 90, now));
+
+        // reask is repeated after timeout, then source falls back to TCP
+        now += RemoteQueueManager.REASK_TIMEOUT + 1;
+        List<Pair<Endpoint, ReaskFilePing>> pings = rq.tick(now);
+        assertEquals(1, pings.size());
+        assertEquals(udp(1), pings.get(0).left);
+        now += RemoteQueueManager.REASK_TIMEOUT + 1;
+        assertTrue(rq.tick(now).isEmpty());
+        List<RemoteQueueManager.Release> released = rq.released();
+        assertEquals(1, released.size());
+        assertEquals(peer(1), released.get(0).peer);
+        assertEquals(0, released.get(0).delay);
+
+        // answering source is released after max wait to refresh place by TCP
+        rq.tick(1000 + RemoteQueueManager.MAX_WAIT);
+        released = rq.released();
+        assertEquals(1, released.size());
+        assertEquals(peer(2), released.get(0).peer);
+        assertEquals(0, rq.size());
+    }
+
+    @Test
+    public void testMatchAndRemove() {
+        RemoteQueueManager rq = new RemoteQueueManager();
+        long now = 1000;
+        rq.enqueue(Hash.EMULE, peer(1), udp(1), 3, null, 100, now);
+        rq.enqueue(Hash.TERMINAL, peer(1), udp(1), 3, null, 100, now);
+        rq.enqueue(Hash.EMULE, peer(2), udp(2), 3, null, 100, now);
+
+        // uploader connected us with slot for the first file we wait for
+        assertNull(rq.match(peer(3).getIP()));
+        assertEquals(Hash.EMULE, rq.match(peer(1).getIP()));
+        assertEquals(-1, rq.rank(Hash.EMULE, peer(1)));
+        assertEquals(100, rq.rank(Hash.TERMINAL, peer(1)));
+
+        rq.remove(Hash.EMULE);
+        assertEquals(1, rq.size());
+        assertTrue(rq.released().isEmpty());
+
+        // place is refreshed by new queue ranking
+        rq.enqueue(Hash.TERMINAL, peer(1), udp(1), 3, null, 5, now + 10);
+        assertEquals(1, rq.size());
+        assertEquals(5, rq.rank(Hash.TERMINAL, peer(1)));
+        assertTrue(rq.tick(now + 10 + RemoteQueueManager.NEAR_REASK_INTERVAL - 1).isEmpty());
+        assertEquals(1, rq.tick(now + 10 + RemoteQueueManager.NEAR_REASK_INTERVAL).size());
+    }
+
+    @Test
+    public void testLimit() {
+        RemoteQueueManager rq = new RemoteQueueManager();
+        for(int i = 0; i < RemoteQueueManager.MAX_ENTRIES; ++i) {
+            assertTrue(rq.enqueue(Hash.EMULE, peer(i), udp(i), 3, null, 100, 1000));
+        }
+
+        assertFalse(rq.enqueue(Hash.TERMINAL, peer(1), udp(1), 3, null, 100, 1000));
+        List<RemoteQueueManager.Release> released = rq.released();
+        assertEquals(1, released.size());
+        assertEquals(Hash.TERMINAL, released.get(0).hash);
+
+        // reasks are sent in small batches
+        assertEquals(RemoteQueueManager.MAX_REASKS_PER_TICK, rq.tick(1000 + RemoteQueueManager.REASK_INTERVAL).size());
+    }
+}
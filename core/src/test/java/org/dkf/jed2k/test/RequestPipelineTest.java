@@ -0,0 +1,55 @@
+package org.dkf.jed2k.test;
+
+import org.dkf.jed2k.Constants;
+import org.dkf.jed2k.RequestPipeline;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Created by agent on 18.10.2026.
+ */
+public class RequestPipelineTest {
+
+    @Test
+    public void testDefaultSize() {
+        RequestPipeline p = new RequestPipeline();
+        assertEquals(-1, p.getRtt());
+        assertEquals(RequestPipeline.MIN_QUEUE_SIZE, p.queueSize(0));
+        assertEquals(RequestPipeline.MIN_QUEUE_SIZE, p.queueSize(10*1024*1024));
+        p.addRttSample(100);
+        assertEquals(RequestPipeline.MIN_QUEUE_SIZE, p.queueSize(0));
+    }
+
+    @Test
+    public void testBandwidthDelayProduct() {
+        RequestPipeline p = new RequestPipeline();
+        p.addRttSample(500);
+        assertEquals(500, p.getRtt());
+        // 1 MB/s * 0.5 s = 512 KB = 3 blocks + reserve
+        assertEquals(3 + RequestPipeline.RESERVE_BLOCKS, p.queueSize(1024*1024));
+        // 4 MB/s * 0.5 s = 2 MB = 11 blocks + reserve
+        assertEquals(11 + RequestPipeline.RESERVE_BLOCKS, p.queueSize(4*1024*1024));
+        // slow peer never goes below minimum
+        assertEquals(RequestPipeline.MIN_QUEUE_SIZE, p.queueSize(1024));
+        // very fast peer is limited
+        assertEquals(RequestPipeline.MAX_QUEUE_SIZE, p.queueSize(100*Constants.BLOCK_SIZE));
+    }
+
+    @Test
+    public void testRttSmoothing() {
+        RequestPipeline p = new RequestPipeline();
+        p.onData(1000);
+        assertEquals(-1, p.getRtt());
+        p.onIdleRequest(1000);
+        p.onData(1800);
+        assertEquals(800, p.getRtt());
+        // sample taken once per idle request
+        p.onData(5000);
+        assertEquals(800, p.getRtt());
+        p.addRttSample(0);
+        assertEquals(700, p.getRtt());
+        p.addRttSample(-10);
+        assertEquals(700, p.getRtt());
+    }
+}
@@ -0,0 +1,190 @@
+package org.dkf.jed2k.test;
+
+import org.dkf.jed2k.Pair;
+import org.dkf.jed2k.ServerManager;
+import org.dkf.jed2k.protocol.Endpoint;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+/**
+ * Created by agent on 18.10.2026.
+ */
+public class ServerManagerTest {
+
+    private static List<Pair<String, Endpoint>> servers(int count) {
+        List<Pair<String, Endpoint>> res = new ArrayList<Pair<String, Endpoint>>();
+        for(int i = 1; i <= count; ++i) {
+            res.add(Pair.make("server" + i, new Endpoint(i, 4661)));
+        }
+
+        return res;
+    }
+
+    private static void answerAll(ServerManager sm, List<Pair<Endpoint, Integer>> pings, long[] latencies, long now) {
+        for(int i = 0; i < pings.size(); ++i) {
+            Pair<Endpoint, Integer> p = pings.get(i);
+            assertTrue(sm.onPingAnswer(p.left.getIP(), p.right, 10, 100, 0, now + latencies[i]));
+        }
+    }
+
+    @Test
+    public void testPingRanking() {
+        ServerManager sm = new ServerManager();
+        long now = 1000;
+        sm.setServers(servers(4), now);
+        List<Pair<Endpoint, Integer>> pings = sm.nextPings(now);
+        assertEquals(4, pings.size());
+        // no repeated pings until interval passed
+        assertTrue(sm.nextPings(now + 1).isEmpty());
+
+        // wrong challenge is ignored
+        assertFalse(sm.onPingAnswer(pings.get(0).left.getIP(), pings.get(0).right + 1, 0, 0, 0, now + 10));
+        // the first server doesn't answer
+        answerAll(sm, pings.subList(1, 4), new long[] {300, 50, 100}, now);
+
+        List<ServerManager.Server> ranking = sm.ranking();
+        assertEquals(new Endpoint(3, 4661), ranking.get(0).endpoint);
+        assertEquals(50, ranking.get(0).getLatency());
+        assertEquals(new Endpoint(4, 4661), ranking.get(1).endpoint);
+        assertEquals(new Endpoint(2, 4661), ranking.get(2).endpoint);
+        assertEquals(new Endpoint(1, 4661), ranking.get(3).endpoint);
+
+        // failures push server back
+        sm.onFailed(new Endpoint(3, 4661), now);
+        sm.onFailed(new Endpoint(3, 4661), now);
+        assertEquals(new Endpoint(4, 4661), sm.ranking().get(0).endpoint);
+
+        // full server goes back too
+        sm.onPingAnswer(4, 0, 0, 0, 0, now);
+        now += ServerManager.PING_INTERVAL;
+        pings = sm.nextPings(now);
+        assertEquals(4, pings.size());
+        for(final Pair<Endpoint, Integer> p: pings) {
+            if (p.left.getIP() == 4) assertTrue(sm.onPingAnswer(4, p.right, 100, 0, 100, now + 10));
+        }
+
+        assertFalse(new Endpoint(4, 4661).equals(sm.ranking().get(0).endpoint));
+    }
+
+    @Test
+    public void testRaceHighIdWins() {
+        ServerManager sm = new ServerManager();
+        long now = 1000;
+        sm.setServers(servers(5), now);
+        // disabled manager doesn't connect
+        assertTrue(sm.startRace(now + ServerManager.FIRST_PING_WAIT, false).isEmpty());
+
+        sm.setEnabled(true);
+        List<Pair<Endpoint, Integer>> pings = sm.nextPings(now);
+        // waits for pings before the first race
+        assertTrue(sm.startRace(now, false).isEmpty());
+        answerAll(sm, pings, new long[] {500, 400, 300, 200, 100}, now);
+        now += 500;
+
+        List<ServerManager.Server> race = sm.startRace(now, false);
+        assertEquals(ServerManager.RACE_SIZE, race.size());
+        assertEquals(new Endpoint(5, 4661), race.get(0).endpoint);
+        assertTrue(sm.isRacing(new Endpoint(3, 4661)));
+        assertFalse(sm.isRacing(new Endpoint(2, 4661)));
+        // race is in progress
+        assertTrue(sm.startRace(now, false).isEmpty());
+        assertNull(sm.winner(now));
+
+        sm.onLogin(new Endpoint(5, 4661), false);
+        assertNull(sm.winner(now + 1));
+        sm.onLogin(new Endpoint(3, 4661), true);
+        assertEquals(new Endpoint(3, 4661), sm.winner(now + 2));
+        assertFalse(sm.isRaceInProgress());
+        assertFalse(sm.isRacing(new Endpoint(5, 4661)));
+
+        // connected session doesn't race
+        assertTrue(sm.startRace(now + ServerManager.RECONNECT_MAX_DELAY, true).isEmpty());
+    }
+
+    @Test
+    public void testRaceLowIdFallback() {
+        ServerManager sm = new ServerManager();
+        sm.setEnabled(true);
+        long now = 1000;
+        sm.setServers(servers(3), now);
+        now += ServerManager.FIRST_PING_WAIT;
+        List<ServerManager.Server> race = sm.startRace(now, false);
+        assertEquals(3, race.size());
+
+        sm.onLogin(race.get(1).endpoint, false);
+        assertNull(sm.winner(now + 1));
+        sm.onFailed(race.get(0).endpoint, now + 2);
+        assertNull(sm.winner(now + 2));
+        // the last server finished login with low id too, the first low id wins
+        sm.onLogin(race.get(2).endpoint, false);
+        assertEquals(race.get(1).endpoint, sm.winner(now + 3));
+
+        // low id is accepted after login timeout when other servers don't answer
+        sm.onActiveClosed(false, now + 4);
+        now += ServerManager.RECONNECT_MAX_DELAY;
+        race = sm.startRace(now, false);
+        // failed server's retry delay has passed
+        assertEquals(3, race.size());
+        sm.onLogin(race.get(0).endpoint, false);
+        assertNull(sm.winner(now + 1));
+        assertEquals(race.get(0).endpoint, sm.winner(now + ServerManager.LOGIN_TIMEOUT));
+    }
+
+    @Test
+    public void testReconnectBackoff() {
+        ServerManager sm = new ServerManager();
+        sm.setEnabled(true);
+        long now = 1000;
+        sm.setServers(servers(2), now);
+        now += ServerManager.FIRST_PING_WAIT;
+
+        // all servers failed, race is repeated after growing delay
+        List<ServerManager.Server> race = sm.startRace(now, false);
+        assertEquals(2, race.size());
+        for(final ServerManager.Server s: race) sm.onFailed(s.endpoint, now);
+        assertNull(sm.winner(now));
+        assertFalse(sm.isRaceInProgress());
+        assertEquals(now + ServerManager.RECONNECT_MIN_DELAY, sm.getNextRaceTime());
+        assertTrue(sm.startRace(now + ServerManager.RECONNECT_MIN_DELAY - 1, false).isEmpty());
+        // failed servers wait their retry delay
+        assertTrue(sm.startRace(now + ServerManager.RECONNECT_MIN_DELAY, false).isEmpty());
+        long previous = sm.getNextRaceTime() - now - ServerManager.RECONNECT_MIN_DELAY;
+        assertEquals(ServerManager.RECONNECT_MIN_DELAY*2, previous);
+
+        now += ServerManager.SERVER_RETRY_DELAY;
+        race = sm.startRace(now, false);
+        assertEquals(2, race.size());
+
+        // nobody answered in connect timeout
+        assertNull(sm.winner(now + ServerManager.CONNECT_TIMEOUT));
+        assertFalse(sm.isRaceInProgress());
+        assertEquals(2, sm.ranking().get(0).getFailures());
+
+        // server dropped connection soon after login is failed, stable connection resets reconnect delay
+        now += ServerManager.SERVER_MAX_RETRY_DELAY;
+        race = sm.startRace(now, false);
+        sm.onLogin(race.get(0).endpoint, true);
+        assertEquals(race.get(0).endpoint, sm.winner(now));
+        sm.onActiveClosed(false, now + ServerManager.STABLE_CONNECTION_TIME);
+        assertEquals(now + ServerManager.STABLE_CONNECTION_TIME + ServerManager.RECONNECT_MIN_DELAY, sm.getNextRaceTime());
+
+        now += ServerManager.SERVER_MAX_RETRY_DELAY;
+        race = sm.startRace(now, false);
+        Endpoint first = race.get(0).endpoint;
+        sm.onLogin(first, true);
+        assertEquals(first, sm.winner(now));
+        sm.onActiveClosed(true, now + 1);
+        for(final ServerManager.Server s: sm.ranking()) {
+            if (s.endpoint.equals(first)) assertEquals(1, s.getFailures());
+        }
+
+        // failover to another server while failed one waits for retry
+        race = sm.startRace(sm.getNextRaceTime(), false);
+        assertEquals(1, race.size());
+        assertFalse(first.equals(race.get(0).endpoint));
+    }
+}
@@ -80,4 +80,33 @@ public class SessionTest {
         session.join();
         assertTrue(session.getTransfers().isEmpty());
     }
+
+    @Test
+    public void testSessionMultipleLoops() throws IOException, JED2KException, InterruptedException {
+        settings.eventLoops = 4;
+        Session session = new SessionTrial(settings, new LinkedList<Endpoint>());
+        session.start();
+
+        List<TransferHandle> handles = new LinkedList<>();
+
+        for(int i = 0; i < 12; i++) {
+            TransferHandle h = session.addTransfer(Hash.random(false), 1000L + i, folder.newFile(String.format("m%d.dat", i)));
+            assertTrue(h.isValid());
+            handles.add(h);
+        }
+
+        assertEquals(12, session.getTransfers().size());
+
+        int i = 0;
+        for(final TransferHandle h: handles) {
+            assertEquals(1000L + i++, h.getSize());
+            assertTrue(h.getPeersInfo().isEmpty());
+            session.removeTransfer(h.getHash(), true);
+        }
+
+        session.abort();
+        session.join();
+        assertTrue(session.getTransfers().isEmpty());
+        assertTrue(session.isFinished());
+    }
 }
@@ -0,0 +1,71 @@
+package org.dkf.jed2k.test;
+
+import org.dkf.jed2k.Constants;
+import org.dkf.jed2k.SharedBlock;
+import org.dkf.jed2k.data.Range;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Created by agent on 18.10.2026.
+ */
+public class SharedBlockTest {
+
+    @Test
+    public void testSplitAndComplete() {
+        ByteBuffer buffer = ByteBuffer.allocate(Constants.BLOCK_SIZE_INT);
+        // first owner already received first 10000 bytes
+        SharedBlock sb = new SharedBlock(buffer, Range.make(10000, Constants.BLOCK_SIZE), Constants.BLOCK_SIZE_INT);
+        Range part = sb.split();
+        long middle = 10000 + (Constants.BLOCK_SIZE - 10000)/2;
+        assertEquals(Range.make(middle, Constants.BLOCK_SIZE), part);
+
+        // second owner receives its part into view, first owner's position is not changed
+        ByteBuffer view = sb.view();
+        view.position((int)part.left);
+        view.put((byte)1);
+        assertEquals(0, buffer.position());
+        assertEquals(1, buffer.get((int)part.left));
+
+        assertFalse(sb.receive(part));
+        // third owner splits the rest of first owner's range
+        Range part2 = sb.split();
+        assertEquals(Range.make(10000 + (middle - 10000)/2, middle), part2);
+        assertFalse(sb.receive(part2));
+        assertTrue(sb.receive(Range.make(0, 10000 + (middle - 10000)/2)));
+        assertNull(sb.split());
+
+        ByteBuffer block = sb.block();
+        assertTrue(block == buffer);
+        assertEquals(0, block.position());
+        assertEquals(Constants.BLOCK_SIZE_INT, block.remaining());
+    }
+
+    @Test
+    public void testSmallRangeNotSplit() {
+        SharedBlock sb = new SharedBlock(ByteBuffer.allocate(100), Range.make(0, SharedBlock.MIN_SPLIT_SIZE - 1), 100);
+        assertNull(sb.split());
+        assertTrue(sb.release());
+    }
+
+    @Test
+    public void testRelease() {
+        SharedBlock sb = new SharedBlock(ByteBuffer.allocate(100), Range.make(0, 100000), 100000);
+        assertTrue(sb.split() != null);
+        assertFalse(sb.release());
+        assertTrue(sb.release());
+
+        // buffer passed to disk never returns to pool by owners
+        SharedBlock written = new SharedBlock(ByteBuffer.allocate(100), Range.make(0, 100000), 100000);
+        assertTrue(written.split() != null);
+        written.markWritten();
+        assertFalse(written.release());
+        assertFalse(written.release());
+    }
+}
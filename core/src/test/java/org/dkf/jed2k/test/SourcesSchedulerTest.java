@@ -0,0 +1,154 @@
+package org.dkf.jed2k.test;
+
+import org.dkf.jed2k.Pair;
+import org.dkf.jed2k.SourcesScheduler;
+import org.dkf.jed2k.Time;
+import org.dkf.jed2k.protocol.Hash;
+import org.junit.Test;
+
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+/**
+ * Created by agent on 18.10.2026.
+ */
+public class SourcesSchedulerTest {
+
+    private static Hash hash(int i) {
+        byte[] data = new byte[16];
+        data[0] = (byte)i;
+        data[1] = (byte)(i >> 8);
+        return Hash.fromBytes(data);
+    }
+
+    @Test
+    public void testNeed() {
+        assertEquals(SourcesScheduler.NEED_NONE, SourcesScheduler.need(false, 0, 0));
+        assertEquals(SourcesScheduler.NEED_STARVING, SourcesScheduler.need(true, 0, 0));
+        assertEquals(SourcesScheduler.NEED_WEAK, SourcesScheduler.need(true, 1, 100*1024));
+        assertEquals(SourcesScheduler.NEED_WEAK, SourcesScheduler.need(true, 10, 1024));
+        assertEquals(SourcesScheduler.NEED_SATISFIED, SourcesScheduler.need(true, 10, 100*1024));
+    }
+
+    @Test
+    public void testServerBatches() {
+        SourcesScheduler ss = new SourcesScheduler();
+        long now = 1000;
+        int count = SourcesScheduler.MAX_SERVER_REQUESTS_PER_BATCH*2 + 5;
+        for(int i = 0; i < count; ++i) {
+            ss.update(hash(i), 100, true, 0, 0, 0, now);
+        }
+
+        // paused transfer is never requested
+        ss.update(hash(1000), 100, false, 0, 0, 0, now);
+        assertTrue(ss.nextServerBatch(now, false).isEmpty());
+
+        List<Pair<Hash, Long>> batch = ss.nextServerBatch(now, true);
+        assertEquals(SourcesScheduler.MAX_SERVER_REQUESTS_PER_BATCH, batch.size());
+        assertTrue(ss.nextServerBatch(now + 1, true).isEmpty());
+
+        int total = batch.size();
+        while(total < count) {
+            now += SourcesScheduler.SERVER_BATCH_INTERVAL;
+            for(int i = 0; i < count; ++i) ss.update(hash(i), 100, true, 0, 0, 0, now);
+            ss.update(hash(1000), 100, false, 0, 0, 0, now);
+            batch = ss.nextServerBatch(now, true);
+            assertFalse(batch.isEmpty());
+            for(final Pair<Hash, Long> p: batch) assertFalse(p.left.equals(hash(1000)));
+            total += batch.size();
+        }
+
+        assertEquals(count, total);
+        now += SourcesScheduler.SERVER_BATCH_INTERVAL;
+        assertTrue(ss.nextServerBatch(now, true).isEmpty());
+    }
+
+    @Test
+    public void testServerRankingByNeed() {
+        SourcesScheduler ss = new SourcesScheduler();
+        long now = 1000;
+        for(int i = 0; i < SourcesScheduler.MAX_SERVER_REQUESTS_PER_BATCH; ++i) {
+            ss.update(hash(i), 100, true, 10, 10, 100*1024, now);
+        }
+
+        ss.update(hash(100), 100, true, 1, 1, 0, now);
+        ss.update(hash(101), 100, true, 0, 0, 0, now);
+        List<Pair<Hash, Long>> batch = ss.nextServerBatch(now, true);
+        assertEquals(SourcesScheduler.MAX_SERVER_REQUESTS_PER_BATCH, batch.size());
+        assertEquals(hash(101), batch.get(0).left);
+        assertEquals(hash(100), batch.get(1).left);
+
+        // after a minute starving transfer goes first, then two satisfied ones not asked yet, weak one waits
+        now += Time.minutes(1);
+        for(int i = 0; i < SourcesScheduler.MAX_SERVER_REQUESTS_PER_BATCH; ++i) {
+            ss.update(hash(i), 100, true, 10, 10, 100*1024, now);
+        }
+        ss.update(hash(100), 100, true, 1, 1, 0, now);
+        ss.update(hash(101), 100, true, 0, 0, 0, now);
+        batch = ss.nextServerBatch(now, true);
+        assertEquals(3, batch.size());
+        assertEquals(hash(101), batch.get(0).left);
+
+        // new server must be asked for all files
+        ss.resetServer();
+        now += SourcesScheduler.SERVER_BATCH_INTERVAL;
+        for(int i = 0; i < SourcesScheduler.MAX_SERVER_REQUESTS_PER_BATCH; ++i) {
+            ss.update(hash(i), 100, true, 10, 10, 100*1024, now);
+        }
+        ss.update(hash(100), 100, true, 1, 1, 0, now);
+        ss.update(hash(101), 100, true, 0, 0, 0, now);
+        assertEquals(SourcesScheduler.MAX_SERVER_REQUESTS_PER_BATCH, ss.nextServerBatch(now, true).size());
+    }
+
+    @Test
+    public void testKadSearches() {
+        SourcesScheduler ss = new SourcesScheduler();
+        long now = 1000;
+        for(int i = 0; i < 5; ++i) ss.update(hash(i), 100, true, 0, 0, 0, now);
+        assertNull(ss.nextKadSearch(now, false));
+
+        Pair<Hash, Long> first = ss.nextKadSearch(now, true);
+        assertNotNull(first);
+        assertEquals(Long.valueOf(100), first.right);
+        // searches are spaced
+        assertNull(ss.nextKadSearch(now + 1, true));
+
+        for(int i = 1; i < SourcesScheduler.MAX_KAD_SEARCHES; ++i) {
+            now += SourcesScheduler.KAD_SEARCH_INTERVAL;
+            assertNotNull(ss.nextKadSearch(now, true));
+        }
+
+        assertEquals(SourcesScheduler.MAX_KAD_SEARCHES, ss.activeKadSearches());
+        now += SourcesScheduler.KAD_SEARCH_INTERVAL;
+        for(int i = 0; i < 5; ++i) ss.update(hash(i), 100, true, 0, 0, 0, now);
+        assertNull(ss.nextKadSearch(now, true));
+
+        ss.kadSearchFinished(first.left);
+        assertEquals(SourcesScheduler.MAX_KAD_SEARCHES - 1, ss.activeKadSearches());
+        Pair<Hash, Long> next = ss.nextKadSearch(now, true);
+        assertNotNull(next);
+        assertFalse(next.left.equals(first.left));
+
+        // searches without result are forgotten after timeout, removed transfer releases its search
+        ss.remove(next.left);
+        assertEquals(SourcesScheduler.MAX_KAD_SEARCHES - 1, ss.activeKadSearches());
+        now += SourcesScheduler.KAD_SEARCH_TIMEOUT + 1;
+        for(int i = 0; i < 5; ++i) ss.update(hash(i), 100, true, 0, 0, 0, now);
+        assertNotNull(ss.nextKadSearch(now, true));
+        assertEquals(1, ss.activeKadSearches());
+    }
+
+    @Test
+    public void testExpiration() {
+        SourcesScheduler ss = new SourcesScheduler();
+        ss.update(hash(1), 100, true, 0, 0, 0, 1000);
+        ss.update(hash(2), 100, true, 0, 0, 0, 1000);
+        assertEquals(2, ss.size());
+        ss.update(hash(2), 100, true, 0, 0, 0, 1000 + SourcesScheduler.ENTRY_EXPIRATION);
+        List<Pair<Hash, Long>> batch = ss.nextServerBatch(1001 + SourcesScheduler.ENTRY_EXPIRATION, true);
+        assertEquals(1, ss.size());
+        assertEquals(1, batch.size());
+        assertEquals(hash(2), batch.get(0).left);
+    }
+}
@@ -0,0 +1,101 @@
+package org.dkf.jed2k.test;
+
+import org.dkf.jed2k.StreamServer;
+import org.dkf.jed2k.data.Range;
+import org.dkf.jed2k.exception.ErrorCode;
+import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.Hash;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static junit.framework.Assert.*;
+
+/**
+ * Created by agent on 18.10.2026.
+ */
+public class StreamServerTest {
+
+    private static StreamServer.Request request(final String value) throws JED2KException, IOException {
+        return StreamServer.parseRequest(new ByteArrayInputStream(value.getBytes(Charset.forName("US-ASCII"))));
+    }
+
+    private static void assertNotSatisfiable(final String value, long size) {
+        try {
+            StreamServer.parseRange(value, size);
+            fail("range " + value + " accepted");
+        } catch(JED2KException e) {
+            assertEquals(ErrorCode.HTTP_RANGE_NOT_SATISFIABLE, e.getErrorCode());
+        }
+    }
+
+    @Test
+    public void testParseRange() throws JED2KException {
+        assertEquals(Range.make(0, 1000), StreamServer.parseRange(null, 1000));
+        assertEquals(Range.make(0, 1000), StreamServer.parseRange("bytes=0-", 1000));
+        assertEquals(Range.make(100, 200), StreamServer.parseRange("bytes=100-199", 1000));
+        assertEquals(Range.make(100, 1000), StreamServer.parseRange("bytes=100-5000", 1000));
+        assertEquals(Range.make(900, 1000), StreamServer.parseRange("bytes=-100", 1000));
+        assertEquals(Range.make(0, 1000), StreamServer.parseRange("bytes=-5000", 1000));
+        // multiple ranges are not supported and whole file is sent
+        assertEquals(Range.make(0, 1000), StreamServer.parseRange("bytes=0-10,20-30", 1000));
+        assertFalse(StreamServer.isByteRange("bytes=0-10,20-30"));
+        assertTrue(StreamServer.isByteRange("Bytes=0-10"));
+        assertNull(StreamServer.parseRange(null, 0));
+
+        assertNotSatisfiable("bytes=1000-", 1000);
+        assertNotSatisfiable("bytes=200-100", 1000);
+        assertNotSatisfiable("bytes=-0", 1000);
+        assertNotSatisfiable("bytes=a-b", 1000);
+        assertNotSatisfiable("bytes=100", 1000);
+        assertNotSatisfiable("bytes=0-", 0);
+    }
+
+    @Test
+    public void testParseHash() {
+        Hash h = Hash.fromString("31D6CFE0D16AE931B73C59D7E0C089C0");
+        assertEquals(h, StreamServer.parseHash("/31D6CFE0D16AE931B73C59D7E0C089C0"));
+        assertEquals(h, StreamServer.parseHash("/31d6cfe0d16ae931b73c59d7e0c089c0/movie.avi"));
+        assertNull(StreamServer.parseHash("/31D6CFE0D16AE931B73C59D7E0C089"));
+        assertNull(StreamServer.parseHash("/31D6CFE0D16AE931B73C59D7E0C089CX"));
+        assertNull(StreamServer.parseHash("31D6CFE0D16AE931B73C59D7E0C089C0"));
+        assertNull(StreamServer.parseHash(null));
+    }
+
+    @Test
+    public void testParseRequest() throws JED2KException, IOException {
+        StreamServer.Request rq = request("GET /31D6CFE0D16AE931B73C59D7E0C089C0 HTTP/1.1\r\nHost: localhost\r\nrange: bytes=10-\r\n\r\n");
+        assertEquals("GET", rq.method);
+        assertEquals("/31D6CFE0D16AE931B73C59D7E0C089C0", rq.path);
+        assertEquals("bytes=10-", rq.range);
+
+        rq = request("HEAD / HTTP/1.0\n\n");
+        assertEquals("HEAD", rq.method);
+        assertNull(rq.range);
+
+        try {
+            request("GET /\r\n\r\n");
+            fail("malformed request line accepted");
+        } catch(JED2KException e) {
+            assertEquals(ErrorCode.HTTP_BAD_REQUEST, e.getErrorCode());
+        }
+
+        try {
+            request("GET / HTTP/1.1\r\nHost: localhost\r\n");
+            fail("request without empty line accepted");
+        } catch(JED2KException e) {
+            assertEquals(ErrorCode.END_OF_STREAM, e.getErrorCode());
+        }
+
+        StringBuilder sb = new StringBuilder("GET / HTTP/1.1\r\n");
+        while(sb.length() <= StreamServer.MAX_HEADER_SIZE) sb.append("X-Header: value\r\n");
+        try {
+            request(sb.append("\r\n").toString());
+            fail("too long request accepted");
+        } catch(JED2KException e) {
+            assertEquals(ErrorCode.HTTP_BAD_REQUEST, e.getErrorCode());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.dkf.jed2k.test;
+
+import org.dkf.jed2k.disk.StripedExecutor;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Created by agent on 18.10.2026.
+ */
+public class StripedExecutorTest {
+
+    private static Runnable add(final List<String> order, final String value) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(value);
+            }
+        };
+    }
+
+    private static Runnable await(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch(InterruptedException e) {
+                    // nothing
+                }
+            }
+        };
+    }
+
+    @Test
+    public void testOrderPerKey() throws InterruptedException {
+        final List<String> order = Collections.synchronizedList(new LinkedList<String>());
+        StripedExecutor executor = new StripedExecutor("test", 4);
+        for(int i = 0; i < 100; ++i) {
+            executor.execute("a", i % 2, add(order, "a" + i));
+        }
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5000));
+        assertEquals(100, order.size());
+        for(int i = 0; i < 100; ++i) {
+            assertEquals("a" + i, order.get(i));
+        }
+    }
+
+    @Test
+    public void testPriorityBetweenKeys() throws InterruptedException {
+        final List<String> order = Collections.synchronizedList(new LinkedList<String>());
+        final CountDownLatch latch = new CountDownLatch(1);
+        StripedExecutor executor = new StripedExecutor("test", 1);
+        executor.execute("busy", 0, await(latch));
+        executor.execute("restore", 1, add(order, "restore"));
+        executor.execute("write", 0, add(order, "write1"));
+        executor.execute("write", 1, add(order, "write2"));
+        latch.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5000));
+        assertEquals(3, order.size());
+        assertEquals("write1", order.get(0));
+        assertEquals("restore", order.get(1));
+        assertEquals("write2", order.get(2));
+    }
+
+    @Test
+    public void testSlowKeyDoesNotBlockOthers() throws InterruptedException {
+        final CountDownLatch slow = new CountDownLatch(1);
+        final CountDownLatch fast = new CountDownLatch(10);
+        StripedExecutor executor = new StripedExecutor("test", 2);
+        executor.execute("slow", 0, await(slow));
+        executor.execute("slow", 0, new Runnable() {
+            @Override
+            public void run() {
+                assertEquals(0, fast.getCount());
+            }
+        });
+
+        for(int i = 0; i < 10; ++i) {
+            executor.execute("fast" + (i % 3), 0, new Runnable() {
+                @Override
+                public void run() {
+                    fast.countDown();
+                }
+            });
+        }
+
+        assertTrue(fast.await(5, TimeUnit.SECONDS));
+        slow.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5000));
+        assertEquals(0, executor.pendingTasks());
+    }
+
+    @Test
+    public void testFailedTaskReleasesKey() throws InterruptedException {
+        final List<String> order = Collections.synchronizedList(new LinkedList<String>());
+        StripedExecutor executor = new StripedExecutor("test", 1);
+        executor.execute("a", 0, new Runnable() {
+            @Override
+            public void run() {
+                throw new AssertionError("task error");
+            }
+        });
+
+        executor.execute("a", 0, add(order, "a1"));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5000));
+        assertEquals(1, order.size());
+        assertEquals(0, executor.pendingTasks());
+    }
+}
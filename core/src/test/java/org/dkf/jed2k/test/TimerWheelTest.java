@@ -0,0 +1,112 @@
+package org.dkf.jed2k.test;
+
+import org.dkf.jed2k.TimerWheel;
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Created by agent on 18.10.2026.
+ */
+public class TimerWheelTest {
+
+    private static class Task implements Runnable {
+        private final List<Integer> order;
+        private final int id;
+
+        Task(final List<Integer> order, int id) {
+            this.order = order;
+            this.id = id;
+        }
+
+        @Override
+        public void run() {
+            order.add(id);
+        }
+    }
+
+    @Test
+    public void testScheduleAndAdvance() {
+        List<Integer> order = new LinkedList<>();
+        TimerWheel w = new TimerWheel(10, 8, 0);
+        assertTrue(w.isEmpty());
+        w.schedule(25, new Task(order, 1));
+        w.schedule(5, new Task(order, 2));
+        w.schedule(100, new Task(order, 3));
+        assertEquals(3, w.size());
+
+        assertEquals(0, w.advance(4));
+        assertEquals(1, w.advance(10));
+        assertEquals(0, w.advance(29));
+        assertEquals(1, w.advance(30));
+        assertEquals(0, w.advance(99));
+        assertEquals(1, w.advance(100));
+        assertTrue(w.isEmpty());
+        assertEquals(3, order.size());
+        assertEquals(2, order.get(0).intValue());
+        assertEquals(1, order.get(1).intValue());
+        assertEquals(3, order.get(2).intValue());
+    }
+
+    @Test
+    public void testCancel() {
+        List<Integer> order = new LinkedList<>();
+        TimerWheel w = new TimerWheel(10, 8, 0);
+        TimerWheel.Timeout t1 = w.schedule(20, new Task(order, 1));
+        TimerWheel.Timeout t2 = w.schedule(20, new Task(order, 2));
+        t1.cancel();
+        assertTrue(t1.isCancelled());
+        assertEquals(1, w.advance(20));
+        assertTrue(t2.isExpired());
+        assertFalse(t1.isExpired());
+        assertEquals(1, order.size());
+        assertEquals(2, order.get(0).intValue());
+        assertTrue(w.isEmpty());
+    }
+
+    @Test
+    public void testLongDelaysAndLargeJumps() {
+        List<Integer> order = new LinkedList<>();
+        TimerWheel w = new TimerWheel(10, 8, 0);
+        // several rounds of the wheel
+        w.schedule(1000, new Task(order, 1));
+        w.schedule(170, new Task(order, 2));
+        assertEquals(0, w.advance(160));
+        assertEquals(1, w.advance(175));
+        assertEquals(0, w.advance(990));
+        assertEquals(1, w.advance(5000));
+        assertEquals(2, order.size());
+
+        // jump over many rounds at once expires everything due
+        for(int i = 0; i < 20; ++i) w.schedule(i*37, new Task(order, i));
+        w.schedule(10000, new Task(order, 100));
+        assertEquals(20, w.advance(6000));
+        assertEquals(1, w.size());
+        assertEquals(0, w.advance(14999));
+        assertEquals(1, w.advance(15000));
+    }
+
+    @Test
+    public void testRescheduleFromTask() {
+        final List<Integer> order = new LinkedList<>();
+        final TimerWheel w = new TimerWheel(10, 8, 0);
+        w.schedule(10, new Runnable() {
+            @Override
+            public void run() {
+                order.add(1);
+                w.schedule(10, new Task(order, 2));
+            }
+        });
+
+        assertEquals(1, w.advance(10));
+        assertEquals(1, order.size());
+        assertEquals(1, w.size());
+        assertEquals(1, w.advance(20));
+        assertEquals(2, order.size());
+    }
+}
@@ -2,7 +2,11 @@ package org.dkf.jed2k.test;
 
 import org.dkf.jed2k.*;
 import org.dkf.jed2k.data.PieceBlock;
+import org.dkf.jed2k.data.PieceHashState;
+import org.dkf.jed2k.disk.TransferCallable;
+import org.dkf.jed2k.exception.ErrorCode;
 import org.dkf.jed2k.exception.JED2KException;
+import org.dkf.jed2k.protocol.AICHHash;
 import org.dkf.jed2k.protocol.Endpoint;
 import org.dkf.jed2k.protocol.Hash;
 import org.dkf.jed2k.protocol.TransferResumeData;
@@ -12,12 +16,16 @@ import org.mockito.Mockito;
 
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.LinkedList;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -54,6 +62,85 @@ public class TransferTest {
         assertTrue(t.getPicker().isBlockDownloaded(new PieceBlock(1, 33)));
     }
 
+    @Test
+    public void testRestoreWithHashState() throws JED2KException {
+        Assume.assumeTrue(!System.getProperty("java.runtime.name").toLowerCase().startsWith("android"));
+        Session s = Mockito.mock(Session.class);
+        when(s.allocatePoolBuffer()).thenReturn(ByteBuffer.allocate(100));
+        TransferResumeData trd = new TransferResumeData();
+        trd.hashes.add(Hash.INVALID);
+        trd.hashes.add(Hash.EMULE);
+        trd.hashes.add(Hash.TERMINAL);
+        trd.pieces.resize(3);
+        trd.pieces.setBit(0);
+        trd.downloadedBlocks.add(new PieceBlock(1, 0));
+        trd.downloadedBlocks.add(new PieceBlock(1, 1));
+        trd.downloadedBlocks.add(new PieceBlock(1, 5));
+        trd.downloadedBlocks.add(new PieceBlock(2, 1));
+        trd.hashStates.add(new PieceHashState(1, 2, new int[] {1, 2, 3, 4}, Constants.BLOCK_SIZE*2));
+        // state doesn't match downloaded blocks and will be ignored
+        trd.hashStates.add(new PieceHashState(2, 2, new int[] {1, 2, 3, 4}, Constants.BLOCK_SIZE*2));
+        AddTransferParams atp = new AddTransferParams(Hash.EMULE, Time.currentTimeMillis(), Constants.PIECE_SIZE*2 + Constants.BLOCK_SIZE*2 + 334, new File(""), true);
+        atp.resumeData.setData(trd);
+        Transfer t = new Transfer(s, atp);
+        // only blocks not covered by hash state are read from disk
+        verify(s, times(2)).submitDiskTask(any(TransferCallable.class));
+        assertTrue(t.getPicker().isBlockDownloaded(new PieceBlock(1, 0)));
+        assertTrue(t.getPicker().isBlockDownloaded(new PieceBlock(1, 1)));
+    }
+
+    @Test
+    public void testAICHVerifyCompleted() throws JED2KException {
+        PiecePicker picker = new PiecePicker(3, 1);
+        Transfer t = new Transfer(new AddTransferParams(Hash.EMULE, Time.currentTimeMillis(), Constants.PIECE_SIZE*2 + 100, new File(""), true), picker);
+        for(int piece = 0; piece < 2; ++piece) {
+            picker.downloadPiece(piece);
+            for (int i = 0; i < Constants.BLOCKS_PER_PIECE; ++i) picker.markAsFinished(new PieceBlock(piece, i));
+        }
+
+        // only corrupted blocks are downloaded again
+        t.onAICHVerifyCompleted(1, Arrays.asList(3, 4), new LinkedList<ByteBuffer>(), ErrorCode.NO_ERROR);
+        assertTrue(t.isRecovering(1));
+        assertFalse(picker.isPieceFinished(1));
+        assertFalse(picker.isBlockDownloaded(new PieceBlock(1, 3)));
+        assertFalse(picker.isBlockDownloaded(new PieceBlock(1, 4)));
+        assertTrue(picker.isBlockDownloaded(new PieceBlock(1, 5)));
+
+        // AICH didn't find corrupted blocks - whole piece is downloaded again
+        t.onAICHVerifyCompleted(0, new LinkedList<Integer>(), new LinkedList<ByteBuffer>(), ErrorCode.NO_ERROR);
+        assertFalse(t.isRecovering(0));
+        assertTrue(picker.getDownloadingPiece(0) == null);
+    }
+
+    @Test
+    public void testRestoreRecoveringPiece() throws JED2KException {
+        Assume.assumeTrue(!System.getProperty("java.runtime.name").toLowerCase().startsWith("android"));
+        Session s = Mockito.mock(Session.class);
+        when(s.allocatePoolBuffer()).thenReturn(ByteBuffer.allocate(100));
+        TransferResumeData trd = new TransferResumeData();
+        trd.hashes.add(Hash.INVALID);
+        trd.hashes.add(Hash.EMULE);
+        trd.hashes.add(Hash.TERMINAL);
+        trd.pieces.resize(3);
+        for(int i = 0; i < Constants.BLOCKS_PER_PIECE; ++i) {
+            trd.downloadedBlocks.add(new PieceBlock(1, i));
+            if (i != 7) trd.verifiedBlocks.add(new PieceBlock(1, i));
+        }
+
+        trd.downloadedBlocks.add(new PieceBlock(0, 0));
+        trd.aichHash.setData(AICHHash.hash(ByteBuffer.allocate(10)));
+        AddTransferParams atp = new AddTransferParams(Hash.EMULE, Time.currentTimeMillis(), Constants.PIECE_SIZE*2 + Constants.BLOCK_SIZE*2 + 334, new File(""), true);
+        atp.resumeData.setData(trd);
+        Transfer t = new Transfer(s, atp);
+        assertEquals(AICHHash.hash(ByteBuffer.allocate(10)), t.getAICHHash());
+        assertTrue(t.isRecovering(1));
+        assertFalse(t.isRecovering(0));
+        assertTrue(t.getPicker().isPieceFinished(1));
+        // block 0.0 is restored from disk and piece 1 is hashed from disk without buffers
+        verify(s, times(2)).submitDiskTask(any(TransferCallable.class));
+        verify(s, times(1)).allocatePoolBuffer();
+    }
+
     @Test
     public void testBytesDonePartialBlock() throws JED2KException {
         long fileSize = Constants.PIECE_SIZE*3 + Constants.BLOCK_SIZE*2 + 334;  // 4 pieces and 3 blocks in last piece
@@ -119,4 +206,24 @@ public class TransferTest {
         t.getBytesDone(status);
         assertEquals(Constants.PIECE_SIZE - 1024 + Constants.BLOCK_SIZE*2, status.totalDone);
     }
+
+    @Test
+    public void testSourceExchangeLimits() throws JED2KException {
+        Session s = Mockito.mock(Session.class);
+        AddTransferParams atp = new AddTransferParams(Hash.EMULE, Time.currentTimeMillis(), Constants.PIECE_SIZE*2 + 100, new File(""), false);
+        Transfer t = new Transfer(s, atp);
+        Peer peer1 = new Peer(new Endpoint(1, 4662));
+        Peer peer2 = new Peer(new Endpoint(2, 4662));
+
+        // file without sources asks each new peer immediately
+        assertTrue(t.isSourceRequestAllowed(peer1));
+        t.onSourceRequest(peer1);
+        assertFalse(t.isSourceRequestAllowed(peer1));
+        assertTrue(t.isSourceRequestAllowed(peer2));
+        t.onSourceRequest(peer2);
+        assertFalse(t.isSourceRequestAllowed(peer2));
+
+        // peers we never connected to are not exchanged
+        assertTrue(t.getExchangeSources(new Endpoint(0, 0)).isEmpty());
+    }
 }
@@ -0,0 +1,135 @@
+package org.dkf.jed2k.test;
+
+import org.dkf.jed2k.Constants;
+import org.dkf.jed2k.UploadQueue;
+import org.dkf.jed2k.UploadSlots;
+import org.dkf.jed2k.protocol.Hash;
+import org.junit.Test;
+
+import java.util.List;
+
+import static junit.framework.Assert.*;
+
+/**
+ * Created by agent on 18.10.2026.
+ */
+public class UploadQueueTest {
+    private final Hash a = Hash.fromString("31D6CFE0D16AE931B73C59D7E0C089C0");
+    private final Hash b = Hash.fromString("DB48A1C00CC972488C29D3FEC9F16A79");
+    private final Hash c = Hash.fromString("1AA8AFE3018B38D9B4D880D0683CCEB5");
+
+    @Test
+    public void testSlotsAndRanks() {
+        UploadQueue<String> q = new UploadQueue<String>(1, 1);
+        assertEquals(0, q.request(a, "a", 0));
+        assertEquals(1, q.request(b, "b", 0));
+        // queue is full
+        assertEquals(-1, q.request(c, "c", 0));
+        // repeated request keeps place
+        assertEquals(1, q.request(b, "b", 10));
+        assertEquals(0, q.request(a, "a", 10));
+        assertEquals(1, q.uploadingCount());
+        assertEquals(1, q.waitingCount());
+
+        // slot is free, waiting client gets it on tick
+        q.remove(a);
+        assertEquals(1, q.tick(20).size());
+        assertTrue(q.isUploading(b));
+        assertEquals(0, q.waitingCount());
+        assertTrue(q.tick(30).isEmpty());
+    }
+
+    @Test
+    public void testDisconnectedKeepsPlace() {
+        UploadQueue<String> q = new UploadQueue<String>(1, 10);
+        assertEquals(0, q.request(a, "a", 0));
+        assertEquals(1, q.request(b, "b", 0));
+        assertEquals(2, q.request(c, "c", 0));
+
+        // another connection of the same client doesn't affect entry
+        q.disconnected(b, "b2", 1);
+        q.disconnected(b, "b", 1);
+        q.disconnected(a, "a", 1);
+        assertFalse(q.isUploading(a));
+
+        // first waiting client isn't connected, slot goes to next one
+        List<String> granted = q.tick(2);
+        assertEquals(1, granted.size());
+        assertEquals("c", granted.get(0));
+        assertEquals(1, q.rank(b));
+
+        // disconnected client is forgotten after expiration
+        q.tick(1 + UploadQueue.ENTRY_EXPIRATION);
+        assertEquals(1, q.rank(b));
+        q.tick(2 + UploadQueue.ENTRY_EXPIRATION);
+        assertEquals(-1, q.rank(b));
+        assertEquals(0, q.waitingCount());
+    }
+
+    @Test
+    public void testSlotRotation() {
+        UploadQueue<String> q = new UploadQueue<String>(1, 10);
+        assertEquals(0, q.request(a, "a", 0));
+        // nobody waits, client keeps slot after quota
+        assertFalse(q.onUploaded(a, UploadQueue.SLOT_QUOTA, 1));
+        assertEquals(1, q.request(b, "b", 2));
+        // and gives it up after next range when somebody waits
+        assertTrue(q.onUploaded(a, Constants.BLOCK_SIZE, 3));
+        assertFalse(q.isUploading(a));
+        assertEquals(2, q.rank(a));
+
+        List<String> granted = q.tick(4);
+        assertEquals(1, granted.size());
+        assertEquals("b", granted.get(0));
+        assertEquals(1, q.rank(a));
+
+        assertFalse(q.onUploaded(b, UploadQueue.SLOT_QUOTA - 1, 5));
+        assertTrue(q.onUploaded(b, 1, 6));
+        granted = q.tick(7);
+        assertEquals(1, granted.size());
+        assertEquals("a", granted.get(0));
+        assertFalse(q.onUploaded(c, 100, 8));
+    }
+
+    @Test
+    public void testSharedSlots() {
+        UploadSlots slots = new UploadSlots(2);
+        UploadQueue<String> busy = new UploadQueue<String>(slots, 10);
+        UploadQueue<String> idle = new UploadQueue<String>(slots, 10);
+        // idle queue doesn't hold slots, busy one uses all of them
+        assertEquals(0, busy.request(a, "a", 0));
+        assertEquals(0, busy.request(b, "b", 0));
+        assertTrue(idle.tick(1).isEmpty());
+        assertEquals(2, slots.used());
+
+        // client of another queue waits, uploading client gives slot up after quota
+        assertEquals(1, idle.request(c, "c", 2));
+        assertTrue(busy.onUploaded(a, UploadQueue.SLOT_QUOTA, 3));
+        assertEquals(1, busy.rank(a));
+        // freed slot is kept for starving queue
+        assertTrue(busy.tick(4).isEmpty());
+        List<String> granted = idle.tick(5);
+        assertEquals(1, granted.size());
+        assertEquals("c", granted.get(0));
+        assertEquals(2, slots.used());
+
+        // nobody else waits, slot returns to busy queue
+        idle.remove(c);
+        granted = busy.tick(6);
+        assertEquals(1, granted.size());
+        assertEquals("a", granted.get(0));
+        assertEquals(2, slots.used());
+    }
+
+    @Test
+    public void testClientHashIsCopied() {
+        UploadQueue<String> q = new UploadQueue<String>(0, 10);
+        Hash h = new Hash(b);
+        assertEquals(1, q.request(h, "b", 0));
+        // connection's hash object is reused for another peer
+        h.assign(c);
+        assertEquals(1, q.rank(b));
+        assertEquals(-1, q.rank(c));
+        assertEquals(2, q.request(h, "c", 0));
+    }
+}
@@ -260,5 +260,15 @@ public class UtilsTest {
         assertEquals("", HexDump.dump(data, 2, 0));
         assertEquals("", HexDump.dump(data, 1, 0));
     }
-}
 
+    @Test
+    public void testDivShare() {
+        assertEquals(1, Utils.divShare(1, 4, 0));
+        assertEquals(0, Utils.divShare(1, 4, 3));
+        int sum = 0;
+        for(int i = 0; i < 4; ++i) sum += Utils.divShare(10, 4, i);
+        assertEquals(10, sum);
+        assertEquals(3, Utils.divShare(10, 4, 1));
+        assertEquals(2, Utils.divShare(10, 4, 2));
+    }
+}
@@ -6,11 +6,15 @@ import org.dkf.jed2k.protocol.PacketCombiner;
 import org.dkf.jed2k.protocol.PacketHeader;
 import org.dkf.jed2k.protocol.Serializable;
 import org.dkf.jed2k.protocol.kad.Kad2Req;
+import org.dkf.jed2k.protocol.kad.Kad2Res;
+import org.dkf.jed2k.protocol.kad.KadEntry;
+import org.dkf.jed2k.protocol.kad.KadId;
 import org.dkf.jed2k.protocol.kad.KadPacketHeader;
 import org.junit.Test;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.List;
 
 import static junit.framework.Assert.*;
 
@@ -49,4 +53,46 @@ public class PacketCombinerTest {
         assertTrue(res instanceof Kad2Req);
         assertFalse(buffer.hasRemaining());
     }
+
+    private static Serializable roundtrip(final PacketCombiner combiner, final Serializable packet) throws JED2KException {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        combiner.pack(packet, buffer);
+        buffer.flip();
+        PacketHeader header = new KadPacketHeader();
+        header.get(buffer);
+        header.reset(header.key(), buffer.remaining());
+        Serializable res = combiner.unpack(header, buffer);
+        assertFalse(buffer.hasRemaining());
+        return res;
+    }
+
+    @Test
+    public void testReusablePackets() throws JED2KException {
+        PacketCombiner combiner = new org.dkf.jed2k.protocol.kad.PacketCombiner();
+        Kad2Res res = new Kad2Res();
+        res.getTarget().assign(Hash.EMULE);
+        res.getResults().add(new KadEntry());
+        res.getResults().add(new KadEntry());
+
+        Kad2Res res1 = (Kad2Res)roundtrip(combiner, res);
+        assertEquals(2, res1.getResults().size());
+        List<KadEntry> entries = res1.getResults().getList();
+
+        res.getTarget().assign(Hash.LIBED2K);
+        res.getResults().getList().remove(0);
+        Kad2Res res2 = (Kad2Res)roundtrip(combiner, res);
+        assertTrue(res1 == res2);
+        assertEquals(new KadId(Hash.LIBED2K), res2.getTarget());
+        assertEquals(1, res2.getResults().size());
+        // content of previous packet is still available for consumers
+        assertEquals(2, entries.size());
+
+        // not reusable packets are always new
+        Kad2Req req = new Kad2Req();
+        assertTrue(roundtrip(combiner, req) != roundtrip(combiner, req));
+
+        combiner.setReusePackets(false);
+        assertTrue(roundtrip(combiner, res) != roundtrip(combiner, res));
+    }
 }